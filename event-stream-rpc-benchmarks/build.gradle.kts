@@ -0,0 +1,52 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+plugins {
+    java
+    id("me.champeau.jmh").version("0.7.2")
+}
+
+repositories {
+    mavenLocal()
+    mavenCentral()
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    jmh(project(":event-stream-rpc-model"))
+    jmh(project(":event-stream-rpc-client"))
+    jmh(project(":event-stream-rpc-server"))
+    jmh(project(":test-model-codegen"))
+    jmh(project(":greengrass-client"))
+    jmh(project(":greengrass-server"))
+    jmh("com.google.code.gson:gson:2.9.0")
+    jmh("software.amazon.awssdk.crt:aws-crt:0.29.16")
+}
+
+/*
+ * Run with ./gradlew -Pbenchmarks :event-stream-rpc-benchmarks:jmh, the module being included only on demand
+ * Narrow the run with -Pjmh.includes=<regex>
+ * Allocation per operation is reported by the gc profiler, on by default; replace it with -Pjmh.profilers=<list>
+ */
+jmh {
+    jmhVersion.set("1.37")
+    if (project.hasProperty("jmh.includes")) {
+        includes.set(listOf(project.property("jmh.includes") as String))
+    }
+    profilers.set(if (project.hasProperty("jmh.profilers")) {
+        (project.property("jmh.profilers") as String).split(",").filter { it.isNotEmpty() }
+    } else {
+        listOf("gc")
+    })
+    resultFormat.set("JSON")
+}
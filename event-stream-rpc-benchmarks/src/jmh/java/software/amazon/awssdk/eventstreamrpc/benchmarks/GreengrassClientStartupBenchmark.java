@@ -0,0 +1,115 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.aws.greengrass.GeneratedAbstractListComponentsOperationHandler;
+import software.amazon.awssdk.aws.greengrass.GreengrassCoreIPCClient;
+import software.amazon.awssdk.aws.greengrass.GreengrassCoreIPCClientV2;
+import software.amazon.awssdk.aws.greengrass.GreengrassCoreIPCService;
+import software.amazon.awssdk.aws.greengrass.GreengrassCoreIPCServiceModel;
+import software.amazon.awssdk.aws.greengrass.model.ListComponentsRequest;
+import software.amazon.awssdk.aws.greengrass.model.ListComponentsResponse;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.InProcessEventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.InProcessRpcServer;
+import software.amazon.awssdk.eventstreamrpc.OperationContinuationHandlerContext;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a fresh JVM to the first response of a GreengrassCoreIPCClientV2 call: loading the generated
+ * service model, client and model classes, connecting, and building the JSON codecs of the operation's
+ * messages on the way. Every measurement is a single call in its own fork.
+ *
+ * Runs over the in-process transport against a GreengrassCoreIPCService in the same JVM, so the server's
+ * share of the class loading is included, and neither a socket nor a running nucleus is needed. With
+ * warmUp set, the service model's warm-up runs for the operation before the measurement, as a component
+ * would do while it has nothing else to do; the difference is what that leaves off the first call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class GreengrassClientStartupBenchmark {
+    @Param({"false", "true"})
+    public boolean warmUp;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (warmUp) {
+            GreengrassCoreIPCServiceModel.getInstance()
+                    .warmUp(Collections.singletonList(GreengrassCoreIPCServiceModel.LIST_COMPONENTS));
+        }
+    }
+
+    @Benchmark
+    public ListComponentsResponse firstResponse() throws Exception {
+        final GreengrassCoreIPCService service = new GreengrassCoreIPCService();
+        service.setListComponentsHandler(ListComponentsHandler::new);
+        service.setAuthenticationHandler(TestAuthNZHandlers.getAuthNHandler());
+        service.setAuthorizationHandler(TestAuthNZHandlers.getAuthZHandler());
+
+        try (InProcessRpcServer server = new InProcessRpcServer(service);
+             InProcessEventStreamRPCConnection connection = new InProcessEventStreamRPCConnection(server,
+                     () -> TestAuthNZHandlers.getClientAuth("accepted.foo"))) {
+            connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+                @Override
+                public void onConnect() { }
+
+                @Override
+                public void onDisconnect(int errorCode) { }
+
+                @Override
+                public boolean onError(Throwable t) {
+                    return true;
+                }
+            }).get(5, TimeUnit.SECONDS);
+
+            try (GreengrassCoreIPCClientV2 client = GreengrassCoreIPCClientV2.builder()
+                    .withClient(new GreengrassCoreIPCClient(connection))
+                    .withoutExecutor()
+                    .build()) {
+                return client.listComponents(new ListComponentsRequest());
+            }
+        }
+    }
+
+    private static class ListComponentsHandler extends GeneratedAbstractListComponentsOperationHandler {
+        ListComponentsHandler(OperationContinuationHandlerContext context) {
+            super(context);
+        }
+
+        @Override
+        protected void onStreamClosed() { }
+
+        @Override
+        public ListComponentsResponse handleRequest(ListComponentsRequest request) {
+            return new ListComponentsResponse().withComponents(Collections.emptyList());
+        }
+
+        @Override
+        public void handleStreamEvent(EventStreamJsonMessage streamRequestEvent) { }
+    }
+}
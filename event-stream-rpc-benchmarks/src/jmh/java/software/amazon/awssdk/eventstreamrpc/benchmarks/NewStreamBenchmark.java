@@ -0,0 +1,135 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuation;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuationHandler;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.crt.io.ClientBootstrap;
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+import software.amazon.awssdk.crt.io.HostResolver;
+import software.amazon.awssdk.crt.io.SocketOptions;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnectionConfig;
+import software.amazon.awssdk.eventstreamrpc.MessageAmendInfo;
+import software.amazon.awssdk.eventstreamrpc.RpcServer;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
+import software.amazon.awssdk.eventstreamrpc.test.TestIpcServiceHandler;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of EventStreamRPCConnection.newStream(), the admission step of every operation invoke,
+ * uncontended and with several application threads invoking on one shared connection at once.
+ *
+ * Streams are closed without being activated, so nothing goes over the wire and the measurement is
+ * the connection state check plus native stream creation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NewStreamBenchmark {
+    private EventLoopGroup elGroup;
+    private HostResolver hostResolver;
+    private ClientBootstrap clientBootstrap;
+    private SocketOptions socketOptions;
+    private RpcServer ipcServer;
+    private EventStreamRPCConnection connection;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final TestIpcServiceHandler service = new TestIpcServiceHandler(false,
+                request -> request,
+                EventStreamJsonMessage.class, EventStreamJsonMessage.class,
+                EventStreamJsonMessage.class, EventStreamJsonMessage.class);
+        service.setAuthenticationHandler(TestAuthNZHandlers.getAuthNHandler());
+        service.setAuthorizationHandler(TestAuthNZHandlers.getAuthZHandler());
+
+        elGroup = new EventLoopGroup(1);
+        hostResolver = new HostResolver(elGroup, 64);
+        clientBootstrap = new ClientBootstrap(elGroup, hostResolver);
+        socketOptions = new SocketOptions();
+        socketOptions.connectTimeoutMs = 3000;
+        socketOptions.domain = SocketOptions.SocketDomain.IPv4;
+        socketOptions.type = SocketOptions.SocketType.STREAM;
+        ipcServer = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", 0, service);
+        ipcServer.runServer();
+
+        final EventStreamRPCConnectionConfig config = new EventStreamRPCConnectionConfig(
+                clientBootstrap, elGroup, socketOptions, null, "127.0.0.1", ipcServer.getBoundPort(), () -> {
+            final List<Header> headers = new LinkedList<>();
+            headers.add(Header.createHeader("client-name", "accepted.foo"));
+            return CompletableFuture.completedFuture(new MessageAmendInfo(headers, null));
+        });
+        connection = new EventStreamRPCConnection(config);
+        connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+            @Override
+            public void onConnect() { }
+
+            @Override
+            public void onDisconnect(int errorCode) { }
+
+            @Override
+            public boolean onError(Throwable t) {
+                return true;
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        ipcServer.close();
+        socketOptions.close();
+        clientBootstrap.close();
+        hostResolver.close();
+        elGroup.close();
+    }
+
+    private ClientConnectionContinuation newStream() {
+        final ClientConnectionContinuation continuation = connection.newStream(new ClientConnectionContinuationHandler() {
+            @Override
+            protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) { }
+        });
+        continuation.close();
+        return continuation;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ClientConnectionContinuation newStreamUncontended() {
+        return newStream();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ClientConnectionContinuation newStreamContended() {
+        return newStream();
+    }
+}
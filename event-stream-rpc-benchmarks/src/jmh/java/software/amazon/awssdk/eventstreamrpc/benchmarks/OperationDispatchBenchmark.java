@@ -0,0 +1,148 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.awstest.EchoStreamMessagesResponseHandler;
+import software.amazon.awssdk.awstest.EchoTestRPCClient;
+import software.amazon.awssdk.awstest.model.EchoMessageRequest;
+import software.amazon.awssdk.awstest.model.EchoMessageResponse;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.GetAllProductsRequest;
+import software.amazon.awssdk.awstest.model.GetAllProductsResponse;
+import software.amazon.awssdk.awstest.model.MessageData;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.InProcessEventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.InProcessRpcServer;
+import software.amazon.awssdk.eventstreamrpc.StreamResponseHandler;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestServiceRunner;
+import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client and server message handling paths of an operation, from a generated client call through
+ * EventStreamRPCClient, the operation's OperationContinuationHandler and back into the response future or
+ * stream response handler, without a socket or the native event stream codec underneath.
+ *
+ * Runs over the in-process transport, which stands in for the native continuations. With copy set, every
+ * message is serialized to JSON and parsed back into its model class on the way across, which is the model
+ * work a socket connection does on each side; without it, messages are passed by reference and the
+ * measurement is the dispatch alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationDispatchBenchmark {
+    @Param({"false", "true"})
+    public boolean copy;
+
+    private InProcessRpcServer server;
+    private InProcessEventStreamRPCConnection connection;
+    private EchoTestRPCClient client;
+    private EchoMessageRequest echoRequest;
+    private EchoStreamMessagesResponseHandler stream;
+    private EchoStreamingMessage streamEvent;
+    private EchoStreamingMessage lastStreamEvent;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new InProcessRpcServer(EchoTestServiceRunner.newEchoTestService());
+        connection = new InProcessEventStreamRPCConnection(server,
+                () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
+        connection.setDefensiveCopy(copy);
+        connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+            @Override
+            public void onConnect() { }
+
+            @Override
+            public void onDisconnect(int errorCode) { }
+
+            @Override
+            public boolean onError(Throwable t) {
+                return true;
+            }
+        }).get(5, TimeUnit.SECONDS);
+        client = new EchoTestRPCClient(connection);
+
+        final MessageData data = new MessageData();
+        data.setStringMessage("Hello benchmark");
+        data.setBlobMessage(new byte[256]);
+        echoRequest = new EchoMessageRequest();
+        echoRequest.setMessage(data);
+        streamEvent = new EchoStreamingMessage();
+        streamEvent.setStreamMessage(data);
+
+        stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                    @Override
+                    public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                        lastStreamEvent = streamEvent;
+                    }
+
+                    @Override
+                    public boolean onStreamError(Throwable error) {
+                        return false;
+                    }
+
+                    @Override
+                    public void onStreamClosed() { }
+                }));
+        stream.getResponse().get(5, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        server.close();
+    }
+
+    /**
+     * Request-response: open a stream, send the request, dispatch it to the handler, send back and complete
+     * the response future, close the stream
+     */
+    @Benchmark
+    public EchoMessageResponse echoMessage() throws Exception {
+        return client.echoMessage(echoRequest, Optional.empty()).getResponse().get();
+    }
+
+    /**
+     * Request-response with a larger response built by the handler
+     */
+    @Benchmark
+    public GetAllProductsResponse getAllProducts() throws Exception {
+        return client.getAllProducts(new GetAllProductsRequest(), Optional.empty()).getResponse().get();
+    }
+
+    /**
+     * One stream event each way on an already open stream. The echo reaches the stream response handler
+     * before the send completes, the in-process transport delivering on the sending thread
+     */
+    @Benchmark
+    public EchoStreamingMessage streamEventRoundTrip() throws Exception {
+        stream.sendStreamEvent(streamEvent).get();
+        return lastStreamEvent;
+    }
+}
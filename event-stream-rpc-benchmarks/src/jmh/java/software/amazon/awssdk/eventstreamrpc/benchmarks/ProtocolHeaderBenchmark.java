@@ -0,0 +1,101 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCServiceModel;
+import software.amazon.awssdk.eventstreamrpc.Version;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-message protocol work around the payload: parsing the client version on connect, building the
+ * content type and service model type headers of every message sent, and finding the service model type
+ * header of every message received, both the way the client and server do today (a stream filter) and
+ * with a plain loop for comparison. Encoding measures Header.marshallHeadersForJNI(), which runs in Java
+ * before every native send.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolHeaderBenchmark {
+    private static final String MODEL_TYPE = "awstest#EchoStreamingMessage";
+
+    private String versionString;
+    private List<Header> receivedHeaders;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        versionString = Version.getInstance().getVersionString();
+        //what a stream event carries off the wire, the model type last as the native decoder keeps wire order
+        receivedHeaders = new ArrayList<>(4);
+        receivedHeaders.add(Header.createHeader(":message-type", 0));
+        receivedHeaders.add(Header.createHeader(":message-flags", 0));
+        receivedHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+        receivedHeaders.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER, MODEL_TYPE));
+    }
+
+    @Benchmark
+    public Version versionFromString() {
+        return Version.fromString(versionString);
+    }
+
+    @Benchmark
+    public List<Header> buildMessageHeaders() {
+        final List<Header> headers = new ArrayList<>(2);
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER, MODEL_TYPE));
+        return headers;
+    }
+
+    @Benchmark
+    public byte[] encodeMessageHeaders() {
+        return Header.marshallHeadersForJNI(buildMessageHeaders());
+    }
+
+    @Benchmark
+    public Optional<String> findModelTypeStream() {
+        return receivedHeaders.stream()
+                .filter(header -> header.getName().equals(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER)
+                        && header.getHeaderType().equals(HeaderType.String))
+                .map(header -> header.getValueAsString())
+                .findFirst();
+    }
+
+    @Benchmark
+    public String findModelTypeLoop() {
+        for (int i = 0; i < receivedHeaders.size(); ++i) {
+            final Header header = receivedHeaders.get(i);
+            if (header.getHeaderType() == HeaderType.String
+                    && header.getName().equals(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER)) {
+                return header.getValueAsString();
+            }
+        }
+        return null;
+    }
+}
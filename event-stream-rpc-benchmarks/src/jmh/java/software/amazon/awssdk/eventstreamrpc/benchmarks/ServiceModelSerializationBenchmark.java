@@ -0,0 +1,167 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.awstest.EchoTestRPCServiceModel;
+import software.amazon.awssdk.awstest.model.Customer;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.FruitEnum;
+import software.amazon.awssdk.awstest.model.GetAllCustomersResponse;
+import software.amazon.awssdk.awstest.model.GetAllProductsResponse;
+import software.amazon.awssdk.awstest.model.MessageData;
+import software.amazon.awssdk.awstest.model.Pair;
+import software.amazon.awssdk.awstest.model.Product;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCServiceModel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventStreamRPCServiceModel.toJson() and fromJson() for the EchoTestRPC shapes that exercise each kind of
+ * member: MessageData (every scalar, blob, timestamp, enum, document, list and map member), ProductMap and
+ * CustomerList (as carried by the GetAllProducts and GetAllCustomers responses) and the EchoStreamingMessage
+ * union. Collections hold size entries, and the MessageData blob is size * 64 bytes.
+ *
+ * Run with -prof gc to see the bytes allocated per operation alongside the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceModelSerializationBenchmark {
+    @Param({"1", "100"})
+    public int size;
+
+    private EventStreamRPCServiceModel serviceModel;
+    private MessageData messageData;
+    private GetAllProductsResponse productMap;
+    private GetAllCustomersResponse customerList;
+    private EchoStreamingMessage streamingMessage;
+    private byte[] messageDataJson;
+    private byte[] productMapJson;
+    private byte[] customerListJson;
+    private byte[] streamingMessageJson;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(42);   //same payloads every run
+        serviceModel = EchoTestRPCServiceModel.getInstance();
+
+        final List<String> strings = new ArrayList<>(size);
+        final List<Pair> pairs = new ArrayList<>(size);
+        final Map<String, Product> products = new HashMap<>();
+        final List<Customer> customers = new ArrayList<>(size);
+        final Map<String, Object> document = new HashMap<>();
+        for (int i = 0; i < size; ++i) {
+            strings.add("string-" + i);
+            final Pair pair = new Pair();
+            pair.setKey("key-" + i);
+            pair.setValue("value-" + i);
+            pairs.add(pair);
+            final Product product = new Product();
+            product.setName("product-" + i);
+            product.setPrice(random.nextFloat() * 100);
+            products.put(product.getName(), product);
+            final Customer customer = new Customer();
+            customer.setId((long) i);
+            customer.setFirstName("first-" + i);
+            customer.setLastName("last-" + i);
+            customers.add(customer);
+            document.put("field-" + i, i % 2 == 0 ? "value-" + i : (Object) Double.valueOf(i));
+        }
+        final byte[] blob = new byte[size * 64];
+        random.nextBytes(blob);
+
+        messageData = new MessageData();
+        messageData.setStringMessage("Hello benchmark");
+        messageData.setBooleanMessage(true);
+        messageData.setTimeMessage(Instant.ofEpochSecond(1600000000L));    //whole seconds survive the double encoding
+        messageData.setBlobMessage(blob);
+        messageData.setEnumMessage(FruitEnum.PINEAPPLE);
+        messageData.setDocumentMessage(document);
+        messageData.setStringListMessage(strings);
+        messageData.setKeyValuePairList(pairs);
+        messageData.setStringToValue(products);
+
+        productMap = new GetAllProductsResponse();
+        productMap.setProducts(products);
+        customerList = new GetAllCustomersResponse();
+        customerList.setCustomers(customers);
+        streamingMessage = new EchoStreamingMessage();
+        streamingMessage.setStreamMessage(messageData);
+
+        messageDataJson = serviceModel.toJson(messageData);
+        productMapJson = serviceModel.toJson(productMap);
+        customerListJson = serviceModel.toJson(customerList);
+        streamingMessageJson = serviceModel.toJson(streamingMessage);
+        //a lossy round trip would be measuring the wrong thing
+        if (!messageData.equals(serviceModel.fromJson(MessageData.class, messageDataJson))
+                || !streamingMessage.equals(serviceModel.fromJson(EchoStreamingMessage.class, streamingMessageJson))) {
+            throw new IllegalStateException("Round trip does not preserve the message");
+        }
+    }
+
+    @Benchmark
+    public byte[] messageDataToJson() {
+        return serviceModel.toJson(messageData);
+    }
+
+    @Benchmark
+    public MessageData messageDataFromJson() {
+        return serviceModel.fromJson(MessageData.class, messageDataJson);
+    }
+
+    @Benchmark
+    public byte[] productMapToJson() {
+        return serviceModel.toJson(productMap);
+    }
+
+    @Benchmark
+    public GetAllProductsResponse productMapFromJson() {
+        return serviceModel.fromJson(GetAllProductsResponse.class, productMapJson);
+    }
+
+    @Benchmark
+    public byte[] customerListToJson() {
+        return serviceModel.toJson(customerList);
+    }
+
+    @Benchmark
+    public GetAllCustomersResponse customerListFromJson() {
+        return serviceModel.fromJson(GetAllCustomersResponse.class, customerListJson);
+    }
+
+    @Benchmark
+    public byte[] streamingUnionToJson() {
+        return serviceModel.toJson(streamingMessage);
+    }
+
+    @Benchmark
+    public EchoStreamingMessage streamingUnionFromJson() {
+        return serviceModel.fromJson(EchoStreamingMessage.class, streamingMessageJson);
+    }
+}
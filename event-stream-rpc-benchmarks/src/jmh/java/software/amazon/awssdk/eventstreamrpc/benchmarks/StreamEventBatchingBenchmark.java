@@ -0,0 +1,159 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.awstest.EchoStreamMessagesResponseHandler;
+import software.amazon.awssdk.awstest.EchoTestRPCClient;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.MessageData;
+import software.amazon.awssdk.crt.io.ClientBootstrap;
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+import software.amazon.awssdk.crt.io.HostResolver;
+import software.amazon.awssdk.crt.io.SocketOptions;
+import software.amazon.awssdk.eventstreamrpc.BatchingOptions;
+import software.amazon.awssdk.eventstreamrpc.ClientConnectionOptions;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnectionConfig;
+import software.amazon.awssdk.eventstreamrpc.RpcServer;
+import software.amazon.awssdk.eventstreamrpc.ServerConnectionOptions;
+import software.amazon.awssdk.eventstreamrpc.StreamResponseHandler;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestServiceRunner;
+import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream event rate over a socket connection with and without stream event batching. Each invocation sends a
+ * burst of about 100 byte events on one echo stream and waits for all of them to be echoed back, so the score is
+ * events sent, and received back, per millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamEventBatchingBenchmark {
+    private static final int BURST = 64;
+
+    @Param({"false", "true"})
+    public boolean batching;
+
+    private EventLoopGroup elGroup;
+    private HostResolver hostResolver;
+    private ClientBootstrap clientBootstrap;
+    private SocketOptions socketOptions;
+    private RpcServer ipcServer;
+    private EventStreamRPCConnection connection;
+    private EchoStreamMessagesResponseHandler stream;
+    private EchoStreamingMessage streamEvent;
+    private final Semaphore echoed = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final BatchingOptions batchingOptions = batching
+                ? new BatchingOptions(Duration.ofMillis(1), 32 * 1024, BURST) : null;
+        elGroup = new EventLoopGroup(1);
+        hostResolver = new HostResolver(elGroup, 64);
+        clientBootstrap = new ClientBootstrap(elGroup, hostResolver);
+        socketOptions = new SocketOptions();
+        socketOptions.connectTimeoutMs = 3000;
+        socketOptions.domain = SocketOptions.SocketDomain.IPv4;
+        socketOptions.type = SocketOptions.SocketType.STREAM;
+        ipcServer = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", 0,
+                EchoTestServiceRunner.newEchoTestService());
+        ipcServer.setConnectionOptions(ServerConnectionOptions.builder().withBatchingOptions(batchingOptions).build());
+        ipcServer.runServer();
+
+        final EventStreamRPCConnectionConfig config = new EventStreamRPCConnectionConfig(
+                clientBootstrap, elGroup, socketOptions, null, "127.0.0.1", ipcServer.getBoundPort(),
+                () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
+        connection = new EventStreamRPCConnection(config);
+        connection.setConnectionOptions(ClientConnectionOptions.builder().withBatchingOptions(batchingOptions).build());
+        connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+            @Override
+            public void onConnect() { }
+
+            @Override
+            public void onDisconnect(int errorCode) { }
+
+            @Override
+            public boolean onError(Throwable t) {
+                return true;
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < 64) {
+            text.append("stream event ");
+        }
+        final MessageData data = new MessageData();
+        data.setStringMessage(text.toString());
+        streamEvent = new EchoStreamingMessage();
+        streamEvent.setStreamMessage(data);
+
+        stream = new EchoTestRPCClient(connection).echoStreamMessages(EchoStreamingRequest.VOID,
+                Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                    @Override
+                    public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                        echoed.release();
+                    }
+
+                    @Override
+                    public boolean onStreamError(Throwable error) {
+                        return false;
+                    }
+
+                    @Override
+                    public void onStreamClosed() { }
+                }));
+        stream.getResponse().get(5, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        ipcServer.close();
+        socketOptions.close();
+        clientBootstrap.close();
+        hostResolver.close();
+        elGroup.close();
+    }
+
+    /**
+     * Sends a burst of stream events without waiting on each, then waits for every echo
+     */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void echoBurst() throws Exception {
+        for (int i = 0; i < BURST; ++i) {
+            stream.sendStreamEvent(streamEvent);
+        }
+        if (!echoed.tryAcquire(BURST, 10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Stream events were not echoed back");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * What a client connection offers the server at connect, and how it sends, accounts, tracks and traces the
+ * operations invoked over it. Immutable; a connection takes the options it had when it connected, so changing
+ * them affects only later connects, or for priority lanes, leak detection and tracing, later operations.
+ * Every option is off, null or 0, unless set.
+ */
+public final class ClientConnectionOptions {
+    /**
+     * Options with every feature off
+     */
+    public static final ClientConnectionOptions DEFAULT = builder().build();
+
+    private final KeepAliveOptions keepAliveOptions;
+    private final int sharedMemoryThreshold;
+    private final CompressionOptions compressionOptions;
+    private final FragmentationOptions fragmentationOptions;
+    private final BatchingOptions batchingOptions;
+    private final PriorityLaneOptions priorityLaneOptions;
+    private final MemoryQuotaOptions memoryQuotaOptions;
+    private final ContinuationLeakDetector leakDetector;
+    private final RpcTracer tracer;
+
+    private ClientConnectionOptions(final Builder builder) {
+        this.keepAliveOptions = builder.keepAliveOptions;
+        this.sharedMemoryThreshold = builder.sharedMemoryThreshold;
+        this.compressionOptions = builder.compressionOptions;
+        this.fragmentationOptions = builder.fragmentationOptions;
+        this.batchingOptions = builder.batchingOptions;
+        this.priorityLaneOptions = builder.priorityLaneOptions;
+        this.memoryQuotaOptions = builder.memoryQuotaOptions;
+        this.leakDetector = builder.leakDetector;
+        this.tracer = builder.tracer;
+    }
+
+    /**
+     * Returns a builder of options with every feature off
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder starting from these options
+     * @return a new builder
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .withKeepAliveOptions(keepAliveOptions)
+                .withSharedMemoryThreshold(sharedMemoryThreshold)
+                .withCompressionOptions(compressionOptions)
+                .withFragmentationOptions(fragmentationOptions)
+                .withBatchingOptions(batchingOptions)
+                .withPriorityLaneOptions(priorityLaneOptions)
+                .withMemoryQuotaOptions(memoryQuotaOptions)
+                .withLeakDetector(leakDetector)
+                .withTracer(tracer);
+    }
+
+    /**
+     * Returns the keepalive configuration
+     * @return the keepalive configuration, or null if keepalive is disabled
+     */
+    public KeepAliveOptions getKeepAliveOptions() {
+        return keepAliveOptions;
+    }
+
+    /**
+     * Returns the smallest payload written to shared memory
+     * @return the smallest payload written to shared memory, or 0 if shared memory is not asked for
+     */
+    public int getSharedMemoryThreshold() {
+        return sharedMemoryThreshold;
+    }
+
+    /**
+     * Returns the compression configuration
+     * @return the compression configuration, or null if compression is not offered
+     */
+    public CompressionOptions getCompressionOptions() {
+        return compressionOptions;
+    }
+
+    /**
+     * Returns the fragmentation configuration
+     * @return the fragmentation configuration, or null if fragmentation is not offered
+     */
+    public FragmentationOptions getFragmentationOptions() {
+        return fragmentationOptions;
+    }
+
+    /**
+     * Returns the batching configuration
+     * @return the batching configuration, or null if batching is not offered
+     */
+    public BatchingOptions getBatchingOptions() {
+        return batchingOptions;
+    }
+
+    /**
+     * Returns the priority lane configuration
+     * @return the priority lane configuration, or null if every message is sent at once
+     */
+    public PriorityLaneOptions getPriorityLaneOptions() {
+        return priorityLaneOptions;
+    }
+
+    /**
+     * Returns the memory quotas
+     * @return the memory quotas, or null if connections are not accounted
+     */
+    public MemoryQuotaOptions getMemoryQuotaOptions() {
+        return memoryQuotaOptions;
+    }
+
+    /**
+     * Returns the leak detector
+     * @return the leak detector, or null if operation responses are not tracked
+     */
+    public ContinuationLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Returns the tracer
+     * @return the tracer, or null if operations are not traced
+     */
+    public RpcTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Builds ClientConnectionOptions
+     */
+    public static final class Builder {
+        private KeepAliveOptions keepAliveOptions;
+        private int sharedMemoryThreshold = 0;
+        private CompressionOptions compressionOptions;
+        private FragmentationOptions fragmentationOptions;
+        private BatchingOptions batchingOptions;
+        private PriorityLaneOptions priorityLaneOptions;
+        private MemoryQuotaOptions memoryQuotaOptions;
+        private ContinuationLeakDetector leakDetector;
+        private RpcTracer tracer;
+
+        private Builder() { }
+
+        /**
+         * Pings the server to detect a dead connection
+         * @param keepAliveOptions The keepalive configuration, or null to disable
+         * @return this builder
+         */
+        public Builder withKeepAliveOptions(final KeepAliveOptions keepAliveOptions) {
+            this.keepAliveOptions = keepAliveOptions;
+            return this;
+        }
+
+        /**
+         * Asks the server for a shared memory side channel. Only useful when the server is on the same host and
+         * offers one. Request and stream event payloads of at least the threshold are then written to shared
+         * memory rather than the socket, and large responses may come back the same way
+         * @param sharedMemoryThreshold The smallest payload in bytes to write to shared memory, or 0 to not ask
+         * @return this builder
+         */
+        public Builder withSharedMemoryThreshold(final int sharedMemoryThreshold) {
+            if (sharedMemoryThreshold < 0) {
+                throw new IllegalArgumentException("Shared memory threshold must not be negative");
+            }
+            this.sharedMemoryThreshold = sharedMemoryThreshold;
+            return this;
+        }
+
+        /**
+         * Offers the server payload compression with the given codecs. If the server accepts one, request and
+         * stream event payloads of at least the threshold are encoded when that makes them smaller, and the
+         * server may encode what it sends back
+         * @param compressionOptions The compression configuration, or null to not offer it
+         * @return this builder
+         */
+        public Builder withCompressionOptions(final CompressionOptions compressionOptions) {
+            this.compressionOptions = compressionOptions;
+            return this;
+        }
+
+        /**
+         * Offers the server to send payloads too long for one message in fragments. If the server accepts,
+         * payloads of any length up to each side's maximum can be sent either way
+         * @param fragmentationOptions The fragmentation configuration, or null to not offer it
+         * @return this builder
+         */
+        public Builder withFragmentationOptions(final FragmentationOptions fragmentationOptions) {
+            this.fragmentationOptions = fragmentationOptions;
+            return this;
+        }
+
+        /**
+         * Offers the server to batch stream events. If the server accepts, stream events sent within the window
+         * of each other on a stream go together in one message, and the server may batch what it sends back
+         * @param batchingOptions The batching configuration, or null to not offer it
+         * @return this builder
+         */
+        public Builder withBatchingOptions(final BatchingOptions batchingOptions) {
+            this.batchingOptions = batchingOptions;
+            return this;
+        }
+
+        /**
+         * Sends the messages of each operation according to its priority
+         * @param priorityLaneOptions The priority lane configuration, or null to send every message at once
+         * @return this builder
+         */
+        public Builder withPriorityLaneOptions(final PriorityLaneOptions priorityLaneOptions) {
+            this.priorityLaneOptions = priorityLaneOptions;
+            return this;
+        }
+
+        /**
+         * Accounts the payload bytes in flight against quotas, from when a message arrives until its handler
+         * returns, or the executor a generated client was given runs it. A stream whose next message would cross
+         * a hard quota is closed, its handler told with a QuotaExceededException. The server is offered
+         * backpressure signals, sent when a stream goes past a soft quota, and sends its own if it has quotas too
+         * @param memoryQuotaOptions The quotas, or null to not account
+         * @return this builder
+         */
+        public Builder withMemoryQuotaOptions(final MemoryQuotaOptions memoryQuotaOptions) {
+            this.memoryQuotaOptions = memoryQuotaOptions;
+            return this;
+        }
+
+        /**
+         * Tracks a sample of the operation responses returned, reporting those garbage collected, or open past
+         * the detector's age threshold, before either side closed their stream
+         * @param leakDetector The detector, or null to not track
+         * @return this builder
+         */
+        public Builder withLeakDetector(final ContinuationLeakDetector leakDetector) {
+            this.leakDetector = leakDetector;
+            return this;
+        }
+
+        /**
+         * Traces the operations invoked, sending each span's trace context to the server with the initial request
+         * @param tracer The tracer, or null to not trace
+         * @return this builder
+         */
+        public Builder withTracer(final RpcTracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+
+        /**
+         * Returns the options built
+         * @return the options built
+         */
+        public ClientConnectionOptions build() {
+            return new ClientConnectionOptions(this);
+        }
+    }
+}
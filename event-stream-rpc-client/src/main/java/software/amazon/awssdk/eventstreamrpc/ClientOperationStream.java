@@ -0,0 +1,65 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The client end of one operation invoke: a native continuation for socket connections, or the client end
+ * of an InProcessContinuation for in-process ones
+ */
+interface ClientOperationStream {
+    /**
+     * Opens the stream on the server with the initial request, reporting its serialization and flush to the
+     * span and sending the span's trace context if it is not null
+     * @return A future that completes when the request is flushed
+     */
+    CompletableFuture<Void> activate(String applicationModelType, EventStreamJsonMessage request, RpcSpan span);
+
+    /**
+     * Sends an application message, or an empty one if message is null
+     */
+    CompletableFuture<Void> sendMessage(String applicationModelType, EventStreamJsonMessage message, int messageFlags);
+
+    /**
+     * Returns the payload of a message received off the wire, which may have been left in shared memory
+     * or compressed
+     */
+    byte[] resolvePayload(List<Header> headers, byte[] payload);
+
+    /**
+     * Lets go of the payload of a message received off the wire and dropped without being resolved, so shared
+     * memory it was left in can be reused
+     */
+    void releasePayload(List<Header> headers);
+
+    /**
+     * Returns the assembler for payloads received in fragments, or null if the connection did not negotiate
+     * fragmentation
+     */
+    FragmentAssembler getFragmentAssembler();
+
+    /**
+     * Returns the account of the payload bytes in flight on the stream, or null if the connection is not
+     * accounted
+     */
+    MemoryAccount.Stream getMemoryAccount();
+
+    /**
+     * Sets the leak detector's tracker of the stream, closed with it
+     */
+    void setLeakTracker(ContinuationLeakDetector.Tracker leakTracker);
+
+    boolean isNull();
+
+    void close();
+}
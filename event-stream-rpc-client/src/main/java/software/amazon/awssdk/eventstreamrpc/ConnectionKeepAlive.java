@@ -0,0 +1,119 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Keepalive of one connected EventStreamRPCConnection. Pings carry a sequence header the server echoes
+ * back, so each PingResponse is matched to its ping for a round trip time. Every connection's pings are
+ * scheduled on one shared TimerWheel.
+ */
+final class ConnectionKeepAlive implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionKeepAlive.class.getName());
+    static final String SEQUENCE_HEADER = "keepalive-seq";
+    private static final byte[] PING_PAYLOAD = new byte[] { '{', '}' };
+
+    private static TimerWheel sharedTimerWheel;
+
+    private final EventStreamRPCConnection connection;
+    private final KeepAliveOptions options;
+    private final LatencyHistogram roundTripTime;
+    private final Consumer<KeepAliveTimeoutException> onDeadPeer;
+    private final Map<Long, Long> outstandingPings = new ConcurrentHashMap<>();
+    private long nextSequence = 0;    //only touched by the timer wheel thread
+    private volatile boolean stopped = false;
+    private volatile TimerWheel.Timeout timeout;
+
+    ConnectionKeepAlive(final EventStreamRPCConnection connection, final KeepAliveOptions options,
+                        final LatencyHistogram roundTripTime, final Consumer<KeepAliveTimeoutException> onDeadPeer) {
+        this.connection = connection;
+        this.options = options;
+        this.roundTripTime = roundTripTime;
+        this.onDeadPeer = onDeadPeer;
+    }
+
+    private static synchronized TimerWheel getSharedTimerWheel() {
+        if (sharedTimerWheel == null) {
+            sharedTimerWheel = new TimerWheel("EventStreamRPCConnection-keepalive", 50, TimeUnit.MILLISECONDS, 512);
+        }
+        return sharedTimerWheel;
+    }
+
+    void start() {
+        timeout = getSharedTimerWheel().schedule(this, options.getInterval().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    void stop() {
+        stopped = true;
+        final TimerWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+        outstandingPings.clear();
+    }
+
+    @Override
+    public void run() {
+        if (stopped) {
+            return;
+        }
+        final int missed = outstandingPings.size();
+        if (missed >= options.getMissedResponseThreshold()) {
+            LOGGER.warning(String.format("%d keepalive pings unanswered. Closing connection", missed));
+            stop();
+            onDeadPeer.accept(new KeepAliveTimeoutException(missed));
+            return;
+        }
+        final long sequence = ++nextSequence;
+        outstandingPings.put(sequence, System.nanoTime());
+        try {
+            connection.sendPing(Optional.of(new MessageAmendInfo(
+                    Collections.singletonList(Header.createHeader(SEQUENCE_HEADER, sequence)), PING_PAYLOAD)));
+        } catch (EventStreamClosedException e) {
+            stop();
+            return;
+        } catch (RuntimeException e) {
+            //the ping stays outstanding, so if sends keep failing the peer is declared dead
+            LOGGER.warning(String.format("Could not send keepalive ping. %s: %s",
+                    e.getClass().getCanonicalName(), e.getMessage()));
+        }
+        start();
+    }
+
+    /**
+     * Matches a PingResponse to its ping
+     * @return the round trip time in nanoseconds, or -1 if the response does not answer an outstanding keepalive ping
+     */
+    long onPingResponse(final List<Header> headers) {
+        for (Header header : headers) {
+            if (SEQUENCE_HEADER.equals(header.getName())) {
+                final long sequence = header.getValueAsLong();
+                final Long sentNanos = outstandingPings.remove(sequence);
+                if (sentNanos == null) {
+                    return -1;
+                }
+                final long rttNanos = System.nanoTime() - sentNanos;
+                roundTripTime.record(rttNanos);
+                //any answer proves the peer is alive, so earlier pings no longer count as missed
+                outstandingPings.keySet().removeIf(outstanding -> outstanding < sequence);
+                return rttNanos;
+            }
+        }
+        return -1;
+    }
+}
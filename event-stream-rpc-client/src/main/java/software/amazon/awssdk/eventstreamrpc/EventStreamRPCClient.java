@@ -7,7 +7,6 @@
 
 package software.amazon.awssdk.eventstreamrpc;
 
-import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuation;
 import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuationHandler;
 import software.amazon.awssdk.crt.eventstream.Header;
 import software.amazon.awssdk.crt.eventstream.HeaderType;
@@ -15,8 +14,9 @@ import software.amazon.awssdk.crt.eventstream.MessageFlags;
 import software.amazon.awssdk.crt.eventstream.MessageType;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamOperationError;
+import software.amazon.awssdk.eventstreamrpc.model.QuotaExceededException;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -67,124 +67,344 @@ public class EventStreamRPCClient {
         }
         final CompletableFuture<RespType> responseFuture = new CompletableFuture<>();
         final AtomicBoolean isContinuationClosed = new AtomicBoolean(true);
-        final ClientConnectionContinuation continuation = connection.newStream(new ClientConnectionContinuationHandler() {
-            boolean initialResponseReceived = false;
+        final EventStreamRPCClientListener listener = connection.getClientListener();
+        final OperationInvokeTracker tracker = listener == null && !RpcFlightRecorder.isRecording() ? null
+                : new OperationInvokeTracker(listener, operationModelContext);
+        final RpcTracer tracer = connection.getConnectionOptions().getTracer();
+        final RpcSpan span = tracer != null ? tracer.startClientSpan(operationModelContext) : null;
+        if (span != null) {
+            responseFuture.whenComplete((res, ex) -> span.end(ex));
+        }
+        final OperationStreamHandler<RespType, StrRespType> streamHandler = new OperationStreamHandler<>(
+                operationModelContext, responseFuture, streamResponseHandler, isContinuationClosed, tracker, span);
+        final ClientOperationStream stream;
+        CompletableFuture<Void> messageFlushFuture;
+        try {
+            stream = connection.newOperationStream(operationModelContext, streamHandler, tracker);
+            streamHandler.stream = stream;  //before activate, nothing can arrive until then
+            isContinuationClosed.compareAndSet(false, true);
 
-            @Override
-            protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
-                final Optional<String> applicationModelType = headers.stream()
-                        .filter(header -> header.getName().equals(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER)
-                                && header.getHeaderType().equals(HeaderType.String))
-                        .map(header -> header.getValueAsString())
-                        .findFirst();
+            messageFlushFuture = stream.activate(operationModelContext.getRequestApplicationModelType(), request, span);
+        } catch (RuntimeException e) {
+            //no stream to close what was begun for the invoke, such as when the connection is closed
+            if (tracker != null) {
+                tracker.responseCompleted(e);
+                tracker.continuationClosed();
+            }
+            responseFuture.completeExceptionally(e);
+            throw e;
+        }
+        if (tracker != null) {
+            messageFlushFuture = messageFlushFuture.whenComplete((res, ex) -> tracker.requestFlushed(ex));
+            responseFuture.whenComplete((res, ex) -> tracker.responseCompleted(ex));
+        }
+        final OperationResponse<RespType, StrReqType> response = new OperationResponse(operationModelContext, stream,
+                responseFuture, messageFlushFuture);
+        final ContinuationLeakDetector leakDetector = connection.getConnectionOptions().getLeakDetector();
+        if (leakDetector != null) {
+            final ContinuationLeakDetector.Tracker leakTracker = leakDetector.track(response,
+                    operationModelContext.getOperationName());
+            //closed with the stream by either side, the server perhaps already
+            stream.setLeakTracker(leakTracker);
+            streamHandler.leakTracker = leakTracker;
+            if (streamHandler.closed && leakTracker != null) {
+                leakTracker.close();
+            }
+        }
 
-                //first message back must parse into immediate response unless it's an error
-                //follow on messages are stream response handler intended
-                if (messageType.equals(MessageType.ApplicationMessage)) {
-                    //important following not else if
-                    if (applicationModelType.isPresent()) {
-                        handleData(applicationModelType.get(), payload, !initialResponseReceived, responseFuture, streamResponseHandler,
-                                operationModelContext, continuation, isContinuationClosed);
-                    }
-                    //intentionally not else if here. We can have data, and the terminate flag set
-                    if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
-                        this.close();
-                        handleClose(initialResponseReceived, responseFuture, streamResponseHandler);
-                    } else if (!applicationModelType.isPresent()) {
-                        handleError(new UnmappedDataException(initialResponseReceived ? operationModelContext.getResponseApplicationModelType() :
-                                        operationModelContext.getStreamingResponseApplicationModelType().get()), initialResponseReceived,
-                                responseFuture, streamResponseHandler, continuation, isContinuationClosed);
-                    }
-                    initialResponseReceived = true;
-                } else if (messageType.equals(MessageType.ApplicationError)) {
-                    final Optional<Class<? extends EventStreamJsonMessage>> errorClass =
-                            operationModelContext.getServiceModel().getApplicationModelClass(applicationModelType.orElse(""));
-                    if (!errorClass.isPresent()) {
-                        LOGGER.severe(String.format("Could not map error from service. Incoming error type: "
-                                + applicationModelType.orElse("null")));
-                        handleError(new UnmappedDataException(applicationModelType.orElse("null")),
-                                !initialResponseReceived, responseFuture, streamResponseHandler, continuation, isContinuationClosed);
-                    } else {
-                        try {
-                            final EventStreamOperationError error = (EventStreamOperationError) operationModelContext.getServiceModel().fromJson(errorClass.get(), payload);
-                            handleError(error, !initialResponseReceived, responseFuture, streamResponseHandler, continuation, isContinuationClosed);
-                        } catch (Exception e) { //shouldn't be possible, but this is an error on top of an error
-                        }
+        return response;
+    }
+
+    /**
+     * Handles what the server sends back on one operation stream, whether it arrives off the wire through a
+     * native continuation or as model objects through an in-process one
+     */
+    private final class OperationStreamHandler<RespType extends EventStreamJsonMessage, StrRespType extends EventStreamJsonMessage>
+            extends ClientConnectionContinuationHandler implements InProcessStreamHandler {
+        private final OperationModelContext<?, RespType, ?, StrRespType> operationModelContext;
+        private final CompletableFuture<RespType> responseFuture;
+        private final Optional<StreamResponseHandler<StrRespType>> streamResponseHandler;
+        private final AtomicBoolean isContinuationClosed;
+        private final OperationInvokeTracker tracker;
+        private final RpcSpan span;
+        private ClientOperationStream stream;
+        private boolean initialResponseReceived = false;
+        private final List<Runnable> heldFragments = new ArrayList<>();  //only touched by the thread messages arrive on
+        private boolean overQuota = false;  //as heldFragments
+        private volatile ContinuationLeakDetector.Tracker leakTracker;
+        private volatile boolean closed = false;
+
+        OperationStreamHandler(final OperationModelContext<?, RespType, ?, StrRespType> operationModelContext,
+                               final CompletableFuture<RespType> responseFuture,
+                               final Optional<StreamResponseHandler<StrRespType>> streamResponseHandler,
+                               final AtomicBoolean isContinuationClosed, final OperationInvokeTracker tracker,
+                               final RpcSpan span) {
+            this.operationModelContext = operationModelContext;
+            this.responseFuture = responseFuture;
+            this.streamResponseHandler = streamResponseHandler;
+            this.isContinuationClosed = isContinuationClosed;
+            this.tracker = tracker;
+            this.span = span;
+        }
+
+        @Override
+        protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
+            if (messageType == MessageType.Ping) {
+                //echo back ping messages to be nice to server, can these happen on continuations?
+                continuation.sendMessage(headers, payload, MessageType.PingResponse, messageFlags);
+                return;
+            }
+            final MemoryAccount.Stream memory = stream.getMemoryAccount();
+            if (memory == null) {
+                receive(headers, payload, messageType, messageFlags);
+                return;
+            }
+            if (memory.receiveSignal(headers) || overQuota) {
+                stream.releasePayload(headers);
+                return;
+            }
+            final int length = payload == null ? 0 : payload.length;
+            if (!memory.acquire(length)) {
+                //drop what follows too, the stream is closing
+                overQuota = true;
+                stream.releasePayload(headers);
+                refuseOverQuota(length);
+                return;
+            }
+            memory.dispatch(length, () -> {
+                try {
+                    receive(headers, payload, messageType, messageFlags);
+                } finally {
+                    final FragmentAssembler assembler = stream.getFragmentAssembler();
+                    if (!heldFragments.isEmpty() && !assembler.isAssembling()) {
+                        releaseHeldFragments();
                     }
+                }
+            });
+        }
 
-                    //TODO: application errors always have TerminateStream flag set?
-                    //first close the stream immediately if the other side hasn't already done so
-                    if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
-                        try {
-                            this.close();
-                            //is this call needed?
-                            handleClose(initialResponseReceived, responseFuture, streamResponseHandler);
-                        } catch (Exception e) {
-                            LOGGER.warning(String.format("Exception thrown closing stream on application error received %s: %s",
-                                    e.getClass().getName(), e.getMessage()));
+        /**
+         * Reads a message off the wire and routes it
+         */
+        private void receive(final List<Header> headers, final byte[] payload, final MessageType messageType,
+                             final int messageFlags) {
+            List<Header> messageHeaders = headers;
+            final byte[] messagePayload;
+            final List<byte[]> batchedEvents;
+            try {
+                byte[] wirePayload = payload;
+                if (PayloadFragmentation.isFragment(headers)) {
+                    final MessageAmendInfo assembled = assembleFragment(headers, payload);
+                    if (assembled == null) {
+                        //the rest is yet to come, or a fragment consumer took the payload
+                        if (stream.getMemoryAccount() != null && stream.getFragmentAssembler().isAssembling()) {
+                            //charged until the whole payload is handled
+                            heldFragments.add(MemoryAccount.retainDispatched());
                         }
+                        if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                            dispatch(Optional.empty(), null, null, messageType, messageFlags);
+                        }
+                        return;
                     }
-                } else if (messageType == MessageType.Ping) {
-                    //echo back ping messages to be nice to server, can these happen on continuations?
-                    continuation.sendMessage(headers, payload, MessageType.PingResponse, messageFlags);
-                } else if (messageType == MessageType.PingResponse) {    //do nothing on ping response
-                } else if (messageType == MessageType.ServerError) {
-                    //TODO: exception should route to response handler here, also is or will be "InternalError" soon
-                    LOGGER.severe(operationModelContext.getOperationName() + " server error received");
-                    this.close();   //underlying connection callbacks should handle things appropriately
-                } else if (messageType == MessageType.ProtocolError) {    //do nothing on ping response
-                    LOGGER.severe(operationModelContext.getOperationName() + " protocol error received");
-                    this.close();   //underlying connection callbacks should handle things appropriately but close continuation either way
+                    messageHeaders = assembled.getHeaders();
+                    wirePayload = assembled.getPayload();
+                }
+                messagePayload = stream.resolvePayload(messageHeaders, wirePayload);
+                batchedEvents = StreamEventBatcher.isBatch(messageHeaders) ? StreamEventBatcher.unpack(messagePayload) : null;
+            } catch (RuntimeException e) {
+                LOGGER.severe(String.format("%s could not read message payload: %s",
+                        operationModelContext.getOperationName(), e.getMessage()));
+                handleError(e, !initialResponseReceived, responseFuture, streamResponseHandler, stream,
+                        isContinuationClosed, tracker);
+                return;
+            }
+            final Optional<String> applicationModelType = messageHeaders.stream()
+                    .filter(header -> header.getName().equals(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER)
+                            && header.getHeaderType().equals(HeaderType.String))
+                    .map(header -> header.getValueAsString())
+                    .findFirst();
+            if (batchedEvents == null) {
+                dispatch(applicationModelType, messagePayload, null, messageType, messageFlags);
+                return;
+            }
+            for (byte[] event : batchedEvents) {
+                dispatch(applicationModelType, event, null, messageType, 0);
+            }
+            if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                dispatch(Optional.empty(), null, null, messageType, messageFlags);
+            }
+        }
+
+        /**
+         * Closes the stream on a message that would take it or its connection past a hard quota, telling the
+         * handler with a QuotaExceededException
+         */
+        private void refuseOverQuota(final int length) {
+            LOGGER.warning(String.format("%s refused a message of %d bytes over the memory quota",
+                    operationModelContext.getOperationName(), length));
+            final QuotaExceededException error = new QuotaExceededException(
+                    operationModelContext.getServiceModel().getServiceName(), String.format(
+                    "Message of %d bytes would take the stream or its connection past its memory quota", length));
+            final boolean isInitial = !initialResponseReceived;
+            if (isInitial || !streamResponseHandler.isPresent()) {
+                responseFuture.completeExceptionally(error);
+            } else {
+                if (tracker != null) {
+                    tracker.streamError(error);
+                }
+                try {
+                    //closed whatever the handler returns
+                    streamResponseHandler.get().onStreamError(error);
+                } catch (Exception e) {
+                    LOGGER.warning(String.format("Stream response handler threw exception %s: %s",
+                            e.getClass().getCanonicalName(), e.getMessage()));
+                }
+            }
+            stream.sendMessage(null, null, MessageFlags.TerminateStream.getByteValue()).whenComplete((res, ex) -> {
+                stream.close();
+                handleClose(isInitial, responseFuture, streamResponseHandler);
+            });
+        }
+
+        /**
+         * Releases the bytes of the fragments held for a payload, once it is handled or will not be
+         */
+        private void releaseHeldFragments() {
+            for (Runnable release : heldFragments) {
+                release.run();
+            }
+            heldFragments.clear();
+        }
+
+        /**
+         * Adds a fragment to the payload being reassembled. Stream events may be taken by a stream response
+         * handler that is also a PayloadFragmentConsumer
+         * @return the whole payload once the last fragment arrives, or null
+         */
+        private MessageAmendInfo assembleFragment(final List<Header> headers, final byte[] payload) {
+            final FragmentAssembler assembler = stream.getFragmentAssembler();
+            if (assembler == null) {
+                throw new IllegalArgumentException("Payload fragment received without fragmentation negotiated");
+            }
+            final PayloadFragmentConsumer consumer = initialResponseReceived && streamResponseHandler.isPresent()
+                    && streamResponseHandler.get() instanceof PayloadFragmentConsumer
+                    ? (PayloadFragmentConsumer) streamResponseHandler.get() : null;
+            return assembler.add(headers, payload, consumer);
+        }
+
+        @Override
+        public void onMessage(EventStreamJsonMessage message, MessageType messageType, int messageFlags) {
+            dispatch(message == null ? Optional.empty() : Optional.of(message.getApplicationModelType()),
+                    null, message, messageType, messageFlags);
+        }
+
+        /**
+         * Routes a message by type. Either payload or decoded carries the message body, depending on the transport
+         */
+        private void dispatch(final Optional<String> applicationModelType, final byte[] payload,
+                              final EventStreamJsonMessage decoded, final MessageType messageType, final int messageFlags) {
+            //first message back must parse into immediate response unless it's an error
+            //follow on messages are stream response handler intended
+            if (messageType.equals(MessageType.ApplicationMessage)) {
+                //important following not else if
+                if (applicationModelType.isPresent()) {
+                    handleData(applicationModelType.get(), payload, decoded, !initialResponseReceived, responseFuture, streamResponseHandler,
+                            operationModelContext, stream, isContinuationClosed, tracker, span);
+                }
+                //intentionally not else if here. We can have data, and the terminate flag set
+                if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                    stream.close();
+                    handleClose(initialResponseReceived, responseFuture, streamResponseHandler);
+                } else if (!applicationModelType.isPresent()) {
+                    handleError(new UnmappedDataException(initialResponseReceived ? operationModelContext.getResponseApplicationModelType() :
+                                    operationModelContext.getStreamingResponseApplicationModelType().get()), initialResponseReceived,
+                            responseFuture, streamResponseHandler, stream, isContinuationClosed, tracker);
+                }
+                initialResponseReceived = true;
+            } else if (messageType.equals(MessageType.ApplicationError)) {
+                final Optional<Class<? extends EventStreamJsonMessage>> errorClass =
+                        operationModelContext.getServiceModel().getApplicationModelClass(applicationModelType.orElse(""));
+                if (!errorClass.isPresent()) {
+                    LOGGER.severe(String.format("Could not map error from service. Incoming error type: "
+                            + applicationModelType.orElse("null")));
+                    handleError(new UnmappedDataException(applicationModelType.orElse("null")),
+                            !initialResponseReceived, responseFuture, streamResponseHandler, stream, isContinuationClosed, tracker);
                 } else {
-                    //unexpected message type received on stream
-                    handleError(new InvalidDataException(messageType), !initialResponseReceived, responseFuture,
-                            streamResponseHandler, continuation, isContinuationClosed);
                     try {
-                        sendClose(continuation, isContinuationClosed).whenComplete((res, ex) -> {
-                            if (ex != null) {
-                                LOGGER.warning(String.format("Sending close on invalid message threw %s: %s",
-                                        ex.getClass().getCanonicalName(), ex.getMessage()));
-                            }
-                        });
-                    } catch (Exception e) {
-                        LOGGER.warning(String.format("Sending close on invalid message threw %s: %s",
-                                e.getClass().getCanonicalName(), e.getMessage()));
+                        final EventStreamOperationError error = (EventStreamOperationError) (decoded != null ? decoded
+                                : operationModelContext.getServiceModel().fromJson(errorClass.get(), payload));
+                        handleError(error, !initialResponseReceived, responseFuture, streamResponseHandler, stream, isContinuationClosed, tracker);
+                    } catch (Exception e) { //shouldn't be possible, but this is an error on top of an error
                     }
                 }
-            }
 
-            @Override
-            protected void onContinuationClosed() {
-                super.onContinuationClosed();
-                handleClose(initialResponseReceived, responseFuture, streamResponseHandler);
+                //TODO: application errors always have TerminateStream flag set?
+                //first close the stream immediately if the other side hasn't already done so
+                if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                    try {
+                        stream.close();
+                        //is this call needed?
+                        handleClose(initialResponseReceived, responseFuture, streamResponseHandler);
+                    } catch (Exception e) {
+                        LOGGER.warning(String.format("Exception thrown closing stream on application error received %s: %s",
+                                e.getClass().getName(), e.getMessage()));
+                    }
+                }
+            } else if (messageType == MessageType.PingResponse) {    //do nothing on ping response
+            } else if (messageType == MessageType.ServerError) {
+                //TODO: exception should route to response handler here, also is or will be "InternalError" soon
+                LOGGER.severe(operationModelContext.getOperationName() + " server error received");
+                stream.close();   //underlying connection callbacks should handle things appropriately
+            } else if (messageType == MessageType.ProtocolError) {    //do nothing on ping response
+                LOGGER.severe(operationModelContext.getOperationName() + " protocol error received");
+                stream.close();   //underlying connection callbacks should handle things appropriately but close continuation either way
+            } else {
+                //unexpected message type received on stream
+                handleError(new InvalidDataException(messageType), !initialResponseReceived, responseFuture,
+                        streamResponseHandler, stream, isContinuationClosed, tracker);
+                try {
+                    sendClose(stream, isContinuationClosed).whenComplete((res, ex) -> {
+                        if (ex != null) {
+                            LOGGER.warning(String.format("Sending close on invalid message threw %s: %s",
+                                    ex.getClass().getCanonicalName(), ex.getMessage()));
+                        }
+                    });
+                } catch (Exception e) {
+                    LOGGER.warning(String.format("Sending close on invalid message threw %s: %s",
+                            e.getClass().getCanonicalName(), e.getMessage()));
+                }
             }
-        });
-        isContinuationClosed.compareAndSet(false, true);
-
-        final List<Header> headers = new LinkedList<>();
-        headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
-                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
-        headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
-                operationModelContext.getRequestApplicationModelType()));
-        final byte[] payload = operationModelContext.getServiceModel().toJson(request);
+        }
 
-        final CompletableFuture<Void> messageFlushFuture = continuation.activate(operationModelContext.getOperationName(),
-                headers, payload, MessageType.ApplicationMessage, 0);
-        final OperationResponse<RespType, StrReqType> response = new OperationResponse(operationModelContext, continuation,
-                responseFuture, messageFlushFuture);
+        @Override
+        protected void onContinuationClosed() {
+            super.onContinuationClosed();
+            releaseHeldFragments();
+            onClosed();
+        }
 
-        return response;
+        @Override
+        public void onClosed() {
+            closed = true;
+            final ContinuationLeakDetector.Tracker leakTracker = this.leakTracker;
+            if (leakTracker != null) {
+                leakTracker.close();
+            }
+            handleClose(initialResponseReceived, responseFuture, streamResponseHandler);
+            if (tracker != null) {
+                tracker.continuationClosed();
+            }
+        }
     }
 
     /**
      * Sends an empty close message on the open stream.
-     * @param continuation continuation to send the close message on
+     * @param stream stream to send the close message on
      * @return CompletableFuture indicating flush of the close message.
      */
-    private CompletableFuture<Void> sendClose(final ClientConnectionContinuation continuation, final AtomicBoolean isClosed) {
+    private CompletableFuture<Void> sendClose(final ClientOperationStream stream, final AtomicBoolean isClosed) {
         if (isClosed.compareAndSet(false, true)) {
-            return continuation.sendMessage(null, null,
-                    MessageType.ApplicationMessage, MessageFlags.TerminateStream.getByteValue());
+            return stream.sendMessage(null, null, MessageFlags.TerminateStream.getByteValue());
         } else {
             LOGGER.warning("Stream already closed");    //May help debug extra closes? May remove to avoid noise
             return CompletableFuture.completedFuture(null);
@@ -214,47 +434,66 @@ public class EventStreamRPCClient {
     }
 
     private <RespType extends EventStreamJsonMessage, StrRespType extends EventStreamJsonMessage>
-            void handleData(String applicationModelType, byte[] payload, boolean isInitial, CompletableFuture<RespType> responseFuture,
+            void handleData(String applicationModelType, byte[] payload, EventStreamJsonMessage decoded, boolean isInitial,
+                        CompletableFuture<RespType> responseFuture,
                         final Optional<StreamResponseHandler<StrRespType>> streamResponseHandler,
                         final OperationModelContext<?, RespType, ?, StrRespType> operationModelContext,
-                            ClientConnectionContinuation continuation,
-                        final AtomicBoolean isClosed) {
+                            ClientOperationStream stream,
+                        final AtomicBoolean isClosed, final OperationInvokeTracker tracker, final RpcSpan span) {
+        final long deserializeStartNanos = tracker != null ? System.nanoTime() : 0L;
         if (isInitial) {
             //mismatch between type on the wire and type expected by the operation
             if (!applicationModelType.equals(operationModelContext.getResponseApplicationModelType())) {
                 handleError(new UnmappedDataException(applicationModelType, operationModelContext.getResponseTypeClass()),
-                        isInitial, responseFuture, streamResponseHandler, continuation, isClosed);
+                        isInitial, responseFuture, streamResponseHandler, stream, isClosed, tracker);
                 return;
             }
             RespType responseObj = null;
+            if (span != null && decoded == null) {
+                span.phaseStarted(RpcTracer.Phase.DESERIALIZE);
+            }
             try {
-                responseObj = operationModelContext.getServiceModel().fromJson(operationModelContext.getResponseTypeClass(), payload);
+                responseObj = decoded != null ? operationModelContext.getResponseTypeClass().cast(decoded)
+                        : operationModelContext.getServiceModel().fromJson(operationModelContext.getResponseTypeClass(), payload);
             } catch (Exception e) {
-                handleError(new DeserializationException(payload, e), isInitial, responseFuture, streamResponseHandler, continuation, isClosed);
+                if (span != null && decoded == null) {
+                    span.phaseEnded(RpcTracer.Phase.DESERIALIZE, e);
+                }
+                handleError(new DeserializationException(payload != null ? payload : decoded, e), isInitial, responseFuture, streamResponseHandler, stream, isClosed, tracker);
                 return; //we're done if we can't deserialize
             }
+            if (span != null && decoded == null) {
+                span.phaseEnded(RpcTracer.Phase.DESERIALIZE, null);
+            }
+            if (tracker != null) {
+                tracker.messageReceived(applicationModelType, payload, System.nanoTime() - deserializeStartNanos);
+            }
             //complete normally
             responseFuture.complete(responseObj);
         } else {
             //mismatch between type on the wire and type expected by the operation
             if (!applicationModelType.equals(operationModelContext.getStreamingResponseApplicationModelType().get())) {
                 handleError(new UnmappedDataException(applicationModelType, operationModelContext.getStreamingResponseTypeClass().get()),
-                        isInitial, responseFuture, streamResponseHandler, continuation, isClosed);
+                        isInitial, responseFuture, streamResponseHandler, stream, isClosed, tracker);
                 return;
             }
             StrRespType strResponseObj = null;
             try {
-                strResponseObj = operationModelContext.getServiceModel().fromJson(
-                        operationModelContext.getStreamingResponseTypeClass().get(), payload);
+                strResponseObj = decoded != null ? operationModelContext.getStreamingResponseTypeClass().get().cast(decoded)
+                        : operationModelContext.getServiceModel().fromJson(
+                                operationModelContext.getStreamingResponseTypeClass().get(), payload);
             } catch (Exception e) {
-                handleError(new DeserializationException(payload, e), isInitial, responseFuture, streamResponseHandler, continuation, isClosed);
+                handleError(new DeserializationException(payload != null ? payload : decoded, e), isInitial, responseFuture, streamResponseHandler, stream, isClosed, tracker);
                 return; //we're done if we can't deserialize
             }
+            if (tracker != null) {
+                tracker.messageReceived(applicationModelType, payload, System.nanoTime() - deserializeStartNanos);
+            }
 
             try {
                 streamResponseHandler.get().onStreamEvent(strResponseObj);
             } catch (Exception e) {
-                handleError(e, isInitial, responseFuture, streamResponseHandler, continuation, isClosed);
+                handleError(e, isInitial, responseFuture, streamResponseHandler, stream, isClosed, tracker);
             }
         }
     }
@@ -265,8 +504,9 @@ public class EventStreamRPCClient {
     private <RespType extends EventStreamJsonMessage, StrRespType extends EventStreamJsonMessage>
                 void handleError(Throwable t, boolean isInitial, final CompletableFuture<RespType> responseFuture,
                                                      final Optional<StreamResponseHandler<StrRespType>> streamResponseHandler,
-                                                     ClientConnectionContinuation continuation,
-                                                     final AtomicBoolean isClosed) {
+                                                     ClientOperationStream stream,
+                                                     final AtomicBoolean isClosed,
+                                                     final OperationInvokeTracker tracker) {
         if (!isInitial && !streamResponseHandler.isPresent()) {
             throw new IllegalArgumentException("Cannot process error handling for stream without a stream response handler set!");
         }
@@ -275,16 +515,19 @@ public class EventStreamRPCClient {
             responseFuture.completeExceptionally(t);
             //failure on initial response future always closes stream
         } else {
+            if (tracker != null) {
+                tracker.streamError(t);
+            }
             try {
                 if (streamResponseHandler.get().onStreamError(t)) {
-                    sendClose(continuation, isClosed).whenComplete((res, ex) -> {
+                    sendClose(stream, isClosed).whenComplete((res, ex) -> {
                         handleClose(isInitial, responseFuture, streamResponseHandler);
                     });
                 }
             } catch (Exception e) {
                 LOGGER.warning(String.format("Stream response handler threw exception %s: %s",
                         e.getClass().getCanonicalName(), e.getMessage()));
-                sendClose(continuation, isClosed).whenComplete((res, ex) -> {
+                sendClose(stream, isClosed).whenComplete((res, ex) -> {
                     handleClose(isInitial, responseFuture, streamResponseHandler);
                 });
             }
@@ -0,0 +1,115 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * Instrumentation hooks for an EventStreamRPCConnection and the operations invoked over it.
+ *
+ * Install with {@link EventStreamRPCConnection#setClientListener(EventStreamRPCClientListener)}. When no
+ * listener is installed, the client does not take timestamps or invoke any of these methods.
+ *
+ * Callbacks arrive on CRT event loop threads as well as on the threads invoking operations. Implementations
+ * must be thread safe, must not block, and should not throw. All durations are in nanoseconds.
+ */
+public interface EventStreamRPCClientListener {
+    /**
+     * Invoked when the socket connection attempt completes, successfully or not
+     * @param errorCode CRT error code of the socket connection result
+     */
+    default void onConnectionSetup(int errorCode) { }
+
+    /**
+     * Invoked when the server accepts the connection
+     * @param connectLatencyNanos Time from the connect() call to receiving the connect ack
+     */
+    default void onConnectionAccepted(long connectLatencyNanos) { }
+
+    /**
+     * Invoked when the server rejects the connection (access denied or version mismatch)
+     */
+    default void onConnectionRejected() { }
+
+    /**
+     * Invoked when a connection level error is delivered to the LifecycleHandler
+     * @param error The error
+     */
+    default void onConnectionError(Throwable error) { }
+
+    /**
+     * Invoked when the socket connection closes
+     * @param errorCode CRT error code of the disconnect
+     */
+    default void onConnectionClosed(int errorCode) { }
+
+    /**
+     * Invoked when a keepalive ping is answered. Only invoked when keepalive is enabled
+     * @param roundTripNanos Time from sending the ping to receiving its response
+     */
+    default void onKeepAliveRoundTrip(long roundTripNanos) { }
+
+    /**
+     * Invoked when the keepalive gives up on an unresponsive server, just before the connection is closed
+     */
+    default void onKeepAliveTimeout() { }
+
+    /**
+     * Invoked when a new continuation is opened for an operation
+     * @param operationModelContext The operation being invoked
+     */
+    default void onOperationInvoked(OperationModelContext<?, ?, ?, ?> operationModelContext) { }
+
+    /**
+     * Invoked when the initial request of an operation has been flushed to the socket or failed to send
+     * @param operationModelContext The operation being invoked
+     * @param flushLatencyNanos Time from invoke to the request flush
+     * @param error The failure, or null if the request was flushed successfully
+     */
+    default void onRequestFlushed(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                                  long flushLatencyNanos, Throwable error) { }
+
+    /**
+     * Invoked when the initial response of an operation completes, normally or exceptionally
+     * @param operationModelContext The operation being invoked
+     * @param responseLatencyNanos Time from invoke to the initial response being available
+     * @param error The failure, or null if the response was received successfully
+     */
+    default void onResponse(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                            long responseLatencyNanos, Throwable error) { }
+
+    /**
+     * Invoked for every application message sent on an operation's continuation, including the initial request
+     * @param operationModelContext The operation being invoked
+     * @param applicationModelType The application model type of the message
+     * @param payloadBytes Serialized payload size
+     */
+    default void onMessageSent(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                               String applicationModelType, int payloadBytes) { }
+
+    /**
+     * Invoked for every application message received and deserialized on an operation's continuation
+     * @param operationModelContext The operation being invoked
+     * @param applicationModelType The application model type of the message
+     * @param payloadBytes Serialized payload size
+     * @param deserializationNanos Time spent deserializing the payload
+     */
+    default void onMessageReceived(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                                   String applicationModelType, int payloadBytes, long deserializationNanos) { }
+
+    /**
+     * Invoked when an error is routed to a stream response handler after the initial response
+     * @param operationModelContext The operation being invoked
+     * @param error The error
+     */
+    default void onStreamError(OperationModelContext<?, ?, ?, ?> operationModelContext, Throwable error) { }
+
+    /**
+     * Invoked when an operation's continuation closes
+     * @param operationModelContext The operation being invoked
+     */
+    default void onContinuationClosed(OperationModelContext<?, ?, ?, ?> operationModelContext) { }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ready made EventStreamRPCClientListener that aggregates client side metrics in memory.
+ *
+ * A single instance may be shared by several connections to aggregate across them.
+ */
+public class EventStreamRPCClientMetrics implements EventStreamRPCClientListener {
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram requestFlushLatency = new LatencyHistogram();
+    private final LatencyHistogram responseLatency = new LatencyHistogram();
+    private final LatencyHistogram deserializationTime = new LatencyHistogram();
+    private final LatencyHistogram keepAliveRoundTripTime = new LatencyHistogram();
+    private final Map<String, LongAdder> messagesSent = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> messagesReceived = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> operationErrors = new ConcurrentHashMap<>();
+    private final LongAdder connectionsAccepted = new LongAdder();
+    private final LongAdder connectionsRejected = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder keepAliveTimeouts = new LongAdder();
+    private final AtomicInteger openContinuations = new AtomicInteger();
+
+    @Override
+    public void onConnectionAccepted(long connectLatencyNanos) {
+        connectionsAccepted.increment();
+        connectLatency.record(connectLatencyNanos);
+    }
+
+    @Override
+    public void onConnectionRejected() {
+        connectionsRejected.increment();
+    }
+
+    @Override
+    public void onConnectionError(Throwable error) {
+        connectionErrors.increment();
+    }
+
+    @Override
+    public void onConnectionClosed(int errorCode) {
+        connectionsClosed.increment();
+    }
+
+    @Override
+    public void onKeepAliveRoundTrip(long roundTripNanos) {
+        keepAliveRoundTripTime.record(roundTripNanos);
+    }
+
+    @Override
+    public void onKeepAliveTimeout() {
+        keepAliveTimeouts.increment();
+    }
+
+    @Override
+    public void onOperationInvoked(OperationModelContext<?, ?, ?, ?> operationModelContext) {
+        openContinuations.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestFlushed(OperationModelContext<?, ?, ?, ?> operationModelContext, long flushLatencyNanos,
+                                 Throwable error) {
+        requestFlushLatency.record(flushLatencyNanos);
+        if (error != null) {
+            increment(operationErrors, operationModelContext.getOperationName());
+        }
+    }
+
+    @Override
+    public void onResponse(OperationModelContext<?, ?, ?, ?> operationModelContext, long responseLatencyNanos,
+                           Throwable error) {
+        responseLatency.record(responseLatencyNanos);
+        if (error != null) {
+            increment(operationErrors, operationModelContext.getOperationName());
+        }
+    }
+
+    @Override
+    public void onMessageSent(OperationModelContext<?, ?, ?, ?> operationModelContext, String applicationModelType,
+                              int payloadBytes) {
+        increment(messagesSent, applicationModelType);
+    }
+
+    @Override
+    public void onMessageReceived(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                                  String applicationModelType, int payloadBytes, long deserializationNanos) {
+        increment(messagesReceived, applicationModelType);
+        deserializationTime.record(deserializationNanos);
+    }
+
+    @Override
+    public void onStreamError(OperationModelContext<?, ?, ?, ?> operationModelContext, Throwable error) {
+        increment(operationErrors, operationModelContext.getOperationName());
+    }
+
+    @Override
+    public void onContinuationClosed(OperationModelContext<?, ?, ?, ?> operationModelContext) {
+        openContinuations.decrementAndGet();
+    }
+
+    private static void increment(final Map<String, LongAdder> counters, final String key) {
+        counters.computeIfAbsent(key == null ? "null" : key, k -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(final Map<String, LongAdder> counters) {
+        final Map<String, Long> result = new HashMap<>(counters.size());
+        counters.forEach((key, value) -> result.put(key, value.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Returns the histogram of time from connect() to the server accepting the connection
+     * @return the histogram of connect latencies in nanoseconds
+     */
+    public LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    /**
+     * Returns the histogram of time from invoke to the initial request being flushed
+     * (see {@link OperationResponse#getRequestFlushFuture()})
+     * @return the histogram of request flush latencies in nanoseconds
+     */
+    public LatencyHistogram getRequestFlushLatency() {
+        return requestFlushLatency;
+    }
+
+    /**
+     * Returns the histogram of time from invoke to the initial response being available
+     * @return the histogram of response latencies in nanoseconds
+     */
+    public LatencyHistogram getResponseLatency() {
+        return responseLatency;
+    }
+
+    /**
+     * Returns the histogram of time spent deserializing received messages
+     * @return the histogram of deserialization times in nanoseconds
+     */
+    public LatencyHistogram getDeserializationTime() {
+        return deserializationTime;
+    }
+
+    /**
+     * Returns the histogram of keepalive ping round trip times
+     * @return the histogram of keepalive round trip times in nanoseconds
+     */
+    public LatencyHistogram getKeepAliveRoundTripTime() {
+        return keepAliveRoundTripTime;
+    }
+
+    /**
+     * Returns the number of connections closed because keepalive pings went unanswered
+     * @return the number of keepalive timeouts
+     */
+    public long getKeepAliveTimeouts() {
+        return keepAliveTimeouts.sum();
+    }
+
+    /**
+     * Returns the count of messages sent keyed by application model type
+     * @return the count of messages sent keyed by application model type
+     */
+    public Map<String, Long> getMessagesSent() {
+        return snapshot(messagesSent);
+    }
+
+    /**
+     * Returns the count of messages received keyed by application model type
+     * @return the count of messages received keyed by application model type
+     */
+    public Map<String, Long> getMessagesReceived() {
+        return snapshot(messagesReceived);
+    }
+
+    /**
+     * Returns the count of failed requests, responses and stream errors keyed by operation name
+     * @return the count of operation errors keyed by operation name
+     */
+    public Map<String, Long> getOperationErrors() {
+        return snapshot(operationErrors);
+    }
+
+    /**
+     * Returns the number of connections accepted by the server
+     * @return the number of connections accepted by the server
+     */
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.sum();
+    }
+
+    /**
+     * Returns the number of connections rejected by the server
+     * @return the number of connections rejected by the server
+     */
+    public long getConnectionsRejected() {
+        return connectionsRejected.sum();
+    }
+
+    /**
+     * Returns the number of connection level errors
+     * @return the number of connection level errors
+     */
+    public long getConnectionErrors() {
+        return connectionErrors.sum();
+    }
+
+    /**
+     * Returns the number of socket connections closed
+     * @return the number of socket connections closed
+     */
+    public long getConnectionsClosed() {
+        return connectionsClosed.sum();
+    }
+
+    /**
+     * Returns the number of operation continuations currently open
+     * @return the number of operation continuations currently open
+     */
+    public int getOpenContinuations() {
+        return openContinuations.get();
+    }
+}
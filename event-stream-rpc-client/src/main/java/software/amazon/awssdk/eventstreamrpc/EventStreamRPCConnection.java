@@ -18,11 +18,18 @@ import software.amazon.awssdk.crt.eventstream.MessageFlags;
 import software.amazon.awssdk.crt.eventstream.MessageType;
 import software.amazon.awssdk.eventstreamrpc.model.AccessDeniedException;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamError;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -31,9 +38,10 @@ import java.util.stream.Collectors;
  */
 public class EventStreamRPCConnection implements AutoCloseable {
     /**
-     * Class containing the possible connection states of the EventStreamRPCConnection
+     * Immutable snapshot of the connection state of the EventStreamRPCConnection. Every transition swaps
+     * in a new snapshot with compare-and-set, so invoking operations never blocks on another thread.
      */
-    protected static class ConnectionState {
+    protected static final class ConnectionState {
         enum Phase {
             DISCONNECTED,
             CONNECTING_SOCKET,
@@ -42,26 +50,125 @@ public class EventStreamRPCConnection implements AutoCloseable {
             CLOSING
         };
 
-        Phase connectionPhase;
-        ClientConnection connection;
-        Throwable closeReason;
-        boolean onConnectCalled;
+        static final ConnectionState DISCONNECTED =
+                new ConnectionState(Phase.DISCONNECTED, null, null, false);
 
-        protected ConnectionState(Phase phase, ClientConnection connection) {
+        final Phase connectionPhase;
+        final ConnectionGate gate;
+        final InProcessEndpoint.Session session;    //in place of the gate for in-process connections
+        final Throwable closeReason;
+        final boolean onConnectCalled;
+
+        ConnectionState(Phase phase, ConnectionGate gate, Throwable closeReason, boolean onConnectCalled) {
+            this(phase, gate, null, closeReason, onConnectCalled);
+        }
+
+        ConnectionState(Phase phase, ConnectionGate gate, InProcessEndpoint.Session session, Throwable closeReason,
+                        boolean onConnectCalled) {
             this.connectionPhase = phase;
-            this.connection = connection;
-            this.closeReason = null;
-            this.onConnectCalled = false;
+            this.gate = gate;
+            this.session = session;
+            this.closeReason = closeReason;
+            this.onConnectCalled = onConnectCalled;
+        }
+
+        ConnectionState withPhase(final Phase phase) {
+            return new ConnectionState(phase, gate, session, closeReason, onConnectCalled);
+        }
+
+        ConnectionState withCloseReason(final Throwable reason) {
+            return new ConnectionState(connectionPhase, gate, session, reason, onConnectCalled);
         }
     };
 
-    private static final Logger LOGGER = Logger.getLogger(EventStreamRPCConnection.class.getName());
+    /**
+     * Guards the native ClientConnection of one connect attempt. Callers enter the gate around each native
+     * call, and the native connection is only released once the gate is closed and every caller has left.
+     */
+    static final class ConnectionGate {
+        private static final int CLOSED = Integer.MIN_VALUE;    //sign bit, the remaining bits count callers
+
+        private final ClientConnection connection;
+        private final AtomicInteger callers = new AtomicInteger(0);
+
+        ConnectionGate(final ClientConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return the connection, or null if the gate is closed. Non-null results must be paired with leave()
+         */
+        ClientConnection enter() {
+            int current;
+            do {
+                current = callers.get();
+                if (current < 0) {
+                    return null;
+                }
+            } while (!callers.compareAndSet(current, current + 1));
+            return connection;
+        }
+
+        void leave() {
+            callers.decrementAndGet();
+        }
+
+        /**
+         * Closes the gate, waits out callers still inside (each is a single non-blocking native call)
+         * and releases the native connection
+         */
+        void closeAndRelease() {
+            int current;
+            do {
+                current = callers.get();
+                if (current < 0) {
+                    return;
+                }
+            } while (!callers.compareAndSet(current, current | CLOSED));
+            while (callers.get() != CLOSED) {
+                Thread.yield();
+            }
+            connection.close();
+        }
+    }
 
-    private final EventStreamRPCConnectionConfig config;
     /**
-     * The connection state of the EventStreamRPCConnection
+     * Runs LifecycleHandler callbacks one at a time and in the order they were raised, on whichever
+     * thread raised them, without holding a lock while user code runs
      */
-    protected ConnectionState connectionState;
+    private static final class CallbackSequencer {
+        private final Queue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger(0);
+
+        void run(final Runnable callback) {
+            callbacks.add(callback);
+            if (pending.getAndIncrement() != 0) {
+                return;     //the thread already draining will run it
+            }
+            do {
+                callbacks.poll().run();
+            } while (pending.decrementAndGet() != 0);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(EventStreamRPCConnection.class.getName());
+    private static final String CONNECTION_CLOSED_ERROR = "AWS_ERROR_EVENT_STREAM_RPC_CONNECTION_CLOSED";
+
+    private final EventStreamRPCConnectionConfig config;
+    private final AtomicReference<ConnectionState> connectionState =
+            new AtomicReference<>(ConnectionState.DISCONNECTED);
+    private final CallbackSequencer lifecycleCallbacks = new CallbackSequencer();
+
+    private volatile EventStreamRPCClientListener clientListener;
+    private volatile ClientConnectionOptions connectionOptions = ClientConnectionOptions.DEFAULT;
+    private volatile PriorityLanes priorityLanes;
+    private volatile ConnectionKeepAlive keepAlive;
+    private final LatencyHistogram keepAliveRoundTripTime = new LatencyHistogram();
+    private volatile SharedMemoryChannel sharedMemoryChannel;
+    private volatile PayloadCompression payloadCompression;
+    private volatile PayloadFragmentation payloadFragmentation;
+    private volatile BatchingOptions acceptedBatchingOptions;
+    private volatile MemoryAccount memoryAccount;
 
     /**
      * Constructs a new EventStreamRPCConnection from the given configuration
@@ -69,7 +176,35 @@ public class EventStreamRPCConnection implements AutoCloseable {
      */
     public EventStreamRPCConnection(final EventStreamRPCConnectionConfig config) {
         this.config = config;
-        this.connectionState = new ConnectionState(ConnectionState.Phase.DISCONNECTED, null);
+    }
+
+    /**
+     * For connections that do not go over a socket, and override connect()
+     */
+    EventStreamRPCConnection() {
+        this.config = null;
+    }
+
+    /**
+     * Applies a transition to the connection state, retrying if another thread got there first
+     * @return the state the transition was applied to
+     */
+    final ConnectionState transition(final UnaryOperator<ConnectionState> transition) {
+        ConnectionState current;
+        ConnectionState next;
+        do {
+            current = connectionState.get();
+            next = transition.apply(current);
+        } while (next != current && !connectionState.compareAndSet(current, next));
+        return current;
+    }
+
+    /**
+     * Returns the current connection state
+     * @return the current connection state
+     */
+    final ConnectionState connectionState() {
+        return connectionState.get();
     }
 
     /**
@@ -80,103 +215,281 @@ public class EventStreamRPCConnection implements AutoCloseable {
         return Version.getInstance().getVersionString();
     }
 
+    /**
+     * Installs instrumentation for this connection and all operations invoked over it. Pass null to remove it.
+     * Operations already in flight keep reporting to the listener that was installed when they were invoked.
+     *
+     * @param clientListener The listener to install, or null
+     */
+    public void setClientListener(final EventStreamRPCClientListener clientListener) {
+        this.clientListener = clientListener;
+    }
+
+    /**
+     * Returns the installed instrumentation listener
+     * @return the installed instrumentation listener, or null if there isn't one
+     */
+    public EventStreamRPCClientListener getClientListener() {
+        return clientListener;
+    }
+
+    /**
+     * Replaces the options of this connection. What is offered to the server, keepalive, shared memory and
+     * memory quotas take effect at the next connect; priority lanes for streams opened after this call; the leak
+     * detector and tracer for operations invoked after this call
+     *
+     * @param connectionOptions The connection options
+     */
+    public void setConnectionOptions(final ClientConnectionOptions connectionOptions) {
+        if (connectionOptions == null) {
+            throw new IllegalArgumentException("Connection options must not be null");
+        }
+        final PriorityLaneOptions priorityLaneOptions = connectionOptions.getPriorityLaneOptions();
+        this.priorityLanes = priorityLaneOptions != null ? new PriorityLanes(priorityLaneOptions) : null;
+        this.connectionOptions = connectionOptions;
+    }
+
+    /**
+     * Returns the options of this connection
+     * @return the connection options
+     */
+    public ClientConnectionOptions getConnectionOptions() {
+        return connectionOptions;
+    }
+
+    /**
+     * Returns the round trip times of keepalive pings answered on this connection, across reconnects.
+     * A rising tail is an early sign of a saturated server
+     * @return the histogram of keepalive round trip times in nanoseconds
+     */
+    public LatencyHistogram getKeepAliveRoundTripTime() {
+        return keepAliveRoundTripTime;
+    }
+
+    /**
+     * Returns true if the current connection negotiated a shared memory side channel
+     * @return true if the current connection negotiated a shared memory side channel
+     */
+    public boolean isSharedMemoryActive() {
+        return sharedMemoryChannel != null;
+    }
+
+    /**
+     * Returns true if the current connection negotiated payload compression
+     * @return true if the current connection negotiated payload compression
+     */
+    public boolean isCompressionActive() {
+        return payloadCompression != null;
+    }
+
+    /**
+     * Returns true if the current connection negotiated payload fragmentation
+     * @return true if the current connection negotiated payload fragmentation
+     */
+    public boolean isFragmentationActive() {
+        return payloadFragmentation != null;
+    }
+
+    /**
+     * Returns true if the current connection negotiated stream event batching
+     * @return true if the current connection negotiated stream event batching
+     */
+    public boolean isBatchingActive() {
+        return acceptedBatchingOptions != null;
+    }
+
+    /**
+     * Returns the number of bulk operation messages waiting for the bulk lane to let them out
+     * @return the number of bulk messages waiting
+     */
+    public int getQueuedBulkMessages() {
+        final PriorityLanes lanes = priorityLanes;
+        return lanes != null ? lanes.getQueuedBulkMessages() : 0;
+    }
+
+    /**
+     * Returns the payload bytes in flight on the current connection
+     * @return the payload bytes in flight, 0 if the connection is not accounted
+     */
+    public long getInFlightBytes() {
+        final MemoryAccount account = memoryAccount;
+        return account != null ? account.getInFlightBytes() : 0;
+    }
+
+    /**
+     * Returns the number of messages the current connection refused at a hard quota
+     * @return the number of messages refused, 0 if the connection is not accounted
+     */
+    public long getQuotaRefusedMessages() {
+        final MemoryAccount account = memoryAccount;
+        return account != null ? account.getRefusedMessages() : 0;
+    }
+
+    /**
+     * Returns true if the connection is established and open for invoking operations
+     * @return true if the connection is established
+     */
+    public boolean isConnected() {
+        return connectionState.get().connectionPhase == ConnectionState.Phase.CONNECTED;
+    }
+
+    private void startKeepAlive(final LifecycleHandler lifecycleHandler, final KeepAliveOptions options) {
+        if (options == null) {
+            return;
+        }
+        final ConnectionKeepAlive newKeepAlive = new ConnectionKeepAlive(this, options, keepAliveRoundTripTime,
+                timeoutException -> {
+                    final EventStreamRPCClientListener listener = clientListener;
+                    if (listener != null) {
+                        listener.onKeepAliveTimeout();
+                    }
+                    transition(state -> state.withCloseReason(timeoutException));
+                    doOnError(lifecycleHandler, timeoutException);
+                    disconnect();
+                });
+        keepAlive = newKeepAlive;
+        newKeepAlive.start();
+    }
+
+    private void stopKeepAlive() {
+        final ConnectionKeepAlive currentKeepAlive = keepAlive;
+        if (currentKeepAlive != null) {
+            currentKeepAlive.stop();
+            keepAlive = null;
+        }
+    }
+
     /**
      * Connects to the event stream RPC server asynchronously
      *
      * @return A future that completes when connected
      */
     public CompletableFuture<Void> connect(final LifecycleHandler lifecycleHandler) {
-        synchronized (connectionState) {
-            if (connectionState.connectionPhase == ConnectionState.Phase.DISCONNECTED) {
-                connectionState.connectionPhase = ConnectionState.Phase.CONNECTING_SOCKET;
-                connectionState.onConnectCalled = false;
-            } else {
-                throw new IllegalStateException("Connection is already established");
-            }
+        final ConnectionState connecting = new ConnectionState(ConnectionState.Phase.CONNECTING_SOCKET, null, null, false);
+        if (transition(state -> state.connectionPhase == ConnectionState.Phase.DISCONNECTED ? connecting : state)
+                .connectionPhase != ConnectionState.Phase.DISCONNECTED) {
+            throw new IllegalStateException("Connection is already established");
         }
+        final ClientConnectionOptions options = connectionOptions;
         final CompletableFuture<Void> initialConnectFuture = new CompletableFuture<>();
+        final long connectStartNanos = clientListener != null ? System.nanoTime() : 0L;
+        final Object connectFlightEvent = RpcFlightRecorder.beginConnect(config.getHost(), config.getPort());
 
         ClientConnection.connect(config.getHost(), config.getPort(), config.getSocketOptions(),
                 config.getTlsContext(), config.getClientBootstrap(), new ClientConnectionHandler() {
+                    //flight recorder events begun, touched only by the connection's event loop thread
+                    private Object connectAckFlightEvent;
+                    private Object disconnectFlightEvent;
+
                     @Override
                     protected void onConnectionSetup(final ClientConnection clientConnection, int errorCode) {
                         LOGGER.info(String.format("Socket connection %s:%d to server result [%s]",
                                 config.getHost(), config.getPort(), CRT.awsErrorName(errorCode)));
-                        synchronized (connectionState) {
-                            connectionState.connection = clientConnection;
-                            if (CRT.AWS_CRT_SUCCESS != errorCode) {
-                                connectionState.connectionPhase = ConnectionState.Phase.DISCONNECTED;
-                                initialConnectFuture.completeExceptionally(new CrtRuntimeException(errorCode, CRT.awsErrorName(errorCode)));
-                            } else if (connectionState.connectionPhase == ConnectionState.Phase.CLOSING) {
-                                connectionState.closeReason = new EventStreamClosedException("Event stream closed by client");
-                                disconnect();
-                            } else {
-                                connectionState.connectionPhase = ConnectionState.Phase.WAITING_CONNACK;
-                                    config.getConnectMessageAmender().get()
-                                        .whenComplete((messageAmendInfo, ex) -> {
-                                            synchronized (connectionState) {
-                                                if (clientConnection != connectionState.connection) {
-                                                    LOGGER.warning("MessageAmender completed with different connection than initial");
-                                                    return;
-                                                }
-                                                if (connectionState.connectionPhase == ConnectionState.Phase.CLOSING) {
-                                                    connectionState.closeReason = new EventStreamClosedException("Event stream closed by client");
-                                                } else {
-                                                    try {
-                                                        final List<Header> headers = new ArrayList<>(messageAmendInfo.getHeaders().size() + 1);
-                                                        headers.add(Header.createHeader(EventStreamRPCServiceModel.VERSION_HEADER,
-                                                                getVersionString()));
-                                                        headers.addAll(messageAmendInfo.getHeaders().stream()
-                                                                .filter(header -> !header.getName().equals(EventStreamRPCServiceModel.VERSION_HEADER))
-                                                                .collect(Collectors.toList()));
-
-                                                        LOGGER.fine("Waiting for connect ack message back from event stream RPC server");
-                                                        clientConnection.sendProtocolMessage(headers,
-                                                                messageAmendInfo.getPayload(), MessageType.Connect, 0);
-                                                    } catch (Exception e) {
-                                                        connectionState.connectionPhase = ConnectionState.Phase.CLOSING;
-                                                        connectionState.closeReason = e;
-                                                        disconnect();
-                                                    }
-                                                }
-                                            }
-                                        });
-                            }
+                        RpcFlightRecorder.endConnect(connectFlightEvent,
+                                CRT.AWS_CRT_SUCCESS != errorCode ? CRT.awsErrorName(errorCode) : null);
+                        final EventStreamRPCClientListener listener = clientListener;
+                        if (listener != null) {
+                            listener.onConnectionSetup(errorCode);
+                        }
+                        if (CRT.AWS_CRT_SUCCESS != errorCode) {
+                            connectionState.set(ConnectionState.DISCONNECTED);
+                            initialConnectFuture.completeExceptionally(new CrtRuntimeException(errorCode, CRT.awsErrorName(errorCode)));
+                            return;
                         }
+                        final ConnectionGate gate = new ConnectionGate(clientConnection);
+                        final ConnectionState previous = transition(state ->
+                                state.connectionPhase == ConnectionState.Phase.CLOSING
+                                        ? new ConnectionState(ConnectionState.Phase.CLOSING, gate,
+                                                new EventStreamClosedException("Event stream closed by client"), false)
+                                        : new ConnectionState(ConnectionState.Phase.WAITING_CONNACK, gate,
+                                                state.closeReason, false));
+                        if (previous.connectionPhase == ConnectionState.Phase.CLOSING) {
+                            //disconnect() raced the socket setup
+                            closeSocket();
+                            return;
+                        }
+                        connectAckFlightEvent = RpcFlightRecorder.beginConnectAck(config.getHost(), config.getPort());
+                        config.getConnectMessageAmender().get()
+                            .whenComplete((messageAmendInfo, ex) -> sendConnect(gate, messageAmendInfo, options));
                     }
 
                     @Override
                     protected void onProtocolMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
                         if (MessageType.ConnectAck.equals(messageType)) {
-                            synchronized (connectionState) {
-                                if ((messageFlags & MessageFlags.ConnectionAccepted.getByteValue()) != 0) {
-                                    connectionState.connectionPhase = ConnectionState.Phase.CONNECTED;
-                                    //now the client is open for business to invoke operations
-                                    LOGGER.info("Connection established with event stream RPC server");
-                                    if (!initialConnectFuture.isDone()) {
-                                        initialConnectFuture.complete(null);
-                                    }
-                                    connectionState.onConnectCalled = true;
-                                    doOnConnect(lifecycleHandler);
-                                } else {
-                                    //This is access denied, implied due to not having ConnectionAccepted msg flag
-                                    LOGGER.warning("AccessDenied to event stream RPC server");
-                                    connectionState.connectionPhase = ConnectionState.Phase.CLOSING;
-                                    connectionState.connection.closeConnection(0);
-
-                                    final AccessDeniedException ade = new AccessDeniedException("Connection access denied to event stream RPC server");
-                                    if (!initialConnectFuture.isDone()) {
-                                        initialConnectFuture.completeExceptionally(ade);
-                                    }
-                                    doOnError(lifecycleHandler, ade);
+                            if ((messageFlags & MessageFlags.ConnectionAccepted.getByteValue()) != 0) {
+                                final boolean sharedMemoryDeclined = openSharedMemoryChannel(headers,
+                                        options.getSharedMemoryThreshold());
+                                final FragmentationOptions offeredFragmentation = options.getFragmentationOptions();
+                                payloadFragmentation = offeredFragmentation != null
+                                        ? PayloadFragmentation.fromConnectAck(headers, offeredFragmentation) : null;
+                                final CompressionOptions offeredCompression = options.getCompressionOptions();
+                                final PayloadCompression compression = offeredCompression != null
+                                        ? PayloadCompression.fromConnectAck(headers, offeredCompression) : null;
+                                payloadCompression = compression != null
+                                        ? compression.withFragmentation(payloadFragmentation) : null;
+                                final BatchingOptions offeredBatching = options.getBatchingOptions();
+                                acceptedBatchingOptions = offeredBatching != null
+                                        && StreamEventBatcher.hasBatchingHeader(headers) ? offeredBatching : null;
+                                final MemoryQuotaOptions quotas = options.getMemoryQuotaOptions();
+                                memoryAccount = quotas != null
+                                        ? new MemoryAccount(quotas, MemoryAccount.hasQuotaHeader(headers)) : null;
+                                if (transition(state -> state.connectionPhase == ConnectionState.Phase.WAITING_CONNACK
+                                        ? new ConnectionState(ConnectionState.Phase.CONNECTED, state.gate, state.closeReason, true)
+                                        : state).connectionPhase != ConnectionState.Phase.WAITING_CONNACK) {
+                                    LOGGER.fine("Connect ack received after the connection began closing");
+                                    return;
+                                }
+                                if (sharedMemoryDeclined) {
+                                    declineSharedMemory();
+                                }
+                                //now the client is open for business to invoke operations
+                                LOGGER.info("Connection established with event stream RPC server");
+                                endConnectAck(true);
+                                disconnectFlightEvent = RpcFlightRecorder.beginDisconnect(config.getHost(),
+                                        config.getPort());
+                                if (!initialConnectFuture.isDone()) {
+                                    initialConnectFuture.complete(null);
+                                }
+                                final EventStreamRPCClientListener listener = clientListener;
+                                if (listener != null) {
+                                    listener.onConnectionAccepted(System.nanoTime() - connectStartNanos);
                                 }
+                                startKeepAlive(lifecycleHandler, options.getKeepAliveOptions());
+                                doOnConnect(lifecycleHandler);
+                            } else {
+                                //This is access denied, implied due to not having ConnectionAccepted msg flag
+                                LOGGER.warning("AccessDenied to event stream RPC server");
+                                endConnectAck(false);
+                                final EventStreamRPCClientListener listener = clientListener;
+                                if (listener != null) {
+                                    listener.onConnectionRejected();
+                                }
+                                transition(state -> state.withPhase(ConnectionState.Phase.CLOSING));
+                                closeSocket();
+
+                                final AccessDeniedException ade = new AccessDeniedException("Connection access denied to event stream RPC server");
+                                if (!initialConnectFuture.isDone()) {
+                                    initialConnectFuture.completeExceptionally(ade);
+                                }
+                                doOnError(lifecycleHandler, ade);
                             }
                         } else if (MessageType.PingResponse.equals(messageType)) {
                             LOGGER.finer("Ping response received");
+                            final ConnectionKeepAlive currentKeepAlive = keepAlive;
+                            if (currentKeepAlive != null) {
+                                final long roundTripNanos = currentKeepAlive.onPingResponse(headers);
+                                final EventStreamRPCClientListener listener = clientListener;
+                                if (roundTripNanos >= 0 && listener != null) {
+                                    listener.onKeepAliveRoundTrip(roundTripNanos);
+                                }
+                            }
                         } else if (MessageType.Ping.equals(messageType)) {
-                            sendPingResponse(Optional.of(new MessageAmendInfo(
-                                    headers.stream().filter(header -> !header.getName().startsWith(":"))
-                                    .collect(Collectors.toList()), payload)))
+                            final List<Header> pingHeaders = headers.stream()
+                                    .filter(header -> !header.getName().startsWith(":"))
+                                    .collect(Collectors.toList());
+                            //echo nothing rather than empty buffers, which the native marshaller rejects
+                            sendPingResponse(pingHeaders.isEmpty() && (payload == null || payload.length == 0)
+                                    ? Optional.empty() : Optional.of(new MessageAmendInfo(pingHeaders, payload)))
                                 .whenComplete((res, ex) -> {
                                     LOGGER.finer("Ping response sent");
                                 });
@@ -186,8 +499,9 @@ public class EventStreamRPCConnection implements AutoCloseable {
                             disconnect();
                         } else if (MessageType.ProtocolError.equals(messageType) || MessageType.ServerError.equals(messageType)) {
                             LOGGER.severe("Received " + messageType.name() + ": " + CRT.awsErrorName(CRT.awsLastError()));
-                            connectionState.closeReason = EventStreamError.create(headers, payload, messageType);
-                            doOnError(lifecycleHandler, connectionState.closeReason);
+                            final EventStreamError error = EventStreamError.create(headers, payload, messageType);
+                            transition(state -> state.withCloseReason(error));
+                            doOnError(lifecycleHandler, error);
                             disconnect();
                         } else {
                             LOGGER.severe("Unprocessed message type: " + messageType.name());
@@ -198,102 +512,303 @@ public class EventStreamRPCConnection implements AutoCloseable {
                     @Override
                     protected void onConnectionClosed(int errorCode) {
                         LOGGER.finer("Socket connection closed: " + CRT.awsErrorName(errorCode));
-                        Throwable closeReason;
-                        boolean callOnDisconnect;
-                        synchronized (connectionState) {
-                            if (connectionState.connection != null) {
-                                connectionState.connection.close();
-                                connectionState.connection = null;
-                            }
-                            connectionState.connectionPhase = ConnectionState.Phase.DISCONNECTED;
-                            closeReason = connectionState.closeReason;
-                            connectionState.closeReason = null;
-                            callOnDisconnect = connectionState.onConnectCalled;
-                            connectionState.onConnectCalled = false;
+                        stopKeepAlive();
+                        closeSharedMemoryChannel();
+                        payloadCompression = null;
+                        payloadFragmentation = null;
+                        acceptedBatchingOptions = null;
+                        memoryAccount = null;
+                        final PriorityLanes lanes = priorityLanes;
+                        if (lanes != null) {
+                            lanes.discard(new EventStreamClosedException("Connection closed before the message was sent"));
+                        }
+                        final ConnectionState previous = transition(state -> ConnectionState.DISCONNECTED);
+                        if (previous.gate != null) {
+                            previous.gate.closeAndRelease();
+                        }
+                        final EventStreamRPCClientListener listener = clientListener;
+                        if (listener != null) {
+                            listener.onConnectionClosed(errorCode);
                         }
+                        endConnectAck(false);
+                        RpcFlightRecorder.endDisconnect(disconnectFlightEvent,
+                                CRT.AWS_CRT_SUCCESS != errorCode ? CRT.awsErrorName(errorCode) : null);
+                        disconnectFlightEvent = null;
                         if (!initialConnectFuture.isDone()) {
-                            if (closeReason != null) {
-                                initialConnectFuture.completeExceptionally(closeReason);
+                            if (previous.closeReason != null) {
+                                initialConnectFuture.completeExceptionally(previous.closeReason);
                             } else {
                                 initialConnectFuture.complete(null);
                             }
                         }
-                        if (callOnDisconnect) {
+                        if (previous.onConnectCalled) {
                             doOnDisconnect(lifecycleHandler, errorCode);
                         }
                     }
+
+                    /**
+                     * Commits the connect ack event, if one is waiting for the ack
+                     */
+                    private void endConnectAck(final boolean accepted) {
+                        RpcFlightRecorder.endConnectAck(connectAckFlightEvent, accepted);
+                        connectAckFlightEvent = null;
+                    }
                 });
         return initialConnectFuture;
     }
 
+    /**
+     * Maps the shared memory rings the server named in its connect ack, if the client asked for them. A
+     * client that cannot map them, such as one running as another user, goes without
+     * @return true if the server named rings the client could not map, which it must decline before any stream
+     */
+    private boolean openSharedMemoryChannel(final List<Header> connectAckHeaders, final int threshold) {
+        if (threshold == 0) {
+            return false;
+        }
+        try {
+            sharedMemoryChannel = SharedMemoryChannel.openClientChannel(connectAckHeaders, threshold);
+            if (sharedMemoryChannel != null) {
+                LOGGER.fine("Shared memory side channel established");
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning(String.format("Could not map shared memory rings named by the server, sending payloads inline: %s",
+                    e.getMessage()));
+            return true;
+        }
+    }
+
+    /**
+     * Tells the server the client declined its rings. Sent as the connection is established, ahead of any
+     * stream, so the server has closed them before it could write to them
+     */
+    private void declineSharedMemory() {
+        try {
+            sendPing(Optional.of(new MessageAmendInfo(SharedMemoryChannel.createDeclineHeaders(), null)));
+        } catch (RuntimeException e) {
+            LOGGER.warning(String.format("Could not decline shared memory rings: %s", e.getMessage()));
+        }
+    }
+
+    private void closeSharedMemoryChannel() {
+        final SharedMemoryChannel channel = sharedMemoryChannel;
+        if (channel != null) {
+            sharedMemoryChannel = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * Sends the connect message once the connect message amender completes, unless the connection
+     * was closed or replaced in the meantime
+     */
+    private void sendConnect(final ConnectionGate gate, final MessageAmendInfo messageAmendInfo,
+                             final ClientConnectionOptions options) {
+        final ConnectionState state = connectionState.get();
+        if (state.gate != gate) {
+            LOGGER.warning("MessageAmender completed with different connection than initial");
+            return;
+        }
+        if (state.connectionPhase == ConnectionState.Phase.CLOSING) {
+            transition(current -> current.gate == gate
+                    ? current.withCloseReason(new EventStreamClosedException("Event stream closed by client"))
+                    : current);
+            return;
+        }
+        final ClientConnection connection = gate.enter();
+        if (connection == null) {
+            return;
+        }
+        try {
+            final List<Header> headers = new ArrayList<>(messageAmendInfo.getHeaders().size() + 6);
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.VERSION_HEADER,
+                    getVersionString()));
+            if (options.getSharedMemoryThreshold() > 0) {
+                headers.add(Header.createHeader(SharedMemoryChannel.OFFER_HEADER, true));
+            }
+            final CompressionOptions offeredCompression = options.getCompressionOptions();
+            if (offeredCompression != null) {
+                headers.add(PayloadCompression.createOfferHeader(offeredCompression));
+            }
+            final FragmentationOptions offeredFragmentation = options.getFragmentationOptions();
+            if (offeredFragmentation != null) {
+                headers.add(PayloadFragmentation.createOfferHeader(offeredFragmentation));
+            }
+            if (options.getBatchingOptions() != null) {
+                headers.add(StreamEventBatcher.createBatchingHeader());
+            }
+            if (options.getMemoryQuotaOptions() != null) {
+                headers.add(MemoryAccount.createQuotaHeader());
+            }
+            headers.addAll(messageAmendInfo.getHeaders().stream()
+                    .filter(header -> !header.getName().equals(EventStreamRPCServiceModel.VERSION_HEADER)
+                            && !header.getName().equals(SharedMemoryChannel.OFFER_HEADER)
+                            && !header.getName().equals(PayloadCompression.ACCEPT_ENCODING_HEADER)
+                            && !header.getName().equals(PayloadFragmentation.FRAGMENT_LENGTH_HEADER)
+                            && !header.getName().equals(StreamEventBatcher.BATCHING_HEADER)
+                            && !header.getName().equals(MemoryAccount.QUOTA_HEADER))
+                    .collect(Collectors.toList()));
+
+            LOGGER.fine("Waiting for connect ack message back from event stream RPC server");
+            connection.sendProtocolMessage(headers,
+                    messageAmendInfo.getPayload(), MessageType.Connect, 0);
+        } catch (Exception e) {
+            transition(current -> current.gate == gate
+                    ? current.withPhase(ConnectionState.Phase.CLOSING).withCloseReason(e)
+                    : current);
+            connection.closeConnection(0);
+        } finally {
+            gate.leave();
+        }
+    }
+
     /**
      * Creates a new stream with the given continuation handler.
-     * Trhows an exception if not connected
+     * Trhows an exception if not connected, or if the connection has no native connection underneath, as
+     * in-process ones do not
      *
      * @param continuationHandler The continuation handler to use
      * @return A new ClientConnectionContinuation containing the new stream.
      */
     public ClientConnectionContinuation newStream(ClientConnectionContinuationHandler continuationHandler) {
-        synchronized (connectionState) {
-            if (connectionState.connectionPhase == ConnectionState.Phase.CONNECTED) {
-                return connectionState.connection.newStream(continuationHandler);
-            } else {
-                throw new EventStreamClosedException("EventStream connection is not open!");
-            }
+        final ConnectionState state = connectionState.get();
+        final ClientConnection connection = state.connectionPhase == ConnectionState.Phase.CONNECTED
+                && state.gate != null ? state.gate.enter() : null;
+        if (connection == null) {
+            throw new EventStreamClosedException("EventStream connection is not open!");
+        }
+        try {
+            return connection.newStream(continuationHandler);
+        } catch (CrtRuntimeException e) {
+            throw translateClosed(e);
+        } finally {
+            state.gate.leave();
         }
     }
 
+    /**
+     * Opens the transport for one operation invoke, the hook each kind of connection implements. Socket
+     * connections open a native continuation
+     * @param operationModelContext The operation being invoked
+     * @param streamHandler Handles what the server sends back on the stream
+     * @param tracker The invoke's instrumentation, or null
+     * @return the client end of the new stream
+     */
+    <H extends ClientConnectionContinuationHandler & InProcessStreamHandler> ClientOperationStream newOperationStream(
+            final OperationModelContext<?, ?, ?, ?> operationModelContext, final H streamHandler,
+            final OperationInvokeTracker tracker) {
+        final PriorityLanes lanes = priorityLanes;
+        return new ContinuationOperationStream(newStream(streamHandler), operationModelContext, tracker,
+                sharedMemoryChannel, payloadCompression, payloadFragmentation, acceptedBatchingOptions,
+                lanes != null ? lanes.laneFor(operationModelContext.getOperationName()) : null, memoryAccount);
+    }
+
     /**
      * Disconnects the EventStreamRPCConnection
      */
     public void disconnect() {
-        synchronized (connectionState) {
-            if (connectionState.connectionPhase != ConnectionState.Phase.CLOSING &&
-                    connectionState.connectionPhase != ConnectionState.Phase.DISCONNECTED) {
-                connectionState.connectionPhase = ConnectionState.Phase.CLOSING;
-            }
-            if (connectionState.connection != null) {
-                connectionState.connection.closeConnection(0);
+        transition(state -> {
+            if (state.connectionPhase == ConnectionState.Phase.DISCONNECTED
+                    || (state.connectionPhase == ConnectionState.Phase.CLOSING && state.closeReason != null)) {
+                return state;
             }
-            if (connectionState.closeReason == null) {
-                connectionState.closeReason = new EventStreamClosedException("Event stream closed by client");
+            return new ConnectionState(ConnectionState.Phase.CLOSING, state.gate,
+                    state.closeReason != null ? state.closeReason
+                            : new EventStreamClosedException("Event stream closed by client"),
+                    state.onConnectCalled);
+        });
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        final ConnectionGate gate = connectionState.get().gate;
+        final ClientConnection connection = gate != null ? gate.enter() : null;
+        if (connection != null) {
+            try {
+                connection.closeConnection(0);
+            } finally {
+                gate.leave();
             }
         }
     }
 
-    private void doOnConnect(LifecycleHandler lifecycleHandler) {
-        try {
-            lifecycleHandler.onConnect();
-        }
-        catch (Exception ex) {
-            LOGGER.warning(String.format("LifecycleHandler::onConnect() threw %s : %s",
-                    ex.getClass().getCanonicalName(), ex.getMessage()));
-            doOnError(lifecycleHandler, ex);
-        }
+    void doOnConnect(LifecycleHandler lifecycleHandler) {
+        lifecycleCallbacks.run(() -> {
+            try {
+                lifecycleHandler.onConnect();
+            }
+            catch (Exception ex) {
+                LOGGER.warning(String.format("LifecycleHandler::onConnect() threw %s : %s",
+                        ex.getClass().getCanonicalName(), ex.getMessage()));
+                doOnError(lifecycleHandler, ex);
+            }
+        });
     }
 
-    private void doOnError(LifecycleHandler lifecycleHandler, Throwable t) {
-        try {
-            if (lifecycleHandler.onError(t)) {
-                LOGGER.fine("Closing connection due to LifecycleHandler::onError() returning true");
+    void doOnError(LifecycleHandler lifecycleHandler, Throwable t) {
+        final EventStreamRPCClientListener listener = clientListener;
+        if (listener != null) {
+            listener.onConnectionError(t);
+        }
+        lifecycleCallbacks.run(() -> {
+            try {
+                if (lifecycleHandler.onError(t)) {
+                    LOGGER.fine("Closing connection due to LifecycleHandler::onError() returning true");
+                    disconnect();
+                }
+            }
+            catch (Exception ex) {
+                LOGGER.warning(String.format("Closing connection due to LifecycleHandler::onError() throwing %s : %s",
+                        ex.getClass().getCanonicalName(), ex.getMessage()));
                 disconnect();
             }
-        }
-        catch (Exception ex) {
-            LOGGER.warning(String.format("Closing connection due to LifecycleHandler::onError() throwing %s : %s",
-                    ex.getClass().getCanonicalName(), ex.getMessage()));
-            disconnect();
-        }
+        });
+    }
+
+    void doOnDisconnect(LifecycleHandler lifecycleHandler, int errorCode) {
+        lifecycleCallbacks.run(() -> {
+            try {
+                lifecycleHandler.onDisconnect(errorCode);
+            }
+            catch (Exception ex) {
+                LOGGER.warning(String.format("LifecycleHandler::onDisconnect(" + CRT.awsErrorName(errorCode) + ") threw %s : %s",
+                        ex.getClass().getCanonicalName(), ex.getMessage()));
+            }
+        });
     }
 
-    private void doOnDisconnect(LifecycleHandler lifecycleHandler, int errorCode) {
+    private CompletableFuture<Void> sendProtocolMessage(final Optional<MessageAmendInfo> data,
+                                                        final MessageType messageType) {
+        final ConnectionState state = connectionState.get();
+        final ClientConnection connection = state.connectionPhase == ConnectionState.Phase.CONNECTED
+                ? state.gate.enter() : null;
+        if (connection == null) {
+            throw new EventStreamClosedException("EventStream connection not established");
+        }
         try {
-            lifecycleHandler.onDisconnect(errorCode);
+            if (data.isPresent()) {
+                return connection.sendProtocolMessage(data.get().getHeaders(), data.get().getPayload(),
+                        messageType, 0);
+            } else {
+                return connection.sendProtocolMessage(null, null, messageType, 0);
+            }
+        } catch (CrtRuntimeException e) {
+            throw translateClosed(e);
+        } finally {
+            state.gate.leave();
         }
-        catch (Exception ex) {
-            LOGGER.warning(String.format("LifecycleHandler::onDisconnect(" + CRT.awsErrorName(errorCode) + ") threw %s : %s",
-                    ex.getClass().getCanonicalName(), ex.getMessage()));
+    }
+
+    /**
+     * The connection may be closed natively between the state check and the native call, by the server or by
+     * a concurrent disconnect(). Report that the same way as finding it closed up front
+     */
+    private static RuntimeException translateClosed(final CrtRuntimeException e) {
+        if (CONNECTION_CLOSED_ERROR.equals(e.errorName)) {
+            return new EventStreamClosedException("EventStream connection closed during invoke");
         }
+        return e;
     }
 
     /**
@@ -303,19 +818,7 @@ public class EventStreamRPCConnection implements AutoCloseable {
      * @return A future that completes when the pong response is receieved
      */
     public CompletableFuture<Void> sendPing(Optional<MessageAmendInfo> pingData) {
-        ClientConnection connection;
-        synchronized (connectionState) {
-            if (connectionState.connectionPhase != ConnectionState.Phase.CONNECTED) {
-                throw new EventStreamClosedException("EventStream connection not established");
-            }
-            connection = connectionState.connection;
-            if (pingData.isPresent()) {
-                return connection.sendProtocolMessage(pingData.get().getHeaders(), pingData.get().getPayload(),
-                        MessageType.Ping, 0);
-            } else {
-                return connection.sendProtocolMessage(null, null, MessageType.Ping, 0);
-            }
-        }
+        return sendProtocolMessage(pingData, MessageType.Ping);
     }
 
     /**
@@ -325,19 +828,7 @@ public class EventStreamRPCConnection implements AutoCloseable {
      * @return A future that completes when the pong response is receieved
      */
     public CompletableFuture<Void> sendPingResponse(Optional<MessageAmendInfo> pingResponseData) {
-        ClientConnection connection;
-        synchronized (connectionState) {
-            if (connectionState.connectionPhase != ConnectionState.Phase.CONNECTED) {
-                throw new EventStreamClosedException("EventStream connection not established");
-            }
-            connection = connectionState.connection;
-            if (pingResponseData.isPresent()) {
-                return connection.sendProtocolMessage(pingResponseData.get().getHeaders(), pingResponseData.get().getPayload(),
-                        MessageType.Ping, 0);
-            } else {
-                return connection.sendProtocolMessage(null, null, MessageType.PingResponse, 0);
-            }
-        }
+        return sendProtocolMessage(pingResponseData, MessageType.PingResponse);
     }
 
     @Override
@@ -345,9 +836,259 @@ public class EventStreamRPCConnection implements AutoCloseable {
         disconnect();
     }
 
+    /**
+     * Operation stream over a native continuation of a socket connection
+     */
+    static final class ContinuationOperationStream implements ClientOperationStream {
+        private final ClientConnectionContinuation continuation;
+        private final OperationModelContext<?, ?, ?, ?> operationModelContext;
+        private final OperationInvokeTracker tracker;
+        private final SharedMemoryChannel sharedMemoryChannel;
+        private final PayloadCompression payloadCompression;
+        private final PayloadFragmentation payloadFragmentation;
+        private final StreamEventBatcher batcher;
+        private final PriorityLanes.Lane lane;
+        private final MemoryAccount.Stream memory;
+        private volatile boolean terminated = false;
+        private volatile ContinuationLeakDetector.Tracker leakTracker;
+        private FragmentAssembler fragmentAssembler;    //only touched by the thread messages arrive on
+
+        ContinuationOperationStream(final ClientConnectionContinuation continuation,
+                                    final OperationModelContext<?, ?, ?, ?> operationModelContext,
+                                    final OperationInvokeTracker tracker,
+                                    final SharedMemoryChannel sharedMemoryChannel,
+                                    final PayloadCompression payloadCompression,
+                                    final PayloadFragmentation payloadFragmentation,
+                                    final BatchingOptions batchingOptions,
+                                    final PriorityLanes.Lane lane,
+                                    final MemoryAccount memoryAccount) {
+            this.continuation = continuation;
+            this.operationModelContext = operationModelContext;
+            this.tracker = tracker;
+            this.sharedMemoryChannel = sharedMemoryChannel;
+            this.payloadCompression = payloadCompression;
+            this.payloadFragmentation = payloadFragmentation;
+            this.batcher = batchingOptions != null ? new StreamEventBatcher(batchingOptions, this, this::writeBatch) : null;
+            this.lane = lane;
+            this.memory = memoryAccount != null ? memoryAccount.newStream(this::sendBackpressureSignal) : null;
+        }
+
+        @Override
+        public CompletableFuture<Void> activate(final String applicationModelType, final EventStreamJsonMessage request,
+                                                final RpcSpan span) {
+            final List<Header> headers = new ArrayList<>(6);
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                    applicationModelType));
+            final String traceContext = span != null ? span.getTraceContext() : null;
+            if (traceContext != null) {
+                headers.add(Header.createHeader(RpcTracer.TRACE_CONTEXT_HEADER, traceContext));
+            }
+            if (span != null) {
+                span.phaseStarted(RpcTracer.Phase.SERIALIZE);
+            }
+            final byte[] payload = operationModelContext.getServiceModel().toJson(request);
+            if (span != null) {
+                span.phaseEnded(RpcTracer.Phase.SERIALIZE, null);
+                span.phaseStarted(RpcTracer.Phase.FLUSH);
+            }
+            if (tracker != null) {
+                //before the send, which the response may outrun
+                tracker.messageSent(applicationModelType, payload);
+            }
+            final CompletableFuture<Void> flushFuture = send(headers, payload, 0, true);
+            if (span != null) {
+                flushFuture.whenComplete((res, ex) -> span.phaseEnded(RpcTracer.Phase.FLUSH, ex));
+            }
+            return flushFuture;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendMessage(final String applicationModelType,
+                                                   final EventStreamJsonMessage message, final int messageFlags) {
+            if (message == null) {
+                return send(null, null, messageFlags, false);
+            }
+            final byte[] payload = operationModelContext.getServiceModel().toJson(message);
+            if (tracker != null) {
+                tracker.messageSent(applicationModelType, payload);
+            }
+            if (batcher != null && messageFlags == 0) {
+                if (lane != null) {
+                    return lane.write(() -> batch(applicationModelType, payload), false);
+                }
+                return batch(applicationModelType, payload);
+            }
+            final List<Header> headers = new ArrayList<>(5);
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                    applicationModelType));
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+            return send(headers, payload, messageFlags, false);
+        }
+
+        private synchronized CompletableFuture<Void> batch(final String applicationModelType, final byte[] payload) {
+            return batcher.add(applicationModelType, payload);
+        }
+
+        /**
+         * Sends an application message, once the priority lane of the stream's operation lets it out if it has
+         * one. The lane admits or turns away the message as a whole, before it is offloaded, fragmented or
+         * batched
+         */
+        private CompletableFuture<Void> send(final List<Header> headers, final byte[] payload, final int messageFlags,
+                                             final boolean activate) {
+            if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                terminated = true;
+            }
+            if (lane != null) {
+                return lane.write(() -> sendNow(headers, payload, messageFlags, activate),
+                        (messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0);
+            }
+            return sendNow(headers, payload, messageFlags, activate);
+        }
+
+        /**
+         * Sends a message after any batched stream events, in fragments if it is too long for one. Sends are
+         * serialized once fragmentation or batching is negotiated, so messages are neither interleaved nor
+         * reordered
+         */
+        private CompletableFuture<Void> sendNow(final List<Header> headers, final byte[] payload,
+                                                final int messageFlags, final boolean activate) {
+            final byte[] wirePayload = headers != null ? offload(headers, payload) : payload;
+            if (payloadFragmentation == null && batcher == null) {
+                return writeNow(headers, wirePayload, messageFlags, activate);
+            }
+            synchronized (this) {
+                if (batcher != null) {
+                    batcher.flush();
+                }
+                return sendInOrder(headers, wirePayload, messageFlags, activate);
+            }
+        }
+
+        /**
+         * Sends a message with the stream's lock held
+         */
+        private CompletableFuture<Void> sendInOrder(final List<Header> headers, final byte[] payload,
+                                                    final int messageFlags, final boolean activate) {
+            if (payloadFragmentation == null || !payloadFragmentation.needsFragmenting(payload)) {
+                return writeNow(headers, payload, messageFlags, activate);
+            }
+            return payloadFragmentation.send(headers, payload, messageFlags,
+                    (fragmentHeaders, fragment, flags) -> writeNow(fragmentHeaders, fragment, flags, activate),
+                    (fragmentHeaders, fragment, flags) -> writeNow(fragmentHeaders, fragment, flags, false));
+        }
+
+        /**
+         * Sends a batch of stream events, or a lone one, for the batcher, which holds the stream's lock
+         */
+        private CompletableFuture<Void> writeBatch(final String applicationModelType, final byte[] payload,
+                                                   final boolean batch) {
+            final List<Header> headers = new ArrayList<>(5);
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                    applicationModelType));
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    batch ? StreamEventBatcher.CONTENT_TYPE_BATCH : EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+            return sendInOrder(headers, offload(headers, payload), 0, false);
+        }
+
+        private CompletableFuture<Void> writeNow(final List<Header> headers, final byte[] payload,
+                                                 final int messageFlags, final boolean activate) {
+            return activate
+                    ? continuation.activate(operationModelContext.getOperationName(), headers, payload,
+                            MessageType.ApplicationMessage, messageFlags)
+                    : continuation.sendMessage(headers, payload, MessageType.ApplicationMessage, messageFlags);
+        }
+
+        /**
+         * @return the payload to put in the message, compressed if negotiated, or null if it went to shared
+         * memory instead
+         */
+        private byte[] offload(final List<Header> headers, final byte[] payload) {
+            final byte[] encoded = payloadCompression != null ? payloadCompression.encode(headers, payload) : payload;
+            return sharedMemoryChannel != null && sharedMemoryChannel.offload(headers, encoded) ? null : encoded;
+        }
+
+        @Override
+        public byte[] resolvePayload(final List<Header> headers, final byte[] payload) {
+            final byte[] resolved = sharedMemoryChannel != null ? sharedMemoryChannel.resolve(headers, payload) : payload;
+            return payloadCompression != null ? payloadCompression.decode(headers, resolved) : resolved;
+        }
+
+        @Override
+        public void releasePayload(final List<Header> headers) {
+            if (sharedMemoryChannel != null) {
+                sharedMemoryChannel.release(headers);
+            }
+        }
+
+        /**
+         * Sends a backpressure signal to the server, straight onto the continuation as it carries no payload
+         */
+        private void sendBackpressureSignal(final boolean backpressured) {
+            //nothing may follow the close, which the server would take as an error on the whole connection
+            if (terminated || continuation.isNull()) {
+                return;
+            }
+            try {
+                continuation.sendMessage(MemoryAccount.createSignalHeaders(backpressured), null,
+                        MessageType.ApplicationMessage, 0).whenComplete((res, ex) -> {
+                    if (ex != null) {
+                        LOGGER.fine("Could not send backpressure signal: " + ex.getMessage());
+                    }
+                });
+            } catch (RuntimeException e) {
+                LOGGER.fine("Could not send backpressure signal: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public MemoryAccount.Stream getMemoryAccount() {
+            return memory;
+        }
+
+        @Override
+        public void setLeakTracker(final ContinuationLeakDetector.Tracker leakTracker) {
+            this.leakTracker = leakTracker;
+        }
+
+        @Override
+        public FragmentAssembler getFragmentAssembler() {
+            if (fragmentAssembler == null && payloadFragmentation != null) {
+                fragmentAssembler = payloadFragmentation.newAssembler();
+            }
+            return fragmentAssembler;
+        }
+
+        @Override
+        public boolean isNull() {
+            return continuation.isNull();
+        }
+
+        @Override
+        public void close() {
+            terminated = true;
+            if (batcher != null) {
+                synchronized (this) {
+                    batcher.discard(new EventStreamClosedException("Stream closed before its batched events were sent"));
+                }
+            }
+            continuation.close();
+            final ContinuationLeakDetector.Tracker leakTracker = this.leakTracker;
+            if (leakTracker != null) {
+                leakTracker.close();
+            }
+        }
+    }
+
     /**
      * Lifecycle handler is how a client can react and respond to connectivity interruptions. Connectivity
      * interruptions are isolated from operation availability issues.
+     *
+     * Callbacks for one connection never run concurrently and are delivered in the order the events
+     * occurred. No lock is held while they run, so they may call back into the connection.
      */
     public interface LifecycleHandler {
         /**
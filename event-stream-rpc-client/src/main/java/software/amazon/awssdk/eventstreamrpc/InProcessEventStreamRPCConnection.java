@@ -0,0 +1,305 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuationHandler;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.eventstreamrpc.model.AccessDeniedException;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * An EventStreamRPCConnection to a service running in the same JVM, bound directly to its InProcessEndpoint
+ * (the server's InProcessRpcServer) instead of a socket. Generated clients and EventStreamRPCClient work over
+ * it unchanged, and the service authenticates and authorizes the connect message as usual. Requests,
+ * responses, stream events and errors are handed across as model objects, with no framing or JSON.
+ *
+ * Messages are passed by reference, so neither side may mutate a message once sent. Enable defensive copies
+ * to copy each one through a JSON round trip instead.
+ *
+ * Callbacks may run on the invoking thread, the service's response to an invoke included. Keepalive options
+ * are ignored and newStream() finds no native connection to open a stream on, as there is none underneath.
+ */
+public class InProcessEventStreamRPCConnection extends EventStreamRPCConnection {
+    private static final Logger LOGGER = Logger.getLogger(InProcessEventStreamRPCConnection.class.getName());
+
+    private final InProcessEndpoint endpoint;
+    private final Supplier<CompletableFuture<MessageAmendInfo>> connectMessageAmender;
+    private volatile boolean defensiveCopy = false;
+
+    /**
+     * Creates a new in-process connection
+     * @param endpoint The service to connect to
+     * @param connectMessageAmender Supplies the connect message headers and payload, as for a socket connection
+     */
+    public InProcessEventStreamRPCConnection(final InProcessEndpoint endpoint,
+                                             final Supplier<CompletableFuture<MessageAmendInfo>> connectMessageAmender) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("In-process endpoint must not be null");
+        }
+        this.endpoint = endpoint;
+        this.connectMessageAmender = connectMessageAmender;
+    }
+
+    /**
+     * Copies every message sent on streams opened after this call, in both directions, so that neither side
+     * sees the other mutate it. Off by default
+     * @param defensiveCopy true to copy messages, false to pass them by reference
+     */
+    public void setDefensiveCopy(final boolean defensiveCopy) {
+        this.defensiveCopy = defensiveCopy;
+    }
+
+    /**
+     * Returns true if messages are copied rather than passed by reference
+     * @return true if messages are copied rather than passed by reference
+     */
+    public boolean isDefensiveCopy() {
+        return defensiveCopy;
+    }
+
+    /**
+     * Connects to the in-process service asynchronously. The connection waits for the service to accept it from
+     * the time it asks the connect message amender, there being no socket to connect first
+     *
+     * @return A future that completes when connected
+     */
+    @Override
+    public CompletableFuture<Void> connect(final LifecycleHandler lifecycleHandler) {
+        final ConnectionState connecting = new ConnectionState(ConnectionState.Phase.WAITING_CONNACK, null, null, false);
+        if (transition(state -> state.connectionPhase == ConnectionState.Phase.DISCONNECTED ? connecting : state)
+                .connectionPhase != ConnectionState.Phase.DISCONNECTED) {
+            throw new IllegalStateException("Connection is already established");
+        }
+        final CompletableFuture<Void> initialConnectFuture = new CompletableFuture<>();
+        final long connectStartNanos = getClientListener() != null ? System.nanoTime() : 0L;
+        connectMessageAmender.get().whenComplete((messageAmendInfo, ex) -> {
+            if (ex != null) {
+                transition(state -> ConnectionState.DISCONNECTED);
+                initialConnectFuture.completeExceptionally(ex);
+                return;
+            }
+            sendConnect(lifecycleHandler, messageAmendInfo, initialConnectFuture, connectStartNanos);
+        });
+        return initialConnectFuture;
+    }
+
+    private void sendConnect(final LifecycleHandler lifecycleHandler, final MessageAmendInfo messageAmendInfo,
+                             final CompletableFuture<Void> initialConnectFuture, final long connectStartNanos) {
+        final List<Header> headers = new ArrayList<>(messageAmendInfo.getHeaders().size() + 1);
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.VERSION_HEADER, getVersionString()));
+        headers.addAll(messageAmendInfo.getHeaders().stream()
+                .filter(header -> !header.getName().equals(EventStreamRPCServiceModel.VERSION_HEADER))
+                .collect(Collectors.toList()));
+
+        final SessionCloseListener closeListener = new SessionCloseListener(lifecycleHandler);
+        InProcessEndpoint.Session accepted = null;
+        try {
+            accepted = endpoint.connect(headers, messageAmendInfo.getPayload(), closeListener);
+        } catch (Exception e) {
+            LOGGER.warning(String.format("In-process endpoint connect threw %s : %s",
+                    e.getClass().getCanonicalName(), e.getMessage()));
+        }
+        boolean established = false;
+        if (accepted == null) {
+            transition(state -> ConnectionState.DISCONNECTED);
+        } else {
+            //set before connecting, so that the session closing from here on finds the connection it closes
+            closeListener.session = accepted;
+            final ConnectionState connected = new ConnectionState(ConnectionState.Phase.CONNECTED, null, accepted,
+                    null, true);
+            established = transition(state -> state.connectionPhase == ConnectionState.Phase.WAITING_CONNACK
+                    ? connected : ConnectionState.DISCONNECTED).connectionPhase == ConnectionState.Phase.WAITING_CONNACK;
+            if (established && closeListener.closed) {
+                //the session closed before the connection took it, and may have found nothing to close
+                established = transition(state -> state == connected ? ConnectionState.DISCONNECTED : state)
+                        != connected;
+            }
+        }
+
+        final EventStreamRPCClientListener listener = getClientListener();
+        if (accepted == null) {
+            LOGGER.warning("AccessDenied to in-process event stream RPC service");
+            if (listener != null) {
+                listener.onConnectionRejected();
+            }
+            final AccessDeniedException ade = new AccessDeniedException("Connection access denied to event stream RPC server");
+            initialConnectFuture.completeExceptionally(ade);
+            doOnError(lifecycleHandler, ade);
+        } else if (!established) {
+            //disconnect() or the service closing raced the connect
+            accepted.close();
+            initialConnectFuture.completeExceptionally(new EventStreamClosedException("Event stream closed by client"));
+        } else {
+            LOGGER.info("Connection established with in-process event stream RPC service");
+            initialConnectFuture.complete(null);
+            if (listener != null) {
+                listener.onConnectionAccepted(System.nanoTime() - connectStartNanos);
+            }
+            doOnConnect(lifecycleHandler);
+        }
+    }
+
+    @Override
+    <H extends ClientConnectionContinuationHandler & InProcessStreamHandler> ClientOperationStream newOperationStream(
+            final OperationModelContext<?, ?, ?, ?> operationModelContext, final H streamHandler,
+            final OperationInvokeTracker tracker) {
+        final ConnectionState state = connectionState();
+        if (state.connectionPhase != ConnectionState.Phase.CONNECTED) {
+            throw new EventStreamClosedException("EventStream connection is not open!");
+        }
+        final InProcessContinuation continuation = new InProcessContinuation(operationModelContext.getOperationName(),
+                defensiveCopy ? operationModelContext.getServiceModel() : null);
+        continuation.getClientEnd().setHandler(streamHandler);
+        return new InProcessOperationStream(state.session, continuation, tracker);
+    }
+
+    /**
+     * Disconnects the in-process connection. A connect still waiting for the service fails, and an established
+     * connection is closed once its session closes
+     */
+    @Override
+    public void disconnect() {
+        final ConnectionState previous = transition(state ->
+                state.connectionPhase == ConnectionState.Phase.WAITING_CONNACK
+                        || state.connectionPhase == ConnectionState.Phase.CONNECTED
+                        ? state.withPhase(ConnectionState.Phase.CLOSING) : state);
+        if (previous.connectionPhase == ConnectionState.Phase.CONNECTED) {
+            previous.session.close();
+        }
+    }
+
+    /**
+     * Completes immediately, the service being in the same process
+     */
+    @Override
+    public CompletableFuture<Void> sendPing(Optional<MessageAmendInfo> pingData) {
+        if (!isConnected()) {
+            throw new EventStreamClosedException("EventStream connection not established");
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Completes immediately, the service being in the same process
+     */
+    @Override
+    public CompletableFuture<Void> sendPingResponse(Optional<MessageAmendInfo> pingResponseData) {
+        return sendPing(pingResponseData);
+    }
+
+    /**
+     * Told by the session when it closes, whether by disconnect() or by the service
+     */
+    private final class SessionCloseListener implements Runnable {
+        private final LifecycleHandler lifecycleHandler;
+        private volatile InProcessEndpoint.Session session;    //set once the service accepts the connect
+        private volatile boolean closed = false;
+
+        SessionCloseListener(final LifecycleHandler lifecycleHandler) {
+            this.lifecycleHandler = lifecycleHandler;
+        }
+
+        @Override
+        public void run() {
+            closed = true;
+            //before the session is set, the connect finds it closed and fails instead
+            final InProcessEndpoint.Session closedSession = session;
+            if (closedSession == null || transition(state -> state.session == closedSession
+                    ? ConnectionState.DISCONNECTED : state).session != closedSession) {
+                return;
+            }
+            LOGGER.finer("In-process connection closed");
+            final EventStreamRPCClientListener listener = getClientListener();
+            if (listener != null) {
+                listener.onConnectionClosed(0);
+            }
+            doOnDisconnect(lifecycleHandler, 0);
+        }
+    }
+
+    /**
+     * Operation stream over the client end of an in-process continuation
+     */
+    private static final class InProcessOperationStream implements ClientOperationStream {
+        private final InProcessEndpoint.Session session;
+        private final InProcessContinuation continuation;
+        private final OperationInvokeTracker tracker;
+        private volatile ContinuationLeakDetector.Tracker leakTracker;
+
+        InProcessOperationStream(final InProcessEndpoint.Session session, final InProcessContinuation continuation,
+                                 final OperationInvokeTracker tracker) {
+            this.session = session;
+            this.continuation = continuation;
+            this.tracker = tracker;
+        }
+
+        @Override
+        public CompletableFuture<Void> activate(final String applicationModelType, final EventStreamJsonMessage request,
+                                                final RpcSpan span) {
+            //nothing is serialized or flushed, and the server end starts no span of its own
+            session.openStream(continuation);
+            return sendMessage(applicationModelType, request, 0);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendMessage(final String applicationModelType,
+                                                   final EventStreamJsonMessage message, final int messageFlags) {
+            if (tracker != null && message != null) {
+                tracker.messageSent(applicationModelType, null);
+            }
+            return continuation.getClientEnd().sendMessage(message, MessageType.ApplicationMessage, messageFlags);
+        }
+
+        @Override
+        public byte[] resolvePayload(final List<Header> headers, final byte[] payload) {
+            return payload;     //nothing arrives off the wire
+        }
+
+        @Override
+        public void releasePayload(final List<Header> headers) {
+        }
+
+        @Override
+        public FragmentAssembler getFragmentAssembler() {
+            return null;
+        }
+
+        @Override
+        public MemoryAccount.Stream getMemoryAccount() {
+            return null;    //in-process streams hand over decoded messages and are not accounted
+        }
+
+        @Override
+        public void setLeakTracker(final ContinuationLeakDetector.Tracker leakTracker) {
+            this.leakTracker = leakTracker;
+        }
+
+        @Override
+        public boolean isNull() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            continuation.getClientEnd().close();
+            final ContinuationLeakDetector.Tracker leakTracker = this.leakTracker;
+            if (leakTracker != null) {
+                leakTracker.close();
+            }
+        }
+    }
+}
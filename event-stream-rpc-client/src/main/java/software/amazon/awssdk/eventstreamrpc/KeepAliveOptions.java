@@ -0,0 +1,53 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.time.Duration;
+
+/**
+ * Configures the optional keepalive of an EventStreamRPCConnection. Once connected, the connection pings
+ * the server every interval and measures the round trip of each ping. When missedResponseThreshold pings in a
+ * row go unanswered the server is considered dead, the LifecycleHandler is notified with a
+ * {@link KeepAliveTimeoutException} and the connection is closed.
+ */
+public class KeepAliveOptions {
+    private final Duration interval;
+    private final int missedResponseThreshold;
+
+    /**
+     * Creates new keepalive options
+     * @param interval Time between pings. Must be positive
+     * @param missedResponseThreshold Number of consecutive unanswered pings after which the connection is closed
+     */
+    public KeepAliveOptions(final Duration interval, final int missedResponseThreshold) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Keepalive interval must be positive");
+        }
+        if (missedResponseThreshold < 1) {
+            throw new IllegalArgumentException("Missed response threshold must be positive");
+        }
+        this.interval = interval;
+        this.missedResponseThreshold = missedResponseThreshold;
+    }
+
+    /**
+     * Returns the time between pings
+     * @return the time between pings
+     */
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the number of consecutive unanswered pings after which the connection is closed
+     * @return the missed response threshold
+     */
+    public int getMissedResponseThreshold() {
+        return missedResponseThreshold;
+    }
+}
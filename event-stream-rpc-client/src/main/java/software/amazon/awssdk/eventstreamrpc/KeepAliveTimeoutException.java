@@ -0,0 +1,21 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * Delivered to the LifecycleHandler when the keepalive declares the server unreachable and closes the connection
+ */
+public class KeepAliveTimeoutException extends EventStreamClosedException {
+    /**
+     * Creates a new KeepAliveTimeoutException
+     * @param missedResponses Number of consecutive pings that went unanswered
+     */
+    public KeepAliveTimeoutException(int missedResponses) {
+        super(String.format("EventStream connection closed after %d keepalive pings went unanswered", missedResponses));
+    }
+}
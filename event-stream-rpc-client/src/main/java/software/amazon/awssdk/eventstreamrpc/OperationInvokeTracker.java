@@ -0,0 +1,141 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Per-invoke state handed to an EventStreamRPCClientListener, and the flight recorder's invoke and stream
+ * events. Only created when a listener is installed or a flight recording is running, so uninstrumented invokes
+ * pass a null tracker and skip all of this.
+ *
+ * Shields the client from listener exceptions, and guarantees the response and close callbacks fire at most once.
+ */
+final class OperationInvokeTracker {
+    private static final Logger LOGGER = Logger.getLogger(OperationInvokeTracker.class.getName());
+
+    private final EventStreamRPCClientListener listener;
+    private final OperationModelContext<?, ?, ?, ?> operationModelContext;
+    private final long invokeStartNanos;
+    private final AtomicBoolean responseReported = new AtomicBoolean(false);
+    private final AtomicBoolean closeReported = new AtomicBoolean(false);
+    private final Object invokeFlightEvent;
+    private volatile boolean requestSent = false;   //the first message sent is the request
+    private volatile long requestBytes = 0;
+    private boolean responseReceived = false;   //the first message received is the response, all on one thread
+    private volatile long responseBytes = 0;
+
+    /**
+     * @param listener The listener to tell, or null if only the flight recorder is
+     * @param operationModelContext The operation invoked
+     */
+    OperationInvokeTracker(final EventStreamRPCClientListener listener,
+                           final OperationModelContext<?, ?, ?, ?> operationModelContext) {
+        this.listener = listener;
+        this.operationModelContext = operationModelContext;
+        this.invokeStartNanos = System.nanoTime();
+        this.invokeFlightEvent = RpcFlightRecorder.beginInvoke(operationModelContext.getOperationName());
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onOperationInvoked(operationModelContext);
+        } catch (Exception e) {
+            logListenerException("onOperationInvoked", e);
+        }
+    }
+
+    void requestFlushed(final Throwable error) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onRequestFlushed(operationModelContext, System.nanoTime() - invokeStartNanos, error);
+        } catch (Exception e) {
+            logListenerException("onRequestFlushed", e);
+        }
+    }
+
+    void responseCompleted(final Throwable error) {
+        if (responseReported.compareAndSet(false, true)) {
+            RpcFlightRecorder.endInvoke(invokeFlightEvent, requestBytes, responseBytes, error);
+            if (listener == null) {
+                return;
+            }
+            try {
+                listener.onResponse(operationModelContext, System.nanoTime() - invokeStartNanos, error);
+            } catch (Exception e) {
+                logListenerException("onResponse", e);
+            }
+        }
+    }
+
+    void messageSent(final String applicationModelType, final byte[] payload) {
+        if (!requestSent) {
+            requestSent = true;
+            requestBytes = payload == null ? 0 : payload.length;
+        } else {
+            RpcFlightRecorder.streamEventSent(operationModelContext.getOperationName(), applicationModelType,
+                    payload == null ? 0 : payload.length, false);
+        }
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onMessageSent(operationModelContext, applicationModelType, payload == null ? 0 : payload.length);
+        } catch (Exception e) {
+            logListenerException("onMessageSent", e);
+        }
+    }
+
+    void messageReceived(final String applicationModelType, final byte[] payload, final long deserializationNanos) {
+        if (!responseReceived) {
+            responseReceived = true;
+            responseBytes = payload == null ? 0 : payload.length;
+        } else {
+            RpcFlightRecorder.streamEventReceived(operationModelContext.getOperationName(), applicationModelType,
+                    payload == null ? 0 : payload.length, false);
+        }
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onMessageReceived(operationModelContext, applicationModelType,
+                    payload == null ? 0 : payload.length, deserializationNanos);
+        } catch (Exception e) {
+            logListenerException("onMessageReceived", e);
+        }
+    }
+
+    void streamError(final Throwable error) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onStreamError(operationModelContext, error);
+        } catch (Exception e) {
+            logListenerException("onStreamError", e);
+        }
+    }
+
+    void continuationClosed() {
+        if (closeReported.compareAndSet(false, true) && listener != null) {
+            try {
+                listener.onContinuationClosed(operationModelContext);
+            } catch (Exception e) {
+                logListenerException("onContinuationClosed", e);
+            }
+        }
+    }
+
+    private void logListenerException(final String callback, final Exception e) {
+        LOGGER.warning(String.format("EventStreamRPCClientListener::%s() for %s threw %s : %s", callback,
+                operationModelContext.getOperationName(), e.getClass().getCanonicalName(), e.getMessage()));
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * How the messages of an operation are sent relative to the other operations on the same connection. See
+ * {@link PriorityLaneOptions}
+ */
+public enum OperationPriority {
+    /**
+     * Sent at once, and the bulk lane holds its messages back until every control message in flight is flushed
+     */
+    CONTROL,
+    /**
+     * Sent at once. The default
+     */
+    NORMAL,
+    /**
+     * Sent through the connection's bulk lane, which is rate limited and bounded
+     */
+    BULK
+}
@@ -8,14 +8,11 @@
 package software.amazon.awssdk.eventstreamrpc;
 
 import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuation;
-import software.amazon.awssdk.crt.eventstream.Header;
 import software.amazon.awssdk.crt.eventstream.MessageFlags;
-import software.amazon.awssdk.crt.eventstream.MessageType;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
@@ -32,7 +29,7 @@ public class OperationResponse<ResponseType extends EventStreamJsonMessage,
         implements StreamResponse<ResponseType, StreamRequestType>, AutoCloseable {
     private static final Logger LOGGER = Logger.getLogger(OperationResponse.class.getName());
     private final OperationModelContext operationModelContext;
-    private final ClientConnectionContinuation continuation;
+    private final ClientOperationStream stream;
     private final CompletableFuture<ResponseType> responseFuture;
     private final CompletableFuture<Void> requestFlushFuture;
     private final AtomicBoolean isClosed;
@@ -48,11 +45,20 @@ public class OperationResponse<ResponseType extends EventStreamJsonMessage,
                              ClientConnectionContinuation continuation,
                              CompletableFuture<ResponseType> responseFuture,
                              CompletableFuture<Void> requestFlushFuture) {
+        this(operationModelContext, continuation == null ? null
+                        : new EventStreamRPCConnection.ContinuationOperationStream(continuation, operationModelContext, null, null, null, null, null, null, null),
+                responseFuture, requestFlushFuture);
+    }
+
+    OperationResponse(OperationModelContext<ResponseType, ?, StreamRequestType, ?> operationModelContext,
+                      ClientOperationStream stream,
+                      CompletableFuture<ResponseType> responseFuture,
+                      CompletableFuture<Void> requestFlushFuture) {
         this.operationModelContext = operationModelContext;
-        this.continuation = continuation;
+        this.stream = stream;
         this.responseFuture = responseFuture;
         this.requestFlushFuture = requestFlushFuture;
-        this.isClosed = new AtomicBoolean(continuation != null && !continuation.isNull());
+        this.isClosed = new AtomicBoolean(stream != null && !stream.isNull());
     }
 
     /**
@@ -90,16 +96,14 @@ public class OperationResponse<ResponseType extends EventStreamJsonMessage,
     @Override
     public CompletableFuture<Void> sendStreamEvent(final StreamRequestType streamEvent) {
         try {
-            final List<Header> headers = new LinkedList<>();
-            headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
-                    (String) operationModelContext.getStreamingRequestApplicationModelType().get()));
-            headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
-                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
-            final byte[] payload = operationModelContext.getServiceModel()
-                    .toJson(streamEvent);
-            return continuation.sendMessage(headers, payload,
-                    MessageType.ApplicationMessage, 0)
+            return stream.sendMessage((String) operationModelContext.getStreamingRequestApplicationModelType().get(),
+                    streamEvent, 0)
                     .whenComplete((res, ex) -> {
+                        if (ex instanceof RejectedExecutionException) {
+                            //turned away whole by a full bulk lane before any of it was written, so the stream
+                            //is intact and the caller sees the rejection on the returned future
+                            return;
+                        }
                         if (ex != null) {
                             LOGGER.warning(String.format("%s caught %s while sending message the event stream: %s",
                                     operationModelContext.getOperationName(), ex.getClass().getName(),
@@ -121,12 +125,11 @@ public class OperationResponse<ResponseType extends EventStreamJsonMessage,
      */
     @Override
     public CompletableFuture<Void> closeStream() {
-        if (continuation != null && !continuation.isNull()) {
-            return continuation.sendMessage(null, null,
-                    MessageType.ApplicationMessage, MessageFlags.TerminateStream.getByteValue())
+        if (stream != null && !stream.isNull()) {
+            return stream.sendMessage(null, null, MessageFlags.TerminateStream.getByteValue())
                     .whenComplete((res, ex) -> {
                         LOGGER.info(operationModelContext.getOperationName() + " operation stream closed");
-                        continuation.close();
+                        stream.close();
                         if (ex != null) {
                             LOGGER.warning(String.format("%s threw %s while closing the event stream: %s",
                                     operationModelContext.getOperationName(), ex.getClass().getName(),
@@ -145,6 +148,16 @@ public class OperationResponse<ResponseType extends EventStreamJsonMessage,
         return isClosed.get();
     }
 
+    /**
+     * Checks if the server asks the client to back off sending stream events, having gone past one of its soft
+     * memory quotas. Stream events sent regardless are still delivered, up to the server's hard quotas
+     * @return True if the server signalled backpressure
+     */
+    public boolean isBackpressured() {
+        final MemoryAccount.Stream memory = stream != null ? stream.getMemoryAccount() : null;
+        return memory != null && memory.isPeerBackpressured();
+    }
+
     @Override
     public void close() throws Exception {
         if (isClosed.compareAndSet(false, true)) {
@@ -0,0 +1,117 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Configures the priority lanes of an EventStreamRPCConnection, so lifecycle critical operations are not stuck
+ * behind bulk traffic on the same socket. Each operation is given an {@link OperationPriority} by name, the
+ * name its OperationModelContext returns, and is NORMAL unless set otherwise.
+ *
+ * BULK operations send through a lane that lets out at most bulkMessagesPerSecond messages, in bursts of up
+ * to bulkBurst, and holds up to maxQueuedBulkMessages more. Each stream event or other application message
+ * counts once, however many fragments or batches it is sent in. A message sent when the lane is full fails
+ * with a RejectedExecutionException, and none of it is written. CONTROL operations send at once, and the bulk lane lets nothing out while a
+ * control message is still being flushed.
+ */
+public class PriorityLaneOptions {
+    /**
+     * Bulk messages let out per second by default
+     */
+    public static final int DEFAULT_BULK_MESSAGES_PER_SECOND = 1000;
+    /**
+     * Bulk messages let out at once, after the lane has been idle, by default
+     */
+    public static final int DEFAULT_BULK_BURST = 64;
+    /**
+     * Bulk messages held waiting by default
+     */
+    public static final int DEFAULT_MAX_QUEUED_BULK_MESSAGES = 1024;
+
+    private final int bulkMessagesPerSecond;
+    private final int bulkBurst;
+    private final int maxQueuedBulkMessages;
+    private final Map<String, OperationPriority> priorities = new ConcurrentHashMap<>();
+
+    /**
+     * Creates priority lane options with the default bulk lane
+     */
+    public PriorityLaneOptions() {
+        this(DEFAULT_BULK_MESSAGES_PER_SECOND, DEFAULT_BULK_BURST, DEFAULT_MAX_QUEUED_BULK_MESSAGES);
+    }
+
+    /**
+     * Creates priority lane options
+     * @param bulkMessagesPerSecond The rate bulk messages are let out at. Must be positive
+     * @param bulkBurst The most bulk messages let out at once. Must be positive
+     * @param maxQueuedBulkMessages The most bulk messages held waiting. 0 fails any bulk message that cannot go
+     *                              at once
+     */
+    public PriorityLaneOptions(final int bulkMessagesPerSecond, final int bulkBurst, final int maxQueuedBulkMessages) {
+        if (bulkMessagesPerSecond < 1) {
+            throw new IllegalArgumentException("Bulk messages per second must be positive");
+        }
+        if (bulkBurst < 1) {
+            throw new IllegalArgumentException("Bulk burst must be positive");
+        }
+        if (maxQueuedBulkMessages < 0) {
+            throw new IllegalArgumentException("Maximum queued bulk messages must not be negative");
+        }
+        this.bulkMessagesPerSecond = bulkMessagesPerSecond;
+        this.bulkBurst = bulkBurst;
+        this.maxQueuedBulkMessages = maxQueuedBulkMessages;
+    }
+
+    /**
+     * Sets the priority of an operation, for streams opened after this call
+     * @param operationName The operation name, such as the constant the generated service model has for it
+     * @param priority The priority, or null for NORMAL
+     */
+    public void setOperationPriority(final String operationName, final OperationPriority priority) {
+        if (priority == null || priority == OperationPriority.NORMAL) {
+            priorities.remove(operationName);
+        } else {
+            priorities.put(operationName, priority);
+        }
+    }
+
+    /**
+     * Returns the priority of an operation
+     * @param operationName The operation name
+     * @return the priority of the operation, NORMAL if it was not set
+     */
+    public OperationPriority getOperationPriority(final String operationName) {
+        return priorities.getOrDefault(operationName, OperationPriority.NORMAL);
+    }
+
+    /**
+     * Returns the rate bulk messages are let out at
+     * @return the rate bulk messages are let out at, per second
+     */
+    public int getBulkMessagesPerSecond() {
+        return bulkMessagesPerSecond;
+    }
+
+    /**
+     * Returns the most bulk messages let out at once
+     * @return the most bulk messages let out at once
+     */
+    public int getBulkBurst() {
+        return bulkBurst;
+    }
+
+    /**
+     * Returns the most bulk messages held waiting
+     * @return the most bulk messages held waiting
+     */
+    public int getMaxQueuedBulkMessages() {
+        return maxQueuedBulkMessages;
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The priority lanes of one connection, configured by {@link PriorityLaneOptions}. The bulk lane is a token
+ * bucket in front of a bounded queue, drained in order. A control message holds the bulk lane shut until it is
+ * flushed, so it never waits behind more than the bulk messages already written.
+ *
+ * Lanes admit whole application messages, however many fragments or batches they go out in, so a message is
+ * either written entirely or turned away before any of it is. Messages let out are written outside the lanes'
+ * lock, in the order they were let out, by one thread at a time.
+ */
+final class PriorityLanes {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static ScheduledExecutorService drainTimer;
+
+    /**
+     * Writes the messages of the streams of one priority
+     */
+    @FunctionalInterface
+    interface Lane {
+        /**
+         * Writes an application message when the lane lets it out
+         * @param message Writes the message on its continuation, in as many wire messages as it takes, returning
+         *                a future completed when it is flushed
+         * @param closing True if the message closes its stream, which is queued even past the limit so a stream
+         *                can always be closed
+         * @return a future completed when the message is flushed
+         */
+        CompletableFuture<Void> write(Supplier<CompletableFuture<Void>> message, boolean closing);
+    }
+
+    private static final class QueuedMessage {
+        final Supplier<CompletableFuture<Void>> message;
+        final CompletableFuture<Void> flushFuture = new CompletableFuture<>();
+
+        QueuedMessage(final Supplier<CompletableFuture<Void>> message) {
+            this.message = message;
+        }
+    }
+
+    private final PriorityLaneOptions options;
+    private final Lane controlLane = this::writeControl;
+    private final Lane bulkLane = this::writeBulk;
+    private final Deque<QueuedMessage> bulkQueue = new ArrayDeque<>();
+    //let out, waiting for the thread with the writing turn
+    private final Deque<QueuedMessage> letOut = new ArrayDeque<>();
+    private boolean writing = false;
+    private double tokens;
+    private long refilledNanos = System.nanoTime();
+    private int controlInFlight = 0;
+    private boolean drainScheduled = false;
+
+    PriorityLanes(final PriorityLaneOptions options) {
+        this.options = options;
+        this.tokens = options.getBulkBurst();
+    }
+
+    private static synchronized ScheduledExecutorService getDrainTimer() {
+        if (drainTimer == null) {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "EventStreamRPCConnection-bulk-lane");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            drainTimer = executor;
+        }
+        return drainTimer;
+    }
+
+    /**
+     * Returns the lane for the streams of an operation
+     * @param operationName The operation name
+     * @return the lane, or null if the operation's messages go straight to its continuation
+     */
+    Lane laneFor(final String operationName) {
+        switch (options.getOperationPriority(operationName)) {
+            case CONTROL:
+                return controlLane;
+            case BULK:
+                return bulkLane;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the number of bulk messages waiting to be let out
+     * @return the number of bulk messages waiting
+     */
+    synchronized int getQueuedBulkMessages() {
+        return bulkQueue.size();
+    }
+
+    /**
+     * Fails every bulk message still waiting. Called when the connection closes
+     * @param cause Why the messages were not sent
+     */
+    void discard(final Throwable cause) {
+        final QueuedMessage[] discarded;
+        synchronized (this) {
+            discarded = bulkQueue.toArray(new QueuedMessage[0]);
+            bulkQueue.clear();
+        }
+        for (QueuedMessage queued : discarded) {
+            queued.flushFuture.completeExceptionally(cause);
+        }
+    }
+
+    private CompletableFuture<Void> writeControl(final Supplier<CompletableFuture<Void>> message,
+                                                 final boolean closing) {
+        synchronized (this) {
+            ++controlInFlight;
+        }
+        return write(message).whenComplete((result, ex) -> {
+            synchronized (this) {
+                --controlInFlight;
+            }
+            drain();
+        });
+    }
+
+    private CompletableFuture<Void> writeBulk(final Supplier<CompletableFuture<Void>> message, final boolean closing) {
+        final QueuedMessage queued;
+        synchronized (this) {
+            if (bulkQueue.isEmpty() && controlInFlight == 0 && takeToken()) {
+                if (writing) {
+                    queued = new QueuedMessage(message);
+                    letOut.add(queued);
+                    return queued.flushFuture;
+                }
+                writing = true;
+            } else if (!closing && bulkQueue.size() >= options.getMaxQueuedBulkMessages()) {
+                final CompletableFuture<Void> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new RejectedExecutionException(String.format(
+                        "Bulk lane is full with %d messages waiting", bulkQueue.size())));
+                return rejected;
+            } else {
+                queued = new QueuedMessage(message);
+                bulkQueue.add(queued);
+                scheduleDrain();
+                return queued.flushFuture;
+            }
+        }
+        final CompletableFuture<Void> flushFuture = write(message);
+        writeLetOut();
+        return flushFuture;
+    }
+
+    /**
+     * Lets out the bulk messages the bucket has tokens for, in the order they were queued, and writes them
+     * unless another thread has the writing turn
+     */
+    private void drain() {
+        synchronized (this) {
+            drainScheduled = false;
+            while (!bulkQueue.isEmpty() && controlInFlight == 0 && takeToken()) {
+                letOut.add(bulkQueue.poll());
+            }
+            scheduleDrain();
+            if (writing || letOut.isEmpty()) {
+                return;
+            }
+            writing = true;
+        }
+        writeLetOut();
+    }
+
+    /**
+     * Writes the messages let out, in order, then gives up the writing turn. Called by the thread holding it, so
+     * no message overtakes one let out before it
+     */
+    private void writeLetOut() {
+        while (true) {
+            final QueuedMessage queued;
+            synchronized (this) {
+                queued = letOut.poll();
+                if (queued == null) {
+                    writing = false;
+                    return;
+                }
+            }
+            write(queued.message).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    queued.flushFuture.completeExceptionally(ex);
+                } else {
+                    queued.flushFuture.complete(null);
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules the next drain for when the bucket has a token, unless nothing is waiting on one. A control
+     * message in flight drains once it is flushed instead
+     */
+    private void scheduleDrain() {
+        if (drainScheduled || bulkQueue.isEmpty() || controlInFlight > 0) {
+            return;
+        }
+        drainScheduled = true;
+        final long delayNanos = Math.max(1L,
+                (long) ((1.0 - tokens) * NANOS_PER_SECOND / options.getBulkMessagesPerSecond()));
+        getDrainTimer().schedule(this::drain, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean takeToken() {
+        final long now = System.nanoTime();
+        tokens = Math.min(options.getBulkBurst(),
+                tokens + (double) (now - refilledNanos) * options.getBulkMessagesPerSecond() / NANOS_PER_SECOND);
+        refilledNanos = now;
+        if (tokens < 1.0) {
+            return false;
+        }
+        tokens -= 1.0;
+        return true;
+    }
+
+    private static CompletableFuture<Void> write(final Supplier<CompletableFuture<Void>> message) {
+        try {
+            return message.get();
+        } catch (RuntimeException e) {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
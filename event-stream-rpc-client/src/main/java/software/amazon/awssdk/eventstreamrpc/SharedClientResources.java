@@ -0,0 +1,142 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.io.ClientBootstrap;
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * One lease on the client resources shared by every connection in the process that asks for them: an
+ * EventLoopGroup with a thread per core, a ClientBootstrap on it, and a fixed size executor for user callbacks.
+ * The resources are created by the first acquire() and closed when the last lease is closed, so a JVM hosting
+ * many clients runs one set of event loop and callback threads however many clients it has.
+ *
+ * A lease must be closed once nothing it was used for is still open, connections included.
+ */
+public final class SharedClientResources implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SharedClientResources.class.getName());
+    private static final long CALLBACK_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private static Resources resources;
+    private static int referenceCount = 0;
+
+    private final Resources leased;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private SharedClientResources(final Resources leased) {
+        this.leased = leased;
+    }
+
+    /**
+     * Takes a lease on the shared resources, creating them if there are no other leases
+     * @return a new lease, to be closed when no longer needed
+     */
+    public static synchronized SharedClientResources acquire() {
+        if (referenceCount == 0) {
+            resources = new Resources(Runtime.getRuntime().availableProcessors());
+            LOGGER.fine(String.format("Created shared client resources with %d event loop threads",
+                    resources.eventLoopThreads));
+        }
+        ++referenceCount;
+        return new SharedClientResources(resources);
+    }
+
+    /**
+     * Returns the number of open leases
+     * @return the number of open leases
+     */
+    public static synchronized int getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * Returns the shared event loop group
+     * @return the shared event loop group
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return leased.eventLoopGroup;
+    }
+
+    /**
+     * Returns the shared client bootstrap
+     * @return the shared client bootstrap
+     */
+    public ClientBootstrap getClientBootstrap() {
+        return leased.clientBootstrap;
+    }
+
+    /**
+     * Returns the shared executor for user callbacks. Its threads are daemon threads and time out when idle
+     * @return the shared executor for user callbacks
+     */
+    public Executor getCallbackExecutor() {
+        return leased.callbackExecutor;
+    }
+
+    /**
+     * Releases this lease, closing the shared resources if it was the last one. Closing again has no effect
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (SharedClientResources.class) {
+            if (--referenceCount == 0) {
+                resources.close();
+                resources = null;
+                LOGGER.fine("Closed shared client resources");
+            }
+        }
+    }
+
+    private static final class Resources {
+        private final int eventLoopThreads;
+        private final EventLoopGroup eventLoopGroup;
+        private final ClientBootstrap clientBootstrap;
+        private final ExecutorService callbackExecutor;
+
+        Resources(final int eventLoopThreads) {
+            this.eventLoopThreads = eventLoopThreads;
+            this.eventLoopGroup = new EventLoopGroup(eventLoopThreads);
+            this.clientBootstrap = new ClientBootstrap(eventLoopGroup, null);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(eventLoopThreads, eventLoopThreads,
+                    CALLBACK_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new CallbackThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            this.callbackExecutor = executor;
+        }
+
+        void close() {
+            callbackExecutor.shutdown();
+            clientBootstrap.close();
+            eventLoopGroup.close();
+        }
+    }
+
+    private static final class CallbackThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "EventStreamRPC-callback-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -35,4 +35,11 @@ public interface StreamResponse<ResponseType extends EventStreamJsonMessage, Str
      * @return True if the stream is closed
      */
     boolean isClosed();
+
+    /**
+     * Tests if the server asks the client to back off sending stream events, having gone past one of its soft
+     * memory quotas
+     * @return True if the server signalled backpressure
+     */
+    boolean isBackpressured();
 }
@@ -0,0 +1,160 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.crt.eventstream.Header;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class ConnectionKeepAliveTests {
+    /**
+     * Connection that hands each ping to the test instead of a socket
+     */
+    private static final class PingRecordingConnection extends EventStreamRPCConnection {
+        private final BlockingQueue<List<Header>> pings = new LinkedBlockingQueue<>();
+        private final Function<List<Header>, CompletableFuture<Void>> onPing;
+
+        PingRecordingConnection(final Function<List<Header>, CompletableFuture<Void>> onPing) {
+            this.onPing = onPing;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendPing(Optional<MessageAmendInfo> pingData) {
+            final List<Header> headers = pingData.get().getHeaders();
+            pings.add(headers);
+            return onPing.apply(headers);
+        }
+
+        List<Header> nextPing() throws InterruptedException {
+            final List<Header> headers = pings.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(headers);
+            return headers;
+        }
+    }
+
+    private static long getSequence(final List<Header> headers) {
+        for (Header header : headers) {
+            if (ConnectionKeepAlive.SEQUENCE_HEADER.equals(header.getName())) {
+                return header.getValueAsLong();
+            }
+        }
+        throw new AssertionError("Ping carries no sequence header");
+    }
+
+    @Test
+    public void testRoundTripTimeMeasured() throws Exception {
+        final PingRecordingConnection connection = new PingRecordingConnection(headers -> CompletableFuture.completedFuture(null));
+        final LatencyHistogram roundTripTime = new LatencyHistogram();
+        final ConnectionKeepAlive keepAlive = new ConnectionKeepAlive(connection,
+                new KeepAliveOptions(Duration.ofMillis(50), 100), roundTripTime, timeout -> { });
+        keepAlive.start();
+        try {
+            final List<Header> ping = connection.nextPing();
+            Thread.sleep(20);
+            final long rttNanos = keepAlive.onPingResponse(ping);
+            Assertions.assertTrue(rttNanos >= TimeUnit.MILLISECONDS.toNanos(20));
+            Assertions.assertEquals(1, roundTripTime.getCount());
+            Assertions.assertEquals(rttNanos, roundTripTime.getMax());
+
+            //a response already matched, or not carrying a sequence, measures nothing
+            Assertions.assertEquals(-1, keepAlive.onPingResponse(ping));
+            Assertions.assertEquals(-1, keepAlive.onPingResponse(Collections.emptyList()));
+            Assertions.assertEquals(1, roundTripTime.getCount());
+        } finally {
+            keepAlive.stop();
+        }
+    }
+
+    @Test
+    public void testResponseMatchedBySequence() throws Exception {
+        final PingRecordingConnection connection = new PingRecordingConnection(headers -> CompletableFuture.completedFuture(null));
+        final AtomicInteger deadPeers = new AtomicInteger();
+        final ConnectionKeepAlive keepAlive = new ConnectionKeepAlive(connection,
+                new KeepAliveOptions(Duration.ofMillis(50), 3), new LatencyHistogram(), timeout -> deadPeers.incrementAndGet());
+        keepAlive.start();
+        try {
+            final List<Header> first = connection.nextPing();
+            final List<Header> second = connection.nextPing();
+            Assertions.assertEquals(getSequence(first) + 1, getSequence(second));
+
+            //answering the later ping proves the peer alive, so the earlier one no longer counts as missed
+            Assertions.assertTrue(keepAlive.onPingResponse(second) >= 0);
+            Assertions.assertEquals(-1, keepAlive.onPingResponse(first));
+
+            //kept answered, the peer is never declared dead
+            for (int i = 0; i < 10; ++i) {
+                Assertions.assertTrue(keepAlive.onPingResponse(connection.nextPing()) >= 0);
+            }
+            Assertions.assertEquals(0, deadPeers.get());
+        } finally {
+            keepAlive.stop();
+        }
+    }
+
+    @Test
+    public void testDeadPeerDetected() throws Exception {
+        final PingRecordingConnection connection = new PingRecordingConnection(headers -> CompletableFuture.completedFuture(null));
+        final CompletableFuture<KeepAliveTimeoutException> deadPeer = new CompletableFuture<>();
+        final ConnectionKeepAlive keepAlive = new ConnectionKeepAlive(connection,
+                new KeepAliveOptions(Duration.ofMillis(50), 2), new LatencyHistogram(), deadPeer::complete);
+        keepAlive.start();
+        try {
+            final KeepAliveTimeoutException timeout = deadPeer.get(5, TimeUnit.SECONDS);
+            Assertions.assertTrue(timeout.getMessage().contains("2 keepalive pings"));
+
+            //once declared dead, no more pings go out
+            connection.pings.clear();
+            Thread.sleep(200);
+            Assertions.assertTrue(connection.pings.isEmpty());
+        } finally {
+            keepAlive.stop();
+        }
+    }
+
+    @Test
+    public void testFailingPingCountsAsMissed() throws Exception {
+        final PingRecordingConnection connection = new PingRecordingConnection(headers -> {
+            throw new IllegalStateException("Native send failed");
+        });
+        final CompletableFuture<KeepAliveTimeoutException> deadPeer = new CompletableFuture<>();
+        final ConnectionKeepAlive keepAlive = new ConnectionKeepAlive(connection,
+                new KeepAliveOptions(Duration.ofMillis(50), 2), new LatencyHistogram(), deadPeer::complete);
+        keepAlive.start();
+        try {
+            Assertions.assertNotNull(deadPeer.get(5, TimeUnit.SECONDS));
+        } finally {
+            keepAlive.stop();
+        }
+    }
+
+    @Test
+    public void testClosedConnectionStopsPings() throws Exception {
+        final PingRecordingConnection connection = new PingRecordingConnection(headers -> {
+            throw new EventStreamClosedException("Connection closed");
+        });
+        final AtomicInteger deadPeers = new AtomicInteger();
+        final ConnectionKeepAlive keepAlive = new ConnectionKeepAlive(connection,
+                new KeepAliveOptions(Duration.ofMillis(50), 1), new LatencyHistogram(), timeout -> deadPeers.incrementAndGet());
+        keepAlive.start();
+        connection.nextPing();
+        Thread.sleep(200);
+        Assertions.assertTrue(connection.pings.isEmpty());
+        Assertions.assertEquals(0, deadPeers.get());
+    }
+}
@@ -10,8 +10,12 @@ package software.amazon.awssdk.eventstreamrpc;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
+import software.amazon.awssdk.awstest.EchoTestRPCServiceModel;
+import software.amazon.awssdk.awstest.model.EchoMessageRequest;
 import software.amazon.awssdk.crt.CrtResource;
 import software.amazon.awssdk.crt.Log;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuation;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuationHandler;
 import software.amazon.awssdk.crt.eventstream.Header;
 import software.amazon.awssdk.crt.io.ClientBootstrap;
 import software.amazon.awssdk.crt.io.EventLoopGroup;
@@ -24,12 +28,19 @@ import software.amazon.awssdk.eventstreamrpc.test.TestIpcServiceHandler;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class EventStreamRPCClientTests {
@@ -121,6 +132,32 @@ public class EventStreamRPCClientTests {
         CrtResource.waitForNoResources();
     }
 
+    @Test
+    public void testSharedClientResourcesReferenceCounted() throws Exception {
+        final int initialCount = SharedClientResources.getReferenceCount();
+        final SharedClientResources first = SharedClientResources.acquire();
+        final SharedClientResources second = SharedClientResources.acquire();
+        Assertions.assertEquals(initialCount + 2, SharedClientResources.getReferenceCount());
+        Assertions.assertSame(first.getEventLoopGroup(), second.getEventLoopGroup());
+        Assertions.assertSame(first.getClientBootstrap(), second.getClientBootstrap());
+        Assertions.assertSame(first.getCallbackExecutor(), second.getCallbackExecutor());
+
+        final CompletableFuture<Boolean> ranOnCallbackThread = new CompletableFuture<>();
+        first.getCallbackExecutor().execute(() -> ranOnCallbackThread.complete(Thread.currentThread().isDaemon()));
+        Assertions.assertTrue(ranOnCallbackThread.get(5, TimeUnit.SECONDS));
+
+        first.close();
+        first.close();
+        Assertions.assertEquals(initialCount + 1, SharedClientResources.getReferenceCount());
+        second.close();
+        Assertions.assertEquals(initialCount, SharedClientResources.getReferenceCount());
+        if (initialCount == 0) {
+            try (final SharedClientResources third = SharedClientResources.acquire()) {
+                Assertions.assertNotSame(first.getEventLoopGroup(), third.getEventLoopGroup());
+            }
+        }
+    }
+
     @Test
     public void testClientClosedThrowsInitialFutureException() {
         final int port = randomPort();
@@ -317,6 +354,144 @@ public class EventStreamRPCClientTests {
         CrtResource.waitForNoResources();
     }
 
+    /**
+     * Races disconnect against connection setup and against threads invoking on the connection, then
+     * reconnects the same EventStreamRPCConnection. Invokers may only ever see EventStreamClosedException,
+     * lifecycle callbacks must never overlap, and every onConnect must be matched by one onDisconnect.
+     */
+    @Test
+    public void testConnectDisconnectRace() {
+        final int port = randomPort();
+        final int iterations = 50;
+        final int invokers = 4;
+
+        final TestIpcServiceHandler service = new TestIpcServiceHandler(false,
+                request -> request,
+                EventStreamJsonMessage.class, EventStreamJsonMessage.class,
+                EventStreamJsonMessage.class, EventStreamJsonMessage.class);
+        service.setAuthenticationHandler(TestAuthNZHandlers.getAuthNHandler());
+        service.setAuthorizationHandler(TestAuthNZHandlers.getAuthZHandler());
+
+        final AtomicInteger connects = new AtomicInteger(0);
+        final AtomicInteger disconnects = new AtomicInteger(0);
+        final AtomicBoolean inCallback = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final EventStreamRPCConnection.LifecycleHandler lifecycleHandler = new EventStreamRPCConnection.LifecycleHandler() {
+            private void callback(Runnable body) {
+                if (!inCallback.compareAndSet(false, true)) {
+                    failure.compareAndSet(null, new AssertionFailedError("Lifecycle callbacks overlapped"));
+                }
+                body.run();
+                inCallback.set(false);
+            }
+
+            @Override
+            public void onConnect() {
+                callback(connects::incrementAndGet);
+            }
+
+            @Override
+            public void onDisconnect(int errorCode) {
+                callback(disconnects::incrementAndGet);
+            }
+
+            @Override
+            public boolean onError(Throwable t) {
+                callback(() -> { });
+                return true;
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(invokers);
+        try(final EventLoopGroup elGroup = new EventLoopGroup(1);
+            final HostResolver hostResolver = new HostResolver(elGroup, 64);
+            final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, hostResolver);
+            SocketOptions socketOptions = new SocketOptions()) {
+            socketOptions.connectTimeoutMs = 3000;
+            socketOptions.domain = SocketOptions.SocketDomain.IPv4;
+            socketOptions.type = SocketOptions.SocketType.STREAM;
+            try (final RpcServer ipcServer = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port, service)) {
+                ipcServer.runServer();
+
+                final EventStreamRPCConnectionConfig config = new EventStreamRPCConnectionConfig(
+                        clientBootstrap, elGroup, socketOptions, null, "127.0.0.1", port, () ->
+                {
+                    final List<Header> headers = new LinkedList<>();
+                    headers.add(Header.createHeader("client-name", "accepted.foo"));
+                    return CompletableFuture.completedFuture(new MessageAmendInfo(headers, null));
+                }
+                );
+                final EventStreamRPCConnection connection = new EventStreamRPCConnection(config);
+                final AtomicReference<CompletableFuture<Void>> closedFuture = new AtomicReference<>();
+                connection.setClientListener(new EventStreamRPCClientListener() {
+                    @Override
+                    public void onConnectionClosed(int errorCode) {
+                        closedFuture.get().complete(null);
+                    }
+                });
+
+                for (int i = 0; i < iterations; ++i) {
+                    closedFuture.set(new CompletableFuture<>());
+                    final CompletableFuture<Void> initialConnect = connection.connect(lifecycleHandler);
+                    final List<Future<?>> invocations = new LinkedList<>();
+                    for (int j = 0; j < invokers; ++j) {
+                        invocations.add(executor.submit(() -> {
+                            for (int k = 0; k < 200; ++k) {
+                                try {
+                                    if (k % 2 == 0) {
+                                        connection.sendPing(Optional.empty());
+                                    } else {
+                                        final ClientConnectionContinuation continuation =
+                                                connection.newStream(new ClientConnectionContinuationHandler() {
+                                                    @Override
+                                                    protected void onContinuationMessage(List<Header> headers, byte[] payload,
+                                                            software.amazon.awssdk.crt.eventstream.MessageType messageType, int messageFlags) { }
+                                                });
+                                        continuation.close();
+                                    }
+                                } catch (EventStreamClosedException e) {
+                                    Thread.yield();
+                                } catch (Throwable t) {
+                                    failure.compareAndSet(null, t);
+                                }
+                            }
+                        }));
+                    }
+                    if (i % 2 == 0) {
+                        //close while the socket is still being set up
+                        connection.disconnect();
+                    } else {
+                        try {
+                            initialConnect.get(5, TimeUnit.SECONDS);
+                        } catch (ExecutionException e) {
+                            Assertions.assertEquals(EventStreamClosedException.class, e.getCause().getClass());
+                        }
+                        connection.disconnect();
+                    }
+                    for (Future<?> invocation : invocations) {
+                        invocation.get(10, TimeUnit.SECONDS);
+                    }
+                    closedFuture.get().get(5, TimeUnit.SECONDS);
+                    Assertions.assertTrue(initialConnect.isDone());
+                    Assertions.assertFalse(connection.isConnected());
+                }
+                //the listener sees the last close before onDisconnect, which may still be queued behind another callback
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (disconnects.get() != connects.get() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertNull(failure.get());
+                Assertions.assertEquals(connects.get(), disconnects.get());
+                Assertions.assertTrue(connects.get() >= iterations / 2);
+            }
+        } catch (ExecutionException | TimeoutException | InterruptedException e) {
+            Assertions.fail(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        CrtResource.waitForNoResources();
+    }
+
     /**
      * Runs a dummy service on a random port and creates a connection for it so a test can do whatever on the connection.
      * Assumes the particular operation invocations don't matter.
@@ -360,4 +535,58 @@ public class EventStreamRPCClientTests {
             Assertions.fail(e);
         }
     }
+
+    @Test
+    public void testInvokeOnClosedConnectionClosesTracker() {
+        final EventStreamRPCClientMetrics metrics = new EventStreamRPCClientMetrics();
+        final List<Throwable> spansEnded = new LinkedList<>();
+        final RpcTracer tracer = new RpcTracer() {
+            @Override
+            public RpcSpan startClientSpan(OperationModelContext<?, ?, ?, ?> operationModelContext) {
+                return new RpcSpan() {
+                    @Override
+                    public String getTraceContext() {
+                        return null;
+                    }
+
+                    @Override
+                    public void phaseStarted(RpcTracer.Phase phase) { }
+
+                    @Override
+                    public void phaseEnded(RpcTracer.Phase phase, Throwable error) { }
+
+                    @Override
+                    public void end(Throwable error) {
+                        spansEnded.add(error);
+                    }
+                };
+            }
+
+            @Override
+            public RpcSpan startServerSpan(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                                           String traceContext) {
+                return null;
+            }
+        };
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = new SocketOptions();
+             final EventStreamRPCConnection connection = new EventStreamRPCConnection(
+                     new EventStreamRPCConnectionConfig(clientBootstrap, elGroup, socketOptions, null, "127.0.0.1",
+                             randomPort(), () -> TestAuthNZHandlers.getClientAuth("accepted.foo")))) {
+            connection.setClientListener(metrics);
+            connection.setConnectionOptions(ClientConnectionOptions.builder().withTracer(tracer).build());
+            //never connected, so the stream cannot be opened
+            Assertions.assertThrows(EventStreamClosedException.class, () -> new EventStreamRPCClient(connection)
+                    .doOperationInvoke(EchoTestRPCServiceModel.getEchoMessageModelContext(), new EchoMessageRequest(),
+                            Optional.empty()));
+            Assertions.assertEquals(0, metrics.getOpenContinuations());
+            Assertions.assertEquals(Long.valueOf(1),
+                    metrics.getOperationErrors().get(EchoTestRPCServiceModel.ECHO_MESSAGE));
+            Assertions.assertEquals(1, spansEnded.size());
+            Assertions.assertEquals(EventStreamClosedException.class, spansEnded.get(0).getClass());
+        }
+        CrtResource.waitForNoResources();
+    }
 }
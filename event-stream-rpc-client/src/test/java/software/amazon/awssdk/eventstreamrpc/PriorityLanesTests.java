@@ -0,0 +1,112 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+public class PriorityLanesTests {
+    private static final String BULK = "bulk";
+    private static final String CONTROL = "control";
+
+    private static PriorityLanes newLanes(final int messagesPerSecond, final int burst, final int maxQueued) {
+        final PriorityLaneOptions options = new PriorityLaneOptions(messagesPerSecond, burst, maxQueued);
+        options.setOperationPriority(BULK, OperationPriority.BULK);
+        options.setOperationPriority(CONTROL, OperationPriority.CONTROL);
+        return new PriorityLanes(options);
+    }
+
+    /**
+     * Returns a message recording its index when written, failing if written with the lanes' lock held
+     */
+    private static Supplier<CompletableFuture<Void>> message(final PriorityLanes lanes, final List<Integer> written,
+                                                             final int index) {
+        return () -> {
+            Assertions.assertFalse(Thread.holdsLock(lanes), "Message written with the lanes' lock held");
+            written.add(index);
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    @Test
+    void testBulkMessagesWrittenInOrderOutsideLock() throws Exception {
+        final PriorityLanes lanes = newLanes(200, 4, 100);
+        final PriorityLanes.Lane lane = lanes.laneFor(BULK);
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Void>> sent = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            sent.add(lane.write(message(lanes, written, i), false));
+        }
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(40, written.size());
+        for (int i = 0; i < written.size(); ++i) {
+            Assertions.assertEquals(i, written.get(i));
+        }
+        Assertions.assertEquals(0, lanes.getQueuedBulkMessages());
+    }
+
+    @Test
+    void testFullLaneTurnsMessageAway() throws Exception {
+        final PriorityLanes lanes = newLanes(10, 1, 2);
+        final PriorityLanes.Lane lane = lanes.laneFor(BULK);
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> first = lane.write(message(lanes, written, 0), false);
+        final CompletableFuture<Void> second = lane.write(message(lanes, written, 1), false);
+        final CompletableFuture<Void> third = lane.write(message(lanes, written, 2), false);
+        Assertions.assertEquals(2, lanes.getQueuedBulkMessages());
+
+        final AtomicBoolean rejectedWritten = new AtomicBoolean();
+        final CompletableFuture<Void> rejected = lane.write(() -> {
+            rejectedWritten.set(true);
+            return CompletableFuture.completedFuture(null);
+        }, false);
+        final ExecutionException e = Assertions.assertThrows(ExecutionException.class, rejected::get);
+        Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+        //a message closing its stream is queued even past the limit
+        final CompletableFuture<Void> closing = lane.write(message(lanes, written, 3), true);
+        CompletableFuture.allOf(first, second, third, closing).get(10, TimeUnit.SECONDS);
+        Assertions.assertFalse(rejectedWritten.get());
+        Assertions.assertEquals(4, written.size());
+        for (int i = 0; i < written.size(); ++i) {
+            Assertions.assertEquals(i, written.get(i));
+        }
+    }
+
+    @Test
+    void testControlMessageHoldsBulkLane() throws Exception {
+        final PriorityLanes lanes = newLanes(1000, 8, 100);
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> controlFlushed = new CompletableFuture<>();
+        final CompletableFuture<Void> control = lanes.laneFor(CONTROL).write(() -> controlFlushed, false);
+        final CompletableFuture<Void> bulk = lanes.laneFor(BULK).write(message(lanes, written, 0), false);
+        Thread.sleep(50);
+        Assertions.assertTrue(written.isEmpty());
+        Assertions.assertEquals(1, lanes.getQueuedBulkMessages());
+
+        controlFlushed.complete(null);
+        control.get(10, TimeUnit.SECONDS);
+        bulk.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(Collections.singletonList(0), written);
+    }
+
+    @Test
+    void testNormalOperationHasNoLane() {
+        Assertions.assertNull(newLanes(10, 1, 2).laneFor("normal"));
+    }
+}
@@ -39,6 +39,24 @@ dependencies {
     testImplementation(project(":test-model-codegen"))
 }
 
+/*
+ * Flight recorder events
+ * ====================================================
+ *
+ * The event types refer to jdk.jfr, which the Java 8 platform API lacks. They are compiled from their own source
+ * set against the JDK running the build, still to Java 8 bytecode, and packaged with the main classes.
+ * RpcFlightRecorder loads them by name, only on a JVM with JFR.
+ */
+val jfr by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output + sourceSets["main"].compileClasspath
+}
+
+tasks.named<Jar>("jar") {
+    from(jfr.output)
+}
+
+sourceSets["test"].runtimeClasspath += jfr.output
+
 val test by tasks.getting(Test::class) {
     // Use junit platform for unit tests
     useJUnitPlatform()
@@ -0,0 +1,355 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event types, and the only class referring to jdk.jfr. Compiled apart from the main
+ * sources, which target the Java 8 platform API, and loaded reflectively by RpcFlightRecorder once it finds
+ * JFR is there. Called only while a recording is running.
+ */
+final class RpcFlightRecorderEvents implements RpcFlightRecorder.Events {
+    private static final String PREFIX = RpcFlightRecorder.EVENT_NAME_PREFIX;
+    private static final String CATEGORY = "Event Stream RPC";
+
+    RpcFlightRecorderEvents() {
+    }
+
+    @Name(PREFIX + "Connect")
+    @Label("Connect")
+    @Category({"AWS", CATEGORY})
+    @Description("A client connecting its socket to an event stream RPC server")
+    static final class ConnectEvent extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Port")
+        int port;
+
+        @Label("Error")
+        @Description("Why the socket failed to connect, if it did")
+        String error;
+    }
+
+    @Name(PREFIX + "ConnectAck")
+    @Label("Connect Ack")
+    @Category({"AWS", CATEGORY})
+    @Description("A client waiting for the server to accept or reject its connect message")
+    static final class ConnectAckEvent extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Port")
+        int port;
+
+        @Label("Accepted")
+        boolean accepted;
+    }
+
+    @Name(PREFIX + "Disconnect")
+    @Label("Disconnect")
+    @Category({"AWS", CATEGORY})
+    @Description("A client connection closing, lasting as long as it was connected")
+    static final class DisconnectEvent extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Port")
+        int port;
+
+        @Label("Error")
+        @Description("Why the connection closed, if in error")
+        String error;
+    }
+
+    @Name(PREFIX + "OperationInvoke")
+    @Label("Operation Invoke")
+    @Category({"AWS", CATEGORY})
+    @Description("A client invoking an operation, until its response arrives")
+    static final class OperationInvokeEvent extends Event {
+        @Label("Operation")
+        String operationName;
+
+        @Label("Request Size")
+        @DataAmount
+        long requestBytes;
+
+        @Label("Response Size")
+        @DataAmount
+        long responseBytes;
+
+        @Label("Error")
+        String error;
+    }
+
+    @Name(PREFIX + "HandlerExecution")
+    @Label("Handler Execution")
+    @Category({"AWS", CATEGORY})
+    @Description("A server operation handler handling a request, until its response is ready")
+    static final class HandlerExecutionEvent extends Event {
+        @Label("Operation")
+        String operationName;
+
+        @Label("Error")
+        String error;
+    }
+
+    @Name(PREFIX + "StreamEventSent")
+    @Label("Stream Event Sent")
+    @Category({"AWS", CATEGORY})
+    @StackTrace(false)
+    static final class StreamEventSentEvent extends Event {
+        @Label("Operation")
+        String operationName;
+
+        @Label("Model Type")
+        String applicationModelType;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Server")
+        @Description("True if the server sent the event, false if the client did")
+        boolean server;
+    }
+
+    @Name(PREFIX + "StreamEventReceived")
+    @Label("Stream Event Received")
+    @Category({"AWS", CATEGORY})
+    @StackTrace(false)
+    static final class StreamEventReceivedEvent extends Event {
+        @Label("Operation")
+        String operationName;
+
+        @Label("Model Type")
+        String applicationModelType;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Server")
+        @Description("True if the server received the event, false if the client did")
+        boolean server;
+    }
+
+    @Name(PREFIX + "Serialize")
+    @Label("Serialize")
+    @Category({"AWS", CATEGORY})
+    @Description("A model object written to JSON")
+    @StackTrace(false)
+    static final class SerializeEvent extends Event {
+        @Label("Model Type")
+        String applicationModelType;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name(PREFIX + "Deserialize")
+    @Label("Deserialize")
+    @Category({"AWS", CATEGORY})
+    @Description("A model object read from JSON")
+    @StackTrace(false)
+    static final class DeserializeEvent extends Event {
+        @Label("Model Type")
+        String applicationModelType;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Override
+    public void register() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                update(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                update(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+
+    private static void update(final FlightRecorder recorder) {
+        boolean running = false;
+        for (Recording recording : recorder.getRecordings()) {
+            if (recording.getState() == RecordingState.RUNNING) {
+                running = true;
+                break;
+            }
+        }
+        RpcFlightRecorder.setRecording(running);
+    }
+
+    @Override
+    public Object beginConnect(final String host, final int port) {
+        final ConnectEvent event = new ConnectEvent();
+        event.host = host;
+        event.port = port;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endConnect(final Object begun, final String error) {
+        final ConnectEvent event = (ConnectEvent) begun;
+        event.error = error;
+        event.commit();
+    }
+
+    @Override
+    public Object beginConnectAck(final String host, final int port) {
+        final ConnectAckEvent event = new ConnectAckEvent();
+        event.host = host;
+        event.port = port;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endConnectAck(final Object begun, final boolean accepted) {
+        final ConnectAckEvent event = (ConnectAckEvent) begun;
+        event.accepted = accepted;
+        event.commit();
+    }
+
+    @Override
+    public Object beginDisconnect(final String host, final int port) {
+        final DisconnectEvent event = new DisconnectEvent();
+        event.host = host;
+        event.port = port;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endDisconnect(final Object begun, final String error) {
+        final DisconnectEvent event = (DisconnectEvent) begun;
+        event.error = error;
+        event.commit();
+    }
+
+    @Override
+    public Object beginInvoke(final String operationName) {
+        final OperationInvokeEvent event = new OperationInvokeEvent();
+        event.operationName = operationName;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endInvoke(final Object begun, final long requestBytes, final long responseBytes,
+                          final Throwable error) {
+        final OperationInvokeEvent event = (OperationInvokeEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestBytes = requestBytes;
+            event.responseBytes = responseBytes;
+            event.error = error != null ? error.getClass().getName() : null;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginHandler(final String operationName) {
+        final HandlerExecutionEvent event = new HandlerExecutionEvent();
+        event.operationName = operationName;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endHandler(final Object begun, final Throwable error) {
+        final HandlerExecutionEvent event = (HandlerExecutionEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.error = error != null ? error.getClass().getName() : null;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginSerialize() {
+        final SerializeEvent event = new SerializeEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endSerialize(final Object begun, final String applicationModelType, final long bytes) {
+        final SerializeEvent event = (SerializeEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.applicationModelType = applicationModelType;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginDeserialize() {
+        final DeserializeEvent event = new DeserializeEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endDeserialize(final Object begun, final String applicationModelType, final long bytes) {
+        final DeserializeEvent event = (DeserializeEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.applicationModelType = applicationModelType;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void streamEventSent(final String operationName, final String applicationModelType, final long bytes,
+                                final boolean server) {
+        final StreamEventSentEvent event = new StreamEventSentEvent();
+        if (event.isEnabled()) {
+            event.operationName = operationName;
+            event.applicationModelType = applicationModelType;
+            event.bytes = bytes;
+            event.server = server;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void streamEventReceived(final String operationName, final String applicationModelType, final long bytes,
+                                    final boolean server) {
+        final StreamEventReceivedEvent event = new StreamEventReceivedEvent();
+        if (event.isEnabled()) {
+            event.operationName = operationName;
+            event.applicationModelType = applicationModelType;
+            event.bytes = bytes;
+            event.server = server;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.time.Duration;
+
+/**
+ * Configures stream event batching on one side of a connection. A client offers batching at connect, and a
+ * server configured with it accepts. Each side then holds the stream events it sends for up to the window, and
+ * sends those queued on a stream together in one message once the window closes or a batch limit is reached.
+ * Only stream events are batched, so initial requests and responses, errors and stream closes go at once, after
+ * flushing whatever was queued before them.
+ */
+public class BatchingOptions {
+    /**
+     * Stream events are held for up to this long by default
+     */
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(1);
+    /**
+     * A batch is sent once its events total this many bytes by default
+     */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 32 * 1024;
+    /**
+     * A batch is sent once it holds this many events by default
+     */
+    public static final int DEFAULT_MAX_BATCH_EVENTS = 256;
+
+    private final Duration window;
+    private final int maxBatchBytes;
+    private final int maxBatchEvents;
+
+    /**
+     * Creates batching options with the default window and limits
+     */
+    public BatchingOptions() {
+        this(DEFAULT_WINDOW, DEFAULT_MAX_BATCH_BYTES, DEFAULT_MAX_BATCH_EVENTS);
+    }
+
+    /**
+     * Creates batching options
+     * @param window The longest a stream event is held for others to join it. Must be positive
+     * @param maxBatchBytes The serialized size of the events at which a batch is sent without waiting out the window
+     * @param maxBatchEvents The number of events at which a batch is sent without waiting out the window
+     */
+    public BatchingOptions(final Duration window, final int maxBatchBytes, final int maxBatchEvents) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Batching window must be positive");
+        }
+        if (maxBatchBytes < 1) {
+            throw new IllegalArgumentException("Maximum batch bytes must be positive");
+        }
+        if (maxBatchEvents < 2) {
+            throw new IllegalArgumentException("Maximum batch events must be at least 2");
+        }
+        this.window = window;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchEvents = maxBatchEvents;
+    }
+
+    /**
+     * Returns the longest a stream event is held
+     * @return the longest a stream event is held
+     */
+    public Duration getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the serialized size of the events at which a batch is sent
+     * @return the serialized size of the events at which a batch is sent
+     */
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Returns the number of events at which a batch is sent
+     * @return the number of events at which a batch is sent
+     */
+    public int getMaxBatchEvents() {
+        return maxBatchEvents;
+    }
+}
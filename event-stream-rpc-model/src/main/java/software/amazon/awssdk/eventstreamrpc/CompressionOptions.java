@@ -0,0 +1,120 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configures payload compression on one side of a connection. A client offers its codecs at connect in order
+ * of preference, and a server configured with compression picks the first it also has. Each side then
+ * encodes the payloads it sends of at least its own threshold, keeping any that encoding does not make
+ * smaller as they are.
+ */
+public class CompressionOptions {
+    /**
+     * Payloads smaller than this are sent as they are by default. Below it, little JSON compresses enough
+     * to pay for the work
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+    /**
+     * Payloads decoding to more than this are refused by default, the event stream message size limit. Where
+     * fragmentation is negotiated, the longest payload it reassembles is allowed too
+     */
+    public static final int DEFAULT_MAX_DECODED_LENGTH = 16 * 1024 * 1024;
+
+    private final int threshold;
+    private int maxDecodedLength = DEFAULT_MAX_DECODED_LENGTH;
+    private List<PayloadCodec> codecs = Collections.singletonList(new DeflatePayloadCodec());
+
+    /**
+     * Creates compression options with the deflate codec and the default threshold
+     */
+    public CompressionOptions() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates compression options with the deflate codec
+     * @param threshold The smallest payload in bytes to encode
+     */
+    public CompressionOptions(final int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Compression threshold must be positive");
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the smallest payload encoded
+     * @return the smallest payload encoded
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the longest payload decoded to
+     * @return the longest payload decoded to
+     */
+    public int getMaxDecodedLength() {
+        return maxDecodedLength;
+    }
+
+    /**
+     * Sets the longest payload decoded to, protecting against payloads that expand without bound. Where
+     * fragmentation is negotiated, the longest payload it reassembles is allowed if that is more
+     * @param maxDecodedLength The longest payload in bytes to decode to
+     */
+    public void setMaxDecodedLength(final int maxDecodedLength) {
+        if (maxDecodedLength < 1) {
+            throw new IllegalArgumentException("Maximum decoded length must be positive");
+        }
+        this.maxDecodedLength = maxDecodedLength;
+    }
+
+    /**
+     * Returns the codecs, in order of preference
+     * @return the codecs, in order of preference
+     */
+    public List<PayloadCodec> getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Sets the codecs, in order of preference
+     * @param codecs The codecs to offer or accept. Must not be empty
+     */
+    public void setCodecs(final List<PayloadCodec> codecs) {
+        if (codecs == null || codecs.isEmpty()) {
+            throw new IllegalArgumentException("At least one payload codec is required");
+        }
+        for (PayloadCodec codec : codecs) {
+            if (codec == null || codec.getName() == null || codec.getName().isEmpty()
+                    || codec.getName().indexOf(',') >= 0) {
+                throw new IllegalArgumentException("Payload codecs need a name without commas");
+            }
+        }
+        this.codecs = Collections.unmodifiableList(new ArrayList<>(codecs));
+    }
+
+    /**
+     * Returns the codec of the given name
+     * @param name The name of the encoding
+     * @return the codec, or null if there is none of that name
+     */
+    public PayloadCodec getCodec(final String name) {
+        for (PayloadCodec codec : codecs) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the continuations that are never closed, which leak their native resources and whatever the handlers
+ * on them hold. A sample of the continuations opened is tracked with the stack trace of where each was opened,
+ * and one is reported if the object owning it is garbage collected before it is closed, or if it stays open
+ * longer than the age threshold. Reports go to the log unless another reporter is set, and the counts are kept
+ * for monitoring.
+ *
+ * Off unless installed, in the ClientConnectionOptions of a client connection or the ServerConnectionOptions
+ * of a server. One detector may be shared by any number of them, and should be
+ * closed once none uses it.
+ */
+public class ContinuationLeakDetector implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ContinuationLeakDetector.class.getName());
+
+    /**
+     * A continuation open longer than this is reported by default
+     */
+    public static final Duration DEFAULT_AGE_THRESHOLD = Duration.ofMinutes(10);
+
+    private final double sampleRate;
+    private final Duration ageThreshold;
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Set<Tracker> open = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sampled = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong collectedUnclosed = new AtomicLong();
+    private final AtomicLong outlived = new AtomicLong();
+    private volatile Consumer<Leak> reporter = ContinuationLeakDetector::log;
+    private Thread reaper;  //guarded by this
+    private boolean stopped = false;    //as reaper
+
+    /**
+     * Tracks one sampled continuation until it is closed
+     */
+    public final class Tracker extends PhantomReference<Object> {
+        private final String description;
+        private final Throwable openedAt;
+        private final long openedNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean reported = false;
+
+        private Tracker(final Object owner, final String description) {
+            super(owner, collected);
+            this.description = description;
+            this.openedAt = new Throwable("Continuation opened here");
+        }
+
+        /**
+         * Marks the continuation closed. Idempotent
+         */
+        public void close() {
+            if (done.compareAndSet(false, true)) {
+                open.remove(this);
+                clear();
+                closed.incrementAndGet();
+            }
+        }
+
+        private Leak toLeak(final boolean ownerCollected) {
+            return new Leak(description, openedAt, Duration.ofNanos(System.nanoTime() - openedNanos), ownerCollected);
+        }
+    }
+
+    /**
+     * A continuation found open
+     */
+    public static final class Leak {
+        private final String description;
+        private final Throwable openedAt;
+        private final Duration age;
+        private final boolean ownerCollected;
+
+        Leak(final String description, final Throwable openedAt, final Duration age, final boolean ownerCollected) {
+            this.description = description;
+            this.openedAt = openedAt;
+            this.age = age;
+            this.ownerCollected = ownerCollected;
+        }
+
+        /**
+         * Returns what the continuation was opened for
+         * @return the operation, and the identity on the server side
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Returns where the continuation was opened
+         * @return a throwable whose stack trace is that of the code opening the continuation
+         */
+        public Throwable getOpenedAt() {
+            return openedAt;
+        }
+
+        /**
+         * Returns how long the continuation had been open when found
+         * @return the age of the continuation
+         */
+        public Duration getAge() {
+            return age;
+        }
+
+        /**
+         * Returns true if the object owning the continuation was garbage collected with the continuation still
+         * open, false if it merely outlived the age threshold
+         * @return true if the owner was collected
+         */
+        public boolean isOwnerCollected() {
+            return ownerCollected;
+        }
+    }
+
+    /**
+     * Creates a detector tracking every continuation, reporting those open past the default age threshold
+     */
+    public ContinuationLeakDetector() {
+        this(1.0, DEFAULT_AGE_THRESHOLD);
+    }
+
+    /**
+     * Creates a detector
+     * @param sampleRate The fraction of continuations to track, above 0 and at most 1
+     * @param ageThreshold How long a continuation may stay open before it is reported. Must be positive
+     */
+    public ContinuationLeakDetector(final double sampleRate, final Duration ageThreshold) {
+        if (!(sampleRate > 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("Sample rate must be above 0 and at most 1");
+        }
+        if (ageThreshold.isNegative() || ageThreshold.isZero()) {
+            throw new IllegalArgumentException("Age threshold must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.ageThreshold = ageThreshold;
+    }
+
+    /**
+     * Sends reports somewhere other than the log
+     * @param reporter Takes each continuation found open, on the detector's thread
+     */
+    public void setReporter(final Consumer<Leak> reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Returns the fraction of continuations tracked
+     * @return the sample rate
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns how long a continuation may stay open before it is reported
+     * @return the age threshold
+     */
+    public Duration getAgeThreshold() {
+        return ageThreshold;
+    }
+
+    /**
+     * Starts tracking a continuation, if it is sampled
+     * @param owner The object whose collection with the continuation still open is a leak
+     * @param description What the continuation was opened for, for reports
+     * @return the tracker to close with the continuation, or null if it is not sampled
+     */
+    public Tracker track(final Object owner, final String description) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        synchronized (this) {
+            if (stopped) {
+                return null;
+            }
+            if (reaper == null) {
+                reaper = new Thread(this::runReaper, "EventStreamRPC-leak-detector");
+                reaper.setDaemon(true);
+                reaper.start();
+            }
+        }
+        final Tracker tracker = new Tracker(owner, description);
+        open.add(tracker);
+        sampled.incrementAndGet();
+        return tracker;
+    }
+
+    /**
+     * Returns the number of continuations tracked
+     * @return the number of continuations sampled
+     */
+    public long getSampled() {
+        return sampled.get();
+    }
+
+    /**
+     * Returns the number of tracked continuations still open
+     * @return the number of tracked continuations open
+     */
+    public int getOpen() {
+        return open.size();
+    }
+
+    /**
+     * Returns the number of tracked continuations closed
+     * @return the number of tracked continuations closed
+     */
+    public long getClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Returns the number of tracked continuations whose owner was garbage collected without closing them
+     * @return the number of continuations leaked by their owner
+     */
+    public long getCollectedUnclosed() {
+        return collectedUnclosed.get();
+    }
+
+    /**
+     * Returns the number of tracked continuations that stayed open past the age threshold
+     * @return the number of continuations open too long
+     */
+    public long getOutlived() {
+        return outlived.get();
+    }
+
+    /**
+     * Returns the tracked continuations open now, with where each was opened
+     * @return the open continuations, in no particular order
+     */
+    public List<Leak> getOpenContinuations() {
+        final List<Leak> leaks = new ArrayList<>(open.size());
+        for (Tracker tracker : open) {
+            leaks.add(tracker.toLeak(false));
+        }
+        return leaks;
+    }
+
+    private void runReaper() {
+        final long scanMillis = Math.max(10, Math.min(1000, ageThreshold.toMillis() / 2));
+        long nextScanNanos = System.nanoTime();
+        while (true) {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+            }
+            final Reference<?> reference;
+            try {
+                reference = collected.remove(scanMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (reference instanceof Tracker) {
+                final Tracker tracker = (Tracker) reference;
+                if (open.remove(tracker) && tracker.done.compareAndSet(false, true)) {
+                    collectedUnclosed.incrementAndGet();
+                    report(tracker.toLeak(true));
+                }
+            }
+            if (System.nanoTime() - nextScanNanos >= 0) {
+                nextScanNanos = System.nanoTime() + scanMillis * 1_000_000L;
+                final long thresholdNanos = ageThreshold.toNanos();
+                for (Tracker tracker : open) {
+                    if (!tracker.reported && System.nanoTime() - tracker.openedNanos > thresholdNanos) {
+                        tracker.reported = true;
+                        outlived.incrementAndGet();
+                        report(tracker.toLeak(false));
+                    }
+                }
+            }
+        }
+    }
+
+    private void report(final Leak leak) {
+        try {
+            reporter.accept(leak);
+        } catch (RuntimeException e) {
+            LOGGER.warning("Continuation leak reporter threw " + e.getClass().getCanonicalName() + ": " + e.getMessage());
+        }
+    }
+
+    private static void log(final Leak leak) {
+        LOGGER.log(Level.WARNING, String.format(leak.isOwnerCollected()
+                        ? "%s continuation was garbage collected without being closed, after %d ms open"
+                        : "%s continuation has been open for %d ms", leak.getDescription(), leak.getAge().toMillis()),
+                leak.getOpenedAt());
+    }
+
+    /**
+     * Stops the detector's thread. Continuations tracked are no longer reported
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            stopped = true;
+            if (reaper != null) {
+                reaper.interrupt();
+            }
+        }
+    }
+}
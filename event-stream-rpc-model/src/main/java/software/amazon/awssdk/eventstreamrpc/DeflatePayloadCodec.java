@@ -0,0 +1,168 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The zlib format deflate encoding of java.util.zip, named "deflate" as in HTTP. Each thread keeps its own
+ * Deflater, Inflater and output buffer, reset between payloads, so steady state encoding allocates only the
+ * result. The zlib state held per thread is native memory, freed when the thread ends.
+ */
+public final class DeflatePayloadCodec implements PayloadCodec {
+    /**
+     * The name of the encoding
+     */
+    public static final String NAME = "deflate";
+
+    /**
+     * Decoded payloads are refused beyond this size by default, the event stream message size limit
+     */
+    public static final int DEFAULT_MAX_DECODED_LENGTH = CompressionOptions.DEFAULT_MAX_DECODED_LENGTH;
+
+    //larger output buffers are used once and dropped rather than kept by the thread
+    private static final int MAX_RETAINED_BUFFER_LENGTH = 1024 * 1024;
+    private static final int MIN_BUFFER_LENGTH = 256;
+
+    private final int level;
+    private final int maxDecodedLength;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[MIN_BUFFER_LENGTH]);
+
+    /**
+     * Creates a codec at the fastest compression level, which gets most of the saving on repetitive JSON
+     */
+    public DeflatePayloadCodec() {
+        this(Deflater.BEST_SPEED, DEFAULT_MAX_DECODED_LENGTH);
+    }
+
+    /**
+     * Creates a codec
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @param maxDecodedLength The largest payload {@link #decode(byte[])} decodes to, protecting against payloads
+     *                         that expand without bound. Connections pass their own limit instead
+     */
+    public DeflatePayloadCodec(final int level, final int maxDecodedLength) {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate compression level: " + level);
+        }
+        if (maxDecodedLength < 1) {
+            throw new IllegalArgumentException("Maximum decoded length must be positive");
+        }
+        this.level = level;
+        this.maxDecodedLength = maxDecodedLength;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    /**
+     * Returns the compression level
+     * @return the compression level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the largest payload {@link #decode(byte[])} decodes to
+     * @return the largest payload decoded to
+     */
+    public int getMaxDecodedLength() {
+        return maxDecodedLength;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(final byte[] payload) {
+        //output no smaller than the input is not worth sending, so stop writing at one byte less
+        final int limit = payload.length - 1;
+        if (limit < 1) {
+            return null;
+        }
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] buffer = buffer(Math.min(limit, Math.max(MIN_BUFFER_LENGTH, payload.length / 2)));
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == Math.min(buffer.length, limit)) {
+                if (length == limit) {
+                    return null;
+                }
+                buffer = grow(buffer, limit);
+            }
+            length += deflater.deflate(buffer, length, Math.min(buffer.length, limit) - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    @Override
+    public byte[] decode(final byte[] payload) {
+        return decode(payload, maxDecodedLength);
+    }
+
+    @Override
+    public byte[] decode(final byte[] payload, final int maxDecodedLength) {
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(payload);
+        byte[] buffer = buffer(Math.min(maxDecodedLength, Math.max(MIN_BUFFER_LENGTH, payload.length * 4)));
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == Math.min(buffer.length, maxDecodedLength)) {
+                    if (length == maxDecodedLength) {
+                        throw new IllegalArgumentException(String.format(
+                                "Deflate payload decodes to more than %d bytes", maxDecodedLength));
+                    }
+                    buffer = grow(buffer, maxDecodedLength);
+                }
+                final int inflated = inflater.inflate(buffer, length,
+                        Math.min(buffer.length, maxDecodedLength) - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Deflate payload is truncated");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid deflate payload: " + e.getMessage(), e);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Returns this thread's output buffer, at least the given length
+     */
+    private byte[] buffer(final int length) {
+        final byte[] buffer = buffers.get();
+        if (buffer.length >= length) {
+            return buffer;
+        }
+        return keep(new byte[length]);
+    }
+
+    private byte[] grow(final byte[] buffer, final int limit) {
+        final int length = (int) Math.min(limit, Math.max(MIN_BUFFER_LENGTH, 2L * buffer.length));
+        return keep(Arrays.copyOf(buffer, length));
+    }
+
+    private byte[] keep(final byte[] buffer) {
+        if (buffer.length <= MAX_RETAINED_BUFFER_LENGTH) {
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -23,6 +23,8 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import software.amazon.awssdk.eventstreamrpc.model.AccessDeniedException;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+import software.amazon.awssdk.eventstreamrpc.model.QuotaExceededException;
+import software.amazon.awssdk.eventstreamrpc.model.ServiceUnavailableException;
 import software.amazon.awssdk.eventstreamrpc.model.UnsupportedOperationException;
 import software.amazon.awssdk.eventstreamrpc.model.ValidationException;
 import software.amazon.awssdk.crt.utils.StringUtils;
@@ -210,6 +212,20 @@ public abstract class EventStreamRPCServiceModel {
         return Arrays.equals(lhs.get(), rhs.get());
     }
 
+    /**
+     * Used to compare two members of a blob shape for equality, as held by models generated with compact
+     * member fields, where an unset member is null
+     *
+     * Note: Generated code for equals method of Smithy shapes relies on this
+     *
+     * @param lhs The first to compare
+     * @param rhs The second to compare
+     * @return True if both are equal, false otherwise
+     */
+    public static boolean blobTypeEquals(byte[] lhs, byte[] rhs) {
+        return Arrays.equals(lhs, rhs);
+    }
+
     private static class Base64BlobSerializerDeserializer implements JsonSerializer<byte[]>, JsonDeserializer<byte[]> {
         @Override
         public byte[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
@@ -250,6 +266,8 @@ public abstract class EventStreamRPCServiceModel {
         FRAMEWORK_APPLICATION_MODEL_TYPES.put(AccessDeniedException.ERROR_CODE, AccessDeniedException.class);
         FRAMEWORK_APPLICATION_MODEL_TYPES.put(UnsupportedOperationException.ERROR_CODE, UnsupportedOperationException.class);
         FRAMEWORK_APPLICATION_MODEL_TYPES.put(ValidationException.ERROR_CODE, ValidationException.class);
+        FRAMEWORK_APPLICATION_MODEL_TYPES.put(ServiceUnavailableException.ERROR_CODE, ServiceUnavailableException.class);
+        FRAMEWORK_APPLICATION_MODEL_TYPES.put(QuotaExceededException.ERROR_CODE, QuotaExceededException.class);
     }
 
     /**
@@ -291,15 +309,39 @@ public abstract class EventStreamRPCServiceModel {
      */
     public abstract OperationModelContext getOperationModelContext(String operationName);
 
+    /**
+     * Builds the JSON codecs for the request, response and stream event types of the given operations, which
+     * otherwise happens on the first message of each type. Lets a short-lived client move that work off its
+     * first call, for example onto another thread while the connection is set up. Names that are not
+     * operations of this service are ignored
+     *
+     * @param operationNames The names of the operations to prepare
+     */
+    public void warmUp(final Collection<String> operationNames) {
+        final Gson gson = getGson();
+        for (final String operationName : operationNames) {
+            final OperationModelContext<?, ?, ?, ?> operationModelContext = getOperationModelContext(operationName);
+            if (operationModelContext == null) {
+                continue;
+            }
+            gson.getAdapter(operationModelContext.getRequestTypeClass());
+            gson.getAdapter(operationModelContext.getResponseTypeClass());
+            operationModelContext.getStreamingRequestTypeClass().ifPresent(gson::getAdapter);
+            operationModelContext.getStreamingResponseTypeClass().ifPresent(gson::getAdapter);
+        }
+    }
+
     public byte[] toJson(final EventStreamJsonMessage message) {
+        final Object flightEvent = RpcFlightRecorder.beginSerialize();
         try {
-            final byte[] json = message.toPayload(getGson());
+            byte[] json = message.toPayload(getGson());
             final String stringJson = new String(json, StandardCharsets.UTF_8);
             //this feels like a hack. I'd prefer if java objects with no fields set serialized to being an empty object
             //rather than "null"
             if (null == stringJson || "null".equals(stringJson) || stringJson.isEmpty()) {
-                return "{}".getBytes(StandardCharsets.UTF_8);
+                json = "{}".getBytes(StandardCharsets.UTF_8);
             }
+            RpcFlightRecorder.endSerialize(flightEvent, message.getApplicationModelType(), json.length);
             return json;
         } catch (Exception e) {
             throw new SerializationException(message, e);
@@ -357,8 +399,12 @@ public abstract class EventStreamRPCServiceModel {
      * @return A EventStreamMessage of type T
      */
     public <T extends EventStreamJsonMessage> T fromJson(final Class<T> clazz, byte[] payload) {
+        final Object flightEvent = RpcFlightRecorder.beginDeserialize();
         try {
-            return getGson().fromJson(new String(payload, StandardCharsets.UTF_8), clazz);
+            final T message = getGson().fromJson(new String(payload, StandardCharsets.UTF_8), clazz);
+            RpcFlightRecorder.endDeserialize(flightEvent, message != null ? message.getApplicationModelType()
+                    : clazz.getName(), payload.length);
+            return message;
         } catch (Exception e) {
             throw new DeserializationException(payload, e);
         }
@@ -0,0 +1,154 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts back together the payloads arriving in fragments on one stream, one payload at a time. The whole
+ * payload is allocated once, at the length the first fragment gives, and filled as fragments arrive, unless a
+ * PayloadFragmentConsumer takes the fragments instead.
+ *
+ * A payload that cannot be reassembled is refused at its last fragment, with the rest discarded until then. A
+ * receiver closing the stream any sooner would leave the sender writing fragments to a stream the connection
+ * no longer knows, which the event stream protocol treats as an error on the whole connection.
+ *
+ * Not thread safe. A stream's messages arrive on one thread, in order.
+ */
+public final class FragmentAssembler {
+    private final int maxPayloadLength;
+
+    private int nextSequence = 0;
+    private List<Header> headers;
+    private int totalLength;
+    private byte[] payload;
+    private int length;
+    private PayloadFragmentConsumer consumer;
+    private RuntimeException refusal;
+
+    /**
+     * Creates an assembler
+     * @param maxPayloadLength The longest payload to reassemble
+     */
+    public FragmentAssembler(final int maxPayloadLength) {
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Adds the next fragment received
+     * @param fragmentHeaders The headers of the fragment
+     * @param fragment The fragment
+     * @param candidate Offered the payload at its first fragment, or null to reassemble it
+     * @return the payload and the headers it was sent with once its last fragment arrives, or null before then
+     *         or if the consumer took it
+     * @throws IllegalArgumentException at the last fragment of a payload refused for being out of sequence or
+     *                                  too long, or what the consumer threw
+     */
+    public MessageAmendInfo add(final List<Header> fragmentHeaders, final byte[] fragment,
+                                final PayloadFragmentConsumer candidate) {
+        final boolean last = isLast(fragmentHeaders);
+        if (refusal == null) {
+            try {
+                return assemble(fragmentHeaders, fragment, candidate, last);
+            } catch (RuntimeException e) {
+                reset();
+                refusal = e;
+            }
+        }
+        if (!last) {
+            return null;
+        }
+        final RuntimeException refused = refusal;
+        refusal = null;
+        throw refused;
+    }
+
+    private MessageAmendInfo assemble(final List<Header> fragmentHeaders, final byte[] fragment,
+                                      final PayloadFragmentConsumer candidate, final boolean last) {
+        final int sequence = PayloadFragmentation.findInt(fragmentHeaders, PayloadFragmentation.SEQUENCE_HEADER);
+        if (sequence != nextSequence) {
+            throw new IllegalArgumentException(String.format("Fragment %d out of sequence, expected %d",
+                    sequence, nextSequence));
+        }
+        if (sequence == 0) {
+            start(fragmentHeaders, candidate);
+        }
+        final int fragmentLength = fragment == null ? 0 : fragment.length;
+        if (fragmentLength > totalLength - length) {
+            throw new IllegalArgumentException("Fragments run past the payload's total length");
+        }
+        if (consumer != null) {
+            consumer.onPayloadFragment(fragment == null ? new byte[0] : fragment, last);
+        } else if (fragmentLength > 0) {
+            System.arraycopy(fragment, 0, payload, length, fragmentLength);
+        }
+        length += fragmentLength;
+        ++nextSequence;
+        if (!last) {
+            return null;
+        }
+        if (length != totalLength) {
+            throw new IllegalArgumentException(String.format("Fragments end at %d of the payload's %d bytes",
+                    length, totalLength));
+        }
+        final MessageAmendInfo assembled = consumer == null ? new MessageAmendInfo(headers, payload) : null;
+        reset();
+        return assembled;
+    }
+
+    private void start(final List<Header> fragmentHeaders, final PayloadFragmentConsumer candidate) {
+        totalLength = PayloadFragmentation.findInt(fragmentHeaders, PayloadFragmentation.TOTAL_LENGTH_HEADER);
+        if (totalLength < 0 || totalLength > maxPayloadLength) {
+            throw new IllegalArgumentException(totalLength < 0 ? "First fragment is missing the payload's total length"
+                    : String.format("Payload of %d bytes is longer than the %d accepted", totalLength, maxPayloadLength));
+        }
+        headers = new ArrayList<>(fragmentHeaders.size());
+        for (Header header : fragmentHeaders) {
+            final String name = header.getName();
+            if (!name.equals(PayloadFragmentation.SEQUENCE_HEADER) && !name.equals(PayloadFragmentation.TOTAL_LENGTH_HEADER)
+                    && !name.equals(PayloadFragmentation.LAST_HEADER)) {
+                headers.add(header);
+            }
+        }
+        if (candidate != null && candidate.onFragmentedPayload(headers, totalLength)) {
+            consumer = candidate;
+        } else {
+            payload = new byte[totalLength];
+        }
+    }
+
+    /**
+     * Returns true between the first and last fragments of a payload
+     * @return true if a payload is part way through arriving
+     */
+    public boolean isAssembling() {
+        return nextSequence > 0 || refusal != null;
+    }
+
+    private static boolean isLast(final List<Header> fragmentHeaders) {
+        for (Header header : fragmentHeaders) {
+            if (header.getName().equals(PayloadFragmentation.LAST_HEADER)) {
+                return header.getHeaderType() == HeaderType.BooleanTrue;
+            }
+        }
+        return false;
+    }
+
+    private void reset() {
+        nextSequence = 0;
+        headers = null;
+        totalLength = 0;
+        payload = null;
+        length = 0;
+        consumer = null;
+    }
+}
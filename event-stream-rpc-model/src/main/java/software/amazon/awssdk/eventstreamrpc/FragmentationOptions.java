@@ -0,0 +1,77 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * Configures payload fragmentation on one side of a connection. A client offers its fragment length at connect,
+ * and a server configured with fragmentation accepts the smaller of that and its own. Both sides then send
+ * payloads longer than the fragment length as a sequence of messages on the stream, so no payload is bound by the
+ * event stream message size limit. Each side refuses to reassemble payloads longer than its own maximum.
+ */
+public class FragmentationOptions {
+    /**
+     * Payloads longer than this are split by default
+     */
+    public static final int DEFAULT_FRAGMENT_LENGTH = 1024 * 1024;
+    /**
+     * The longest fragment allowed, leaving room for headers within the event stream message size limit
+     */
+    public static final int MAX_FRAGMENT_LENGTH = 8 * 1024 * 1024;
+    /**
+     * The shortest fragment allowed
+     */
+    public static final int MIN_FRAGMENT_LENGTH = 1024;
+    /**
+     * Longer payloads are refused by default rather than reassembled
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 256 * 1024 * 1024;
+
+    private final int fragmentLength;
+    private final int maxPayloadLength;
+
+    /**
+     * Creates fragmentation options with the default fragment and maximum payload lengths
+     */
+    public FragmentationOptions() {
+        this(DEFAULT_FRAGMENT_LENGTH, DEFAULT_MAX_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * Creates fragmentation options
+     * @param fragmentLength The longest payload to send in one message, from {@link #MIN_FRAGMENT_LENGTH} to
+     *                       {@link #MAX_FRAGMENT_LENGTH}
+     * @param maxPayloadLength The longest payload to reassemble from fragments received
+     */
+    public FragmentationOptions(final int fragmentLength, final int maxPayloadLength) {
+        if (fragmentLength < MIN_FRAGMENT_LENGTH || fragmentLength > MAX_FRAGMENT_LENGTH) {
+            throw new IllegalArgumentException(String.format("Fragment length must be from %d to %d",
+                    MIN_FRAGMENT_LENGTH, MAX_FRAGMENT_LENGTH));
+        }
+        if (maxPayloadLength < 1) {
+            throw new IllegalArgumentException("Maximum payload length must be positive");
+        }
+        this.fragmentLength = fragmentLength;
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Returns the longest payload sent in one message
+     * @return the longest payload sent in one message
+     */
+    public int getFragmentLength() {
+        return fragmentLength;
+    }
+
+    /**
+     * Returns the longest payload reassembled
+     * @return the longest payload reassembled
+     */
+    public int getMaxPayloadLength() {
+        return maxPayloadLength;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.MessageFlags;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An operation stream between a client and a service in the same JVM, standing in for a native continuation.
+ * Messages are handed to the other end as model objects, with no framing or serialization.
+ *
+ * Each end delivers to its handler in order and never concurrently, on the thread of whichever sender finds it
+ * idle, so a handler may send from inside its own callbacks. A message sent with the TerminateStream flag, or
+ * close() on either end, closes the continuation: both handlers are told once, after the messages already sent
+ * to them, and later sends fail with EventStreamClosedException.
+ *
+ * Messages are passed by reference unless a service model is given to copy them with, in which case each is
+ * copied through a JSON round trip when sent and neither side can observe the other mutating it.
+ */
+public final class InProcessContinuation {
+    private static final Logger LOGGER = Logger.getLogger(InProcessContinuation.class.getName());
+
+    private final String operationName;
+    private final EventStreamRPCServiceModel copyModel;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final End clientEnd = new End();
+    private final End serverEnd = new End();
+
+    /**
+     * Creates a new in-process continuation
+     * @param operationName The operation the stream invokes
+     * @param copyModel The service model to copy messages with, or null to pass them by reference
+     */
+    public InProcessContinuation(final String operationName, final EventStreamRPCServiceModel copyModel) {
+        this.operationName = operationName;
+        this.copyModel = copyModel;
+    }
+
+    /**
+     * Returns the operation the stream invokes
+     * @return the operation the stream invokes
+     */
+    public String getOperationName() {
+        return operationName;
+    }
+
+    /**
+     * Returns the end held by the client
+     * @return the end held by the client
+     */
+    public End getClientEnd() {
+        return clientEnd;
+    }
+
+    /**
+     * Returns the end held by the service
+     * @return the end held by the service
+     */
+    public End getServerEnd() {
+        return serverEnd;
+    }
+
+    /**
+     * Returns true once the continuation is closed
+     * @return true once the continuation is closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    private void close() {
+        if (closed.compareAndSet(false, true)) {
+            clientEnd.deliver(clientEnd::closed);
+            serverEnd.deliver(serverEnd::closed);
+        }
+    }
+
+    private EventStreamJsonMessage copy(final EventStreamJsonMessage message) {
+        if (copyModel == null || message == null) {
+            return message;
+        }
+        //into the modeled class, as off the wire: shared instances such as VOID are anonymous subclasses
+        final Class<? extends EventStreamJsonMessage> modelClass = copyModel
+                .getApplicationModelClass(message.getApplicationModelType()).orElse(message.getClass());
+        return copyModel.fromJson(modelClass, copyModel.toJson(message));
+    }
+
+    /**
+     * One side of an in-process continuation
+     */
+    public final class End {
+        private final Queue<Runnable> deliveries = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingDeliveries = new AtomicInteger();
+        private volatile InProcessStreamHandler handler;
+        private boolean closedDelivered = false;    //only touched while delivering
+
+        private End() { }
+
+        /**
+         * Sets the handler for messages sent to this end. Must be set before the other end sends anything
+         * @param handler The handler
+         */
+        public void setHandler(final InProcessStreamHandler handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * Sends a message to the other end
+         * @param message The message, or null to send one with no payload
+         * @param messageType The message type
+         * @param messageFlags The message flags. TerminateStream closes the continuation once it is sent
+         * @return A future that completes once the other end's handler has been invoked with the message
+         */
+        public CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final MessageType messageType,
+                                                   final int messageFlags) {
+            final CompletableFuture<Void> delivered = new CompletableFuture<>();
+            if (closed.get()) {
+                delivered.completeExceptionally(closedException());
+                return delivered;
+            }
+            final EventStreamJsonMessage sent;
+            try {
+                sent = copy(message);
+            } catch (Exception e) {
+                delivered.completeExceptionally(e);
+                return delivered;
+            }
+            final End peer = this == clientEnd ? serverEnd : clientEnd;
+            peer.deliver(() -> peer.message(sent, messageType, messageFlags, delivered));
+            if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                InProcessContinuation.this.close();
+            }
+            return delivered;
+        }
+
+        /**
+         * Closes the continuation from this end
+         */
+        public void close() {
+            InProcessContinuation.this.close();
+        }
+
+        /**
+         * Returns true once the continuation is closed
+         * @return true once the continuation is closed
+         */
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        private EventStreamClosedException closedException() {
+            return new EventStreamClosedException(String.format("EventStream continuation for %s is already closed!",
+                    operationName));
+        }
+
+        private void deliver(final Runnable delivery) {
+            deliveries.add(delivery);
+            if (pendingDeliveries.getAndIncrement() != 0) {
+                return;     //the thread already delivering will pick it up
+            }
+            do {
+                deliveries.poll().run();
+            } while (pendingDeliveries.decrementAndGet() != 0);
+        }
+
+        private void message(final EventStreamJsonMessage message, final MessageType messageType,
+                             final int messageFlags, final CompletableFuture<Void> delivered) {
+            if (closedDelivered) {
+                //raced a close from the other side
+                delivered.completeExceptionally(closedException());
+                return;
+            }
+            final InProcessStreamHandler currentHandler = handler;
+            if (currentHandler == null) {
+                LOGGER.warning(String.format("%s message dropped, no handler set on in-process continuation",
+                        operationName));
+            } else {
+                try {
+                    currentHandler.onMessage(message, messageType, messageFlags);
+                } catch (Throwable e) {
+                    LOGGER.log(Level.WARNING, String.format("%s in-process stream handler threw %s", operationName,
+                            e.getClass().getCanonicalName()), e);
+                }
+            }
+            delivered.complete(null);
+        }
+
+        private void closed() {
+            closedDelivered = true;
+            final InProcessStreamHandler currentHandler = handler;
+            if (currentHandler != null) {
+                try {
+                    currentHandler.onClosed();
+                } catch (Throwable e) {
+                    LOGGER.log(Level.WARNING, String.format("%s in-process stream handler threw %s on close",
+                            operationName, e.getClass().getCanonicalName()), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+
+import java.util.List;
+
+/**
+ * A service that clients in the same JVM connect to directly rather than through a socket. Implemented by the
+ * server, used by the client's in-process connection
+ */
+public interface InProcessEndpoint {
+    /**
+     * Runs the checks a socket connect gets: version, then authentication and authorization
+     *
+     * @param headers The connect message headers
+     * @param payload The connect message payload
+     * @param onSessionClosed Invoked once when the returned session closes, whichever side closes it
+     * @return the new session, or null if the connect was rejected
+     */
+    Session connect(List<Header> headers, byte[] payload, Runnable onSessionClosed);
+
+    /**
+     * An accepted in-process connection
+     */
+    interface Session extends AutoCloseable {
+        /**
+         * Binds the server end of a new operation stream to the service's handler for the operation. The
+         * client end's handler must already be set
+         *
+         * @param continuation The stream to open
+         * @throws EventStreamClosedException if the session is closed
+         */
+        void openStream(InProcessContinuation continuation);
+
+        /**
+         * Closes every stream still open on the session, then the session itself
+         */
+        @Override
+        void close();
+    }
+}
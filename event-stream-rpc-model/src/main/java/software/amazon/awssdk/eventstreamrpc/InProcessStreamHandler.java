@@ -0,0 +1,32 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+/**
+ * Receives what arrives on one end of an {@link InProcessContinuation}
+ */
+public interface InProcessStreamHandler {
+    /**
+     * Invoked for each message sent by the other end, in the order they were sent. Never invoked concurrently
+     * for the same end
+     *
+     * @param message The message. Null for a message with no payload, such as a bare stream close or an error
+     *                the service has no model for
+     * @param messageType The message type
+     * @param messageFlags The message flags. TerminateStream is set on the last message of the stream
+     */
+    void onMessage(EventStreamJsonMessage message, MessageType messageType, int messageFlags);
+
+    /**
+     * Invoked once when the continuation closes, after every message sent to this end before the close
+     */
+    void onClosed();
+}
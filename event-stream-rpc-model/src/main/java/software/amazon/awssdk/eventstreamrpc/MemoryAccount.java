@@ -0,0 +1,323 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Counts the payload bytes one side of a connection holds in flight, from the moment a message arrives to when
+ * its handler returns, against the quotas of {@link MemoryQuotaOptions}. Bytes are charged to the stream the
+ * message arrived on and to the connection. Fragments of a payload stay charged until the whole payload is
+ * handled, and a handler that hands a message to another thread may keep its bytes charged until that thread
+ * is done with {@link #retainDispatched()}.
+ *
+ * Backpressure signals are negotiated at connect: the client offers with the {@link #QUOTA_HEADER} in its
+ * connect message, and a server with quotas of its own returns it in its connect ack. A stream past a soft
+ * quota then sends a header only message carrying the {@link #BACKPRESSURE_HEADER} set, and sends it again
+ * unset once its bytes in flight drop back. Signals are advice the sender may heed, and hard quotas hold
+ * whether or not they were negotiated.
+ */
+public final class MemoryAccount {
+    /**
+     * Connect and connect ack header offering, then accepting, backpressure signals
+     */
+    public static final String QUOTA_HEADER = ":memory-quota";
+    /**
+     * Header of the message a stream sends when it goes past, or drops back under, a soft quota
+     */
+    public static final String BACKPRESSURE_HEADER = ":backpressure";
+
+    private static final Runnable NO_RELEASE = () -> { };
+    private static final ThreadLocal<Dispatch> DISPATCHING = new ThreadLocal<>();
+
+    private final MemoryQuotaOptions options;
+    private final boolean signalling;
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicLong peakInFlightBytes = new AtomicLong();
+    private final AtomicLong refusedMessages = new AtomicLong();
+
+    /**
+     * Counts the bytes in flight on one stream
+     */
+    public final class Stream {
+        private final Consumer<Boolean> signaller;
+        private final AtomicLong streamInFlightBytes = new AtomicLong();
+        private boolean signalled = false;  //guarded by this
+        private boolean signalling = false; //guarded by this
+        private volatile boolean peerBackpressured = false;
+
+        private Stream(final Consumer<Boolean> signaller) {
+            this.signaller = signaller;
+        }
+
+        /**
+         * Charges the bytes of a message that just arrived, signalling backpressure if that takes the stream or
+         * its connection past a soft quota
+         * @param bytes The payload length of the message
+         * @return false, with nothing charged, if the message would take the stream or its connection past a
+         *         hard quota and must not be handled
+         */
+        public boolean acquire(final long bytes) {
+            final long streamBytes = streamInFlightBytes.addAndGet(bytes);
+            final long connectionBytes = inFlightBytes.addAndGet(bytes);
+            if (streamBytes > options.getStreamHardQuota() || connectionBytes > options.getConnectionHardQuota()) {
+                streamInFlightBytes.addAndGet(-bytes);
+                inFlightBytes.addAndGet(-bytes);
+                refusedMessages.incrementAndGet();
+                return false;
+            }
+            peakInFlightBytes.accumulateAndGet(connectionBytes, Math::max);
+            if (signaller != null && isOverSoftQuota(streamBytes, connectionBytes)) {
+                signal();
+            }
+            return true;
+        }
+
+        /**
+         * Releases the bytes of a message that was handled, signalling the backpressure is over if the stream
+         * has nothing left in flight or is back under the soft quotas
+         * @param bytes The payload length of the message
+         */
+        public void release(final long bytes) {
+            final long streamBytes = streamInFlightBytes.addAndGet(-bytes);
+            final long connectionBytes = inFlightBytes.addAndGet(-bytes);
+            if (signaller != null && (streamBytes == 0 || !isOverSoftQuota(streamBytes, connectionBytes))) {
+                signal();
+            }
+        }
+
+        /**
+         * Sends the signal for whether the stream is past a soft quota now, if that is not the one last sent.
+         * The decision is taken from the counts under the monitor, so racing acquires and releases agree on it,
+         * but the signal is sent outside it. One thread sends at a time, and checks again after each send for
+         * a change made meanwhile, so signals go out in order and the last one matches the counts
+         */
+        private void signal() {
+            boolean backpressured;
+            synchronized (this) {
+                if (signalling) {
+                    return;
+                }
+                backpressured = isBackpressured();
+                if (backpressured == signalled) {
+                    return;
+                }
+                signalled = backpressured;
+                signalling = true;
+            }
+            while (true) {
+                try {
+                    signaller.accept(backpressured);
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        signalling = false;
+                    }
+                    throw e;
+                }
+                synchronized (this) {
+                    backpressured = isBackpressured();
+                    if (backpressured == signalled) {
+                        signalling = false;
+                        return;
+                    }
+                    signalled = backpressured;
+                }
+            }
+        }
+
+        /**
+         * Runs the handling of a message whose bytes were acquired, releasing them once it returns unless the
+         * handler retained them with {@link #retainDispatched()}
+         * @param bytes The payload length of the message
+         * @param handler Handles the message
+         */
+        public void dispatch(final long bytes, final Runnable handler) {
+            final Dispatch previous = DISPATCHING.get();
+            final Dispatch dispatch = new Dispatch(this, bytes);
+            DISPATCHING.set(dispatch);
+            try {
+                handler.run();
+            } finally {
+                DISPATCHING.set(previous);
+                if (!dispatch.retained) {
+                    release(bytes);
+                }
+            }
+        }
+
+        /**
+         * Takes a backpressure signal sent by the other side of the stream
+         * @param headers The headers of a message received on the stream
+         * @return true if the message was a backpressure signal, which is not to be handled further
+         */
+        public boolean receiveSignal(final List<Header> headers) {
+            for (Header header : headers) {
+                if (header.getName().equals(BACKPRESSURE_HEADER)) {
+                    peerBackpressured = header.getHeaderType() == HeaderType.BooleanTrue;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true while the other side of the stream is past one of its soft quotas and asks this side to
+         * back off sending
+         * @return true if the other side signalled backpressure
+         */
+        public boolean isPeerBackpressured() {
+            return peerBackpressured;
+        }
+
+        /**
+         * Returns the payload bytes in flight on the stream
+         * @return the payload bytes in flight on the stream
+         */
+        public long getInFlightBytes() {
+            return streamInFlightBytes.get();
+        }
+
+        private boolean isBackpressured() {
+            final long streamBytes = streamInFlightBytes.get();
+            return streamBytes > 0 && isOverSoftQuota(streamBytes, inFlightBytes.get());
+        }
+
+        private boolean isOverSoftQuota(final long streamBytes, final long connectionBytes) {
+            return streamBytes > options.getStreamSoftQuota() || connectionBytes > options.getConnectionSoftQuota();
+        }
+    }
+
+    private static final class Dispatch {
+        final Stream stream;
+        final long bytes;
+        boolean retained = false;
+
+        Dispatch(final Stream stream, final long bytes) {
+            this.stream = stream;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Creates the account of one connection
+     * @param options This side's quotas
+     * @param signalling True if backpressure signals were negotiated for the connection
+     */
+    public MemoryAccount(final MemoryQuotaOptions options, final boolean signalling) {
+        this.options = options;
+        this.signalling = signalling;
+    }
+
+    /**
+     * Returns the connect message header offering backpressure signals, which is also the connect ack header
+     * accepting them
+     * @return the header offering or accepting backpressure signals
+     */
+    public static Header createQuotaHeader() {
+        return Header.createHeader(QUOTA_HEADER, true);
+    }
+
+    /**
+     * Returns true if the connect message offers, or the connect ack accepts, backpressure signals
+     * @param headers The connect or connect ack headers
+     * @return true if backpressure signals are offered or accepted
+     */
+    public static boolean hasQuotaHeader(final List<Header> headers) {
+        for (Header header : headers) {
+            if (header.getName().equals(QUOTA_HEADER) && header.getHeaderType() == HeaderType.BooleanTrue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the headers of a backpressure signal
+     * @param backpressured True past a soft quota, false once back under
+     * @return the headers of the signal message, which has no payload
+     */
+    public static List<Header> createSignalHeaders(final boolean backpressured) {
+        return Collections.singletonList(Header.createHeader(BACKPRESSURE_HEADER, backpressured));
+    }
+
+    /**
+     * Keeps the bytes of the message being handled on this thread charged past the return of its handler, for
+     * a handler that hands the message to another thread
+     * @return releases the bytes, once, when the other thread is done with the message. Does nothing if this
+     *         thread is not handling a message
+     */
+    public static Runnable retainDispatched() {
+        final Dispatch dispatch = DISPATCHING.get();
+        if (dispatch == null || dispatch.retained) {
+            return NO_RELEASE;
+        }
+        dispatch.retained = true;
+        final AtomicBoolean released = new AtomicBoolean(false);
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                dispatch.stream.release(dispatch.bytes);
+            }
+        };
+    }
+
+    /**
+     * Creates the account of a stream on the connection
+     * @param signaller Sends a backpressure signal on the stream. Used only if signals were negotiated
+     * @return the stream's account
+     */
+    public Stream newStream(final Consumer<Boolean> signaller) {
+        return new Stream(signalling ? signaller : null);
+    }
+
+    /**
+     * Returns this side's quotas
+     * @return this side's quotas
+     */
+    public MemoryQuotaOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns true if backpressure signals were negotiated for the connection
+     * @return true if backpressure signals were negotiated
+     */
+    public boolean isSignalling() {
+        return signalling;
+    }
+
+    /**
+     * Returns the payload bytes in flight on the connection
+     * @return the payload bytes in flight on the connection
+     */
+    public long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    /**
+     * Returns the most payload bytes that have been in flight on the connection at once
+     * @return the peak payload bytes in flight
+     */
+    public long getPeakInFlightBytes() {
+        return peakInFlightBytes.get();
+    }
+
+    /**
+     * Returns the number of messages refused at a hard quota
+     * @return the number of messages refused
+     */
+    public long getRefusedMessages() {
+        return refusedMessages.get();
+    }
+}
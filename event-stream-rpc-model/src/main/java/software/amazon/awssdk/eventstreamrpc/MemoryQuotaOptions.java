@@ -0,0 +1,102 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * Configures the quotas on the payload bytes one side of a connection holds in flight: received, and not yet
+ * handled. Quotas apply to a connection as a whole and to each stream on it. Past a soft quota, the stream the
+ * bytes arrived on signals the sender to back off, if both sides configured quotas. A message that would take
+ * a stream or its connection past a hard quota is not handled, and its stream is closed with a
+ * QuotaExceededException.
+ */
+public class MemoryQuotaOptions {
+    /**
+     * A connection signals backpressure past this many bytes in flight by default
+     */
+    public static final long DEFAULT_CONNECTION_SOFT_QUOTA = 64L * 1024 * 1024;
+    /**
+     * A connection closes the stream that takes it past this many bytes in flight by default
+     */
+    public static final long DEFAULT_CONNECTION_HARD_QUOTA = 128L * 1024 * 1024;
+    /**
+     * A stream signals backpressure past this many bytes in flight by default
+     */
+    public static final long DEFAULT_STREAM_SOFT_QUOTA = 16L * 1024 * 1024;
+    /**
+     * A stream is closed past this many bytes in flight by default
+     */
+    public static final long DEFAULT_STREAM_HARD_QUOTA = 32L * 1024 * 1024;
+
+    private final long connectionSoftQuota;
+    private final long connectionHardQuota;
+    private final long streamSoftQuota;
+    private final long streamHardQuota;
+
+    /**
+     * Creates memory quota options with the default quotas
+     */
+    public MemoryQuotaOptions() {
+        this(DEFAULT_CONNECTION_SOFT_QUOTA, DEFAULT_CONNECTION_HARD_QUOTA,
+                DEFAULT_STREAM_SOFT_QUOTA, DEFAULT_STREAM_HARD_QUOTA);
+    }
+
+    /**
+     * Creates memory quota options
+     * @param connectionSoftQuota The bytes in flight on a connection past which its streams signal backpressure
+     * @param connectionHardQuota The bytes in flight on a connection a message may not take it past. Must be at
+     *                            least the soft quota
+     * @param streamSoftQuota The bytes in flight on a stream past which it signals backpressure
+     * @param streamHardQuota The bytes in flight on a stream a message may not take it past. Must be at least the
+     *                        soft quota
+     */
+    public MemoryQuotaOptions(final long connectionSoftQuota, final long connectionHardQuota,
+                              final long streamSoftQuota, final long streamHardQuota) {
+        if (connectionSoftQuota < 1 || streamSoftQuota < 1) {
+            throw new IllegalArgumentException("Soft quotas must be positive");
+        }
+        if (connectionHardQuota < connectionSoftQuota || streamHardQuota < streamSoftQuota) {
+            throw new IllegalArgumentException("Hard quotas must be at least their soft quotas");
+        }
+        this.connectionSoftQuota = connectionSoftQuota;
+        this.connectionHardQuota = connectionHardQuota;
+        this.streamSoftQuota = streamSoftQuota;
+        this.streamHardQuota = streamHardQuota;
+    }
+
+    /**
+     * Returns the bytes in flight on a connection past which its streams signal backpressure
+     * @return the connection soft quota
+     */
+    public long getConnectionSoftQuota() {
+        return connectionSoftQuota;
+    }
+
+    /**
+     * Returns the bytes in flight on a connection a message may not take it past
+     * @return the connection hard quota
+     */
+    public long getConnectionHardQuota() {
+        return connectionHardQuota;
+    }
+
+    /**
+     * Returns the bytes in flight on a stream past which it signals backpressure
+     * @return the stream soft quota
+     */
+    public long getStreamSoftQuota() {
+        return streamSoftQuota;
+    }
+
+    /**
+     * Returns the bytes in flight on a stream a message may not take it past
+     * @return the stream hard quota
+     */
+    public long getStreamHardQuota() {
+        return streamHardQuota;
+    }
+}
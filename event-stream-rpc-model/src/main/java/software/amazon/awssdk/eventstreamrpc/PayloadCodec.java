@@ -0,0 +1,56 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * A content encoding for message payloads, such as {@link DeflatePayloadCodec}. Client and server agree on one
+ * at connect by name, so a codec must decode what any implementation of the same name encodes.
+ *
+ * Implementations are called from any thread and must be thread safe.
+ */
+public interface PayloadCodec {
+    /**
+     * Returns the name of the encoding, as offered at connect and carried on encoded messages
+     * @return the name of the encoding
+     */
+    String getName();
+
+    /**
+     * Encodes a payload
+     * @param payload The payload to encode
+     * @return the encoded payload, or null if encoding would not make it smaller
+     */
+    byte[] encode(byte[] payload);
+
+    /**
+     * Decodes a payload
+     * @param payload The encoded payload
+     * @return the decoded payload
+     * @throws IllegalArgumentException if the payload is not valid in this encoding, or decodes to more than
+     *                                  the codec accepts
+     */
+    byte[] decode(byte[] payload);
+
+    /**
+     * Decodes a payload, refusing one that decodes to more than the given length. Codecs that can stop early
+     * should, rather than decoding the whole payload first
+     * @param payload The encoded payload
+     * @param maxDecodedLength The longest payload to decode to
+     * @return the decoded payload
+     * @throws IllegalArgumentException if the payload is not valid in this encoding, or decodes to more than
+     *                                  the given length
+     */
+    default byte[] decode(byte[] payload, int maxDecodedLength) {
+        final byte[] decoded = decode(payload);
+        if (decoded.length > maxDecodedLength) {
+            throw new IllegalArgumentException(String.format("%s payload decodes to more than %d bytes",
+                    getName(), maxDecodedLength));
+        }
+        return decoded;
+    }
+}
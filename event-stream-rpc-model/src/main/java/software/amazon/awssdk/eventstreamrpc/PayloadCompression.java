@@ -0,0 +1,195 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The payload compression one side of a connection uses, once negotiated. Payloads of at least the threshold
+ * are encoded if that makes them smaller, and the message says so with the {@link #CONTENT_ENCODING_HEADER}.
+ * Any payload may come in either form, so the receiver checks every message.
+ *
+ * Negotiated at connect: the client lists the codecs it has in the {@link #ACCEPT_ENCODING_HEADER} of its
+ * connect message, and a server that accepts names the one it picked in the content encoding header of its
+ * connect ack. Compression applies before the shared memory side channel on send, and after it on receive.
+ */
+public final class PayloadCompression {
+    private static final Logger LOGGER = Logger.getLogger(PayloadCompression.class.getName());
+
+    /**
+     * Connect message header listing the encodings the client accepts, comma separated in order of preference
+     */
+    public static final String ACCEPT_ENCODING_HEADER = ":accept-content-encoding";
+    /**
+     * Connect ack header naming the encoding picked, and message header naming the encoding of the payload
+     */
+    public static final String CONTENT_ENCODING_HEADER = ":content-encoding";
+
+    private final PayloadCodec codec;
+    private final int threshold;
+    private final int maxDecodedLength;
+
+    private PayloadCompression(final PayloadCodec codec, final int threshold, final int maxDecodedLength) {
+        this.codec = codec;
+        this.threshold = threshold;
+        this.maxDecodedLength = maxDecodedLength;
+    }
+
+    /**
+     * Returns the connect message header offering the given codecs
+     * @param options The client's compression configuration
+     * @return the connect message header offering the codecs
+     */
+    public static Header createOfferHeader(final CompressionOptions options) {
+        final StringBuilder names = new StringBuilder();
+        for (PayloadCodec codec : options.getCodecs()) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(codec.getName());
+        }
+        return Header.createHeader(ACCEPT_ENCODING_HEADER, names.toString());
+    }
+
+    /**
+     * Picks the client's most preferred encoding the server also has, on the server side
+     * @param connectHeaders The connect message headers
+     * @param options The server's compression configuration
+     * @return the server's compression for the connection, or null if the client offered nothing in common
+     */
+    public static PayloadCompression acceptOffer(final List<Header> connectHeaders, final CompressionOptions options) {
+        final String offered = findString(connectHeaders, ACCEPT_ENCODING_HEADER);
+        if (offered == null) {
+            return null;
+        }
+        for (String name : offered.split(",")) {
+            final PayloadCodec codec = options.getCodec(name.trim());
+            if (codec != null) {
+                return new PayloadCompression(codec, options.getThreshold(), options.getMaxDecodedLength());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the encoding the server picked from its connect ack, on the client side
+     * @param connectAckHeaders The connect ack headers
+     * @param options The client's compression configuration
+     * @return the client's compression for the connection, or null if the server did not accept the offer
+     */
+    public static PayloadCompression fromConnectAck(final List<Header> connectAckHeaders,
+                                                    final CompressionOptions options) {
+        final String picked = findString(connectAckHeaders, CONTENT_ENCODING_HEADER);
+        if (picked == null) {
+            return null;
+        }
+        final PayloadCodec codec = options.getCodec(picked);
+        if (codec == null) {
+            LOGGER.warning(String.format("Server picked content encoding %s, which was not offered. Not compressing",
+                    picked));
+            return null;
+        }
+        return new PayloadCompression(codec, options.getThreshold(), options.getMaxDecodedLength());
+    }
+
+    /**
+     * Returns the compression to use alongside the connection's fragmentation. Fragmented payloads are decoded
+     * once reassembled, so any payload the fragmentation reassembles is allowed to decode to as long
+     * @param fragmentation The fragmentation negotiated for the connection, or null if there is none
+     * @return the compression for the connection
+     */
+    public PayloadCompression withFragmentation(final PayloadFragmentation fragmentation) {
+        if (fragmentation == null || fragmentation.getMaxPayloadLength() <= maxDecodedLength) {
+            return this;
+        }
+        return new PayloadCompression(codec, threshold, fragmentation.getMaxPayloadLength());
+    }
+
+    private static String findString(final List<Header> headers, final String name) {
+        for (Header header : headers) {
+            if (header.getName().equals(name) && header.getHeaderType() == HeaderType.String) {
+                return header.getValueAsString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the connect ack header naming the encoding picked
+     * @return the connect ack header naming the encoding picked
+     */
+    public Header getConnectAckHeader() {
+        return Header.createHeader(CONTENT_ENCODING_HEADER, codec.getName());
+    }
+
+    /**
+     * Returns the codec in use
+     * @return the codec in use
+     */
+    public PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the smallest payload this side encodes
+     * @return the smallest payload this side encodes
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the longest payload decoded to
+     * @return the longest payload decoded to
+     */
+    public int getMaxDecodedLength() {
+        return maxDecodedLength;
+    }
+
+    /**
+     * Encodes a payload if it is large enough and encoding makes it smaller, adding the content encoding header
+     * to the message
+     * @param headers The headers of the message to send, added to if the payload is encoded
+     * @param payload The payload of the message to send
+     * @return the payload to send, encoded or as it was
+     */
+    public byte[] encode(final List<Header> headers, final byte[] payload) {
+        if (payload == null || payload.length < threshold) {
+            return payload;
+        }
+        final byte[] encoded = codec.encode(payload);
+        if (encoded == null) {
+            return payload;
+        }
+        headers.add(Header.createHeader(CONTENT_ENCODING_HEADER, codec.getName()));
+        return encoded;
+    }
+
+    /**
+     * Returns the payload of a received message, decoded if its headers say it is encoded
+     * @param headers The headers of the received message
+     * @param payload The payload of the received message
+     * @return the decoded payload, or the given payload if it was sent as it is
+     * @throws IllegalArgumentException if the payload is in another encoding or cannot be decoded
+     */
+    public byte[] decode(final List<Header> headers, final byte[] payload) {
+        final String encoding = findString(headers, CONTENT_ENCODING_HEADER);
+        if (encoding == null || payload == null) {
+            return payload;
+        }
+        if (!encoding.equals(codec.getName())) {
+            throw new IllegalArgumentException(String.format("Payload in content encoding %s, expected %s",
+                    encoding, codec.getName()));
+        }
+        return codec.decode(payload, maxDecodedLength);
+    }
+}
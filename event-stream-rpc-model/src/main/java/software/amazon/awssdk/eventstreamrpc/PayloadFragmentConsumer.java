@@ -0,0 +1,41 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+
+import java.util.List;
+
+/**
+ * Takes stream events that arrive in fragments as the fragments arrive, so the payload is never held whole.
+ * Implemented by a client's StreamResponseHandler, or by a server's operation handler, alongside its usual
+ * interface. Events it takes are not delivered as model objects. Initial requests and responses are always
+ * reassembled.
+ *
+ * Called on the thread the stream's messages are handled on, one fragment at a time and in order: the
+ * connection's event loop thread, or on a server with a FairScheduler installed, one of its workers. Either way
+ * the stream's other messages wait meanwhile, so slow work should be handed off.
+ */
+public interface PayloadFragmentConsumer {
+    /**
+     * Called when a stream event too long for one message starts to arrive
+     * @param headers The headers of the event, naming its application model type and any content encoding
+     * @param totalLength The length of the payload as sent
+     * @return true to take the payload's fragments in place of the event, false to have the event reassembled
+     *         and delivered as usual
+     */
+    boolean onFragmentedPayload(List<Header> headers, int totalLength);
+
+    /**
+     * Receives the next fragment of a payload taken by {@link #onFragmentedPayload(List, int)}. Fragments
+     * are of the payload as sent, so still in any content encoding its headers named
+     * @param fragment The fragment
+     * @param last True for the final fragment of the payload
+     */
+    void onPayloadFragment(byte[] fragment, boolean last);
+}
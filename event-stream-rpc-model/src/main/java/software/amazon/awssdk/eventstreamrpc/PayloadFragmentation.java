@@ -0,0 +1,225 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The payload fragmentation one side of a connection uses, once negotiated. A payload longer than the fragment
+ * length is sent as a run of messages on its stream, numbered from 0 in the {@link #SEQUENCE_HEADER}. The
+ * first carries the message's own headers and the payload's total length, the last is marked with the
+ * {@link #LAST_HEADER} and carries the message flags. A FragmentAssembler puts them back together.
+ *
+ * Negotiated at connect: the client sends its fragment length in the {@link #FRAGMENT_LENGTH_HEADER} of its
+ * connect message, and a server that accepts returns the length both sides use in the same header of its
+ * connect ack. Fragmentation applies last on send, after compression and the shared memory side channel, and
+ * first on receive.
+ */
+public final class PayloadFragmentation {
+    /**
+     * Connect and connect ack header with the fragment length offered, and then agreed
+     */
+    public static final String FRAGMENT_LENGTH_HEADER = ":fragment-length";
+    /**
+     * Fragment header with its place in the payload's run of fragments, from 0
+     */
+    public static final String SEQUENCE_HEADER = ":fragment-sequence";
+    /**
+     * First fragment header with the length of the whole payload
+     */
+    public static final String TOTAL_LENGTH_HEADER = ":fragment-total-length";
+    /**
+     * Last fragment header
+     */
+    public static final String LAST_HEADER = ":fragment-last";
+
+    /**
+     * Writes one message on a stream
+     */
+    @FunctionalInterface
+    public interface MessageWriter {
+        /**
+         * Writes a message
+         * @param headers The message headers
+         * @param payload The message payload
+         * @param messageFlags The message flags
+         * @return a future completed when the message is flushed
+         */
+        CompletableFuture<Void> write(List<Header> headers, byte[] payload, int messageFlags);
+    }
+
+    private final int fragmentLength;
+    private final int maxPayloadLength;
+
+    private PayloadFragmentation(final int fragmentLength, final int maxPayloadLength) {
+        this.fragmentLength = fragmentLength;
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Returns the connect message header offering fragmentation
+     * @param options The client's fragmentation configuration
+     * @return the connect message header offering fragmentation
+     */
+    public static Header createOfferHeader(final FragmentationOptions options) {
+        return Header.createHeader(FRAGMENT_LENGTH_HEADER, options.getFragmentLength());
+    }
+
+    /**
+     * Accepts the client's offer of fragmentation, on the server side
+     * @param connectHeaders The connect message headers
+     * @param options The server's fragmentation configuration
+     * @return the server's fragmentation for the connection, or null if the client did not offer it
+     */
+    public static PayloadFragmentation acceptOffer(final List<Header> connectHeaders,
+                                                   final FragmentationOptions options) {
+        final int offered = findInt(connectHeaders, FRAGMENT_LENGTH_HEADER);
+        if (offered < FragmentationOptions.MIN_FRAGMENT_LENGTH) {
+            return null;
+        }
+        return new PayloadFragmentation(Math.min(offered, options.getFragmentLength()),
+                options.getMaxPayloadLength());
+    }
+
+    /**
+     * Reads the fragment length the server agreed from its connect ack, on the client side
+     * @param connectAckHeaders The connect ack headers
+     * @param options The client's fragmentation configuration
+     * @return the client's fragmentation for the connection, or null if the server did not accept the offer
+     */
+    public static PayloadFragmentation fromConnectAck(final List<Header> connectAckHeaders,
+                                                      final FragmentationOptions options) {
+        final int agreed = findInt(connectAckHeaders, FRAGMENT_LENGTH_HEADER);
+        if (agreed < FragmentationOptions.MIN_FRAGMENT_LENGTH) {
+            return null;
+        }
+        return new PayloadFragmentation(Math.min(agreed, options.getFragmentLength()),
+                options.getMaxPayloadLength());
+    }
+
+    /**
+     * Returns true if the message is a fragment of a longer payload
+     * @param headers The headers of a received message
+     * @return true if the message is a fragment of a longer payload
+     */
+    public static boolean isFragment(final List<Header> headers) {
+        for (Header header : headers) {
+            if (header.getName().equals(SEQUENCE_HEADER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value of an int32 header
+     * @return the value, or -1 if there is no such header
+     */
+    static int findInt(final List<Header> headers, final String name) {
+        for (Header header : headers) {
+            if (header.getName().equals(name) && header.getHeaderType() == HeaderType.Int32) {
+                return header.getValueAsInt();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the connect ack header with the agreed fragment length
+     * @return the connect ack header with the agreed fragment length
+     */
+    public Header getConnectAckHeader() {
+        return Header.createHeader(FRAGMENT_LENGTH_HEADER, fragmentLength);
+    }
+
+    /**
+     * Returns the longest payload sent in one message
+     * @return the longest payload sent in one message
+     */
+    public int getFragmentLength() {
+        return fragmentLength;
+    }
+
+    /**
+     * Returns the longest payload this side reassembles
+     * @return the longest payload this side reassembles
+     */
+    public int getMaxPayloadLength() {
+        return maxPayloadLength;
+    }
+
+    /**
+     * Returns a new assembler for the fragments arriving on one stream
+     * @return a new assembler for the fragments arriving on one stream
+     */
+    public FragmentAssembler newAssembler() {
+        return new FragmentAssembler(maxPayloadLength);
+    }
+
+    /**
+     * Returns true if a payload is too long to send in one message
+     * @param payload The payload to send
+     * @return true if the payload is to be sent in fragments
+     */
+    public boolean needsFragmenting(final byte[] payload) {
+        return payload != null && payload.length > fragmentLength;
+    }
+
+    /**
+     * Sends a payload as a run of fragments. The caller must keep other messages on the stream from being sent
+     * until this returns, so the run is not interleaved
+     * @param headers The message headers, sent with the first fragment
+     * @param payload The payload, longer than the fragment length
+     * @param messageFlags The message flags, sent with the last fragment
+     * @param firstWriter Writes the first fragment, which may need to activate the stream
+     * @param writer Writes the other fragments
+     * @return a future completed when every fragment is flushed, or exceptionally if any fails. Only a failure
+     *         to write the first fragment is thrown
+     */
+    public CompletableFuture<Void> send(final List<Header> headers, final byte[] payload, final int messageFlags,
+                                        final MessageWriter firstWriter, final MessageWriter writer) {
+        final int count = (payload.length + fragmentLength - 1) / fragmentLength;
+        final CompletableFuture<?>[] flushed = new CompletableFuture<?>[count];
+        for (int sequence = 0; sequence < count; ++sequence) {
+            final int offset = sequence * fragmentLength;
+            final byte[] fragment = Arrays.copyOfRange(payload, offset, Math.min(payload.length, offset + fragmentLength));
+            final boolean last = sequence == count - 1;
+            final List<Header> fragmentHeaders;
+            if (sequence == 0) {
+                fragmentHeaders = new ArrayList<>(headers.size() + 2);
+                fragmentHeaders.addAll(headers);
+                fragmentHeaders.add(Header.createHeader(TOTAL_LENGTH_HEADER, payload.length));
+            } else {
+                fragmentHeaders = new ArrayList<>(2);
+            }
+            fragmentHeaders.add(Header.createHeader(SEQUENCE_HEADER, sequence));
+            if (last) {
+                fragmentHeaders.add(Header.createHeader(LAST_HEADER, true));
+            }
+            if (sequence == 0) {
+                flushed[sequence] = firstWriter.write(fragmentHeaders, fragment, 0);
+                continue;
+            }
+            try {
+                flushed[sequence] = writer.write(fragmentHeaders, fragment, last ? messageFlags : 0);
+            } catch (RuntimeException e) {
+                //the stream closed under the run, likely the receiver refusing the payload
+                final CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        return CompletableFuture.allOf(flushed);
+    }
+}
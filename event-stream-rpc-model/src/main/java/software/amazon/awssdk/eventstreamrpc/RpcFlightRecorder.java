@@ -0,0 +1,225 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.logging.Logger;
+
+/**
+ * Emits Java Flight Recorder events for connections, operation invokes, stream events, server handlers and
+ * JSON serialization, named under "aws.eventstreamrpc." in the "Event Stream RPC" category. The event types
+ * refer to jdk.jfr, which the Java 8 platform API lacks, so they are compiled from their own source set and
+ * loaded by name, only on a JVM with JFR. Events are only created while a recording is running, so otherwise
+ * each call here costs a volatile read.
+ *
+ * Timed events are begun by a begin method, which returns null if nothing is recording, and committed by the
+ * matching end method, which ignores null.
+ */
+final class RpcFlightRecorder {
+    /**
+     * What the names of the event types start with
+     */
+    static final String EVENT_NAME_PREFIX = "aws.eventstreamrpc.";
+
+    private static final Logger LOGGER = Logger.getLogger(RpcFlightRecorder.class.getName());
+    private static final String EVENTS_CLASS_NAME = "software.amazon.awssdk.eventstreamrpc.RpcFlightRecorderEvents";
+
+    private static volatile boolean recording = false;
+
+    /**
+     * Null if JFR or the event types are not there, in which case nothing is ever recording
+     */
+    private static final Events EVENTS = loadEvents();
+
+    /**
+     * Creates and commits the events, implemented by the class of event types
+     */
+    interface Events {
+        /**
+         * Keeps RpcFlightRecorder told whether any recording is running
+         */
+        void register();
+
+        Object beginConnect(String host, int port);
+
+        void endConnect(Object event, String error);
+
+        Object beginConnectAck(String host, int port);
+
+        void endConnectAck(Object event, boolean accepted);
+
+        Object beginDisconnect(String host, int port);
+
+        void endDisconnect(Object event, String error);
+
+        Object beginInvoke(String operationName);
+
+        void endInvoke(Object event, long requestBytes, long responseBytes, Throwable error);
+
+        Object beginHandler(String operationName);
+
+        void endHandler(Object event, Throwable error);
+
+        Object beginSerialize();
+
+        void endSerialize(Object event, String applicationModelType, long bytes);
+
+        Object beginDeserialize();
+
+        void endDeserialize(Object event, String applicationModelType, long bytes);
+
+        void streamEventSent(String operationName, String applicationModelType, long bytes, boolean server);
+
+        void streamEventReceived(String operationName, String applicationModelType, long bytes, boolean server);
+    }
+
+    private RpcFlightRecorder() {
+    }
+
+    private static Events loadEvents() {
+        final ClassLoader classLoader = RpcFlightRecorder.class.getClassLoader();
+        try {
+            Class.forName("jdk.jfr.FlightRecorderListener", false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOGGER.fine("Java Flight Recorder is not available, no flight recorder events will be emitted");
+            return null;
+        }
+        final Events events;
+        try {
+            events = (Events) Class.forName(EVENTS_CLASS_NAME, true, classLoader).getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            LOGGER.fine(String.format("Flight recorder event types are not available, no flight recorder events"
+                    + " will be emitted. %s: %s", e.getClass().getCanonicalName(), e.getMessage()));
+            return null;
+        }
+        try {
+            events.register();
+        } catch (RuntimeException | LinkageError e) {
+            LOGGER.warning(String.format("Could not listen for flight recordings. %s: %s",
+                    e.getClass().getCanonicalName(), e.getMessage()));
+        }
+        return events;
+    }
+
+    /**
+     * Told by the recorder's listener when recordings start or stop
+     */
+    static void setRecording(final boolean recording) {
+        RpcFlightRecorder.recording = recording;
+    }
+
+    /**
+     * Returns true if a flight recording is running
+     * @return true if events are being recorded
+     */
+    static boolean isRecording() {
+        return recording;
+    }
+
+    static Object beginConnect(final String host, final int port) {
+        return recording ? EVENTS.beginConnect(host, port) : null;
+    }
+
+    static void endConnect(final Object event, final String error) {
+        if (event != null) {
+            EVENTS.endConnect(event, error);
+        }
+    }
+
+    static Object beginConnectAck(final String host, final int port) {
+        return recording ? EVENTS.beginConnectAck(host, port) : null;
+    }
+
+    static void endConnectAck(final Object event, final boolean accepted) {
+        if (event != null) {
+            EVENTS.endConnectAck(event, accepted);
+        }
+    }
+
+    /**
+     * Begins the event committed when a connection closes, timing how long it was connected
+     */
+    static Object beginDisconnect(final String host, final int port) {
+        return recording ? EVENTS.beginDisconnect(host, port) : null;
+    }
+
+    static void endDisconnect(final Object event, final String error) {
+        if (event != null) {
+            EVENTS.endDisconnect(event, error);
+        }
+    }
+
+    static Object beginInvoke(final String operationName) {
+        return recording ? EVENTS.beginInvoke(operationName) : null;
+    }
+
+    static void endInvoke(final Object event, final long requestBytes, final long responseBytes,
+                          final Throwable error) {
+        if (event != null) {
+            EVENTS.endInvoke(event, requestBytes, responseBytes, error);
+        }
+    }
+
+    static Object beginHandler(final String operationName) {
+        return recording ? EVENTS.beginHandler(operationName) : null;
+    }
+
+    static void endHandler(final Object event, final Throwable error) {
+        if (event != null) {
+            EVENTS.endHandler(event, error);
+        }
+    }
+
+    static Object beginSerialize() {
+        return recording ? EVENTS.beginSerialize() : null;
+    }
+
+    static void endSerialize(final Object event, final String applicationModelType, final long bytes) {
+        if (event != null) {
+            EVENTS.endSerialize(event, applicationModelType, bytes);
+        }
+    }
+
+    static Object beginDeserialize() {
+        return recording ? EVENTS.beginDeserialize() : null;
+    }
+
+    static void endDeserialize(final Object event, final String applicationModelType, final long bytes) {
+        if (event != null) {
+            EVENTS.endDeserialize(event, applicationModelType, bytes);
+        }
+    }
+
+    /**
+     * Records a stream event sent
+     * @param operationName The operation of the stream
+     * @param applicationModelType The model type of the event
+     * @param bytes The payload length, 0 if the event was passed in process
+     * @param server true if the server sent it, false if the client did
+     */
+    static void streamEventSent(final String operationName, final String applicationModelType, final long bytes,
+                                final boolean server) {
+        if (recording) {
+            EVENTS.streamEventSent(operationName, applicationModelType, bytes, server);
+        }
+    }
+
+    /**
+     * Records a stream event received
+     * @param operationName The operation of the stream
+     * @param applicationModelType The model type of the event
+     * @param bytes The payload length, 0 if the event was passed in process
+     * @param server true if the server received it, false if the client did
+     */
+    static void streamEventReceived(final String operationName, final String applicationModelType, final long bytes,
+                                    final boolean server) {
+        if (recording) {
+            EVENTS.streamEventReceived(operationName, applicationModelType, bytes, server);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * One traced call, started by an {@link RpcTracer}. A phase may end after the span itself, as the flush of a
+ * client's request can be reported after its response has arrived.
+ */
+public interface RpcSpan {
+    /**
+     * Returns the trace context a client span sends to the server
+     * @return the trace context, or null to send none. Not called on server spans
+     */
+    String getTraceContext();
+
+    /**
+     * Called when a phase of the call starts
+     * @param phase The phase
+     */
+    void phaseStarted(RpcTracer.Phase phase);
+
+    /**
+     * Called when a phase of the call ends
+     * @param phase The phase
+     * @param error The failure that ended it, or null
+     */
+    void phaseEnded(RpcTracer.Phase phase, Throwable error);
+
+    /**
+     * Called once when the call ends: on the client when the initial response completes, on the server when
+     * the response is flushed or the handler fails. A phase a failure cuts short may not be reported ended
+     * @param error The failure, or null
+     */
+    void end(Throwable error);
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * Tracing hooks for operation invokes, on the client and on the server, to correlate a call with the handler
+ * that served it and to time the phases of each.
+ *
+ * A client span covers an invoke from doOperationInvoke to its initial response, with the serialization and
+ * flush of the request and the deserialization of the response as phases. The span's trace context travels to
+ * the server in the {@link #TRACE_CONTEXT_HEADER} of the initial request, where a server span covers the
+ * request from its arrival to the flush of the response, with deserialization, handler execution,
+ * serialization and flush as phases. Stream events after the initial response are not traced.
+ *
+ * Install in ClientConnectionOptions or ServerConnectionOptions. With none installed, the paths pay a
+ * null check and nothing else. Callbacks arrive on CRT event loop threads as well as the threads invoking
+ * operations and handling requests, so implementations must be thread safe, must not block and must not throw.
+ */
+public interface RpcTracer {
+    /**
+     * Initial request header carrying the client span's trace context
+     */
+    String TRACE_CONTEXT_HEADER = ":trace-context";
+
+    /**
+     * The phases timed within a span
+     */
+    enum Phase {
+        /**
+         * Turning the request, or the response, into its payload
+         */
+        SERIALIZE,
+        /**
+         * From handing the message to the connection to it being written to the socket
+         */
+        FLUSH,
+        /**
+         * The operation handler on the server, until its response is ready
+         */
+        HANDLE,
+        /**
+         * Turning the request payload, or the response payload, into the model object
+         */
+        DESERIALIZE
+    }
+
+    /**
+     * Starts the span of an operation invoked on the client
+     * @param operationModelContext The operation invoked
+     * @return the span, or null to not trace the invoke
+     */
+    RpcSpan startClientSpan(OperationModelContext<?, ?, ?, ?> operationModelContext);
+
+    /**
+     * Starts the span of an initial request arriving on the server
+     * @param operationModelContext The operation requested
+     * @param traceContext The client span's trace context, or null if the request carried none
+     * @return the span, or null to not trace the request
+     */
+    RpcSpan startServerSpan(OperationModelContext<?, ?, ?, ?> operationModelContext, String traceContext);
+}
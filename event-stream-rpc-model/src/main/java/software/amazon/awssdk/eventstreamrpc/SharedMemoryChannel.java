@@ -0,0 +1,284 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The shared memory side channel of one connection between a client and a server on the same host. Payloads
+ * of at least the threshold size are written into a SharedMemoryRing instead of the event stream message,
+ * which carries only the region headers in their place. There is a ring for each direction.
+ *
+ * Negotiated at connect: the client offers with the {@link #OFFER_HEADER} on its connect message, and a
+ * server that accepts creates both rings and names them in its connect ack. A client that cannot map them,
+ * such as one running as another user, declines them with a ping carrying the {@link #DECLINE_HEADER} ahead
+ * of any stream, and both sides carry on inline. Either side still sends a payload inline when the ring has
+ * no room for it, so the receiver must accept both forms on every message.
+ */
+public final class SharedMemoryChannel implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SharedMemoryChannel.class.getName());
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Connect message header by which a client offers to use shared memory
+     */
+    public static final String OFFER_HEADER = ":shared-memory";
+    /**
+     * Connect ack header naming the ring the client writes to
+     */
+    public static final String CLIENT_RING_HEADER = ":shared-memory-client-ring";
+    /**
+     * Connect ack header naming the ring the server writes to
+     */
+    public static final String SERVER_RING_HEADER = ":shared-memory-server-ring";
+    /**
+     * Ping header by which a client that could not map the rings named in the connect ack declines them. The
+     * server then closes its rings and sends every payload inline
+     */
+    public static final String DECLINE_HEADER = ":shared-memory-declined";
+    /**
+     * Message header carrying the offset of a payload written to shared memory
+     */
+    public static final String OFFSET_HEADER = ":shared-memory-offset";
+    /**
+     * Message header carrying the length of a payload written to shared memory
+     */
+    public static final String LENGTH_HEADER = ":shared-memory-length";
+    /**
+     * Message header carrying the generation of a payload written to shared memory
+     */
+    public static final String GENERATION_HEADER = ":shared-memory-generation";
+
+    private final SharedMemoryRing outbound;
+    private final SharedMemoryRing inbound;
+    private final int threshold;
+    private final boolean ownsFiles;
+
+    private SharedMemoryChannel(final SharedMemoryRing outbound, final SharedMemoryRing inbound, final int threshold,
+                                final boolean ownsFiles) {
+        this.outbound = outbound;
+        this.inbound = inbound;
+        this.threshold = threshold;
+        this.ownsFiles = ownsFiles;
+    }
+
+    /**
+     * Creates the rings of a new connection, on the server side. Their names are random, so that a client can
+     * only find the rings the server names to it
+     * @param directory The directory to create the ring files in
+     * @param capacity The data capacity of each ring in bytes
+     * @param threshold The smallest payload the server writes to shared memory
+     * @param permissions The permissions to give the ring files, or null for the defaults
+     * @return the server end of the channel
+     * @throws IOException if either ring cannot be created
+     */
+    public static SharedMemoryChannel createServerChannel(final Path directory, final int capacity, final int threshold,
+                                                          final Set<PosixFilePermission> permissions) throws IOException {
+        final String name = Long.toHexString(RANDOM.nextLong()) + Long.toHexString(RANDOM.nextLong());
+        final SharedMemoryRing clientRing = SharedMemoryRing.create(directory.resolve(name + ".c2s"), capacity, permissions);
+        try {
+            final SharedMemoryRing serverRing = SharedMemoryRing.create(directory.resolve(name + ".s2c"), capacity, permissions);
+            return new SharedMemoryChannel(serverRing, clientRing, threshold, true);
+        } catch (IOException | RuntimeException e) {
+            clientRing.close();
+            Files.deleteIfExists(clientRing.getPath());
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the rings a server named in its connect ack, on the client side
+     * @param connectAckHeaders The connect ack headers
+     * @param threshold The smallest payload the client writes to shared memory
+     * @return the client end of the channel, or null if the server did not accept the offer
+     * @throws IOException if either ring cannot be mapped
+     */
+    public static SharedMemoryChannel openClientChannel(final List<Header> connectAckHeaders, final int threshold)
+            throws IOException {
+        final String clientRingPath = findString(connectAckHeaders, CLIENT_RING_HEADER);
+        final String serverRingPath = findString(connectAckHeaders, SERVER_RING_HEADER);
+        if (clientRingPath == null || serverRingPath == null) {
+            return null;
+        }
+        final SharedMemoryRing clientRing = SharedMemoryRing.open(Paths.get(clientRingPath));
+        try {
+            return new SharedMemoryChannel(clientRing, SharedMemoryRing.open(Paths.get(serverRingPath)), threshold, false);
+        } catch (IOException | RuntimeException e) {
+            clientRing.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if a connect message carries the shared memory offer
+     * @param connectHeaders The connect message headers
+     * @return true if the client offered to use shared memory
+     */
+    public static boolean isOffered(final List<Header> connectHeaders) {
+        return hasTrue(connectHeaders, OFFER_HEADER);
+    }
+
+    /**
+     * Returns true if a ping carries the client's refusal of the rings
+     * @param pingHeaders The ping headers
+     * @return true if the client declined the rings
+     */
+    public static boolean isDeclined(final List<Header> pingHeaders) {
+        return hasTrue(pingHeaders, DECLINE_HEADER);
+    }
+
+    /**
+     * Returns the headers of the ping by which a client declines the rings
+     * @return the headers of the ping by which a client declines the rings
+     */
+    public static List<Header> createDeclineHeaders() {
+        final List<Header> headers = new ArrayList<>(1);
+        headers.add(Header.createHeader(DECLINE_HEADER, true));
+        return headers;
+    }
+
+    private static boolean hasTrue(final List<Header> headers, final String name) {
+        for (Header header : headers) {
+            if (header.getName().equals(name) && header.getHeaderType() == HeaderType.BooleanTrue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String findString(final List<Header> headers, final String name) {
+        for (Header header : headers) {
+            if (header.getName().equals(name) && header.getHeaderType() == HeaderType.String) {
+                return header.getValueAsString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the connect ack headers naming the rings to the client
+     * @return the connect ack headers naming the rings to the client
+     */
+    public List<Header> getConnectAckHeaders() {
+        final List<Header> headers = new ArrayList<>(2);
+        headers.add(Header.createHeader(CLIENT_RING_HEADER, inbound.getPath().toString()));
+        headers.add(Header.createHeader(SERVER_RING_HEADER, outbound.getPath().toString()));
+        return headers;
+    }
+
+    /**
+     * Returns the smallest payload this side writes to shared memory
+     * @return the smallest payload this side writes to shared memory
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Writes a payload to shared memory if it is large enough and fits, adding the region headers to the message
+     * @param headers The headers of the message to send, added to if the payload is written
+     * @param payload The payload of the message to send
+     * @return true if the payload was written and must be left out of the message, false to send it inline
+     */
+    public boolean offload(final List<Header> headers, final byte[] payload) {
+        if (payload == null || payload.length < threshold) {
+            return false;
+        }
+        final SharedMemoryRing.Region region = outbound.write(payload);
+        if (region == null) {
+            LOGGER.finer(String.format("Shared memory ring full, sending %d byte payload inline", payload.length));
+            return false;
+        }
+        headers.add(Header.createHeader(OFFSET_HEADER, region.getOffset()));
+        headers.add(Header.createHeader(LENGTH_HEADER, region.getLength()));
+        headers.add(Header.createHeader(GENERATION_HEADER, region.getGeneration()));
+        return true;
+    }
+
+    /**
+     * Returns the payload of a received message, reading it from shared memory if its headers point there
+     * @param headers The headers of the received message
+     * @param payload The payload of the received message
+     * @return the payload from shared memory, or the given payload if it was sent inline
+     * @throws IllegalStateException if the headers point at a region that cannot be read
+     */
+    public byte[] resolve(final List<Header> headers, final byte[] payload) {
+        final SharedMemoryRing.Region region = findRegion(headers);
+        return region != null ? inbound.read(region) : payload;
+    }
+
+    /**
+     * Releases the shared memory region a received message points at, if any, for a message dropped without
+     * being resolved. Every received message must be either resolved or released
+     * @param headers The headers of the received message
+     */
+    public void release(final List<Header> headers) {
+        final SharedMemoryRing.Region region = findRegion(headers);
+        if (region != null && !inbound.release(region)) {
+            LOGGER.fine(String.format("Shared memory region at %d was not released", region.getOffset()));
+        }
+    }
+
+    private static SharedMemoryRing.Region findRegion(final List<Header> headers) {
+        int offset = -1;
+        int length = -1;
+        int generation = 0;
+        boolean found = false;
+        for (Header header : headers) {
+            if (header.getHeaderType() != HeaderType.Int32) {
+                continue;
+            }
+            switch (header.getName()) {
+                case OFFSET_HEADER:
+                    offset = header.getValueAsInt();
+                    found = true;
+                    break;
+                case LENGTH_HEADER:
+                    length = header.getValueAsInt();
+                    break;
+                case GENERATION_HEADER:
+                    generation = header.getValueAsInt();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return found ? new SharedMemoryRing.Region(offset, length, generation) : null;
+    }
+
+    /**
+     * Closes both rings. The server side also deletes their files
+     */
+    @Override
+    public void close() {
+        outbound.close();
+        inbound.close();
+        if (ownsFiles) {
+            for (SharedMemoryRing ring : new SharedMemoryRing[] { outbound, inbound }) {
+                try {
+                    Files.deleteIfExists(ring.getPath());
+                } catch (IOException e) {
+                    LOGGER.warning(String.format("Could not delete shared memory ring %s: %s", ring.getPath(),
+                            e.getMessage()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.Set;
+
+/**
+ * A memory-mapped ring file carrying payloads one way between two processes on the same host. One side
+ * writes regions into the ring and tells the other their offset, length and generation out of band; the
+ * other reads each region once and acknowledges it in the ring itself. The writer reclaims acknowledged
+ * regions in the order it wrote them, so a region never read holds back reclamation of everything after it;
+ * a reader dropping a message unhandled must {@link #release(Region)} its region instead.
+ *
+ * File layout: a 64 byte header holding the magic and data capacity, then the data area. Each region is a
+ * 16 byte header (length, generation, acknowledged flag, reserved) followed by the payload, padded to 16 bytes.
+ * A region with length -1 pads out the end of the data area before the writer wraps around.
+ *
+ * Acknowledgements cross processes through plain accesses to the mapping, as there are no ordered accesses
+ * to mapped memory in Java 8. The reader copies a region out before flagging it, and the writer only reuses
+ * space once it sees the flag. The reader maps the ring writable to set that flag, so it could rewrite any
+ * header; the writer trusts nothing in the ring but the flag, and keeps the sizes of its regions itself.
+ */
+public final class SharedMemoryRing implements AutoCloseable {
+    private static final int MAGIC = 0x53484d52;    //"SHMR"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 64;
+    private static final int REGION_HEADER_SIZE = 16;
+    private static final int ALIGNMENT = 16;
+    private static final int PADDING_LENGTH = -1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+
+    private static final int LENGTH_OFFSET = 0;
+    private static final int GENERATION_OFFSET = 4;
+    private static final int ACKNOWLEDGED_OFFSET = 8;
+
+    /**
+     * Where a payload was written in the ring
+     */
+    public static final class Region {
+        private final int offset;
+        private final int length;
+        private final int generation;
+
+        /**
+         * Creates a new region descriptor
+         * @param offset The offset of the region in the data area
+         * @param length The payload length
+         * @param generation The generation the writer stamped the region with
+         */
+        public Region(final int offset, final int length, final int generation) {
+            this.offset = offset;
+            this.length = length;
+            this.generation = generation;
+        }
+
+        /**
+         * Returns the offset of the region in the data area
+         * @return the offset of the region in the data area
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the payload length
+         * @return the payload length
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the generation the writer stamped the region with
+         * @return the generation the writer stamped the region with
+         */
+        public int getGeneration() {
+            return generation;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;    //data area only, absolute offsets
+    private final int capacity;
+    private long head = 0;          //writer only, guarded by this
+    private long tail = 0;          //writer only, guarded by this
+    private final ArrayDeque<Integer> writtenSizes = new ArrayDeque<>();  //writer only, guarded by this
+    private int nextGeneration = 1; //writer only, guarded by this
+    private boolean closed = false; //guarded by this
+
+    private SharedMemoryRing(final Path path, final FileChannel channel, final MappedByteBuffer data, final int capacity) {
+        this.path = path;
+        this.channel = channel;
+        this.data = data;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates and maps a new ring file. Fails if the file already exists
+     * @param path The file to create
+     * @param capacity The size of the data area in bytes, rounded up to a multiple of 16
+     * @param permissions The exact permissions to give the file regardless of the umask, or null for the
+     *                    defaults. Ignored on file systems without POSIX permissions
+     * @return the new ring, to be written to
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SharedMemoryRing create(final Path path, final int capacity,
+                                          final Set<PosixFilePermission> permissions) throws IOException {
+        if (capacity < REGION_HEADER_SIZE + ALIGNMENT) {
+            throw new IllegalArgumentException("Shared memory ring capacity is too small: " + capacity);
+        }
+        final int alignedCapacity = align(capacity);
+        final boolean posix = permissions != null
+                && Files.getFileAttributeView(path.toAbsolutePath().getParent(), PosixFileAttributeView.class) != null;
+        if (posix) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(permissions));
+        } else {
+            Files.createFile(path);
+        }
+        final FileChannel channel;
+        try {
+            if (posix) {
+                Files.setPosixFilePermissions(path, permissions);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        try {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) FILE_HEADER_SIZE + alignedCapacity);
+            mapped.putInt(VERSION_OFFSET, FORMAT_VERSION);
+            mapped.putInt(CAPACITY_OFFSET, alignedCapacity);
+            mapped.putInt(MAGIC_OFFSET, MAGIC);
+            return new SharedMemoryRing(path, channel, dataArea(mapped), alignedCapacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps an existing ring file created by the other side
+     * @param path The file to map
+     * @return the ring, to be read from
+     * @throws IOException if the file cannot be mapped or is not a ring file
+     */
+    public static SharedMemoryRing open(final Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long size = channel.size();
+            if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a shared memory ring file: " + path);
+            }
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            final int capacity = mapped.getInt(CAPACITY_OFFSET);
+            if (mapped.getInt(MAGIC_OFFSET) != MAGIC || mapped.getInt(VERSION_OFFSET) != FORMAT_VERSION
+                    || capacity <= 0 || capacity % ALIGNMENT != 0 || (long) FILE_HEADER_SIZE + capacity != size) {
+                throw new IOException("Not a shared memory ring file: " + path);
+            }
+            return new SharedMemoryRing(path, channel, dataArea(mapped), capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer dataArea(final MappedByteBuffer mapped) {
+        mapped.position(FILE_HEADER_SIZE);
+        return (MappedByteBuffer) mapped.slice();
+    }
+
+    private static int align(final int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Returns the path of the ring file
+     * @return the path of the ring file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the size of the data area in bytes
+     * @return the size of the data area in bytes
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Copies a payload into the ring, first reclaiming the regions the reader has acknowledged
+     * @param payload The payload to write
+     * @return where the payload was written, or null if the ring is closed or has no room for it right now
+     */
+    public synchronized Region write(final byte[] payload) {
+        if (closed) {
+            return null;
+        }
+        reclaim();
+        final int regionSize = REGION_HEADER_SIZE + align(payload.length);
+        if (payload.length > capacity || regionSize > capacity) {
+            return null;
+        }
+        int offset = (int) (head % capacity);
+        final int padding = offset + regionSize > capacity ? capacity - offset : 0;
+        if (capacity - (head - tail) < (long) padding + regionSize) {
+            return null;
+        }
+        if (padding > 0) {
+            data.putInt(offset + GENERATION_OFFSET, 0);
+            data.putInt(offset + ACKNOWLEDGED_OFFSET, 1);
+            data.putInt(offset + LENGTH_OFFSET, PADDING_LENGTH);
+            head += padding;
+            writtenSizes.add(padding);
+            offset = 0;
+        }
+        final int generation = nextGeneration++;
+        final ByteBuffer target = data.duplicate();
+        target.position(offset + REGION_HEADER_SIZE);
+        target.put(payload);
+        data.putInt(offset + GENERATION_OFFSET, generation);
+        data.putInt(offset + ACKNOWLEDGED_OFFSET, 0);
+        data.putInt(offset + LENGTH_OFFSET, payload.length);
+        head += regionSize;
+        writtenSizes.add(regionSize);
+        return new Region(offset, payload.length, generation);
+    }
+
+    private void reclaim() {
+        while (!writtenSizes.isEmpty()) {
+            final int offset = (int) (tail % capacity);
+            if (data.getInt(offset + ACKNOWLEDGED_OFFSET) == 0) {
+                return;
+            }
+            tail += writtenSizes.poll();
+        }
+    }
+
+    /**
+     * Copies a region written by the other side out of the ring and acknowledges it, letting the writer reuse
+     * its space. Each region can be read once
+     * @param region Where the payload was written
+     * @return the payload
+     * @throws IllegalStateException if the region is out of range, stale or already read, or the ring is closed
+     */
+    public synchronized byte[] read(final Region region) {
+        if (closed) {
+            throw new IllegalStateException("Shared memory ring is closed: " + path);
+        }
+        if (!isReadable(region)) {
+            throw new IllegalStateException(String.format(
+                    "Shared memory region [offset=%d, length=%d, generation=%d] is not readable in %s",
+                    region.getOffset(), region.getLength(), region.getGeneration(), path));
+        }
+        final byte[] payload = new byte[region.getLength()];
+        final ByteBuffer source = data.duplicate();
+        source.position(region.getOffset() + REGION_HEADER_SIZE);
+        source.get(payload);
+        data.putInt(region.getOffset() + ACKNOWLEDGED_OFFSET, 1);
+        return payload;
+    }
+
+    /**
+     * Acknowledges a region written by the other side without reading it, for a message dropped unhandled.
+     * Since the writer reclaims in order, a region never acknowledged would hold back the whole ring
+     * @param region Where the payload was written
+     * @return true if the region was released, false if it was not readable or the ring is closed
+     */
+    public synchronized boolean release(final Region region) {
+        if (closed || !isReadable(region)) {
+            return false;
+        }
+        data.putInt(region.getOffset() + ACKNOWLEDGED_OFFSET, 1);
+        return true;
+    }
+
+    private boolean isReadable(final Region region) {
+        final int offset = region.getOffset();
+        return offset >= 0 && offset % ALIGNMENT == 0 && offset <= capacity - REGION_HEADER_SIZE
+                && region.getLength() >= 0 && region.getLength() <= capacity - offset - REGION_HEADER_SIZE
+                && data.getInt(offset + LENGTH_OFFSET) == region.getLength()
+                && data.getInt(offset + GENERATION_OFFSET) == region.getGeneration()
+                && data.getInt(offset + ACKNOWLEDGED_OFFSET) == 0;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released when the ring is garbage collected, which Java 8 offers
+     * no way to hasten. Does not delete the file
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing left to release
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.HeaderType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues the stream events sent on one stream and sends those queued together as one message, once the
+ * batching window closes or the batch reaches a limit. A batch goes with the {@link #CONTENT_TYPE_BATCH}
+ * content type, its payload each event's serialized length as a big endian int32 followed by the event, in the
+ * order sent. An event left alone in its window goes as a message of its own, as it would without batching.
+ *
+ * Negotiated at connect: the client offers with the {@link #BATCHING_HEADER} in its connect message, and a
+ * server that accepts returns it in its connect ack. Every message a stream sends that is not a batched event
+ * must flush the batch first, so events are never reordered.
+ *
+ * Not thread safe on its own: every call must hold the lock given at construction, which the window timer also
+ * takes to flush.
+ */
+public final class StreamEventBatcher {
+    /**
+     * Connect and connect ack header offering, then accepting, stream event batching
+     */
+    public static final String BATCHING_HEADER = ":stream-event-batching";
+    /**
+     * Content type of a message carrying a batch of stream events
+     */
+    public static final String CONTENT_TYPE_BATCH = "application/x-amz-eventstream-rpc-batch";
+
+    private static ScheduledExecutorService windowTimer;
+
+    /**
+     * Writes a batch, or a lone event, as one message on the stream
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        /**
+         * Writes a message
+         * @param applicationModelType The application model type of the events
+         * @param payload The packed batch, or the lone event
+         * @param batch True if the payload is a packed batch
+         * @return a future completed when the message is flushed
+         */
+        CompletableFuture<Void> write(String applicationModelType, byte[] payload, boolean batch);
+    }
+
+    private final BatchingOptions options;
+    private final Object lock;
+    private final BatchWriter writer;
+    private final List<byte[]> events = new ArrayList<>();
+    private final List<CompletableFuture<Void>> flushFutures = new ArrayList<>();
+    private String applicationModelType;
+    private int bytes = 0;
+    private long generation = 0;
+
+    /**
+     * Creates a batcher for one stream
+     * @param options This side's batching configuration
+     * @param lock The lock guarding the stream's sends, held for every call on the batcher
+     * @param writer Sends batches and lone events on the stream
+     */
+    public StreamEventBatcher(final BatchingOptions options, final Object lock, final BatchWriter writer) {
+        this.options = options;
+        this.lock = lock;
+        this.writer = writer;
+    }
+
+    /**
+     * Returns the connect message header offering batching, which is also the connect ack header accepting it
+     * @return the header offering or accepting batching
+     */
+    public static Header createBatchingHeader() {
+        return Header.createHeader(BATCHING_HEADER, true);
+    }
+
+    /**
+     * Returns true if the connect message offers, or the connect ack accepts, batching
+     * @param headers The connect or connect ack headers
+     * @return true if batching is offered or accepted
+     */
+    public static boolean hasBatchingHeader(final List<Header> headers) {
+        for (Header header : headers) {
+            if (header.getName().equals(BATCHING_HEADER) && header.getHeaderType() == HeaderType.BooleanTrue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a received message carries a batch of stream events
+     * @param headers The headers of the message
+     * @return true if the message carries a batch
+     */
+    public static boolean isBatch(final List<Header> headers) {
+        for (Header header : headers) {
+            if (header.getName().equals(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER)) {
+                return header.getHeaderType() == HeaderType.String
+                        && CONTENT_TYPE_BATCH.equals(header.getValueAsString());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a received batch into its events
+     * @param payload The batch payload
+     * @return the events, in the order they were sent
+     * @throws IllegalArgumentException if the payload is not a well formed batch
+     */
+    public static List<byte[]> unpack(final byte[] payload) {
+        final ByteBuffer buffer = ByteBuffer.wrap(payload == null ? new byte[0] : payload);
+        final List<byte[]> unpacked = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < Integer.BYTES) {
+                throw new IllegalArgumentException("Stream event batch ends within a length");
+            }
+            final int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Stream event batch ends within an event");
+            }
+            final byte[] event = new byte[length];
+            buffer.get(event);
+            unpacked.add(event);
+        }
+        return unpacked;
+    }
+
+    private static synchronized ScheduledExecutorService getWindowTimer() {
+        if (windowTimer == null) {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "EventStreamRPC-batching");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            windowTimer = executor;
+        }
+        return windowTimer;
+    }
+
+    /**
+     * Queues a stream event, sending the batch if that fills it
+     * @param eventApplicationModelType The application model type of the event, the same for every event on a stream
+     * @param event The serialized event
+     * @return a future completed when the batch carrying the event is flushed
+     */
+    public CompletableFuture<Void> add(final String eventApplicationModelType, final byte[] event) {
+        final CompletableFuture<Void> flushFuture = new CompletableFuture<>();
+        applicationModelType = eventApplicationModelType;
+        events.add(event);
+        flushFutures.add(flushFuture);
+        bytes += event.length;
+        if (bytes >= options.getMaxBatchBytes() || events.size() >= options.getMaxBatchEvents()) {
+            flush();
+        } else if (events.size() == 1) {
+            final long windowGeneration = generation;
+            getWindowTimer().schedule(() -> {
+                synchronized (lock) {
+                    if (generation == windowGeneration) {
+                        flush();
+                    }
+                }
+            }, options.getWindow().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return flushFuture;
+    }
+
+    /**
+     * Sends whatever is queued. Called before any other message on the stream
+     */
+    public void flush() {
+        if (events.isEmpty()) {
+            return;
+        }
+        ++generation;
+        final List<CompletableFuture<Void>> batchFutures = new ArrayList<>(flushFutures);
+        final byte[] payload;
+        final boolean batch = events.size() > 1;
+        if (batch) {
+            final ByteBuffer buffer = ByteBuffer.allocate(bytes + events.size() * Integer.BYTES);
+            for (byte[] event : events) {
+                buffer.putInt(event.length);
+                buffer.put(event);
+            }
+            payload = buffer.array();
+        } else {
+            payload = events.get(0);
+        }
+        events.clear();
+        flushFutures.clear();
+        bytes = 0;
+        try {
+            writer.write(applicationModelType, payload, batch).whenComplete((result, ex) -> {
+                for (CompletableFuture<Void> flushFuture : batchFutures) {
+                    if (ex != null) {
+                        flushFuture.completeExceptionally(ex);
+                    } else {
+                        flushFuture.complete(null);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            for (CompletableFuture<Void> flushFuture : batchFutures) {
+                flushFuture.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Drops whatever is queued, failing the flush of each event. Called when the stream closes
+     * @param cause Why the events were not sent
+     */
+    public void discard(final Throwable cause) {
+        ++generation;
+        for (CompletableFuture<Void> flushFuture : flushFutures) {
+            flushFuture.completeExceptionally(cause);
+        }
+        events.clear();
+        flushFutures.clear();
+        bytes = 0;
+    }
+}
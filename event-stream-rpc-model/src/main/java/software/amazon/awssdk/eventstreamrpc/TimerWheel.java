@@ -0,0 +1,189 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timer wheel for large numbers of coarse, mostly cancelled timeouts such as heartbeats and idle
+ * timers. A single daemon thread advances the wheel once per tick and runs expired tasks, so scheduling
+ * and cancelling are O(1) and no thread or executor task is held per timeout.
+ *
+ * Timeouts fire no earlier than requested and up to one tick late. Tasks run on the wheel thread and
+ * must be short and non-blocking; hand anything heavier to another executor.
+ */
+public final class TimerWheel implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(TimerWheel.class.getName());
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] buckets;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread worker;
+    private final long startNanos;
+    private long currentTick = 0;    //only touched by the worker thread
+
+    /**
+     * Creates and starts a timer wheel
+     * @param name Name of the wheel thread
+     * @param tickDuration Resolution of the wheel
+     * @param tickUnit Unit of tickDuration
+     * @param wheelSize Number of buckets. Timeouts further out than wheelSize ticks wrap around and are
+     *                  revisited once per rotation
+     */
+    public TimerWheel(final String name, final long tickDuration, final TimeUnit tickUnit, final int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("Wheel size must be positive");
+        }
+        this.tickNanos = tickUnit.toNanos(tickDuration);
+        this.buckets = newBuckets(wheelSize);
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Returns the empty buckets of a wheel. An array of a generic type can only be created with a wildcard, so
+     * this is the one unchecked cast
+     */
+    @SuppressWarnings("unchecked")
+    private static Queue<Timeout>[] newBuckets(final int wheelSize) {
+        final Queue<Timeout>[] buckets = (Queue<Timeout>[]) new Queue<?>[wheelSize];
+        for (int i = 0; i < wheelSize; ++i) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        return buckets;
+    }
+
+    /**
+     * Schedules a task to run once after the given delay
+     * @param task The task to run on the wheel thread
+     * @param delay The delay
+     * @param unit Unit of the delay
+     * @return A handle that may be used to cancel the task
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        if (!running.get()) {
+            throw new IllegalStateException("TimerWheel is closed");
+        }
+        final long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        final Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel thread. Timeouts that have not fired are dropped
+     */
+    @Override
+    public void close() {
+        if (running.compareAndSet(true, false)) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running.get()) {
+            final long nextTickNanos = (currentTick + 1) * tickNanos;
+            final long sleepNanos = nextTickNanos - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running.get()) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            ++currentTick;
+            transferPending();
+            expire(buckets[(int) (currentTick % buckets.length)]);
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            final long deadlineTick = Math.max(currentTick, (timeout.deadlineNanos + tickNanos - 1) / tickNanos);
+            timeout.remainingRounds = (deadlineTick - currentTick) / buckets.length;
+            buckets[(int) (deadlineTick % buckets.length)].add(timeout);
+        }
+    }
+
+    private void expire(final Queue<Timeout> bucket) {
+        final Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            final Timeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+            } else if (timeout.remainingRounds > 0) {
+                --timeout.remainingRounds;
+            } else {
+                iterator.remove();
+                if (timeout.state.compareAndSet(false, true)) {
+                    try {
+                        timeout.task.run();
+                    } catch (Throwable e) {
+                        LOGGER.log(Level.WARNING, "TimerWheel task threw " + e.getClass().getCanonicalName(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle to a task scheduled on a TimerWheel
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicBoolean state = new AtomicBoolean(false);    //true once fired or cancelled
+        private volatile boolean cancelled = false;
+        private long remainingRounds;    //only touched by the worker thread
+
+        private Timeout(final Runnable task, final long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancels the task if it has not run yet
+         * @return true if the task was cancelled, false if it already ran or was already cancelled
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(false, true)) {
+                cancelled = true;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if the task was cancelled before it ran
+         * @return true if the task was cancelled before it ran
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
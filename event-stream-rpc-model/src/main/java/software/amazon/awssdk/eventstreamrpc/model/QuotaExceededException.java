@@ -0,0 +1,47 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.model;
+
+/**
+ * Closes a stream that took the payload bytes in flight on it, or on its connection, past the hard quota of
+ * the side receiving them. The message that crossed the quota was not handled. Sending more slowly, or
+ * heeding the backpressure signalled at the soft quota, avoids it.
+ */
+public class QuotaExceededException extends EventStreamOperationError {
+    /**
+     * The error code associated with a quota exceeded exception
+     */
+    public static final String ERROR_CODE = "aws#QuotaExceeded";
+
+    /**
+     * Creates a new quota exceeded exception from the given service name and message
+     * @param serviceName The name of the service that caused the exception
+     * @param message The message to associate with the exception
+     */
+    public QuotaExceededException(String serviceName, String message) {
+        super(serviceName, ERROR_CODE, message);
+    }
+
+    /**
+     * Creates a new quota exceeded exception from the given service name
+     * @param serviceName The name of the service that caused the exception
+     */
+    public QuotaExceededException(String serviceName) {
+        super(serviceName, ERROR_CODE, "QuotaExceeded");
+    }
+
+    /**
+     * Returns the named model type. May be used for a header.
+     *
+     * @return The named model type
+     */
+    @Override
+    public String getApplicationModelType() {
+        return ERROR_CODE;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc.model;
+
+/**
+ * Thrown when the server is temporarily unable to serve a request, such as while it is draining
+ * connections ahead of a restart. The request was not processed and is safe to retry, ideally
+ * on a new connection.
+ */
+public class ServiceUnavailableException extends EventStreamOperationError {
+    /**
+     * The error code associated with a service unavailable exception
+     */
+    public static final String ERROR_CODE = "aws#ServiceUnavailable";
+
+    /**
+     * Creates a new service unavailable exception from the given service name and message
+     * @param serviceName The name of the service that caused the exception
+     * @param message The message to associate with the exception
+     */
+    public ServiceUnavailableException(String serviceName, String message) {
+        super(serviceName, ERROR_CODE, message);
+    }
+
+    /**
+     * Creates a new service unavailable exception from the given service name
+     * @param serviceName The name of the service that caused the exception
+     */
+    public ServiceUnavailableException(String serviceName) {
+        super(serviceName, ERROR_CODE, "ServiceUnavailable");
+    }
+
+    /**
+     * Returns the named model type. May be used for a header.
+     *
+     * @return The named model type
+     */
+    @Override
+    public String getApplicationModelType() {
+        return ERROR_CODE;
+    }
+}
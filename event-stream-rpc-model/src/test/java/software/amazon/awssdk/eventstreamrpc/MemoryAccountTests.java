@@ -0,0 +1,98 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MemoryAccountTests {
+    private static MemoryAccount newAccount() {
+        return new MemoryAccount(new MemoryQuotaOptions(1000, 2000, 100, 200), true);
+    }
+
+    @Test
+    void testSignalSentOutsideMonitor() {
+        final List<Boolean> signals = new ArrayList<>();
+        final AtomicReference<MemoryAccount.Stream> stream = new AtomicReference<>();
+        stream.set(newAccount().newStream(backpressured -> {
+            Assertions.assertFalse(Thread.holdsLock(stream.get()), "Signal sent with the stream's monitor held");
+            signals.add(backpressured);
+        }));
+        Assertions.assertTrue(stream.get().acquire(50));
+        Assertions.assertTrue(signals.isEmpty());
+        Assertions.assertTrue(stream.get().acquire(100));
+        Assertions.assertTrue(stream.get().acquire(40));
+        Assertions.assertEquals(Collections.singletonList(true), signals);
+
+        //a message past the hard quota is refused, and changes nothing
+        Assertions.assertFalse(stream.get().acquire(20));
+        Assertions.assertEquals(190, stream.get().getInFlightBytes());
+
+        stream.get().release(150);
+        Assertions.assertEquals(Arrays.asList(true, false), signals);
+        stream.get().release(40);
+        Assertions.assertEquals(Arrays.asList(true, false), signals);
+    }
+
+    @Test
+    void testChangeWhileSignallingSentAfter() {
+        final List<Boolean> signals = new ArrayList<>();
+        final AtomicReference<MemoryAccount.Stream> stream = new AtomicReference<>();
+        stream.set(newAccount().newStream(backpressured -> {
+            signals.add(backpressured);
+            //the bytes are released while the signal is being sent, which is then followed by the one it called for
+            if (backpressured) {
+                stream.get().release(150);
+                Assertions.assertEquals(Collections.singletonList(true), signals);
+            }
+        }));
+        Assertions.assertTrue(stream.get().acquire(150));
+        Assertions.assertEquals(Arrays.asList(true, false), signals);
+        Assertions.assertEquals(0, stream.get().getInFlightBytes());
+    }
+
+    @Test
+    void testRacingSignalsAlternateAndEndUnset() throws Exception {
+        final List<Boolean> signals = Collections.synchronizedList(new ArrayList<>());
+        final MemoryAccount.Stream stream = newAccount().newStream(signals::add);
+        final int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            done.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int i = 0; i < 10000; ++i) {
+                    if (stream.acquire(40)) {
+                        stream.release(40);
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(0, stream.getInFlightBytes());
+        for (int i = 0; i < signals.size(); ++i) {
+            Assertions.assertEquals(i % 2 == 0, signals.get(i), "Signals out of order at " + i);
+        }
+        Assertions.assertEquals(0, signals.size() % 2, "Last signal leaves the stream backpressured");
+    }
+}
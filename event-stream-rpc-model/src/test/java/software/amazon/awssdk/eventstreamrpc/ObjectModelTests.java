@@ -208,4 +208,28 @@ public class ObjectModelTests {
         EventStreamError errorMessage = EventStreamError.create(headers, badJsonPayload, MessageType.ProtocolError);
         Assertions.assertNotNull(errorMessage);
     }
+
+    @Test
+    void testServiceModelLookups() {
+        final EchoTestRPCServiceModel model = EchoTestRPCServiceModel.getInstance();
+        Assertions.assertEquals(6, model.getAllOperations().size());
+        for (String operationName : model.getAllOperations()) {
+            final OperationModelContext context = model.getOperationModelContext(operationName);
+            Assertions.assertEquals(operationName, context.getOperationName());
+            Assertions.assertEquals(context.getRequestTypeClass(),
+                    model.getApplicationModelClass(context.getRequestApplicationModelType()).get());
+            Assertions.assertEquals(context.getResponseTypeClass(),
+                    model.getApplicationModelClass(context.getResponseApplicationModelType()).get());
+        }
+        Assertions.assertSame(EchoTestRPCServiceModel.getEchoMessageModelContext(),
+                model.getOperationModelContext(EchoTestRPCServiceModel.ECHO_MESSAGE));
+        Assertions.assertEquals(MessageData.class, model.getApplicationModelClass(MessageData.APPLICATION_MODEL_TYPE).get());
+        Assertions.assertNull(model.getOperationModelContext("awstest#NotAnOperation"));
+        Assertions.assertNull(model.getOperationModelContext(null));
+        Assertions.assertFalse(model.getApplicationModelClass("awstest#NotAShape").isPresent());
+        Assertions.assertFalse(model.getApplicationModelClass(null).isPresent());
+
+        model.warmUp(Arrays.asList(EchoTestRPCServiceModel.ECHO_STREAM_MESSAGES, "awstest#NotAnOperation"));
+        model.warmUp(model.getAllOperations());
+    }
 }
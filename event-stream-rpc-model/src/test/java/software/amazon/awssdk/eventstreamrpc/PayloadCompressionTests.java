@@ -0,0 +1,97 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.crt.eventstream.Header;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PayloadCompressionTests {
+    private static final List<Header> OFFER = Collections.singletonList(
+            Header.createHeader(PayloadCompression.ACCEPT_ENCODING_HEADER, DeflatePayloadCodec.NAME));
+
+    private static byte[] payload(final int length) {
+        final byte[] payload = new byte[length];
+        Arrays.fill(payload, (byte) 'a');
+        return payload;
+    }
+
+    private static PayloadCompression accept(final int maxDecodedLength) {
+        final CompressionOptions options = new CompressionOptions();
+        options.setMaxDecodedLength(maxDecodedLength);
+        final PayloadCompression compression = PayloadCompression.acceptOffer(OFFER, options);
+        Assertions.assertNotNull(compression);
+        return compression;
+    }
+
+    private static PayloadFragmentation fragmentation(final int maxPayloadLength) {
+        final PayloadFragmentation fragmentation = PayloadFragmentation.acceptOffer(
+                Collections.singletonList(Header.createHeader(PayloadFragmentation.FRAGMENT_LENGTH_HEADER,
+                        FragmentationOptions.MIN_FRAGMENT_LENGTH)),
+                new FragmentationOptions(FragmentationOptions.MIN_FRAGMENT_LENGTH, maxPayloadLength));
+        Assertions.assertNotNull(fragmentation);
+        return fragmentation;
+    }
+
+    @Test
+    void testDecodeRoundTrip() {
+        final PayloadCompression compression = accept(CompressionOptions.DEFAULT_MAX_DECODED_LENGTH);
+        final List<Header> headers = new ArrayList<>();
+        final byte[] encoded = compression.encode(headers, payload(64 * 1024));
+        Assertions.assertTrue(encoded.length < 64 * 1024);
+        Assertions.assertArrayEquals(payload(64 * 1024), compression.decode(headers, encoded));
+
+        //below the threshold, payloads are sent as they are
+        final List<Header> smallHeaders = new ArrayList<>();
+        Assertions.assertArrayEquals(payload(10), compression.encode(smallHeaders, payload(10)));
+        Assertions.assertTrue(smallHeaders.isEmpty());
+        Assertions.assertArrayEquals(payload(10), compression.decode(smallHeaders, payload(10)));
+    }
+
+    @Test
+    void testConfiguredMaxDecodedLength() {
+        final PayloadCompression compression = accept(16 * 1024);
+        Assertions.assertEquals(16 * 1024, compression.getMaxDecodedLength());
+        final List<Header> headers = new ArrayList<>();
+        final byte[] encoded = compression.encode(headers, payload(64 * 1024));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> compression.decode(headers, encoded));
+
+        final List<Header> fitHeaders = new ArrayList<>();
+        final byte[] fits = compression.encode(fitHeaders, payload(16 * 1024));
+        Assertions.assertArrayEquals(payload(16 * 1024), compression.decode(fitHeaders, fits));
+    }
+
+    @Test
+    void testFragmentationRaisesMaxDecodedLength() {
+        final PayloadCompression compression = accept(16 * 1024).withFragmentation(fragmentation(1024 * 1024));
+        Assertions.assertEquals(1024 * 1024, compression.getMaxDecodedLength());
+        final List<Header> headers = new ArrayList<>();
+        final byte[] encoded = compression.encode(headers, payload(512 * 1024));
+        Assertions.assertArrayEquals(payload(512 * 1024), compression.decode(headers, encoded));
+
+        //fragmentation reassembling less than the configured length leaves it as it was
+        final PayloadCompression unchanged = accept(16 * 1024);
+        Assertions.assertSame(unchanged, unchanged.withFragmentation(fragmentation(4 * 1024)));
+        Assertions.assertSame(unchanged, unchanged.withFragmentation(null));
+    }
+
+    @Test
+    void testCodecDecodeLimit() {
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec();
+        final byte[] encoded = codec.encode(payload(64 * 1024));
+        Assertions.assertArrayEquals(payload(64 * 1024), codec.decode(encoded, 64 * 1024));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> codec.decode(encoded, 64 * 1024 - 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new CompressionOptions().setMaxDecodedLength(0));
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.crt.eventstream.Header;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SharedMemoryRingTests {
+    private static byte[] payload(final int length, final int fill) {
+        final byte[] payload = new byte[length];
+        Arrays.fill(payload, (byte) fill);
+        return payload;
+    }
+
+    /**
+     * Rewrites the length in a region's header, as a reader mapping the ring writable could
+     */
+    private static void tamperLength(final Path path, final SharedMemoryRing.Region region, final int length)
+            throws Exception {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            mapped.putInt(64 + region.getOffset(), length);
+        }
+    }
+
+    @Test
+    void testReadAcknowledgesRegion() throws Exception {
+        final Path directory = Files.createTempDirectory("shm-ring-test");
+        final Path path = directory.resolve("ring");
+        try (final SharedMemoryRing writer = SharedMemoryRing.create(path, 1024, null);
+             final SharedMemoryRing reader = SharedMemoryRing.open(path)) {
+            final SharedMemoryRing.Region region = writer.write(payload(100, 7));
+            Assertions.assertNotNull(region);
+            Assertions.assertArrayEquals(payload(100, 7), reader.read(region));
+            //each region is read once
+            Assertions.assertThrows(IllegalStateException.class, () -> reader.read(region));
+            Assertions.assertFalse(reader.release(region));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testReleasedRegionIsReclaimed() throws Exception {
+        final Path directory = Files.createTempDirectory("shm-ring-test");
+        final Path path = directory.resolve("ring");
+        //room for three 256 byte regions with their headers
+        try (final SharedMemoryRing writer = SharedMemoryRing.create(path, 3 * (16 + 256), null);
+             final SharedMemoryRing reader = SharedMemoryRing.open(path)) {
+            final SharedMemoryRing.Region dropped = writer.write(payload(256, 1));
+            final SharedMemoryRing.Region second = writer.write(payload(256, 2));
+            final SharedMemoryRing.Region third = writer.write(payload(256, 3));
+            Assertions.assertNotNull(third);
+            Assertions.assertNull(writer.write(payload(256, 4)));
+
+            //regions after one never read are acknowledged, but cannot be reclaimed past it
+            reader.read(second);
+            reader.read(third);
+            Assertions.assertNull(writer.write(payload(256, 4)));
+
+            //releasing the dropped one frees the ring
+            Assertions.assertTrue(reader.release(dropped));
+            Assertions.assertThrows(IllegalStateException.class, () -> reader.read(dropped));
+            final SharedMemoryRing.Region reused = writer.write(payload(256, 4));
+            Assertions.assertNotNull(reused);
+            Assertions.assertArrayEquals(payload(256, 4), reader.read(reused));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testTamperedLengthIgnoredByWriter() throws Exception {
+        final Path directory = Files.createTempDirectory("shm-ring-test");
+        final Path path = directory.resolve("ring");
+        try (final SharedMemoryRing writer = SharedMemoryRing.create(path, 3 * (16 + 256), null);
+             final SharedMemoryRing reader = SharedMemoryRing.open(path)) {
+            //a length that would not move the writer's tail on reclaiming
+            final SharedMemoryRing.Region stalling = writer.write(payload(256, 1));
+            reader.read(stalling);
+            tamperLength(path, stalling, -16);
+            final SharedMemoryRing.Region second = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> writer.write(payload(256, 2)));
+            Assertions.assertNotNull(second);
+
+            //a length that would move it past what was written, so unread regions looked free
+            reader.read(second);
+            tamperLength(path, second, 1 << 20);
+            Assertions.assertNotNull(writer.write(payload(256, 3)));
+            Assertions.assertNotNull(writer.write(payload(256, 4)));
+            Assertions.assertNotNull(writer.write(payload(256, 5)));
+            Assertions.assertNull(writer.write(payload(256, 6)));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testChannelReleasesRegionOfDroppedMessage() throws Exception {
+        final Path directory = Files.createTempDirectory("shm-ring-test");
+        final SharedMemoryChannel server = SharedMemoryChannel.createServerChannel(directory, 2 * (16 + 1024), 512, null);
+        try (final SharedMemoryChannel client = SharedMemoryChannel.openClientChannel(server.getConnectAckHeaders(), 512)) {
+            Assertions.assertNotNull(client);
+            for (int i = 0; i < 8; ++i) {
+                final List<Header> headers = new ArrayList<>();
+                Assertions.assertTrue(client.offload(headers, payload(1024, i)), "ring wedged at message " + i);
+                server.release(headers);
+            }
+            //messages sent inline point at no region, and there is nothing to release
+            server.release(Collections.emptyList());
+            Assertions.assertArrayEquals(payload(10, 1), server.resolve(Collections.emptyList(), payload(10, 1)));
+        } finally {
+            server.close();
+            Files.delete(directory);
+        }
+    }
+}
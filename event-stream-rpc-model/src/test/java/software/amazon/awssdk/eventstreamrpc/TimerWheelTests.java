@@ -0,0 +1,76 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerWheelTests {
+    @Test
+    void testTimeoutFiresNoEarlierThanRequested() throws Exception {
+        try (final TimerWheel wheel = new TimerWheel("TimerWheelTests", 10, TimeUnit.MILLISECONDS, 8)) {
+            final long scheduledNanos = System.nanoTime();
+            final CompletableFuture<Long> firedAt = new CompletableFuture<>();
+            wheel.schedule(() -> firedAt.complete(System.nanoTime()), 50, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(firedAt.get(5, TimeUnit.SECONDS) - scheduledNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    void testTimeoutBeyondOneRotation() throws Exception {
+        //8 buckets of 10ms, so 200ms wraps the wheel twice before firing
+        try (final TimerWheel wheel = new TimerWheel("TimerWheelTests", 10, TimeUnit.MILLISECONDS, 8)) {
+            final long scheduledNanos = System.nanoTime();
+            final CompletableFuture<Long> firedAt = new CompletableFuture<>();
+            wheel.schedule(() -> firedAt.complete(System.nanoTime()), 200, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(firedAt.get(5, TimeUnit.SECONDS) - scheduledNanos >= TimeUnit.MILLISECONDS.toNanos(200));
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        try (final TimerWheel wheel = new TimerWheel("TimerWheelTests", 10, TimeUnit.MILLISECONDS, 8)) {
+            final AtomicInteger fired = new AtomicInteger();
+            final TimerWheel.Timeout cancelled = wheel.schedule(fired::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(cancelled.cancel());
+            Assertions.assertTrue(cancelled.isCancelled());
+            Assertions.assertFalse(cancelled.cancel());
+
+            final CountDownLatch later = new CountDownLatch(1);
+            final TimerWheel.Timeout ran = wheel.schedule(later::countDown, 100, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(later.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, fired.get());
+            Assertions.assertFalse(ran.cancel());
+            Assertions.assertFalse(ran.isCancelled());
+        }
+    }
+
+    @Test
+    void testThrowingTaskDoesNotStopWheel() throws Exception {
+        try (final TimerWheel wheel = new TimerWheel("TimerWheelTests", 10, TimeUnit.MILLISECONDS, 8)) {
+            wheel.schedule(() -> {
+                throw new IllegalStateException("Task failed");
+            }, 10, TimeUnit.MILLISECONDS);
+            final CountDownLatch fired = new CountDownLatch(1);
+            wheel.schedule(fired::countDown, 50, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testScheduleAfterClose() {
+        final TimerWheel wheel = new TimerWheel("TimerWheelTests", 10, TimeUnit.MILLISECONDS, 8);
+        wheel.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> wheel.schedule(() -> { }, 10, TimeUnit.MILLISECONDS));
+    }
+}
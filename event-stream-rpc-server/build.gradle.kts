@@ -45,6 +45,31 @@ val test by tasks.getting(Test::class) {
     useJUnitPlatform()
 }
 
+/*
+ * Flight recorder tests
+ * ====================================================
+ *
+ * They read recordings with jdk.jfr, which the Java 8 platform API lacks, so they are compiled apart from the
+ * other tests against the JDK running the build, and run by their own task that check depends on.
+ */
+val jfrTest by sourceSets.creating {
+    compileClasspath += sourceSets["test"].output + sourceSets["test"].compileClasspath
+    runtimeClasspath += output + compileClasspath + sourceSets["test"].runtimeClasspath
+}
+
+val jfrTestTask = tasks.register<Test>("jfrTest") {
+    description = "Runs the flight recorder tests."
+    group = "verification"
+    testClassesDirs = jfrTest.output.classesDirs
+    classpath = jfrTest.runtimeClasspath
+    useJUnitPlatform()
+    systemProperties.set("aws.crt.debugnative", "1")
+}
+
+tasks.named("check") {
+    dependsOn(jfrTestTask)
+}
+
 /*
  * CheckStyle
  * ====================================================
@@ -0,0 +1,141 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awstest.EchoMessageResponseHandler;
+import software.amazon.awssdk.awstest.EchoStreamMessagesResponseHandler;
+import software.amazon.awssdk.awstest.EchoTestRPCServiceModel;
+import software.amazon.awssdk.awstest.model.EchoMessageRequest;
+import software.amazon.awssdk.awstest.model.EchoMessageResponse;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.MessageData;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestServiceRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the events of a flight recording with jdk.jfr, so compiled and run apart from the other tests
+ */
+public class FlightRecorderTests {
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        final Path recordingFile = Files.createTempFile("eventstreamrpc", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.start();
+                final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer((connection, client) -> {
+                    final MessageData data = new MessageData();
+                    data.setStringMessage("recorded");
+                    final EchoMessageRequest request = new EchoMessageRequest();
+                    request.setMessage(data);
+                    final EchoMessageResponseHandler responseHandler = client.echoMessage(request, Optional.empty());
+
+                    final CompletableFuture<EchoStreamingMessage> echoed = new CompletableFuture<>();
+                    final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(
+                            EchoStreamingRequest.VOID, Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            echoed.complete(streamEvent);
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            echoed.completeExceptionally(error);
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() {
+                        }
+                    }));
+                    final EchoStreamingMessage event = new EchoStreamingMessage();
+                    event.setStreamMessage(data);
+                    try {
+                        Assertions.assertEquals(data, responseHandler.getResponse().get(10, TimeUnit.SECONDS)
+                                .getMessage());
+                        streamHandler.getResponse().get(10, TimeUnit.SECONDS);
+                        streamHandler.sendStreamEvent(event).get(10, TimeUnit.SECONDS);
+                        Assertions.assertEquals(event, echoed.get(10, TimeUnit.SECONDS));
+                        streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                        Assertions.fail(e);
+                    }
+                });
+                try {
+                    clientErrorAfter.get(1, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    //eat this because it means there was no exception which is good
+                } catch (ExecutionException e) {
+                    //throw this because it means the client did have a problem
+                    Assertions.fail(e.getCause());
+                }
+                recording.stop();
+                recording.dump(recordingFile);
+            }
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                    .filter(event -> event.getEventType().getName().startsWith(RpcFlightRecorder.EVENT_NAME_PREFIX))
+                    .collect(Collectors.toList());
+            final Function<String, List<RecordedEvent>> named = name -> events.stream()
+                    .filter(event -> event.getEventType().getName().equals(RpcFlightRecorder.EVENT_NAME_PREFIX + name))
+                    .collect(Collectors.toList());
+
+            Assertions.assertEquals(1, named.apply("Connect").size());
+            Assertions.assertNull(named.apply("Connect").get(0).getString("error"));
+            Assertions.assertTrue(named.apply("ConnectAck").get(0).getBoolean("accepted"));
+
+            final List<RecordedEvent> invokes = named.apply("OperationInvoke");
+            Assertions.assertEquals(Arrays.asList(EchoTestRPCServiceModel.ECHO_MESSAGE,
+                    EchoTestRPCServiceModel.ECHO_STREAM_MESSAGES), invokes.stream()
+                    .map(event -> event.getString("operationName")).sorted().collect(Collectors.toList()));
+            final RecordedEvent echoInvoke = invokes.stream()
+                    .filter(event -> event.getString("operationName").equals(EchoTestRPCServiceModel.ECHO_MESSAGE))
+                    .findFirst().get();
+            Assertions.assertTrue(echoInvoke.getLong("requestBytes") > 0);
+            Assertions.assertTrue(echoInvoke.getLong("responseBytes") > 0);
+            Assertions.assertNull(echoInvoke.getString("error"));
+            Assertions.assertEquals(2, named.apply("HandlerExecution").size());
+
+            //the event went out from the client and back from the server
+            for (String name : Arrays.asList("StreamEventSent", "StreamEventReceived")) {
+                final List<RecordedEvent> streamEvents = named.apply(name);
+                Assertions.assertEquals(Arrays.asList(false, true), streamEvents.stream()
+                        .map(event -> event.getBoolean("server")).sorted().collect(Collectors.toList()), name);
+                for (RecordedEvent streamEvent : streamEvents) {
+                    Assertions.assertEquals(EchoTestRPCServiceModel.ECHO_STREAM_MESSAGES,
+                            streamEvent.getString("operationName"));
+                    Assertions.assertEquals(EchoStreamingMessage.APPLICATION_MODEL_TYPE,
+                            streamEvent.getString("applicationModelType"));
+                    Assertions.assertTrue(streamEvent.getLong("bytes") > 0);
+                }
+            }
+            Assertions.assertTrue(named.apply("Serialize").stream().anyMatch(event ->
+                    event.getString("applicationModelType").equals(EchoMessageRequest.APPLICATION_MODEL_TYPE)));
+            Assertions.assertTrue(named.apply("Deserialize").stream().anyMatch(event ->
+                    event.getString("applicationModelType").equals(EchoMessageResponse.APPLICATION_MODEL_TYPE)));
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+    }
+}
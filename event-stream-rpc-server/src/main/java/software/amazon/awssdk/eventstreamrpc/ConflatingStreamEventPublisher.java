@@ -0,0 +1,190 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes stream events of which only the newest per key matters, such as configuration updates by key path
+ * or shadow updates by thing and shadow name. Events are sent while the handler's stream is writable. Once it
+ * is not, at most one event per key waits: a newer event for the key replaces the one waiting, and the waiting
+ * events are sent once the stream is writable again. A slow subscriber so holds no more than one event per key
+ * and receives the newest values rather than a stale backlog.
+ *
+ * Events for one key are sent in the order published, less those replaced. Events for different keys may be
+ * reordered. A replaced event is dropped, and the future returned for it is the one of the event replacing it.
+ *
+ * @param <StreamEventType> The handler's stream event type
+ */
+public class ConflatingStreamEventPublisher<StreamEventType extends EventStreamJsonMessage>
+        implements StreamEventPublisher<StreamEventType> {
+    private final OperationContinuationHandler<?, ?, ?, StreamEventType> handler;
+    private final Function<? super StreamEventType, ?> keyFunction;
+    private final Map<Object, Pending<StreamEventType>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicBoolean awaitingWritable = new AtomicBoolean(false);
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    private static final class Pending<StreamEventType> {
+        final StreamEventType streamEvent;
+        final CompletableFuture<Void> flushed;
+
+        /**
+         * @param flushed The future of the event waiting before, which this one replaces, so a key only ever
+         *                holds one event and one future however often it is replaced
+         */
+        Pending(final StreamEventType streamEvent, final CompletableFuture<Void> flushed) {
+            this.streamEvent = streamEvent;
+            this.flushed = flushed;
+        }
+    }
+
+    /**
+     * Creates a publisher
+     * @param handler The handler of the stream to publish on
+     * @param keyFunction Returns the key of an event, which must not be null
+     */
+    public ConflatingStreamEventPublisher(final OperationContinuationHandler<?, ?, ?, StreamEventType> handler,
+                                          final Function<? super StreamEventType, ?> keyFunction) {
+        this.handler = handler;
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * Sends an event if the stream is writable, or has it wait in its key's slot, replacing any event waiting
+     * there
+     *
+     * @param streamEvent event to publish
+     * @return A future that completes when the event, or the event that replaced it, is flushed
+     */
+    @Override
+    public CompletableFuture<Void> sendStreamEvent(final StreamEventType streamEvent) {
+        final Object key = keyFunction.apply(streamEvent);
+        if (key == null) {
+            throw new IllegalArgumentException("Conflating publisher key must not be null");
+        }
+        published.incrementAndGet();
+        final Pending<StreamEventType> next = pending.compute(key, (k, waiting) -> {
+            if (waiting == null) {
+                return new Pending<>(streamEvent, new CompletableFuture<>());
+            }
+            conflated.incrementAndGet();
+            return new Pending<>(streamEvent, waiting.flushed);
+        });
+        drain();
+        return next.flushed;
+    }
+
+    /**
+     * Closes the stream. Events still waiting fail with an EventStreamClosedException
+     *
+     * @return A future that completes when the stream termination message is flushed
+     */
+    @Override
+    public CompletableFuture<Void> closeStream() {
+        return handler.closeStream().whenComplete((res, ex) -> failPending(new EventStreamClosedException(
+                "Stream closed with conflated events waiting")));
+    }
+
+    /**
+     * Returns the number of events published
+     * @return the number of events published
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Returns the number of events replaced by a newer one for their key before they were sent
+     * @return the number of events conflated
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    /**
+     * Returns the number of events handed to the stream
+     * @return the number of events sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Returns the number of keys with an event waiting
+     * @return the number of events waiting
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the waiting events while the stream is writable. Runs on one thread at a time, any other calling
+     * meanwhile having the running one go round again, so events for a key are never sent out of order
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            for (Object key : pending.keySet()) {
+                if (!handler.isWritable()) {
+                    awaitWritable();
+                    break;
+                }
+                final Pending<StreamEventType> next = pending.remove(key);
+                if (next != null) {
+                    sent.incrementAndGet();
+                    handler.sendStreamEvent(next.streamEvent).whenComplete((res, ex) -> complete(next.flushed, ex));
+                }
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private void awaitWritable() {
+        if (awaitingWritable.compareAndSet(false, true)) {
+            handler.awaitWritable().whenComplete((res, ex) -> {
+                awaitingWritable.set(false);
+                if (ex != null) {
+                    failPending(ex);
+                } else {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void failPending(final Throwable cause) {
+        for (Object key : pending.keySet()) {
+            final Pending<StreamEventType> failed = pending.remove(key);
+            if (failed != null) {
+                failed.flushed.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private static void complete(final CompletableFuture<Void> flushed, final Throwable ex) {
+        if (ex != null) {
+            flushed.completeExceptionally(ex);
+        } else {
+            flushed.complete(null);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the handler work of client connections fairly, so one connection flooding stream events cannot starve
+ * the others sharing its event loop. Once installed, the messages arriving on a connection's streams are
+ * queued on the connection's queue rather than handled on the event loop, and a pool of worker threads serves
+ * the queues by deficit round robin.
+ *
+ * Each turn a connection is given the quantum times its weight in credit, and handles the messages at the head
+ * of its queue for as long as its credit covers their payload length. Credit left over carries to its next
+ * turn while it still has messages waiting. Weights are set per identity, the label of the connection's
+ * AuthenticationData, and default to 1. A connection's messages are handled one at a time, in the order they
+ * arrived, whichever worker takes its turn.
+ *
+ * A connection may have at most maxQueuedBytes of payload waiting. A message past that is refused, and the
+ * stream it arrived on is closed with an error once the messages queued before it are handled, so a client
+ * sending faster than its turns cannot grow its queue without bound.
+ *
+ * One scheduler may be shared by several RpcServers. Install with
+ * {@link ServerConnectionOptions.Builder#withFairScheduler(FairScheduler)} before the server starts, and close
+ * once every server using it is stopped.
+ */
+public class FairScheduler implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FairScheduler.class);
+
+    /**
+     * Payload bytes a connection of weight 1 may handle each turn by default
+     */
+    public static final int DEFAULT_QUANTUM = 16 * 1024;
+    /**
+     * Payload bytes a connection may have waiting by default
+     */
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+
+    private final int threads;
+    private final int quantum;
+    private final long maxQueuedBytes;
+    private final Map<String, Integer> identityWeights = new ConcurrentHashMap<>();
+    private final Deque<ConnectionQueue> ready = new ArrayDeque<>();
+    private final List<ConnectionQueue> registered = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * The work queue of one connection
+     */
+    public final class ConnectionQueue {
+        private final String identityLabel;
+        private final int weight;
+        private final Deque<Work> work = new ArrayDeque<>();
+        private long deficit = 0;
+        private boolean running = false;
+        private int maxDepth = 0;
+        private long handled = 0;
+        private long queuedBytes = 0;
+        private long refused = 0;
+
+        private ConnectionQueue(final String identityLabel, final int weight) {
+            this.identityLabel = identityLabel;
+            this.weight = weight;
+        }
+
+        /**
+         * Returns the identity of the connection
+         * @return the identity label of the connection's AuthenticationData
+         */
+        public String getIdentityLabel() {
+            return identityLabel;
+        }
+
+        /**
+         * Returns the weight of the connection
+         * @return the weight of the connection
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns the number of messages waiting to be handled
+         * @return the number of messages waiting to be handled
+         */
+        public int getDepth() {
+            synchronized (FairScheduler.this) {
+                return work.size();
+            }
+        }
+
+        /**
+         * Returns the most messages that have waited at once
+         * @return the most messages that have waited at once
+         */
+        public int getMaxDepth() {
+            synchronized (FairScheduler.this) {
+                return maxDepth;
+            }
+        }
+
+        /**
+         * Returns the number of messages handled
+         * @return the number of messages handled
+         */
+        public long getHandled() {
+            synchronized (FairScheduler.this) {
+                return handled;
+            }
+        }
+
+        /**
+         * Returns the payload bytes waiting to be handled
+         * @return the payload bytes waiting to be handled
+         */
+        public long getQueuedBytes() {
+            synchronized (FairScheduler.this) {
+                return queuedBytes;
+            }
+        }
+
+        /**
+         * Returns the number of messages refused for arriving with the queue full
+         * @return the number of messages refused
+         */
+        public long getRefused() {
+            synchronized (FairScheduler.this) {
+                return refused;
+            }
+        }
+
+        /**
+         * Queues work for the connection
+         * @param cost The payload length of the message the work handles
+         * @param task The work
+         * @param closing True if the work closes a stream, which is queued even past the limit so a stream can
+         *                always be closed
+         * @return true if the work was queued, false if the connection already has its most payload bytes
+         *         waiting
+         */
+        boolean submit(final int cost, final Runnable task, final boolean closing) {
+            synchronized (FairScheduler.this) {
+                if (closed) {
+                    LOGGER.warn("Dropping work for {} queued after the scheduler closed", identityLabel);
+                    return true;
+                }
+                final int charged = Math.max(1, cost);
+                if (!closing && queuedBytes + charged > maxQueuedBytes) {
+                    ++refused;
+                    return false;
+                }
+                work.add(new Work(charged, task));
+                queuedBytes += charged;
+                maxDepth = Math.max(maxDepth, work.size());
+                if (!running && work.size() == 1) {
+                    ready.add(this);
+                    FairScheduler.this.notify();
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Drops the queue of a closed connection from the metrics. Work already queued is still handled
+         */
+        void unregister() {
+            synchronized (FairScheduler.this) {
+                registered.remove(this);
+            }
+        }
+    }
+
+    private static final class Work {
+        final int cost;
+        final Runnable task;
+
+        Work(final int cost, final Runnable task) {
+            this.cost = cost;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Creates a scheduler with one worker per processor and the default quantum
+     */
+    public FairScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+    }
+
+    /**
+     * Creates a scheduler with the default limit on payload bytes waiting
+     * @param threads The number of worker threads. Must be positive
+     * @param quantum The payload bytes a connection of weight 1 may handle each turn. Must be positive
+     */
+    public FairScheduler(final int threads, final int quantum) {
+        this(threads, quantum, DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * Creates a scheduler
+     * @param threads The number of worker threads. Must be positive
+     * @param quantum The payload bytes a connection of weight 1 may handle each turn. Must be positive
+     * @param maxQueuedBytes The payload bytes a connection may have waiting. Must be at least the quantum
+     */
+    public FairScheduler(final int threads, final int quantum, final long maxQueuedBytes) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Fair scheduler needs at least one thread");
+        }
+        if (quantum < 1) {
+            throw new IllegalArgumentException("Fair scheduler quantum must be positive");
+        }
+        if (maxQueuedBytes < quantum) {
+            throw new IllegalArgumentException("Fair scheduler queue limit must be at least the quantum");
+        }
+        this.threads = threads;
+        this.quantum = quantum;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Sets the weight of an identity, for connections accepted after this call
+     * @param identityLabel The identity label of the connections' AuthenticationData
+     * @param weight The weight. Must be positive
+     */
+    public void setIdentityWeight(final String identityLabel, final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Identity weight must be positive");
+        }
+        identityWeights.put(identityLabel, weight);
+    }
+
+    /**
+     * Returns the weight of an identity
+     * @param identityLabel The identity label
+     * @return the weight of the identity, 1 if it was not set
+     */
+    public int getIdentityWeight(final String identityLabel) {
+        return identityWeights.getOrDefault(identityLabel, 1);
+    }
+
+    /**
+     * Returns the number of worker threads
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the payload bytes a connection of weight 1 may handle each turn
+     * @return the quantum
+     */
+    public int getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * Returns the payload bytes a connection may have waiting
+     * @return the payload bytes a connection may have waiting
+     */
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    /**
+     * Returns the queues of the connections currently registered, for their depth metrics
+     * @return the queues of the open connections
+     */
+    public synchronized List<ConnectionQueue> getConnectionQueues() {
+        return new ArrayList<>(registered);
+    }
+
+    /**
+     * Creates the queue of a newly accepted connection, starting the workers if this is the first
+     * @param authenticationData The connection's authentication data
+     * @return the connection's queue
+     */
+    synchronized ConnectionQueue register(final AuthenticationData authenticationData) {
+        if (closed) {
+            throw new IllegalStateException("Fair scheduler is closed");
+        }
+        final String identityLabel = authenticationData.getIdentityLabel();
+        final ConnectionQueue queue = new ConnectionQueue(identityLabel, getIdentityWeight(identityLabel));
+        registered.add(queue);
+        if (workers.isEmpty()) {
+            for (int i = 0; i < threads; ++i) {
+                final Thread worker = new Thread(this::runWorker, "EventStreamRPC-fair-scheduler-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+        return queue;
+    }
+
+    private void runWorker() {
+        while (true) {
+            final ConnectionQueue queue;
+            final List<Runnable> turn = new ArrayList<>();
+            synchronized (this) {
+                while (!closed && ready.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                queue = ready.poll();
+                queue.deficit += (long) quantum * queue.weight;
+                while (!queue.work.isEmpty() && queue.work.peek().cost <= queue.deficit) {
+                    final Work next = queue.work.poll();
+                    queue.deficit -= next.cost;
+                    queue.queuedBytes -= next.cost;
+                    turn.add(next.task);
+                }
+                if (queue.work.isEmpty()) {
+                    queue.deficit = 0;
+                }
+                queue.running = true;
+            }
+            for (Runnable task : turn) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Work for {} threw {}: {}", queue.identityLabel, e.getClass().getCanonicalName(),
+                            e.getMessage());
+                }
+            }
+            synchronized (this) {
+                queue.running = false;
+                queue.handled += turn.size();
+                if (!queue.work.isEmpty()) {
+                    ready.add(queue);
+                    notify();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the workers. Work still queued is dropped
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            ready.clear();
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageFlags;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.crt.eventstream.ServerConnectionContinuationHandler;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Serves an EventStreamRPCServiceHandler to clients in the same JVM, such as plugins embedded in the process
+ * hosting the IPC server. Clients connect with an InProcessEventStreamRPCConnection and invoke operations
+ * exactly as over a socket, but requests, responses, stream events and errors reach the operation handlers as
+ * model objects: there is no socket, framing or JSON in between.
+ *
+ * Connects go through the same version check, authentication and authorization as RpcServer, and operation
+ * handlers run unchanged, seeing the same AuthenticationData, stream events, terminate flags and closes. Their
+ * context has no ServerConnection or ServerConnectionContinuation. Only OperationContinuationHandler based
+ * operations can be served this way; anything else is answered as an unsupported operation.
+ *
+ * May serve the same service handler as an RpcServer at the same time.
+ */
+public class InProcessRpcServer implements InProcessEndpoint, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessRpcServer.class);
+
+    private final EventStreamRPCServiceHandler serviceHandler;
+    private final Set<InProcessSession> sessions = ConcurrentHashMap.newKeySet();
+    private volatile RpcServerMetrics metrics = new RpcServerMetrics();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new in-process server for the given service
+     * @param serviceHandler The service to serve
+     */
+    public InProcessRpcServer(final EventStreamRPCServiceHandler serviceHandler) {
+        if (serviceHandler == null) {
+            throw new IllegalArgumentException("Service handler must not be null");
+        }
+        this.serviceHandler = serviceHandler;
+    }
+
+    /**
+     * Returns the metrics this server records into
+     * @return the metrics this server records into
+     */
+    public RpcServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the metrics this server records into, for example to aggregate with the service's RpcServer.
+     * Should be set before any client connects
+     * @param metrics The metrics to record into
+     */
+    public void setMetrics(final RpcServerMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics must not be null");
+        }
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Session connect(final List<Header> headers, final byte[] payload, final Runnable onSessionClosed) {
+        if (closed) {
+            LOGGER.info(String.format("%s in-process server is closed. Rejecting new connection",
+                    serviceHandler.getServiceName()));
+            metrics.connectionRejected();
+            return null;
+        }
+        AuthenticationData authenticationData = null;
+        try {
+            authenticationData = ServiceOperationMappingContinuationHandler.acceptConnect(serviceHandler, headers, payload);
+        } catch (Exception e) {
+            LOGGER.error(String.format("%s occurred while attempting to authN/authZ connect: %s", e.getClass(), e.getMessage()), e);
+        }
+        if (authenticationData == null) {
+            metrics.connectionRejected();
+            return null;
+        }
+        final InProcessSession session = new InProcessSession(authenticationData, onSessionClosed);
+        sessions.add(session);
+        metrics.connectionOpened();
+        if (closed) {
+            session.close();    //raced close()
+        }
+        return session;
+    }
+
+    /**
+     * Closes every session, which closes their streams and tells their clients. No new connects are accepted
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (InProcessSession session : sessions) {
+            session.close();
+        }
+    }
+
+    /**
+     * One connected client
+     */
+    private final class InProcessSession implements Session {
+        private final AuthenticationData authenticationData;
+        private final Runnable onSessionClosed;
+        private final Set<InProcessContinuation> streams = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean sessionClosed = new AtomicBoolean(false);
+
+        InProcessSession(final AuthenticationData authenticationData, final Runnable onSessionClosed) {
+            this.authenticationData = authenticationData;
+            this.onSessionClosed = onSessionClosed;
+        }
+
+        @Override
+        public void openStream(final InProcessContinuation continuation) {
+            if (sessionClosed.get()) {
+                throw new EventStreamClosedException("EventStream connection is not open!");
+            }
+            metrics.streamOpened();
+            streams.add(continuation);
+            final InProcessContinuation.End serverEnd = continuation.getServerEnd();
+            final String operationName = continuation.getOperationName();
+            final Function<OperationContinuationHandlerContext, ? extends ServerConnectionContinuationHandler> handlerFn =
+                    serviceHandler.getOperationHandler(operationName);
+            final ServerConnectionContinuationHandler handler = handlerFn == null ? null
+                    : handlerFn.apply(new OperationContinuationHandlerContext(new InProcessStream(serverEnd),
+                            authenticationData));
+
+            if (handler instanceof OperationContinuationHandler) {
+                final OperationContinuationHandler<?, ?, ?, ?> operationHandler = (OperationContinuationHandler<?, ?, ?, ?>) handler;
+                serverEnd.setHandler(new InProcessStreamHandler() {
+                    @Override
+                    public void onMessage(EventStreamJsonMessage message, MessageType messageType, int messageFlags) {
+                        operationHandler.onInProcessMessage(message, messageFlags);
+                    }
+
+                    @Override
+                    public void onClosed() {
+                        streams.remove(continuation);
+                        operationHandler.onContinuationClosed();
+                    }
+                });
+            } else {
+                LOGGER.warn("{} cannot be invoked in process: {}", operationName,
+                        handler == null ? "no handler registered" : "handler is not an OperationContinuationHandler");
+                serverEnd.setHandler(new InProcessStreamHandler() {
+                    @Override
+                    public void onMessage(EventStreamJsonMessage message, MessageType messageType, int messageFlags) {
+                        //same answer a socket client gets: an error with no model type
+                        serverEnd.sendMessage(null, MessageType.ApplicationError,
+                                MessageFlags.TerminateStream.getByteValue());
+                    }
+
+                    @Override
+                    public void onClosed() {
+                        streams.remove(continuation);
+                    }
+                });
+            }
+            if (sessionClosed.get()) {
+                continuation.getServerEnd().close();    //raced close()
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!sessionClosed.compareAndSet(false, true)) {
+                return;
+            }
+            for (InProcessContinuation continuation : streams) {
+                continuation.getServerEnd().close();
+            }
+            sessions.remove(this);
+            metrics.connectionClosed();
+            LOGGER.info("In-process connection closed for " + authenticationData.getIdentityLabel());
+            try {
+                onSessionClosed.run();
+            } catch (Exception e) {
+                LOGGER.warn("In-process session close callback threw {}: {}", e.getClass().getCanonicalName(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends over the server end of an in-process continuation
+     */
+    private static final class InProcessStream implements ServerOperationStream {
+        private final InProcessContinuation.End serverEnd;
+
+        InProcessStream(final InProcessContinuation.End serverEnd) {
+            this.serverEnd = serverEnd;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final MessageType messageType,
+                                                   final int messageFlags) {
+            return serverEnd.sendMessage(message, messageType, messageFlags);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendInternalError() {
+            return serverEnd.sendMessage(null, MessageType.ApplicationError, MessageFlags.TerminateStream.getByteValue());
+        }
+
+        @Override
+        public boolean isClosed() {
+            return serverEnd.isClosed();
+        }
+
+        @Override
+        public void close() {
+            serverEnd.close();
+        }
+
+        @Override
+        public long getId() {
+            return System.identityHashCode(serverEnd);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import software.amazon.awssdk.crt.eventstream.MessageType;
 import software.amazon.awssdk.crt.eventstream.ServerConnectionContinuationHandler;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamOperationError;
+import software.amazon.awssdk.eventstreamrpc.model.QuotaExceededException;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -32,9 +33,28 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
         extends ServerConnectionContinuationHandler implements StreamEventPublisher<StreamingResponseType> {
     private static final Logger LOGGER = LoggerFactory.getLogger(OperationContinuationHandler.class);
 
+    /**
+     * Unflushed payload bytes above which a stream turns unwritable by default
+     */
+    public static final long DEFAULT_HIGH_WATERMARK = 1024 * 1024;
+    /**
+     * Unflushed payload bytes at or below which an unwritable stream turns writable again by default
+     */
+    public static final long DEFAULT_LOW_WATERMARK = 512 * 1024;
+
     private final OperationContinuationHandlerContext context;
+    private final ServerOperationStream stream;
     private List<Header> initialRequestHeaders;
     private RequestType initialRequest;
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile long lastReceiveNanos = lastActivityNanos;
+    private FragmentAssembler fragmentAssembler;    //only touched by the thread handling messages, one at a time
+    private final MemoryAccount.Stream memory;
+    private final List<Runnable> heldFragments = new ArrayList<>();    //as fragmentAssembler
+    private volatile boolean overQuota = false;
+    private final ContinuationLeakDetector.Tracker leakTracker;
+    private final WriteWatermarks writeWatermarks =
+            new WriteWatermarks(DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, this::invokeOnWritabilityChanged);
 
     /**
      * Returns the operation model context
@@ -50,12 +70,40 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
     public OperationContinuationHandler(final OperationContinuationHandlerContext context) {
         super(context.getContinuation());
         this.context = context;
+        this.stream = context.getOperationStream() != null ? context.getOperationStream() : new ContinuationStream();
+        final MemoryAccount memoryAccount = context.getMemoryAccount();
+        this.memory = memoryAccount != null ? memoryAccount.newStream(this::sendBackpressureSignal) : null;
+        final ContinuationLeakDetector leakDetector = context.getLeakDetector();
+        //named by class, as the operation model context of a subclass may not be set yet
+        this.leakTracker = leakDetector != null ? leakDetector.track(this, getClass().getName() + " for "
+                + (context.getAuthenticationData() != null ? context.getAuthenticationData().getIdentityLabel() : "null"))
+                : null;
     }
 
     @Override
     final protected void onContinuationClosed() {
         LOGGER.debug("{} stream continuation closed.", getOperationName());
-        continuation.close();
+        context.continuationClosed(this);
+        closeOperationStream();
+        final FairScheduler.ConnectionQueue workQueue = context.getWorkQueue();
+        if (workQueue != null) {
+            //after the stream's messages still waiting to be handled
+            workQueue.submit(0, this::invokeOnStreamClosed, true);
+        } else {
+            invokeOnStreamClosed();
+        }
+    }
+
+    private void closeOperationStream() {
+        writeWatermarks.close(() -> new EventStreamClosedException(stream.getId()));
+        stream.close();
+        if (leakTracker != null) {
+            leakTracker.close();
+        }
+    }
+
+    private void invokeOnStreamClosed() {
+        releaseHeldFragments();
         try {
             onStreamClosed();
         } catch (Exception e) {
@@ -63,6 +111,90 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
         }
     }
 
+    /**
+     * Returns the time a message was last sent or received on this continuation
+     * @return System.nanoTime() of the last message sent or received
+     */
+    final long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Returns the time a message was last received from the client on this continuation. Unlike
+     * {@link #getLastActivityNanos()} this ignores what the server sends, so it shows whether the peer is alive
+     * @return System.nanoTime() of the last message received
+     */
+    final long getLastReceiveNanos() {
+        return lastReceiveNanos;
+    }
+
+    /**
+     * Returns true while the client asks this stream to back off sending, having gone past one of its soft
+     * memory quotas. Stream events sent regardless are still delivered
+     * @return true if the client signalled backpressure
+     */
+    final public boolean isBackpressured() {
+        return memory != null && memory.isPeerBackpressured();
+    }
+
+    /**
+     * Sets the watermarks of the payload bytes sent on this stream but not yet flushed to the client, counted as
+     * written to the socket: compressed if compression was negotiated, and not at all if put in shared memory.
+     * Batched stream events count once their batch is written. The stream turns unwritable once they go above
+     * the high watermark, and writable once they drop back to the low one.
+     * Defaults to {@link #DEFAULT_LOW_WATERMARK} and {@link #DEFAULT_HIGH_WATERMARK}
+     * @param lowWatermark The low watermark. Must not be negative
+     * @param highWatermark The high watermark. Must not be below the low watermark
+     */
+    final public void setWriteWatermarks(final long lowWatermark, final long highWatermark) {
+        writeWatermarks.setWatermarks(lowWatermark, highWatermark);
+    }
+
+    /**
+     * Returns true unless the messages sent on this stream and not yet flushed went above the high watermark.
+     * Messages sent regardless are still queued, in native memory, so a publisher to a slow client should slow
+     * down, drop or conflate while this is false. In-process streams hand messages over at once and are always
+     * writable
+     * @return true if the stream is writable
+     */
+    final public boolean isWritable() {
+        return writeWatermarks.isWritable();
+    }
+
+    /**
+     * Returns the payload bytes sent on this stream and not yet flushed to the client
+     * @return the outstanding payload bytes
+     */
+    final public long getOutstandingWriteBytes() {
+        return writeWatermarks.getOutstandingBytes();
+    }
+
+    /**
+     * Returns a future completing once the stream is writable, at once if it is now. Call get() on it to block
+     * @return A future that completes when the stream is writable, or exceptionally with an
+     *         EventStreamClosedException if it closes first
+     */
+    final public CompletableFuture<Void> awaitWritable() {
+        return writeWatermarks.awaitWritable(() -> new EventStreamClosedException(stream.getId()));
+    }
+
+    /**
+     * Called when the stream turns unwritable, or writable again, one change at a time and in order. Runs on the
+     * thread sending, the one the flush completes on, or the one told of the change before, and when stream
+     * events are batched may run with the stream's send lock held, so must not block
+     * @param writable The stream's writability now
+     */
+    protected void onWritabilityChanged(final boolean writable) { }
+
+    private void invokeOnWritabilityChanged(final boolean writable) {
+        try {
+            onWritabilityChanged(writable);
+        } catch (Exception e) {
+            LOGGER.error("{} onWritabilityChanged threw {}: {}", getOperationName(), e.getClass().getCanonicalName(),
+                    e.getMessage());
+        }
+    }
+
     /**
      * Returns the operation model context request type class
      * @return The operation model context request type class
@@ -95,6 +227,16 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
         return getOperationModelContext().getStreamingResponseTypeClass().get();
     }
 
+    /**
+     * Returns true if the message is of the operation's streaming response type. Operations with a streaming
+     * request but no streaming response have none, and send no stream events
+     * @return true if the message is a stream event of the operation
+     */
+    private boolean isStreamEvent(final EventStreamJsonMessage message) {
+        return getOperationModelContext().getStreamingResponseTypeClass()
+                .map(streamingResponseClass -> streamingResponseClass.isInstance(message)).orElse(false);
+    }
+
     /**
      * Returns the operation name implemented by the handler. Generated code should populate this
      *
@@ -205,9 +347,10 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
     @Override
     final public CompletableFuture<Void> closeStream() {
         LOGGER.debug("[{}] closing stream", getOperationName());
-        return continuation.sendMessage(null, null, MessageType.ApplicationMessage,
+        return stream.sendMessage(null, MessageType.ApplicationMessage,
                 MessageFlags.TerminateStream.getByteValue()).whenComplete((res, ex) -> {
-            continuation.close();
+            context.continuationClosed(this);
+            closeOperationStream();
             if (ex == null) {
                 LOGGER.debug("[{}] closed stream", getOperationName());
             } else {
@@ -234,22 +377,33 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
      * @return A future that completes when the message is sent
      */
     final protected CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final boolean close) {
-        if (continuation.isClosed()) { //is this check necessary?
+        return sendMessage(message, close, null);
+    }
+
+    /**
+     * Sends a message, the response if span is not null, ending the span once it is flushed
+     */
+    private CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final boolean close,
+                                                final RpcSpan span) {
+        if (stream.isClosed()) { //is this check necessary?
+            final EventStreamClosedException closed = new EventStreamClosedException(stream.getId());
+            if (span != null) {
+                span.end(closed);
+            }
             return CompletableFuture.supplyAsync(() -> {
-                throw new EventStreamClosedException(continuation.getNativeHandle());
+                throw closed;
             });
         }
-        final List<Header> responseHeaders = new ArrayList<>();
-        byte[] outputPayload = getOperationModelContext().getServiceModel().toJson(message);
-        responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
-                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
-        responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
-                message.getApplicationModelType()));
-
-        return continuation.sendMessage(responseHeaders, outputPayload, MessageType.ApplicationMessage,
-                close ? MessageFlags.TerminateStream.getByteValue() : 0).whenComplete((res, ex) -> {
+        lastActivityNanos = System.nanoTime();
+        final int messageFlags = close ? MessageFlags.TerminateStream.getByteValue() : 0;
+        return (span != null ? stream.sendMessage(message, MessageType.ApplicationMessage, messageFlags, span)
+                : stream.sendMessage(message, MessageType.ApplicationMessage, messageFlags)).whenComplete((res, ex) -> {
+            if (span != null) {
+                span.end(ex);
+            }
             if (close) {
-                continuation.close();
+                context.continuationClosed(this);
+                closeOperationStream();
             }
         });
     }
@@ -263,22 +417,16 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
      * @return A future that completes when the error is sent
      */
     final protected CompletableFuture<Void> sendModeledError(final EventStreamJsonMessage message) {
-        if (continuation.isClosed()) {  //is this check necessary?
+        if (stream.isClosed()) {  //is this check necessary?
             return CompletableFuture.supplyAsync(() -> {
-                throw new EventStreamClosedException(continuation.getNativeHandle());
+                throw new EventStreamClosedException(stream.getId());
             });
         }
-        final List<Header> responseHeaders = new ArrayList<>();
-        byte[] outputPayload = getOperationModelContext().getServiceModel().toJson(message);
-        responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
-                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
-        responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
-                message.getApplicationModelType()));
-
-        return continuation.sendMessage(responseHeaders, outputPayload, MessageType.ApplicationError,
+        return stream.sendMessage(message, MessageType.ApplicationError,
                 MessageFlags.TerminateStream.getByteValue()).whenComplete((res, ex) -> {
             //complete silence on any error closing here
-            continuation.close();
+            context.continuationClosed(this);
+            closeOperationStream();
         });
     }
 
@@ -295,7 +443,193 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
     @Override
     final protected void onContinuationMessage(List<Header> list, byte[] bytes, MessageType messageType,
                                                int messageFlags) {
-        LOGGER.debug("Continuation native id: " + continuation.getNativeHandle());
+        lastReceiveNanos = System.nanoTime();
+        LOGGER.debug("Continuation native id: " + stream.getId());
+        final FairScheduler.ConnectionQueue workQueue = context.getWorkQueue();
+        final int length = bytes == null ? 0 : bytes.length;
+        final Runnable work;
+        boolean closing = false;
+        if ((memory != null && memory.receiveSignal(list)) || overQuota) {
+            releaseSharedMemory(list);
+            return;
+        } else if (memory == null) {
+            work = () -> receive(list, bytes, messageFlags);
+        } else if (memory.acquire(length)) {
+            work = () -> memory.dispatch(length, () -> receive(list, bytes, messageFlags));
+        } else {
+            //drop what follows too, until the close reaches the client
+            overQuota = true;
+            closing = true;
+            releaseSharedMemory(list);
+            work = () -> refuseOverQuota(length);
+        }
+        if (workQueue == null) {
+            work.run();
+        } else if (!workQueue.submit(length, work, closing)) {
+            //the connection has too much waiting, so drop this and what follows, and close the stream after
+            //the messages queued before it
+            overQuota = true;
+            if (memory != null) {
+                memory.release(length);
+            }
+            releaseSharedMemory(list);
+            workQueue.submit(0, () -> refuseQueueFull(workQueue, length), true);
+        }
+    }
+
+    /**
+     * Releases the shared memory a message dropped unread points at, so it does not hold back the ring
+     */
+    private void releaseSharedMemory(final List<Header> list) {
+        final SharedMemoryChannel sharedMemoryChannel = context.getSharedMemoryChannel();
+        if (sharedMemoryChannel != null) {
+            sharedMemoryChannel.release(list);
+        }
+    }
+
+    /**
+     * Closes the stream with a QuotaExceededException, after the messages before the one refused are handled
+     */
+    private void refuseOverQuota(final int length) {
+        final String serviceName = getOperationModelContext().getServiceModel().getServiceName();
+        LOGGER.warn("[{}] refused a message of {} bytes from {} over the memory quota", getOperationName(), length,
+                context.getAuthenticationData() != null ? context.getAuthenticationData().getIdentityLabel() : "null");
+        sendModeledError(new QuotaExceededException(serviceName, String.format(
+                "Message of %d bytes would take the stream or its connection past its memory quota", length)));
+    }
+
+    /**
+     * Closes the stream with a QuotaExceededException, after the messages queued before the one refused are
+     * handled
+     */
+    private void refuseQueueFull(final FairScheduler.ConnectionQueue workQueue, final int length) {
+        final String serviceName = getOperationModelContext().getServiceModel().getServiceName();
+        LOGGER.warn("[{}] refused a message of {} bytes from {} with its fair scheduler queue full", getOperationName(),
+                length, workQueue.getIdentityLabel());
+        sendModeledError(new QuotaExceededException(serviceName, String.format(
+                "Message of %d bytes arrived with the connection's queue of messages waiting to be handled full",
+                length)));
+    }
+
+    /**
+     * Sends a backpressure signal to the client, straight onto the continuation as it carries no payload
+     */
+    private void sendBackpressureSignal(final boolean backpressured) {
+        if (continuation.isClosed()) {
+            return;
+        }
+        try {
+            continuation.sendMessage(MemoryAccount.createSignalHeaders(backpressured), null,
+                    MessageType.ApplicationMessage, 0).whenComplete((res, ex) -> {
+                if (ex != null) {
+                    LOGGER.debug("[{}] could not send backpressure signal: {}", getOperationName(), ex.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.debug("[{}] could not send backpressure signal: {}", getOperationName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the bytes of the fragments held for a payload, once it is handled or will not be
+     */
+    private void releaseHeldFragments() {
+        for (Runnable release : heldFragments) {
+            release.run();
+        }
+        heldFragments.clear();
+    }
+
+    /**
+     * Reads a message off the wire and handles it, on the thread it arrived on or the fair scheduler's
+     */
+    private void receive(final List<Header> list, final byte[] bytes, final int messageFlags) {
+        try {
+            receiveMessage(list, bytes, messageFlags);
+        } finally {
+            if (!heldFragments.isEmpty() && !fragmentAssembler.isAssembling()) {
+                releaseHeldFragments();
+            }
+        }
+    }
+
+    private void receiveMessage(final List<Header> list, final byte[] bytes, final int messageFlags) {
+        final SharedMemoryChannel sharedMemoryChannel = context.getSharedMemoryChannel();
+        final PayloadCompression payloadCompression = context.getPayloadCompression();
+        List<Header> headers = list;
+        final byte[] payload;
+        final List<byte[]> batchedEvents;
+        try {
+            byte[] wirePayload = bytes;
+            if (PayloadFragmentation.isFragment(list)) {
+                final MessageAmendInfo assembled = assembleFragment(list, bytes);
+                if (assembled == null) {
+                    //the rest is yet to come, or a fragment consumer took the payload
+                    if (memory != null && fragmentAssembler.isAssembling()) {
+                        //charged until the whole payload is handled
+                        heldFragments.add(MemoryAccount.retainDispatched());
+                    }
+                    if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                        onMessage(list, null, null, messageFlags);
+                    }
+                    return;
+                }
+                headers = assembled.getHeaders();
+                wirePayload = assembled.getPayload();
+            }
+            final byte[] resolved = sharedMemoryChannel != null ? sharedMemoryChannel.resolve(headers, wirePayload)
+                    : wirePayload;
+            payload = payloadCompression != null ? payloadCompression.decode(headers, resolved) : resolved;
+            batchedEvents = StreamEventBatcher.isBatch(headers) ? StreamEventBatcher.unpack(payload) : null;
+        } catch (RuntimeException e) {
+            handleAndSendError(e);
+            return;
+        }
+        if (batchedEvents == null) {
+            onMessage(headers, payload, null, messageFlags);
+            return;
+        }
+        for (byte[] event : batchedEvents) {
+            onMessage(headers, event, null, 0);
+        }
+        if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+            onMessage(headers, null, null, messageFlags);
+        }
+    }
+
+    /**
+     * Adds a fragment to the payload being reassembled. Stream events may be taken by a handler that is also
+     * a PayloadFragmentConsumer
+     * @return the whole payload once the last fragment arrives, or null
+     */
+    private MessageAmendInfo assembleFragment(final List<Header> headers, final byte[] payload) {
+        if (fragmentAssembler == null) {
+            final PayloadFragmentation payloadFragmentation = context.getPayloadFragmentation();
+            if (payloadFragmentation == null) {
+                throw new IllegalArgumentException("Payload fragment received without fragmentation negotiated");
+            }
+            fragmentAssembler = payloadFragmentation.newAssembler();
+        }
+        final PayloadFragmentConsumer consumer = initialRequest != null && this instanceof PayloadFragmentConsumer
+                ? (PayloadFragmentConsumer) this : null;
+        return fragmentAssembler.add(headers, payload, consumer);
+    }
+
+    /**
+     * Delivers a message from a client in the same JVM, already in model form
+     * @param message The request or stream event, null for a bare stream close
+     * @param messageFlags The message flags
+     */
+    final void onInProcessMessage(final EventStreamJsonMessage message, final int messageFlags) {
+        onMessage(null, null, message, messageFlags);
+    }
+
+    /**
+     * Handles an incoming message, either as headers and payload off the wire or as the model object itself
+     */
+    private void onMessage(final List<Header> list, final byte[] bytes, final EventStreamJsonMessage decoded,
+                           final int messageFlags) {
+        lastActivityNanos = System.nanoTime();
 
         //We can prevent a client from sending a request, and hanging up before receiving a response
         //but doing so will prevent any work from being done
@@ -308,25 +642,63 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
         try {
             if (initialRequest != null) {
                 // Empty close stream messages from the client are valid. Do not need any processing here.
-                if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0 && (bytes == null
-                        || bytes.length == 0)) {
+                if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0 && decoded == null
+                        && (bytes == null || bytes.length == 0)) {
                     return;
                 } else {
-                    final StreamingRequestType streamEvent = serviceModel.fromJson(getStreamingRequestClass(), bytes);
+                    final StreamingRequestType streamEvent = decoded != null
+                            ? getStreamingRequestClass().cast(decoded)
+                            : serviceModel.fromJson(getStreamingRequestClass(), bytes);
+                    RpcFlightRecorder.streamEventReceived(getOperationName(), streamEvent.getApplicationModelType(),
+                            bytes == null ? 0 : bytes.length, true);
                     //exceptions occurring during this processing will result in closure of stream
                     handleStreamEvent(streamEvent);
                 }
             } else {
                 //this is the initial request
-                initialRequestHeaders = new ArrayList<>(list);
-                initialRequest = serviceModel.fromJson(getRequestClass(), bytes);
-                //call into business logic
-                CompletableFuture<ResponseType> resultFuture = handleRequestAsync(initialRequest);
-                if (resultFuture == null) {
-                    resultFuture = CompletableFuture.completedFuture(handleRequest(initialRequest));
+                final RpcSpan span = startServerSpan(list);
+                Object handlerFlightEvent = null;
+                CompletableFuture<ResponseType> resultFuture;
+                try {
+                    if (decoded != null) {
+                        initialRequestHeaders = inProcessRequestHeaders(decoded);
+                        initialRequest = getRequestClass().cast(decoded);
+                    } else {
+                        initialRequestHeaders = new ArrayList<>(list);
+                        if (span != null) {
+                            span.phaseStarted(RpcTracer.Phase.DESERIALIZE);
+                        }
+                        initialRequest = serviceModel.fromJson(getRequestClass(), bytes);
+                        if (span != null) {
+                            span.phaseEnded(RpcTracer.Phase.DESERIALIZE, null);
+                        }
+                    }
+                    if (span != null) {
+                        span.phaseStarted(RpcTracer.Phase.HANDLE);
+                    }
+                    handlerFlightEvent = RpcFlightRecorder.beginHandler(getOperationName());
+                    //call into business logic
+                    resultFuture = handleRequestAsync(initialRequest);
+                    if (resultFuture == null) {
+                        resultFuture = CompletableFuture.completedFuture(handleRequest(initialRequest));
+                    }
+                } catch (RuntimeException e) {
+                    RpcFlightRecorder.endHandler(handlerFlightEvent, e);
+                    if (span != null) {
+                        span.end(e);
+                    }
+                    throw e;
                 }
+                final Object handlerEvent = handlerFlightEvent;
                 resultFuture.handle((result, throwable) -> {
+                    RpcFlightRecorder.endHandler(handlerEvent, throwable);
+                    if (span != null) {
+                        span.phaseEnded(RpcTracer.Phase.HANDLE, throwable);
+                    }
                     if (throwable != null) {
+                        if (span != null) {
+                            span.end(throwable);
+                        }
                         handleAndSendError(throwable);
                         return null;
                     }
@@ -335,7 +707,7 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
                             throw new RuntimeException("Handler for operation [" + getOperationName()
                                     + "] did not return expected type. Found: " + result.getClass().getName());
                         }
-                        sendMessage(result, !isStreamingOperation()).whenComplete((res, ex) -> {
+                        sendMessage(result, !isStreamingOperation(), span).whenComplete((res, ex) -> {
                             if (ex != null) {
                                 LOGGER.error(ex.getClass().getName() + " sending response message: " + ex.getMessage());
                             } else {
@@ -360,6 +732,27 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
         }
     }
 
+    /**
+     * Starts the span of the initial request, if the server traces requests
+     * @param headers The request's headers off the wire, null for an in-process request
+     */
+    private RpcSpan startServerSpan(final List<Header> headers) {
+        final RpcTracer tracer = context.getTracer();
+        if (tracer == null) {
+            return null;
+        }
+        String traceContext = null;
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equals(RpcTracer.TRACE_CONTEXT_HEADER)) {
+                    traceContext = header.getValueAsString();
+                    break;
+                }
+            }
+        }
+        return tracer.startServerSpan(getOperationModelContext(), traceContext);
+    }
+
     private void handleAndSendError(Throwable throwable) {
         // Pull out the underlying error from the "handle" method of a CompletableFuture
         if (throwable instanceof CompletionException) {
@@ -370,24 +763,194 @@ public abstract class OperationContinuationHandler<RequestType extends EventStre
             sendModeledError((EventStreamOperationError) throwable);
             invokeAfterHandleRequest();
         } else {
-            final List<Header> responseHeaders = new ArrayList<>(1);
-            byte[] outputPayload = "InternalServerError".getBytes(StandardCharsets.UTF_8);
-            responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
-                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_TEXT));
             //are there any exceptions we wouldn't want to return a generic server fault?
             //this is the kind of exception that should be logged with a request ID especially in a server-client context
             LOGGER.error("[{}] operation threw unexpected {}: {}", getOperationName(),
                     throwable.getClass().getCanonicalName(), throwable.getMessage());
 
-            continuation.sendMessage(responseHeaders, outputPayload, MessageType.ApplicationError,
-                    MessageFlags.TerminateStream.getByteValue()).whenComplete((res, ex) -> {
+            stream.sendInternalError().whenComplete((res, ex) -> {
                 if (ex != null) {
                     LOGGER.error(ex.getClass().getName() + " sending error response message: " + ex.getMessage());
                 } else {
                     LOGGER.trace("Error response successfully sent");
                 }
-                continuation.close();
+                context.continuationClosed(this);
+                closeOperationStream();
             });
         }
     }
+
+    /**
+     * The headers an initial request would have carried over the wire, for handlers that inspect them
+     */
+    private static List<Header> inProcessRequestHeaders(final EventStreamJsonMessage request) {
+        final List<Header> headers = new ArrayList<>(2);
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                request.getApplicationModelType()));
+        return headers;
+    }
+
+    /**
+     * Sends over the native continuation of a socket connection
+     */
+    private final class ContinuationStream implements ServerOperationStream {
+        private StreamEventBatcher batcher;    //guarded by this
+
+        @Override
+        public CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final MessageType messageType,
+                                                   final int messageFlags) {
+            return sendMessage(message, messageType, messageFlags, null);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final MessageType messageType,
+                                                   final int messageFlags, final RpcSpan span) {
+            if (message == null) {
+                return send(null, null, messageType, messageFlags);
+            }
+            if (span != null) {
+                span.phaseStarted(RpcTracer.Phase.SERIALIZE);
+            }
+            final byte[] json = getOperationModelContext().getServiceModel().toJson(message);
+            if (span != null) {
+                span.phaseEnded(RpcTracer.Phase.SERIALIZE, null);
+                span.phaseStarted(RpcTracer.Phase.FLUSH);
+            }
+            final CompletableFuture<Void> sent;
+            final BatchingOptions batchingOptions = context.getBatchingOptions();
+            if (batchingOptions != null && messageType == MessageType.ApplicationMessage && messageFlags == 0
+                    && isStreamEvent(message)) {
+                synchronized (this) {
+                    if (batcher == null) {
+                        batcher = new StreamEventBatcher(batchingOptions, this, this::writeBatch);
+                    }
+                    //counted against the watermarks once written, in its batch
+                    sent = batcher.add(message.getApplicationModelType(), json);
+                }
+            } else {
+                final MessageAmendInfo encoded = encode(message.getApplicationModelType(), json,
+                        EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON);
+                sent = send(encoded, messageType, messageFlags);
+                writeWatermarks.track(writtenLength(encoded), sent);
+            }
+            if (RpcFlightRecorder.isRecording() && messageType == MessageType.ApplicationMessage
+                    && isStreamingOperation() && isStreamEvent(message)) {
+                RpcFlightRecorder.streamEventSent(getOperationName(), message.getApplicationModelType(), json.length,
+                        true);
+            }
+            //chained, so the flush is reported before what the caller does on completion
+            return span != null ? sent.whenComplete((res, ex) -> span.phaseEnded(RpcTracer.Phase.FLUSH, ex)) : sent;
+        }
+
+        /**
+         * Sends a batch of stream events, or a lone one, for the batcher, which holds this stream's lock
+         */
+        private CompletableFuture<Void> writeBatch(final String applicationModelType, final byte[] payload,
+                                                   final boolean batch) {
+            final MessageAmendInfo message = encode(applicationModelType, payload, batch
+                    ? StreamEventBatcher.CONTENT_TYPE_BATCH : EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON);
+            final CompletableFuture<Void> sent = sendInOrder(message.getHeaders(), message.getPayload(),
+                    MessageType.ApplicationMessage, 0);
+            writeWatermarks.track(writtenLength(message), sent);
+            return sent;
+        }
+
+        /**
+         * Returns the payload length written to the socket for an encoded message, 0 if it went to shared memory
+         */
+        private long writtenLength(final MessageAmendInfo message) {
+            return message.getPayload() != null ? message.getPayload().length : 0;
+        }
+
+        /**
+         * Returns the headers and payload of a message, the payload compressed or moved to shared memory if
+         * negotiated
+         */
+        private MessageAmendInfo encode(final String applicationModelType, final byte[] payload,
+                                        final String contentType) {
+            final List<Header> responseHeaders = new ArrayList<>(5);
+            byte[] outputPayload = payload;
+            responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER, contentType));
+            responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                    applicationModelType));
+            final PayloadCompression payloadCompression = context.getPayloadCompression();
+            if (payloadCompression != null) {
+                outputPayload = payloadCompression.encode(responseHeaders, outputPayload);
+            }
+            final SharedMemoryChannel sharedMemoryChannel = context.getSharedMemoryChannel();
+            if (sharedMemoryChannel != null && sharedMemoryChannel.offload(responseHeaders, outputPayload)) {
+                outputPayload = null;
+            }
+            return new MessageAmendInfo(responseHeaders, outputPayload);
+        }
+
+        private CompletableFuture<Void> send(final MessageAmendInfo message, final MessageType messageType,
+                                             final int messageFlags) {
+            return send(message.getHeaders(), message.getPayload(), messageType, messageFlags);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendInternalError() {
+            final List<Header> responseHeaders = new ArrayList<>(1);
+            byte[] outputPayload = "InternalServerError".getBytes(StandardCharsets.UTF_8);
+            responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_TEXT));
+            return send(responseHeaders, outputPayload, MessageType.ApplicationError,
+                    MessageFlags.TerminateStream.getByteValue());
+        }
+
+        /**
+         * Sends a message after any batched stream events, in fragments if it is too long for one. Sends are
+         * serialized once fragmentation or batching is negotiated, so messages are neither interleaved nor
+         * reordered
+         */
+        private CompletableFuture<Void> send(final List<Header> headers, final byte[] payload,
+                                             final MessageType messageType, final int messageFlags) {
+            if (context.getPayloadFragmentation() == null && context.getBatchingOptions() == null) {
+                return continuation.sendMessage(headers, payload, messageType, messageFlags);
+            }
+            synchronized (this) {
+                if (batcher != null) {
+                    batcher.flush();
+                }
+                return sendInOrder(headers, payload, messageType, messageFlags);
+            }
+        }
+
+        /**
+         * Sends a message with this stream's lock held
+         */
+        private CompletableFuture<Void> sendInOrder(final List<Header> headers, final byte[] payload,
+                                                    final MessageType messageType, final int messageFlags) {
+            final PayloadFragmentation payloadFragmentation = context.getPayloadFragmentation();
+            if (payloadFragmentation == null || !payloadFragmentation.needsFragmenting(payload)) {
+                return continuation.sendMessage(headers, payload, messageType, messageFlags);
+            }
+            final PayloadFragmentation.MessageWriter writer = (fragmentHeaders, fragment, flags) ->
+                    continuation.sendMessage(fragmentHeaders, fragment, messageType, flags);
+            return payloadFragmentation.send(headers, payload, messageFlags, writer, writer);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return continuation.isClosed();
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (batcher != null) {
+                    batcher.discard(new EventStreamClosedException(continuation.getNativeHandle()));
+                }
+            }
+            continuation.close();
+        }
+
+        @Override
+        public long getId() {
+            return continuation.getNativeHandle();
+        }
+    }
 }
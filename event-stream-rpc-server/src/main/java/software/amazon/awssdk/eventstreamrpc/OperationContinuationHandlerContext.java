@@ -22,6 +22,8 @@ public class OperationContinuationHandlerContext {
     private final ServerConnection serverConnection;
     private final ServerConnectionContinuation continuation;
     private final AuthenticationData authenticationData;
+    private final ServiceOperationMappingContinuationHandler connectionHandler;
+    private final ServerOperationStream operationStream;
 
     /**
      * Creates a new OperationContinuationHandlerContext
@@ -32,14 +34,35 @@ public class OperationContinuationHandlerContext {
     public OperationContinuationHandlerContext(final ServerConnection connection,
            final ServerConnectionContinuation continuation,
            final AuthenticationData authenticationData) {
+        this(connection, continuation, authenticationData, null);
+    }
+
+    OperationContinuationHandlerContext(final ServerConnection connection,
+           final ServerConnectionContinuation continuation,
+           final AuthenticationData authenticationData,
+           final ServiceOperationMappingContinuationHandler connectionHandler) {
         this.serverConnection = connection;
         this.continuation = continuation;
         this.authenticationData = authenticationData;
+        this.connectionHandler = connectionHandler;
+        this.operationStream = null;
+    }
+
+    /**
+     * Context for a stream opened by a client in the same JVM, which has no native connection or continuation
+     */
+    OperationContinuationHandlerContext(final ServerOperationStream operationStream,
+           final AuthenticationData authenticationData) {
+        this.serverConnection = null;
+        this.continuation = null;
+        this.authenticationData = authenticationData;
+        this.connectionHandler = null;
+        this.operationStream = operationStream;
     }
 
     /**
      * Returns the connection associated with the OperationContinuationHandlerContext
-     * @return the connection associated with the OperationContinuationHandlerContext
+     * @return the connection associated with the OperationContinuationHandlerContext, null for in-process streams
      */
     public ServerConnection getServerConnection() {
         return serverConnection;
@@ -47,12 +70,75 @@ public class OperationContinuationHandlerContext {
 
     /**
      * Returns the continuation associated with the OperationContinuationHandlerContext
-     * @return the continuation associated with the OperationContinuationHandlerContext
+     * @return the continuation associated with the OperationContinuationHandlerContext, null for in-process streams
      */
     public ServerConnectionContinuation getContinuation() {
         return continuation;
     }
 
+    /**
+     * Returns the stream an in-process client opened, or null to send over the native continuation
+     */
+    ServerOperationStream getOperationStream() {
+        return operationStream;
+    }
+
+    /**
+     * Returns the shared memory side channel of the connection, or null if it has none
+     */
+    SharedMemoryChannel getSharedMemoryChannel() {
+        return connectionHandler != null ? connectionHandler.getSharedMemoryChannel() : null;
+    }
+
+    /**
+     * Returns the payload compression of the connection, or null if it has none
+     */
+    PayloadCompression getPayloadCompression() {
+        return connectionHandler != null ? connectionHandler.getPayloadCompression() : null;
+    }
+
+    /**
+     * Returns the payload fragmentation of the connection, or null if it has none
+     */
+    PayloadFragmentation getPayloadFragmentation() {
+        return connectionHandler != null ? connectionHandler.getPayloadFragmentation() : null;
+    }
+
+    /**
+     * Returns the stream event batching of the connection, or null if it does not batch
+     */
+    BatchingOptions getBatchingOptions() {
+        return connectionHandler != null ? connectionHandler.getBatchingOptions() : null;
+    }
+
+    /**
+     * Returns the fair scheduler queue of the connection, or null if its messages are handled as they arrive
+     */
+    FairScheduler.ConnectionQueue getWorkQueue() {
+        return connectionHandler != null ? connectionHandler.getWorkQueue() : null;
+    }
+
+    /**
+     * Returns the memory account of the connection, or null if it is not accounted
+     */
+    MemoryAccount getMemoryAccount() {
+        return connectionHandler != null ? connectionHandler.getMemoryAccount() : null;
+    }
+
+    /**
+     * Returns the detector tracking the connection's continuations, or null if they are not tracked
+     */
+    ContinuationLeakDetector getLeakDetector() {
+        return connectionHandler != null ? connectionHandler.getLeakDetector() : null;
+    }
+
+    /**
+     * Returns the tracer of the connection's initial requests, or null if they are not traced
+     */
+    RpcTracer getTracer() {
+        return connectionHandler != null ? connectionHandler.getTracer() : null;
+    }
+
     /**
      * Returns the authentication data associated with the OperationContinuationHandlerContext
      * @return the authentication data associated with the OperationContinuationHandlerContext
@@ -60,4 +146,14 @@ public class OperationContinuationHandlerContext {
     public AuthenticationData getAuthenticationData() {
         return authenticationData;
     }
+
+    /**
+     * Removes a closed operation continuation from its connection's registry. No-op for contexts not
+     * created by a ServiceOperationMappingContinuationHandler, and safe to call more than once.
+     */
+    void continuationClosed(final OperationContinuationHandler<?, ?, ?, ?> handler) {
+        if (connectionHandler != null) {
+            connectionHandler.removeContinuation(handler);
+        }
+    }
 }
@@ -19,9 +19,15 @@ import software.amazon.awssdk.crt.io.ServerBootstrap;
 import software.amazon.awssdk.crt.io.ServerTlsContext;
 import software.amazon.awssdk.crt.io.SocketOptions;
 import software.amazon.awssdk.crt.io.TlsContextOptions;
+import software.amazon.awssdk.eventstreamrpc.model.ServiceUnavailableException;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -30,6 +36,8 @@ import java.util.stream.Collectors;
  */
 public class RpcServer implements AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger(RpcServer.class);
+    private static final long DRAIN_POLL_INTERVAL_MS = 50;
+    private static final int DEFAULT_DRAIN_BATCH_SIZE = 16;
 
     private final EventLoopGroup eventLoopGroup;
     private final SocketOptions socketOptions;
@@ -37,12 +45,16 @@ public class RpcServer implements AutoCloseable {
     private final String hostname;
     private final int port;
     private final EventStreamRPCServiceHandler eventStreamRPCServiceHandler;
+    private final ServerConnectionRegistry connectionRegistry = new ServerConnectionRegistry();
 
     private ServerBootstrap serverBootstrap;
     private ServerTlsContext tlsContext;
     private ServerListener listener;
     private AtomicBoolean serverRunning;
     private int boundPort = -1;
+    private int drainBatchSize = DEFAULT_DRAIN_BATCH_SIZE;
+    private CompletableFuture<Void> drainFuture;
+    private ServerLivenessManager livenessManager;
 
     /**
      * Creates a new RPC Server
@@ -71,6 +83,7 @@ public class RpcServer implements AutoCloseable {
         if (!serverRunning.compareAndSet(false, true)) {
             throw new IllegalStateException("Failed to start IpcServer. It's already started or has not completed a prior shutdown!");
         }
+        connectionRegistry.setDraining(false);
         serverBootstrap = new ServerBootstrap(eventLoopGroup);
         tlsContext = tlsContextOptions != null ? new ServerTlsContext(tlsContextOptions) : null;
         listener = new ServerListener(hostname, port, socketOptions, tlsContext, serverBootstrap, new ServerListenerHandler() {
@@ -79,7 +92,12 @@ public class RpcServer implements AutoCloseable {
                     try {
                         LOGGER.info("New connection code [" + CRT.awsErrorName(errorCode) + "] for " + serverConnection.getResourceLogDescription());
                         final ServiceOperationMappingContinuationHandler operationHandler =
-                                new ServiceOperationMappingContinuationHandler(serverConnection, eventStreamRPCServiceHandler);
+                                new ServiceOperationMappingContinuationHandler(serverConnection,
+                                        eventStreamRPCServiceHandler, connectionRegistry);
+                        connectionRegistry.addConnection(serverConnection, operationHandler);
+                        if (livenessManager != null) {
+                            livenessManager.register(operationHandler, connectionRegistry.getMetrics());
+                        }
                         return operationHandler;
                     } catch (Throwable e) {
                         LOGGER.error("Throwable caught in new connection: " + e.getMessage(), e);
@@ -90,6 +108,7 @@ public class RpcServer implements AutoCloseable {
                 @Override
                 public void onConnectionShutdown(ServerConnection serverConnection, int errorCode) {
                     LOGGER.info("Server connection closed code [" + CRT.awsErrorString(errorCode) + "]: " + serverConnection.getResourceLogDescription());
+                    connectionRegistry.removeConnection(serverConnection);
                 }
             });
 
@@ -107,6 +126,175 @@ public class RpcServer implements AutoCloseable {
         return boundPort;
     }
 
+    /**
+     * Returns the number of client connections currently open on the server
+     * @return the number of client connections currently open on the server
+     */
+    public int getConnectionCount() {
+        return connectionRegistry.getConnectionCount();
+    }
+
+    /**
+     * Returns the number of operation continuations currently open across all connections
+     * @return the number of operation continuations currently open across all connections
+     */
+    public int getOpenContinuationCount() {
+        return connectionRegistry.getContinuationCount();
+    }
+
+    /**
+     * Returns true if a drain has been started and the server has not been restarted since
+     * @return true if the server is draining
+     */
+    public boolean isDraining() {
+        return connectionRegistry.isDraining();
+    }
+
+    /**
+     * Returns the metrics this server records into
+     * @return the metrics this server records into
+     */
+    public RpcServerMetrics getMetrics() {
+        return connectionRegistry.getMetrics();
+    }
+
+    /**
+     * Replaces the metrics this server records into. Passing the same instance to several servers
+     * aggregates their counts. Should be set before the server is started
+     * @param metrics The metrics to record into
+     */
+    public void setMetrics(final RpcServerMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics must not be null");
+        }
+        connectionRegistry.setMetrics(metrics);
+    }
+
+    /**
+     * Returns the liveness manager monitoring this server's connections
+     * @return the liveness manager, or null if connections are not monitored
+     */
+    public ServerLivenessManager getLivenessManager() {
+        return livenessManager;
+    }
+
+    /**
+     * Installs a liveness manager to ping clients and reap dead or idle connections. May be shared
+     * by several servers. The caller owns the manager and closes it after the servers stop. Should be
+     * set before the server is started
+     * @param livenessManager The liveness manager, or null to disable monitoring
+     */
+    public void setLivenessManager(final ServerLivenessManager livenessManager) {
+        this.livenessManager = livenessManager;
+    }
+
+    /**
+     * Returns the options applied to the client connections this server accepts
+     * @return the connection options
+     */
+    public ServerConnectionOptions getConnectionOptions() {
+        return connectionRegistry.getConnectionOptions();
+    }
+
+    /**
+     * Replaces the options applied to client connections. Only connections accepted after this call take them
+     * @param connectionOptions The connection options
+     */
+    public void setConnectionOptions(final ServerConnectionOptions connectionOptions) {
+        if (connectionOptions == null) {
+            throw new IllegalArgumentException("Connection options must not be null");
+        }
+        connectionRegistry.setConnectionOptions(connectionOptions);
+    }
+
+    /**
+     * Sets how many streaming continuations drain() closes at once. Defaults to 16
+     * @param drainBatchSize Number of streams closed per batch
+     */
+    public void setDrainBatchSize(final int drainBatchSize) {
+        if (drainBatchSize < 1) {
+            throw new IllegalArgumentException("Drain batch size must be positive");
+        }
+        this.drainBatchSize = drainBatchSize;
+    }
+
+    /**
+     * Gracefully stops the server so its clients can move over without failing in-flight work or
+     * reconnecting all at once.
+     *
+     * Once called, new connections are not accepted and new streams are answered with a retriable
+     * {@link ServiceUnavailableException}. Request/response operations already in flight are allowed
+     * to complete. Long lived streams are sent a ServiceUnavailableException in batches spread across
+     * the first half of the timeout. When no continuations remain, or the timeout elapses, the remaining
+     * connections are closed and the server is stopped.
+     *
+     * @param timeout Upper bound on how long to wait for in-flight work before forcing the stop
+     * @return A future that is completed when the server stops. Calling again returns the same future
+     */
+    public synchronized CompletableFuture<Void> drain(final Duration timeout) {
+        if (drainFuture != null && connectionRegistry.isDraining()) {
+            return drainFuture;
+        }
+        if (!serverRunning.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        connectionRegistry.setDraining(true);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        drainFuture = future;
+        final long timeoutNanos = Math.max(0, timeout.toNanos());
+        final long deadlineNanos = System.nanoTime() + timeoutNanos;
+        LOGGER.info("{} draining {} connections with {} open continuations", eventStreamRPCServiceHandler.getServiceName(),
+                connectionRegistry.getConnectionCount(), connectionRegistry.getContinuationCount());
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "RpcServer-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final List<OperationContinuationHandler<?, ?, ?, ?>> streams = connectionRegistry.getStreamingContinuations();
+        final int batchSize = drainBatchSize;
+        final int batchCount = (streams.size() + batchSize - 1) / batchSize;
+        final long batchSpacingNanos = batchCount == 0 ? 0 : timeoutNanos / 2 / batchCount;
+        for (int i = 0; i < batchCount; ++i) {
+            final List<OperationContinuationHandler<?, ?, ?, ?>> batch =
+                    streams.subList(i * batchSize, Math.min(streams.size(), (i + 1) * batchSize));
+            scheduler.schedule(() -> batch.forEach(this::closeDrainedStream), i * batchSpacingNanos, TimeUnit.NANOSECONDS);
+        }
+
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        scheduler.scheduleWithFixedDelay(() -> {
+            final int remaining = connectionRegistry.getContinuationCount();
+            final boolean timedOut = System.nanoTime() - deadlineNanos >= 0;
+            if ((remaining == 0 || timedOut) && finished.compareAndSet(false, true)) {
+                if (remaining != 0) {
+                    LOGGER.warn("{} drain timed out with {} open continuations",
+                            eventStreamRPCServiceHandler.getServiceName(), remaining);
+                }
+                scheduler.shutdownNow();
+                for (ServiceOperationMappingContinuationHandler handler : connectionRegistry.getConnectionHandlers()) {
+                    handler.getServerConnection().closeConnection(0);
+                }
+                stopServer().whenComplete((res, ex) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(ex);
+                    } else {
+                        future.complete(null);
+                    }
+                });
+            }
+        }, DRAIN_POLL_INTERVAL_MS, DRAIN_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private void closeDrainedStream(final OperationContinuationHandler<?, ?, ?, ?> stream) {
+        try {
+            stream.sendModeledError(new ServiceUnavailableException(eventStreamRPCServiceHandler.getServiceName(),
+                    "Server is draining"));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to close stream while draining: {}", e.getMessage());
+        }
+    }
+
     /**
      * Stops running server and allows the caller to wait on a CompletableFuture
      *
@@ -0,0 +1,120 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server side counters. Each RpcServer creates its own, or several servers (e.g. the shards of a
+ * ShardedRpcServer) may share one instance to aggregate across listeners.
+ */
+public class RpcServerMetrics {
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder connectionsRejected = new LongAdder();
+    private final LongAdder streamsOpened = new LongAdder();
+    private final LongAdder streamsRejected = new LongAdder();
+    private final Map<ServerLivenessManager.ReapReason, LongAdder> reaped =
+            new EnumMap<>(ServerLivenessManager.ReapReason.class);
+
+    /**
+     * Creates a new, zeroed set of server metrics
+     */
+    public RpcServerMetrics() {
+        for (ServerLivenessManager.ReapReason reason : ServerLivenessManager.ReapReason.values()) {
+            reaped.put(reason, new LongAdder());
+        }
+    }
+
+    void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    void connectionRejected() {
+        connectionsRejected.increment();
+    }
+
+    void streamOpened() {
+        streamsOpened.increment();
+    }
+
+    void streamRejected() {
+        streamsRejected.increment();
+    }
+
+    void connectionReaped(final ServerLivenessManager.ReapReason reason) {
+        reaped.get(reason).increment();
+    }
+
+    void streamReaped() {
+        reaped.get(ServerLivenessManager.ReapReason.STREAM_IDLE).increment();
+    }
+
+    /**
+     * Returns the number of socket connections opened
+     * @return the number of socket connections opened
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Returns the number of socket connections closed
+     * @return the number of socket connections closed
+     */
+    public long getConnectionsClosed() {
+        return connectionsClosed.sum();
+    }
+
+    /**
+     * Returns the number of socket connections currently open
+     * @return the number of socket connections currently open
+     */
+    public long getOpenConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    /**
+     * Returns the number of connect requests not accepted, whether by version mismatch, authorization or drain
+     * @return the number of connect requests not accepted
+     */
+    public long getConnectionsRejected() {
+        return connectionsRejected.sum();
+    }
+
+    /**
+     * Returns the number of operation streams opened
+     * @return the number of operation streams opened
+     */
+    public long getStreamsOpened() {
+        return streamsOpened.sum();
+    }
+
+    /**
+     * Returns the number of operation streams rejected because the server was draining
+     * @return the number of operation streams rejected because the server was draining
+     */
+    public long getStreamsRejected() {
+        return streamsRejected.sum();
+    }
+
+    /**
+     * Returns the number of connections, or for STREAM_IDLE streams, reaped for the given reason
+     * @param reason The reap reason
+     * @return the number of connections or streams reaped for the given reason
+     */
+    public long getReaped(final ServerLivenessManager.ReapReason reason) {
+        return reaped.get(reason).sum();
+    }
+}
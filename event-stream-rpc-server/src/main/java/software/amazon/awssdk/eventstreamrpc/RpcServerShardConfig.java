@@ -0,0 +1,113 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+import software.amazon.awssdk.crt.io.SocketOptions;
+import software.amazon.awssdk.crt.io.TlsContextOptions;
+
+/**
+ * Describes one listener of a ShardedRpcServer: the endpoint it binds and the event loop group that
+ * serves it. For a Unix domain socket use SocketDomain.LOCAL with the socket path as the hostname.
+ */
+public class RpcServerShardConfig {
+    private final EventLoopGroup eventLoopGroup;
+    private final int eventLoopThreads;
+    private final SocketOptions socketOptions;
+    private final TlsContextOptions tlsContextOptions;
+    private final String hostname;
+    private final int port;
+
+    /**
+     * Creates a shard served by a caller supplied event loop group. The caller keeps ownership of the group
+     * @param eventLoopGroup The EventLoopGroup to use for this shard. Should not be shared with other shards
+     * @param socketOptions The SocketOptions to use for this shard
+     * @param tlsContextOptions The TlsContextOptions to use for this shard, may be null
+     * @param hostname The hostname, or socket path, to bind
+     * @param port The port to bind
+     */
+    public RpcServerShardConfig(EventLoopGroup eventLoopGroup, SocketOptions socketOptions,
+                                TlsContextOptions tlsContextOptions, String hostname, int port) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.eventLoopThreads = 0;
+        this.socketOptions = socketOptions;
+        this.tlsContextOptions = tlsContextOptions;
+        this.hostname = hostname;
+        this.port = port;
+    }
+
+    /**
+     * Creates a shard served by a dedicated event loop group the ShardedRpcServer creates when started
+     * and closes when stopped
+     * @param eventLoopThreads Number of threads in the shard's event loop group
+     * @param socketOptions The SocketOptions to use for this shard
+     * @param tlsContextOptions The TlsContextOptions to use for this shard, may be null
+     * @param hostname The hostname, or socket path, to bind
+     * @param port The port to bind
+     */
+    public RpcServerShardConfig(int eventLoopThreads, SocketOptions socketOptions,
+                                TlsContextOptions tlsContextOptions, String hostname, int port) {
+        if (eventLoopThreads < 1) {
+            throw new IllegalArgumentException("Shard must have at least one event loop thread");
+        }
+        this.eventLoopGroup = null;
+        this.eventLoopThreads = eventLoopThreads;
+        this.socketOptions = socketOptions;
+        this.tlsContextOptions = tlsContextOptions;
+        this.hostname = hostname;
+        this.port = port;
+    }
+
+    /**
+     * Returns the caller supplied event loop group
+     * @return the caller supplied event loop group, or null if the shard owns a dedicated one
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Returns the thread count of the dedicated event loop group
+     * @return the thread count of the dedicated event loop group, or zero if the group is caller supplied
+     */
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Returns the SocketOptions of the shard
+     * @return the SocketOptions of the shard
+     */
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    /**
+     * Returns the TlsContextOptions of the shard
+     * @return the TlsContextOptions of the shard
+     */
+    public TlsContextOptions getTlsContextOptions() {
+        return tlsContextOptions;
+    }
+
+    /**
+     * Returns the hostname, or socket path, of the shard
+     * @return the hostname, or socket path, of the shard
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns the port of the shard
+     * @return the port of the shard
+     */
+    public int getPort() {
+        return port;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+/**
+ * What a server offers and applies to the client connections it accepts: the features negotiated at connect,
+ * and how the connection's work is scheduled, accounted, tracked and traced. Immutable; each connection takes
+ * the options its server had when it was accepted, so changing them affects only connections accepted after.
+ * Every option is off, null, unless set.
+ */
+public final class ServerConnectionOptions {
+    /**
+     * Options with every feature off
+     */
+    public static final ServerConnectionOptions DEFAULT = builder().build();
+
+    private final SharedMemoryOptions sharedMemoryOptions;
+    private final CompressionOptions compressionOptions;
+    private final FragmentationOptions fragmentationOptions;
+    private final BatchingOptions batchingOptions;
+    private final FairScheduler fairScheduler;
+    private final MemoryQuotaOptions memoryQuotaOptions;
+    private final ContinuationLeakDetector leakDetector;
+    private final RpcTracer tracer;
+
+    private ServerConnectionOptions(final Builder builder) {
+        this.sharedMemoryOptions = builder.sharedMemoryOptions;
+        this.compressionOptions = builder.compressionOptions;
+        this.fragmentationOptions = builder.fragmentationOptions;
+        this.batchingOptions = builder.batchingOptions;
+        this.fairScheduler = builder.fairScheduler;
+        this.memoryQuotaOptions = builder.memoryQuotaOptions;
+        this.leakDetector = builder.leakDetector;
+        this.tracer = builder.tracer;
+    }
+
+    /**
+     * Returns a builder of options with every feature off
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder starting from these options
+     * @return a new builder
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .withSharedMemoryOptions(sharedMemoryOptions)
+                .withCompressionOptions(compressionOptions)
+                .withFragmentationOptions(fragmentationOptions)
+                .withBatchingOptions(batchingOptions)
+                .withFairScheduler(fairScheduler)
+                .withMemoryQuotaOptions(memoryQuotaOptions)
+                .withLeakDetector(leakDetector)
+                .withTracer(tracer);
+    }
+
+    /**
+     * Returns the shared memory side channel configuration offered to clients
+     * @return the shared memory configuration, or null if it is not offered
+     */
+    public SharedMemoryOptions getSharedMemoryOptions() {
+        return sharedMemoryOptions;
+    }
+
+    /**
+     * Returns the payload compression configuration accepted from clients
+     * @return the compression configuration, or null if compression is not accepted
+     */
+    public CompressionOptions getCompressionOptions() {
+        return compressionOptions;
+    }
+
+    /**
+     * Returns the payload fragmentation configuration accepted from clients
+     * @return the fragmentation configuration, or null if fragmentation is not accepted
+     */
+    public FragmentationOptions getFragmentationOptions() {
+        return fragmentationOptions;
+    }
+
+    /**
+     * Returns the stream event batching configuration accepted from clients
+     * @return the batching configuration, or null if batching is not accepted
+     */
+    public BatchingOptions getBatchingOptions() {
+        return batchingOptions;
+    }
+
+    /**
+     * Returns the scheduler handling the work of client connections
+     * @return the fair scheduler, or null if work is handled on the event loop as it arrives
+     */
+    public FairScheduler getFairScheduler() {
+        return fairScheduler;
+    }
+
+    /**
+     * Returns the quotas on the payload bytes each client connection may hold in flight
+     * @return the memory quotas, or null if connections are not accounted
+     */
+    public MemoryQuotaOptions getMemoryQuotaOptions() {
+        return memoryQuotaOptions;
+    }
+
+    /**
+     * Returns the detector tracking the continuations of client connections
+     * @return the leak detector, or null if continuations are not tracked
+     */
+    public ContinuationLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Returns the tracer of the initial requests of client connections
+     * @return the tracer, or null if requests are not traced
+     */
+    public RpcTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Builds ServerConnectionOptions
+     */
+    public static final class Builder {
+        private SharedMemoryOptions sharedMemoryOptions;
+        private CompressionOptions compressionOptions;
+        private FragmentationOptions fragmentationOptions;
+        private BatchingOptions batchingOptions;
+        private FairScheduler fairScheduler;
+        private MemoryQuotaOptions memoryQuotaOptions;
+        private ContinuationLeakDetector leakDetector;
+        private RpcTracer tracer;
+
+        private Builder() { }
+
+        /**
+         * Offers clients on the same host a shared memory side channel for large payloads. Only clients that ask
+         * for it at connect get one
+         * @param sharedMemoryOptions The shared memory configuration, or null to not offer it
+         * @return this builder
+         */
+        public Builder withSharedMemoryOptions(final SharedMemoryOptions sharedMemoryOptions) {
+            this.sharedMemoryOptions = sharedMemoryOptions;
+            return this;
+        }
+
+        /**
+         * Accepts payload compression from clients that offer a codec the server also has
+         * @param compressionOptions The compression configuration, or null to not accept it
+         * @return this builder
+         */
+        public Builder withCompressionOptions(final CompressionOptions compressionOptions) {
+            this.compressionOptions = compressionOptions;
+            return this;
+        }
+
+        /**
+         * Accepts payloads in fragments from clients that offer to send them, lifting the message size limit both
+         * ways
+         * @param fragmentationOptions The fragmentation configuration, or null to not accept it
+         * @return this builder
+         */
+        public Builder withFragmentationOptions(final FragmentationOptions fragmentationOptions) {
+            this.fragmentationOptions = fragmentationOptions;
+            return this;
+        }
+
+        /**
+         * Accepts stream event batching from clients that offer it, and batches the stream events sent to them
+         * @param batchingOptions The batching configuration, or null to not accept it
+         * @return this builder
+         */
+        public Builder withBatchingOptions(final BatchingOptions batchingOptions) {
+            this.batchingOptions = batchingOptions;
+            return this;
+        }
+
+        /**
+         * Hands the messages of connections to a fair scheduler rather than handling them on the event loop as
+         * they arrive. The scheduler may be shared by several servers and is not closed with them
+         * @param fairScheduler The scheduler, or null to handle messages on the event loop
+         * @return this builder
+         */
+        public Builder withFairScheduler(final FairScheduler fairScheduler) {
+            this.fairScheduler = fairScheduler;
+            return this;
+        }
+
+        /**
+         * Accounts the payload bytes in flight on connections against quotas. A stream past a soft quota signals
+         * backpressure to clients that offered to take the signals, and one whose next message would cross a hard
+         * quota is closed with a QuotaExceededException
+         * @param memoryQuotaOptions The quotas, or null to not account
+         * @return this builder
+         */
+        public Builder withMemoryQuotaOptions(final MemoryQuotaOptions memoryQuotaOptions) {
+            this.memoryQuotaOptions = memoryQuotaOptions;
+            return this;
+        }
+
+        /**
+         * Tracks a sample of the continuations opened, reporting those open past the detector's age threshold or
+         * whose handler is garbage collected first. The detector is not closed with the server
+         * @param leakDetector The detector, or null to not track
+         * @return this builder
+         */
+        public Builder withLeakDetector(final ContinuationLeakDetector leakDetector) {
+            this.leakDetector = leakDetector;
+            return this;
+        }
+
+        /**
+         * Traces the initial requests arriving, each span started with the trace context the client sent, if any
+         * @param tracer The tracer, or null to not trace
+         * @return this builder
+         */
+        public Builder withTracer(final RpcTracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+
+        /**
+         * Returns the options built
+         * @return the options built
+         */
+        public ServerConnectionOptions build() {
+            return new ServerConnectionOptions(this);
+        }
+    }
+}
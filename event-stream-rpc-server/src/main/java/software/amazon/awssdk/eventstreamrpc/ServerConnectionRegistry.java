@@ -0,0 +1,97 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.ServerConnection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the live connections of an RpcServer and, through each connection's handler, the operation
+ * continuations open on them. Also carries the draining flag the connection handlers consult before
+ * accepting new connections or streams, and the connection options each new connection takes.
+ *
+ * Written from CRT event loop threads, read from whichever thread inspects or drains the server.
+ */
+final class ServerConnectionRegistry {
+    private final Map<ServerConnection, ServiceOperationMappingContinuationHandler> connections =
+            new ConcurrentHashMap<>();
+    private volatile boolean draining = false;
+    private volatile RpcServerMetrics metrics = new RpcServerMetrics();
+    private volatile ServerConnectionOptions connectionOptions = ServerConnectionOptions.DEFAULT;
+
+    void addConnection(final ServerConnection connection, final ServiceOperationMappingContinuationHandler handler) {
+        connections.put(connection, handler);
+        metrics.connectionOpened();
+    }
+
+    void removeConnection(final ServerConnection connection) {
+        if (connections.remove(connection) != null) {
+            metrics.connectionClosed();
+        }
+    }
+
+    RpcServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    void setMetrics(final RpcServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    ServerConnectionOptions getConnectionOptions() {
+        return connectionOptions;
+    }
+
+    void setConnectionOptions(final ServerConnectionOptions connectionOptions) {
+        this.connectionOptions = connectionOptions;
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    void setDraining(final boolean draining) {
+        this.draining = draining;
+    }
+
+    Collection<ServiceOperationMappingContinuationHandler> getConnectionHandlers() {
+        return new ArrayList<>(connections.values());
+    }
+
+    int getConnectionCount() {
+        return connections.size();
+    }
+
+    int getContinuationCount() {
+        int count = 0;
+        for (ServiceOperationMappingContinuationHandler handler : connections.values()) {
+            count += handler.getContinuations().size();
+        }
+        return count;
+    }
+
+    /**
+     * Streaming continuations are the long lived ones drain closes rather than waits on
+     */
+    List<OperationContinuationHandler<?, ?, ?, ?>> getStreamingContinuations() {
+        final List<OperationContinuationHandler<?, ?, ?, ?>> streams = new ArrayList<>();
+        for (ServiceOperationMappingContinuationHandler handler : connections.values()) {
+            for (OperationContinuationHandler<?, ?, ?, ?> continuation : handler.getContinuations()) {
+                if (continuation.isStreamingOperation()) {
+                    streams.add(continuation);
+                }
+            }
+        }
+        return streams;
+    }
+}
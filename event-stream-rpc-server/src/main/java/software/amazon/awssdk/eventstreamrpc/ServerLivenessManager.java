@@ -0,0 +1,292 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Detects and reaps dead or idle client connections, such as a killed client whose socket never
+ * delivered a close and would otherwise keep its continuations and handler state alive forever.
+ *
+ * Each registered connection is checked every check interval, the shorter of the ping interval and half
+ * of each idle timeout that is set:
+ * <ul>
+ *     <li>If anything was received since the last check, the connection is alive. Otherwise it is sent a ping,
+ *     and once missedPongThreshold pings in a row go unanswered it is reaped with {@link ReapReason#MISSED_PONGS}</li>
+ *     <li>If the connection idle timeout is set and the connection has had no open streams and no traffic
+ *     other than pings for that long, it is reaped with {@link ReapReason#CONNECTION_IDLE}</li>
+ *     <li>If the stream idle timeout is set, streams with no message sent or received for that long are
+ *     closed and counted as {@link ReapReason#STREAM_IDLE}</li>
+ * </ul>
+ * Reaped connections are sent a ServerError carrying the reason code, then closed.
+ *
+ * All checks are driven by a single TimerWheel, so one manager may be shared by several RpcServers.
+ * Install with {@link RpcServer#setLivenessManager(ServerLivenessManager)} before the server starts.
+ */
+public class ServerLivenessManager implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerLivenessManager.class);
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * Header carrying the reap reason on the ServerError sent before a reaped connection is closed
+     */
+    public static final String REASON_CODE_HEADER = "reason-code";
+
+    /**
+     * Why a connection or stream was reaped
+     */
+    public enum ReapReason {
+        /**
+         * The client stopped answering pings
+         */
+        MISSED_PONGS,
+        /**
+         * The connection had no streams and no traffic for the connection idle timeout
+         */
+        CONNECTION_IDLE,
+        /**
+         * The stream had no traffic for the stream idle timeout
+         */
+        STREAM_IDLE
+    }
+
+    private final Duration pingInterval;
+    private final int missedPongThreshold;
+    private Duration connectionIdleTimeout = Duration.ZERO;
+    private Duration streamIdleTimeout = Duration.ZERO;
+    private TimerWheel timerWheel;
+
+    /**
+     * Creates a new liveness manager
+     * @param pingInterval How often a quiet connection is pinged. Zero disables pings
+     * @param missedPongThreshold Number of consecutive unanswered pings after which a connection is reaped
+     */
+    public ServerLivenessManager(final Duration pingInterval, final int missedPongThreshold) {
+        if (pingInterval.isNegative()) {
+            throw new IllegalArgumentException("Ping interval must not be negative");
+        }
+        if (missedPongThreshold < 1) {
+            throw new IllegalArgumentException("Missed pong threshold must be positive");
+        }
+        this.pingInterval = pingInterval;
+        this.missedPongThreshold = missedPongThreshold;
+    }
+
+    /**
+     * Sets how long a connection with no open streams may go without traffic before it is reaped. Zero,
+     * the default, disables the connection idle timeout
+     * @param connectionIdleTimeout The connection idle timeout
+     */
+    public synchronized void setConnectionIdleTimeout(final Duration connectionIdleTimeout) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    /**
+     * Sets how long a stream may go without a message sent or received before it is closed. Zero,
+     * the default, disables the stream idle timeout
+     * @param streamIdleTimeout The stream idle timeout
+     */
+    public synchronized void setStreamIdleTimeout(final Duration streamIdleTimeout) {
+        this.streamIdleTimeout = streamIdleTimeout;
+    }
+
+    /**
+     * Returns the ping interval
+     * @return the ping interval
+     */
+    public Duration getPingInterval() {
+        return pingInterval;
+    }
+
+    /**
+     * Returns the number of consecutive unanswered pings after which a connection is reaped
+     * @return the missed pong threshold
+     */
+    public int getMissedPongThreshold() {
+        return missedPongThreshold;
+    }
+
+    /**
+     * Returns the connection idle timeout
+     * @return the connection idle timeout, zero if disabled
+     */
+    public synchronized Duration getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    /**
+     * Returns the stream idle timeout
+     * @return the stream idle timeout, zero if disabled
+     */
+    public synchronized Duration getStreamIdleTimeout() {
+        return streamIdleTimeout;
+    }
+
+    /**
+     * Stops the timer wheel. Connections registered afterwards are not monitored
+     */
+    @Override
+    public synchronized void close() {
+        if (timerWheel != null) {
+            timerWheel.close();
+            timerWheel = null;
+        }
+    }
+
+    /**
+     * Starts monitoring a newly accepted connection
+     */
+    synchronized void register(final ServiceOperationMappingContinuationHandler handler, final RpcServerMetrics metrics) {
+        final long checkIntervalNanos = getCheckIntervalNanos();
+        if (checkIntervalNanos <= 0) {
+            return;     //nothing configured
+        }
+        if (timerWheel == null) {
+            timerWheel = new TimerWheel("RpcServer-liveness", TICK_MS, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+        }
+        new ConnectionLiveness(timerWheel, handler, metrics, checkIntervalNanos, pingInterval.toNanos() > 0,
+                missedPongThreshold, connectionIdleTimeout.toNanos(), streamIdleTimeout.toNanos()).schedule();
+    }
+
+    private long getCheckIntervalNanos() {
+        long interval = pingInterval.toNanos();
+        for (Duration idleTimeout : new Duration[] { connectionIdleTimeout, streamIdleTimeout }) {
+            final long half = idleTimeout.toNanos() / 2;
+            if (half > 0 && (interval <= 0 || half < interval)) {
+                interval = half;
+            }
+        }
+        return interval;
+    }
+
+    /**
+     * Liveness state of one connection. Only touched by the timer wheel thread
+     */
+    private static final class ConnectionLiveness implements Runnable {
+        private final TimerWheel timerWheel;
+        private final ServiceOperationMappingContinuationHandler handler;
+        private final RpcServerMetrics metrics;
+        private final long checkIntervalNanos;
+        private final boolean pingEnabled;
+        private final int missedPongThreshold;
+        private final long connectionIdleTimeoutNanos;
+        private final long streamIdleTimeoutNanos;
+        private final AtomicBoolean reaped = new AtomicBoolean(false);
+        private long lastCheckNanos = System.nanoTime();
+        private int missedPongs = 0;
+
+        ConnectionLiveness(TimerWheel timerWheel, ServiceOperationMappingContinuationHandler handler,
+                           RpcServerMetrics metrics, long checkIntervalNanos, boolean pingEnabled,
+                           int missedPongThreshold, long connectionIdleTimeoutNanos, long streamIdleTimeoutNanos) {
+            this.timerWheel = timerWheel;
+            this.handler = handler;
+            this.metrics = metrics;
+            this.checkIntervalNanos = checkIntervalNanos;
+            this.pingEnabled = pingEnabled;
+            this.missedPongThreshold = missedPongThreshold;
+            this.connectionIdleTimeoutNanos = connectionIdleTimeoutNanos;
+            this.streamIdleTimeoutNanos = streamIdleTimeoutNanos;
+        }
+
+        void schedule() {
+            try {
+                timerWheel.schedule(this, checkIntervalNanos, TimeUnit.NANOSECONDS);
+            } catch (IllegalStateException e) {
+                //manager closed, stop monitoring
+            }
+        }
+
+        @Override
+        public void run() {
+            if (handler.isConnectionClosed() || reaped.get()) {
+                return;
+            }
+            final long now = System.nanoTime();
+            long lastReceive = handler.getLastReceiveNanos();
+            long lastActivity = handler.getLastActivityNanos();
+            for (OperationContinuationHandler<?, ?, ?, ?> continuation : handler.getContinuations()) {
+                final long streamActivity = continuation.getLastActivityNanos();
+                //only what the client sends shows it is alive, a stream the server publishes on may be talking to no one
+                lastReceive = Math.max(lastReceive, continuation.getLastReceiveNanos());
+                lastActivity = Math.max(lastActivity, streamActivity);
+                if (streamIdleTimeoutNanos > 0 && now - streamActivity >= streamIdleTimeoutNanos) {
+                    LOGGER.info("Closing stream idle for {}ms", TimeUnit.NANOSECONDS.toMillis(now - streamActivity));
+                    metrics.streamReaped();
+                    handler.removeContinuation(continuation);
+                    continuation.closeStream();
+                }
+            }
+
+            if (lastReceive - lastCheckNanos > 0) {
+                missedPongs = 0;
+            } else if (pingEnabled) {
+                if (missedPongs >= missedPongThreshold) {
+                    reap(ReapReason.MISSED_PONGS);
+                    return;
+                }
+                ++missedPongs;
+                try {
+                    handler.getServerConnection().sendProtocolMessage(null, null, MessageType.Ping, 0);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not ping connection {}. {}: {}",
+                            handler.getServerConnection().getResourceLogDescription(),
+                            e.getClass().getCanonicalName(), e.getMessage());
+                    reap(ReapReason.MISSED_PONGS);
+                    return;
+                }
+            }
+            if (connectionIdleTimeoutNanos > 0 && handler.getContinuations().isEmpty()
+                    && now - lastActivity >= connectionIdleTimeoutNanos) {
+                reap(ReapReason.CONNECTION_IDLE);
+                return;
+            }
+            lastCheckNanos = now;
+            schedule();
+        }
+
+        private void reap(final ReapReason reason) {
+            if (!reaped.compareAndSet(false, true)) {
+                return;
+            }
+            LOGGER.warn("Reaping connection {}: {}", handler.getServerConnection().getResourceLogDescription(), reason);
+            metrics.connectionReaped(reason);
+            final List<Header> headers = new ArrayList<>(2);
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+            headers.add(Header.createHeader(REASON_CODE_HEADER, reason.name()));
+            final String payload = "{ \"error\": \"ConnectionReaped\", \"reason\": \"" + reason.name()
+                    + "\", \"message\": \"Connection closed by server: " + reason.name() + "\" }";
+            final AtomicBoolean closed = new AtomicBoolean(false);
+            final Runnable close = () -> {
+                if (closed.compareAndSet(false, true) && !handler.isConnectionClosed()) {
+                    handler.getServerConnection().closeConnection(0);
+                }
+            };
+            try {
+                handler.getServerConnection().sendProtocolMessage(headers, payload.getBytes(StandardCharsets.UTF_8),
+                        MessageType.ServerError, 0).whenComplete((res, ex) -> close.run());
+            } catch (RuntimeException e) {
+                close.run();
+                return;
+            }
+            //a dead peer may never let the error flush
+            timerWheel.schedule(close, checkIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What an OperationContinuationHandler sends its responses through: the native continuation of a socket
+ * connection, or the server end of an InProcessContinuation
+ */
+interface ServerOperationStream {
+    /**
+     * Sends a model message, or an empty one if message is null
+     */
+    CompletableFuture<Void> sendMessage(EventStreamJsonMessage message, MessageType messageType, int messageFlags);
+
+    /**
+     * Sends a response, reporting its serialization and flush to the span. Streams that neither serialize nor
+     * flush report nothing
+     */
+    default CompletableFuture<Void> sendMessage(EventStreamJsonMessage message, MessageType messageType,
+                                                int messageFlags, RpcSpan span) {
+        return sendMessage(message, messageType, messageFlags);
+    }
+
+    /**
+     * Sends the terminating error for a failure that has no modeled error
+     */
+    CompletableFuture<Void> sendInternalError();
+
+    boolean isClosed();
+
+    void close();
+
+    /**
+     * Returns an id for the stream to report in logs and exceptions
+     */
+    long getId();
+}
@@ -17,12 +17,16 @@ import software.amazon.awssdk.crt.eventstream.ServerConnection;
 import software.amazon.awssdk.crt.eventstream.ServerConnectionContinuation;
 import software.amazon.awssdk.crt.eventstream.ServerConnectionContinuationHandler;
 import software.amazon.awssdk.crt.eventstream.ServerConnectionHandler;
+import software.amazon.awssdk.eventstreamrpc.model.ServiceUnavailableException;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -32,7 +36,19 @@ import java.util.stream.Collectors;
 public class ServiceOperationMappingContinuationHandler extends ServerConnectionHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ServiceOperationMappingContinuationHandler.class);
     private final EventStreamRPCServiceHandler serviceHandler;
+    private final ServerConnectionRegistry connectionRegistry;
+    private final ServerConnectionOptions connectionOptions;
+    private final Set<OperationContinuationHandler<?, ?, ?, ?>> continuations = ConcurrentHashMap.newKeySet();
     private AuthenticationData authenticationData;  //should only be set once after AuthN
+    private volatile long lastReceiveNanos = System.nanoTime();
+    private volatile long lastActivityNanos = lastReceiveNanos;
+    private volatile boolean connectionClosed = false;
+    private volatile SharedMemoryChannel sharedMemoryChannel;
+    private volatile PayloadCompression payloadCompression;
+    private volatile PayloadFragmentation payloadFragmentation;
+    private volatile BatchingOptions batchingOptions;
+    private volatile FairScheduler.ConnectionQueue workQueue;
+    private volatile MemoryAccount memoryAccount;
 
     /**
      * Constructs a new ServiceOperationMappingContinuationHandler
@@ -40,18 +56,183 @@ public class ServiceOperationMappingContinuationHandler extends ServerConnection
      * @param handler The EventStreamRPCServiceHandler to use
      */
     public ServiceOperationMappingContinuationHandler(final ServerConnection serverConnection, final EventStreamRPCServiceHandler handler) {
+        this(serverConnection, handler, null);
+    }
+
+    ServiceOperationMappingContinuationHandler(final ServerConnection serverConnection,
+                                               final EventStreamRPCServiceHandler handler,
+                                               final ServerConnectionRegistry connectionRegistry) {
         super(serverConnection);
         this.serviceHandler = handler;
+        this.connectionRegistry = connectionRegistry;
+        this.connectionOptions = connectionRegistry != null
+                ? connectionRegistry.getConnectionOptions() : ServerConnectionOptions.DEFAULT;
         this.authenticationData = null;
     }
 
+    /**
+     * Returns the server connection this handler is bound to
+     * @return the server connection this handler is bound to
+     */
+    ServerConnection getServerConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the operation continuations currently open on this connection. Live view.
+     * @return the operation continuations currently open on this connection
+     */
+    Set<OperationContinuationHandler<?, ?, ?, ?>> getContinuations() {
+        return continuations;
+    }
+
+    void removeContinuation(final OperationContinuationHandler<?, ?, ?, ?> continuation) {
+        continuations.remove(continuation);
+    }
+
+    /**
+     * Returns the time of the last message of any kind, pings included, received on the connection itself
+     * @return System.nanoTime() of the last connection level message received
+     */
+    long getLastReceiveNanos() {
+        return lastReceiveNanos;
+    }
+
+    /**
+     * Returns the time of the last non-ping message received on the connection itself, or a new stream opened on it
+     * @return System.nanoTime() of the last connection level activity
+     */
+    long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Returns the shared memory side channel negotiated at connect
+     * @return the shared memory side channel, or null if the connection has none
+     */
+    SharedMemoryChannel getSharedMemoryChannel() {
+        return sharedMemoryChannel;
+    }
+
+    /**
+     * Returns the payload compression negotiated at connect
+     * @return the payload compression, or null if the connection has none
+     */
+    PayloadCompression getPayloadCompression() {
+        return payloadCompression;
+    }
+
+    /**
+     * Returns the payload fragmentation negotiated at connect
+     * @return the payload fragmentation, or null if the connection has none
+     */
+    PayloadFragmentation getPayloadFragmentation() {
+        return payloadFragmentation;
+    }
+
+    /**
+     * Returns the stream event batching negotiated at connect
+     * @return the server's batching configuration, or null if the connection does not batch
+     */
+    BatchingOptions getBatchingOptions() {
+        return batchingOptions;
+    }
+
+    /**
+     * Returns the queue the connection's messages are handled from
+     * @return the connection's fair scheduler queue, or null if messages are handled as they arrive
+     */
+    FairScheduler.ConnectionQueue getWorkQueue() {
+        return workQueue;
+    }
+
+    /**
+     * Returns the account of the payload bytes in flight on the connection
+     * @return the connection's memory account, or null if the connection is not accounted
+     */
+    MemoryAccount getMemoryAccount() {
+        return memoryAccount;
+    }
+
+    /**
+     * Returns the detector tracking the connection's continuations
+     * @return the server's leak detector, or null if continuations are not tracked
+     */
+    ContinuationLeakDetector getLeakDetector() {
+        return connectionOptions.getLeakDetector();
+    }
+
+    /**
+     * Returns the tracer of the connection's initial requests
+     * @return the server's tracer, or null if requests are not traced
+     */
+    RpcTracer getTracer() {
+        return connectionOptions.getTracer();
+    }
+
+    /**
+     * Returns true once the underlying connection has shut down
+     * @return true once the underlying connection has shut down
+     */
+    boolean isConnectionClosed() {
+        return connectionClosed;
+    }
+
+    @Override
+    protected void onConnectionClosed(int errorCode) {
+        connectionClosed = true;
+        closeSharedMemoryChannel();
+        final FairScheduler.ConnectionQueue queue = workQueue;
+        if (queue != null) {
+            queue.unregister();
+        }
+        super.onConnectionClosed(errorCode);
+    }
+
+    private void closeSharedMemoryChannel() {
+        final SharedMemoryChannel channel = sharedMemoryChannel;
+        if (channel != null) {
+            sharedMemoryChannel = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * Releases the shared memory a message dropped unread points at, so it does not hold back the ring
+     */
+    private void releaseSharedMemory(final List<Header> headers) {
+        final SharedMemoryChannel channel = sharedMemoryChannel;
+        if (channel != null) {
+            channel.release(headers);
+        }
+    }
+
+    private boolean isDraining() {
+        return connectionRegistry != null && connectionRegistry.isDraining();
+    }
+
     @Override
     protected void onProtocolMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
+        lastReceiveNanos = System.nanoTime();
+        if (messageType != MessageType.Ping && messageType != MessageType.PingResponse) {
+            lastActivityNanos = lastReceiveNanos;
+        }
         if (messageType == MessageType.Ping) {
+            if (SharedMemoryChannel.isDeclined(headers)) {
+                //the client could not map the rings, and sends this ahead of any stream
+                LOGGER.info("Client declined the shared memory rings, sending payloads inline");
+                closeSharedMemoryChannel();
+            }
             int responseMessageFlag = 0;
             MessageType responseMessageType = MessageType.PingResponse;
-            connection.sendProtocolMessage(headers.stream().filter(header -> !header.getName().startsWith(":"))
-                    .collect(Collectors.toList()), payload, responseMessageType, responseMessageFlag);
+            final List<Header> pingHeaders = headers.stream().filter(header -> !header.getName().startsWith(":"))
+                    .collect(Collectors.toList());
+            //echo nothing rather than empty buffers, which the native marshaller rejects
+            if (pingHeaders.isEmpty() && (payload == null || payload.length == 0)) {
+                connection.sendProtocolMessage(null, null, responseMessageType, responseMessageFlag);
+            } else {
+                connection.sendProtocolMessage(pingHeaders, payload, responseMessageType, responseMessageFlag);
+            }
         } else if (messageType == MessageType.Connect) {
             onConnectRequest(headers, payload);
         } else if (messageType != MessageType.PingResponse) {
@@ -79,58 +260,57 @@ public class ServiceOperationMappingContinuationHandler extends ServerConnection
         final int[] responseMessageFlag = { 0 };
         final MessageType acceptResponseType = MessageType.ConnectAck;
 
-        final AuthenticationHandler authentication = serviceHandler.getAuthenticationHandler();
-        final AuthorizationHandler authorization = serviceHandler.getAuthorizationHandler();
-
         try {
-            final Optional<String> versionHeader = headers.stream()
-                    .filter(header -> header.getHeaderType() == HeaderType.String
-                            && header.getName().equals(EventStreamRPCServiceModel.VERSION_HEADER))
-                    .map(header -> header.getValueAsString())
-                    .findFirst();
-            if (versionHeader.isPresent() &&
-                    Version.fromString(versionHeader.get()).equals(Version.getInstance())) {
-                //version matches
-                if (authentication == null) {
-                    throw new IllegalStateException(
-                            String.format("%s has null authentication handler!", serviceHandler.getServiceName()));
-                }
-                if (authorization == null) {
-                    throw new IllegalStateException(
-                            String.format("%s has null authorization handler!", serviceHandler.getServiceName()));
-                }
-
-                LOGGER.trace(String.format("%s running authentication handler", serviceHandler.getServiceName()));
-                authenticationData = authentication.apply(headers, payload);
-                if (authenticationData == null) {
-                    throw new IllegalStateException(String.format("%s authentication handler returned null", serviceHandler.getServiceName()));
-                }
-                LOGGER.info(String.format("%s authenticated identity: %s", serviceHandler.getServiceName(), authenticationData.getIdentityLabel()));
-
-                final Authorization authorizationDecision = authorization.apply(authenticationData);
-                switch (authorizationDecision) {
-                    case ACCEPT:
-                        LOGGER.info("Connection accepted for " + authenticationData.getIdentityLabel());
-                        responseMessageFlag[0] = MessageFlags.ConnectionAccepted.getByteValue();
-                        break;
-                    case REJECT:
-                        LOGGER.info("Connection rejected for: " + authenticationData.getIdentityLabel());
-                        break;
-                    default:
-                        //got a big problem if this is the outcome. Someone forgot to update this switch-case
-                        throw new RuntimeException("Unknown authorization decision for " + authenticationData.getIdentityLabel());
-                }
-            } else { //version mismatch
-                LOGGER.warn(String.format("Client version {%s} mismatches server version {%s}",
-                        versionHeader.isPresent() ? versionHeader.get() : "null",
-                        Version.getInstance().getVersionString()));
+            if (isDraining()) {
+                //answered below with a connect ack lacking ConnectionAccepted, so the client fails fast and
+                //retries elsewhere or after the restart rather than waiting out its timeout
+                LOGGER.info(String.format("%s is draining. Rejecting new connection", serviceHandler.getServiceName()));
+            } else {
+                authenticationData = acceptConnect(serviceHandler, headers, payload);
+            }
+            if (authenticationData != null) {
+                responseMessageFlag[0] = MessageFlags.ConnectionAccepted.getByteValue();
+                sharedMemoryChannel = openSharedMemoryChannel(headers);
+                final FragmentationOptions fragmentationOptions = connectionOptions.getFragmentationOptions();
+                payloadFragmentation = fragmentationOptions != null
+                        ? PayloadFragmentation.acceptOffer(headers, fragmentationOptions) : null;
+                payloadCompression = acceptCompression(headers, payloadFragmentation);
+                final BatchingOptions serverBatchingOptions = connectionOptions.getBatchingOptions();
+                batchingOptions = serverBatchingOptions != null && StreamEventBatcher.hasBatchingHeader(headers)
+                        ? serverBatchingOptions : null;
+                final FairScheduler fairScheduler = connectionOptions.getFairScheduler();
+                workQueue = fairScheduler != null ? fairScheduler.register(authenticationData) : null;
+                final MemoryQuotaOptions memoryQuotaOptions = connectionOptions.getMemoryQuotaOptions();
+                memoryAccount = memoryQuotaOptions != null
+                        ? new MemoryAccount(memoryQuotaOptions, MemoryAccount.hasQuotaHeader(headers)) : null;
             }
         } catch (Exception e) {
             LOGGER.error(String.format("%s occurred while attempting to authN/authZ connect: %s", e.getClass(), e.getMessage()), e);
         } finally {
             final String authLabel =  authenticationData != null ? authenticationData.getIdentityLabel() : "null";
             LOGGER.info("Sending connect response for " + authLabel);
-            connection.sendProtocolMessage(null, null, acceptResponseType, responseMessageFlag[0])
+            final List<Header> ackHeaders = new ArrayList<>(6);
+            final SharedMemoryChannel channel = sharedMemoryChannel;
+            if (channel != null) {
+                ackHeaders.addAll(channel.getConnectAckHeaders());
+            }
+            final PayloadCompression compression = payloadCompression;
+            if (compression != null) {
+                ackHeaders.add(compression.getConnectAckHeader());
+            }
+            final PayloadFragmentation fragmentation = payloadFragmentation;
+            if (fragmentation != null) {
+                ackHeaders.add(fragmentation.getConnectAckHeader());
+            }
+            if (batchingOptions != null) {
+                ackHeaders.add(StreamEventBatcher.createBatchingHeader());
+            }
+            final MemoryAccount account = memoryAccount;
+            if (account != null && account.isSignalling()) {
+                ackHeaders.add(MemoryAccount.createQuotaHeader());
+            }
+            connection.sendProtocolMessage(ackHeaders.isEmpty() ? null : ackHeaders, null,
+                    acceptResponseType, responseMessageFlag[0])
                 .whenComplete((res, ex) -> {
                     //TODO: removing log statements due to known issue of locking up
                     if (ex != null) {
@@ -141,6 +321,9 @@ public class ServiceOperationMappingContinuationHandler extends ServerConnection
                         //LOGGER.info("Successfully sent connection response for: " + authLabel);
                     }
                     if (responseMessageFlag[0] != MessageFlags.ConnectionAccepted.getByteValue()) {
+                        if (connectionRegistry != null) {
+                            connectionRegistry.getMetrics().connectionRejected();
+                        }
                         //LOGGER.info("Closing connection due to connection not being accepted...");
                         connection.closeConnection(0);
                     }
@@ -148,14 +331,120 @@ public class ServiceOperationMappingContinuationHandler extends ServerConnection
         }
     }
 
+    /**
+     * Creates the shared memory rings for an accepted client that offered to use them, if the server is
+     * configured to. Failing to create them only costs the client the side channel
+     * @return the server end of the new channel, or null if the connection goes without
+     */
+    private SharedMemoryChannel openSharedMemoryChannel(final List<Header> headers) {
+        final SharedMemoryOptions options = connectionOptions.getSharedMemoryOptions();
+        if (options == null || !SharedMemoryChannel.isOffered(headers)) {
+            return null;
+        }
+        try {
+            return SharedMemoryChannel.createServerChannel(options.getDirectory(), options.getRingCapacity(),
+                    options.getThreshold(), options.getFilePermissions());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not create shared memory rings in {}, connecting without: {}",
+                    options.getDirectory(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Picks the payload compression for an accepted client that offered it, if the server is configured to
+     * @param fragmentation The fragmentation accepted for the connection, or null if there is none
+     * @return the compression for the connection, or null if it goes without
+     */
+    private PayloadCompression acceptCompression(final List<Header> headers,
+                                                 final PayloadFragmentation fragmentation) {
+        final CompressionOptions options = connectionOptions.getCompressionOptions();
+        if (options == null) {
+            return null;
+        }
+        final PayloadCompression compression = PayloadCompression.acceptOffer(headers, options);
+        if (compression == null) {
+            return null;
+        }
+        LOGGER.debug("Compressing payloads with {}", compression.getCodec().getName());
+        return compression.withFragmentation(fragmentation);
+    }
+
+    /**
+     * Checks the client version, then runs the service's authentication and authorization handlers on a
+     * connect request. Shared by socket connections and InProcessRpcServer
+     * @param serviceHandler The service being connected to
+     * @param headers The connect request headers
+     * @param payload The connect request payload
+     * @return the authentication data of the accepted client, or null if the connect is rejected
+     */
+    static AuthenticationData acceptConnect(final EventStreamRPCServiceHandler serviceHandler,
+                                            final List<Header> headers, final byte[] payload) {
+        final AuthenticationHandler authentication = serviceHandler.getAuthenticationHandler();
+        final AuthorizationHandler authorization = serviceHandler.getAuthorizationHandler();
+        final Optional<String> versionHeader = headers.stream()
+                .filter(header -> header.getHeaderType() == HeaderType.String
+                        && header.getName().equals(EventStreamRPCServiceModel.VERSION_HEADER))
+                .map(header -> header.getValueAsString())
+                .findFirst();
+        if (!versionHeader.isPresent() ||
+                !Version.fromString(versionHeader.get()).equals(Version.getInstance())) {
+            LOGGER.warn(String.format("Client version {%s} mismatches server version {%s}",
+                    versionHeader.isPresent() ? versionHeader.get() : "null",
+                    Version.getInstance().getVersionString()));
+            return null;
+        }
+        if (authentication == null) {
+            throw new IllegalStateException(
+                    String.format("%s has null authentication handler!", serviceHandler.getServiceName()));
+        }
+        if (authorization == null) {
+            throw new IllegalStateException(
+                    String.format("%s has null authorization handler!", serviceHandler.getServiceName()));
+        }
+
+        LOGGER.trace(String.format("%s running authentication handler", serviceHandler.getServiceName()));
+        final AuthenticationData authenticationData = authentication.apply(headers, payload);
+        if (authenticationData == null) {
+            throw new IllegalStateException(String.format("%s authentication handler returned null", serviceHandler.getServiceName()));
+        }
+        LOGGER.info(String.format("%s authenticated identity: %s", serviceHandler.getServiceName(), authenticationData.getIdentityLabel()));
+
+        final Authorization authorizationDecision = authorization.apply(authenticationData);
+        switch (authorizationDecision) {
+            case ACCEPT:
+                LOGGER.info("Connection accepted for " + authenticationData.getIdentityLabel());
+                return authenticationData;
+            case REJECT:
+                LOGGER.info("Connection rejected for: " + authenticationData.getIdentityLabel());
+                return null;
+            default:
+                //got a big problem if this is the outcome. Someone forgot to update this switch-case
+                throw new RuntimeException("Unknown authorization decision for " + authenticationData.getIdentityLabel());
+        }
+    }
+
     @Override
     protected ServerConnectionContinuationHandler onIncomingStream(ServerConnectionContinuation continuation, String operationName) {
+        lastReceiveNanos = System.nanoTime();
+        lastActivityNanos = lastReceiveNanos;
+        if (isDraining()) {
+            connectionRegistry.getMetrics().streamRejected();
+            return new ServiceUnavailableContinuationHandler(continuation, operationName);
+        }
+        if (connectionRegistry != null) {
+            connectionRegistry.getMetrics().streamOpened();
+        }
         final OperationContinuationHandlerContext operationContext = new OperationContinuationHandlerContext(
-                connection, continuation, authenticationData);
+                connection, continuation, authenticationData, this);
         final Function<OperationContinuationHandlerContext, ? extends ServerConnectionContinuationHandler> registeredOperationHandlerFn =
                 serviceHandler.getOperationHandler(operationName);
         if (registeredOperationHandlerFn != null) {
-            return registeredOperationHandlerFn.apply(operationContext);
+            final ServerConnectionContinuationHandler operationHandler = registeredOperationHandlerFn.apply(operationContext);
+            if (operationHandler instanceof OperationContinuationHandler) {
+                continuations.add((OperationContinuationHandler<?, ?, ?, ?>) operationHandler);
+            }
+            return operationHandler;
         } else {
             return new ServerConnectionContinuationHandler(continuation) {
                 @Override
@@ -165,6 +454,7 @@ public class ServiceOperationMappingContinuationHandler extends ServerConnection
 
                 @Override
                 protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
+                    releaseSharedMemory(headers);
                     int responseMessageFlag = MessageFlags.TerminateStream.getByteValue();
                     MessageType responseMessageType = MessageType.ApplicationError;
 
@@ -181,4 +471,35 @@ public class ServiceOperationMappingContinuationHandler extends ServerConnection
             };
         }
     }
+
+    /**
+     * Answers any stream opened while the server is draining with a retriable ServiceUnavailable error
+     */
+    private class ServiceUnavailableContinuationHandler extends ServerConnectionContinuationHandler {
+        private final String operationName;
+
+        ServiceUnavailableContinuationHandler(final ServerConnectionContinuation continuation, final String operationName) {
+            super(continuation);
+            this.operationName = operationName;
+        }
+
+        @Override
+        protected void onContinuationClosed() {
+            close();
+        }
+
+        @Override
+        protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
+            releaseSharedMemory(headers);
+            final ServiceUnavailableException error = new ServiceUnavailableException(serviceHandler.getServiceName(),
+                    operationName + " rejected. Server is draining");
+            final List<Header> responseHeaders = new ArrayList<>(2);
+            responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+            responseHeaders.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                    error.getApplicationModelType()));
+            continuation.sendMessage(responseHeaders, serviceHandler.getServiceModel().toJson(error),
+                    MessageType.ApplicationError, MessageFlags.TerminateStream.getByteValue());
+        }
+    }
 }
@@ -0,0 +1,221 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Runs several listeners, each an RpcServer on its own event loop group, in front of a single
+ * EventStreamRPCServiceHandler. Operation handler registrations and authN/authZ are shared by all
+ * shards, and all shards record into one RpcServerMetrics.
+ *
+ * Spreading clients across shards (e.g. one socket path per class of component, see
+ * {@link #getShardFor(String)}) keeps a single listener's accept and read loop from becoming the
+ * bottleneck when many clients connect at once.
+ */
+public class ShardedRpcServer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedRpcServer.class);
+
+    private final List<RpcServerShardConfig> shardConfigs;
+    private final EventStreamRPCServiceHandler eventStreamRPCServiceHandler;
+    private final RpcServerMetrics metrics = new RpcServerMetrics();
+    private final AtomicBoolean serverRunning = new AtomicBoolean(false);
+    private ServerLivenessManager livenessManager;
+    private ServerConnectionOptions connectionOptions = ServerConnectionOptions.DEFAULT;
+
+    private final List<RpcServer> shards = new ArrayList<>();
+    private final List<EventLoopGroup> ownedEventLoopGroups = new ArrayList<>();
+
+    /**
+     * Creates a new sharded RPC server
+     * @param shardConfigs The listeners to run. Must not be empty
+     * @param serviceHandler The service handler shared by all shards
+     */
+    public ShardedRpcServer(final List<RpcServerShardConfig> shardConfigs,
+                            final EventStreamRPCServiceHandler serviceHandler) {
+        if (shardConfigs == null || shardConfigs.isEmpty()) {
+            throw new IllegalArgumentException("ShardedRpcServer requires at least one shard");
+        }
+        this.shardConfigs = Collections.unmodifiableList(new ArrayList<>(shardConfigs));
+        this.eventStreamRPCServiceHandler = serviceHandler;
+    }
+
+    /**
+     * Starts every shard. If any shard fails to start, the shards already started are stopped
+     * and the failure is rethrown
+     */
+    public synchronized void runServer() {
+        if (!serverRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Failed to start ShardedRpcServer. It's already started or has not completed a prior shutdown!");
+        }
+        try {
+            for (RpcServerShardConfig config : shardConfigs) {
+                EventLoopGroup eventLoopGroup = config.getEventLoopGroup();
+                if (eventLoopGroup == null) {
+                    eventLoopGroup = new EventLoopGroup(config.getEventLoopThreads());
+                    ownedEventLoopGroups.add(eventLoopGroup);
+                }
+                final RpcServer shard = new RpcServer(eventLoopGroup, config.getSocketOptions(),
+                        config.getTlsContextOptions(), config.getHostname(), config.getPort(),
+                        eventStreamRPCServiceHandler);
+                shard.setMetrics(metrics);
+                shard.setLivenessManager(livenessManager);
+                shard.setConnectionOptions(connectionOptions);
+                shards.add(shard);
+                shard.runServer();
+                LOGGER.info("Shard listening on {}:{}", config.getHostname(), shard.getBoundPort());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to start shard: " + e.getMessage(), e);
+            stopServer();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the shard a client identified by key should connect to. The mapping is stable for
+     * a given key and shard list, so callers can hand out endpoints per component or component class
+     * @param key Identifies the client or class of client
+     * @return The shard the key maps to
+     */
+    public RpcServerShardConfig getShardFor(final String key) {
+        return shardConfigs.get(Math.floorMod(key == null ? 0 : key.hashCode(), shardConfigs.size()));
+    }
+
+    /**
+     * Returns the shard configurations
+     * @return the shard configurations
+     */
+    public List<RpcServerShardConfig> getShardConfigs() {
+        return shardConfigs;
+    }
+
+    /**
+     * Returns the running shards, in the same order as the shard configurations
+     * @return the running shards
+     */
+    public synchronized List<RpcServer> getShards() {
+        return Collections.unmodifiableList(new ArrayList<>(shards));
+    }
+
+    /**
+     * Returns the metrics shared by all shards
+     * @return the metrics shared by all shards
+     */
+    public RpcServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Installs one liveness manager, and so one timer wheel, for the connections of every shard.
+     * See {@link RpcServer#setLivenessManager(ServerLivenessManager)}. Must be set before the server is started
+     * @param livenessManager The liveness manager, or null to disable monitoring
+     */
+    public synchronized void setLivenessManager(final ServerLivenessManager livenessManager) {
+        this.livenessManager = livenessManager;
+    }
+
+    /**
+     * Returns the options applied to the client connections of every shard
+     * @return the connection options
+     */
+    public synchronized ServerConnectionOptions getConnectionOptions() {
+        return connectionOptions;
+    }
+
+    /**
+     * Applies one set of connection options to every shard. A fair scheduler, leak detector or tracer in them is
+     * shared by the shards, so weights, fairness and reports hold across shards. See
+     * {@link RpcServer#setConnectionOptions(ServerConnectionOptions)}. Must be set before the server is started
+     * @param connectionOptions The connection options
+     */
+    public synchronized void setConnectionOptions(final ServerConnectionOptions connectionOptions) {
+        if (connectionOptions == null) {
+            throw new IllegalArgumentException("Connection options must not be null");
+        }
+        this.connectionOptions = connectionOptions;
+    }
+
+    /**
+     * Returns the number of client connections currently open across all shards
+     * @return the number of client connections currently open across all shards
+     */
+    public synchronized int getConnectionCount() {
+        return sum(RpcServer::getConnectionCount);
+    }
+
+    /**
+     * Returns the number of operation continuations currently open across all shards
+     * @return the number of operation continuations currently open across all shards
+     */
+    public synchronized int getOpenContinuationCount() {
+        return sum(RpcServer::getOpenContinuationCount);
+    }
+
+    private int sum(final Function<RpcServer, Integer> counter) {
+        int total = 0;
+        for (RpcServer shard : shards) {
+            total += counter.apply(shard);
+        }
+        return total;
+    }
+
+    /**
+     * Drains all shards concurrently. See {@link RpcServer#drain(Duration)}
+     * @param timeout Upper bound on how long to wait for in-flight work before forcing the stop
+     * @return A future that is completed when every shard has stopped
+     */
+    public synchronized CompletableFuture<Void> drain(final Duration timeout) {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(shards.size());
+        for (RpcServer shard : shards) {
+            futures.add(shard.drain(timeout));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .handle((res, ex) -> null)
+                .thenCompose(res -> stopServer());
+    }
+
+    /**
+     * Stops all shards and allows the caller to wait on a CompletableFuture
+     *
+     * @return A future that is completed when every shard has stopped
+     */
+    public synchronized CompletableFuture<Void> stopServer() {
+        if (!serverRunning.compareAndSet(true, false)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(shards.size());
+        for (RpcServer shard : shards) {
+            futures.add(shard.stopServer());
+        }
+        shards.clear();
+        final List<EventLoopGroup> eventLoopGroups = new ArrayList<>(ownedEventLoopGroups);
+        ownedEventLoopGroups.clear();
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((res, ex) -> {
+            eventLoopGroups.forEach(EventLoopGroup::close);
+        });
+    }
+
+    /**
+     * Ensures a call to stop server is called when it is closed
+     */
+    @Override
+    public void close() {
+        stopServer();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Configures the shared memory side channel an RpcServer offers clients on the same host. For each client
+ * that asks for it at connect, the server creates a pair of ring files in the directory, each with room for
+ * ringCapacity bytes of payloads in flight, and both sides move payloads of at least threshold bytes through
+ * them rather than the socket.
+ *
+ * The ring files are created with the given permissions, owner read and write by default. Clients running as
+ * another user need them widened, for example to the group. The directory should let those clients traverse
+ * it but not list it, so that only the client a pair of rings is named to can find them.
+ */
+public class SharedMemoryOptions {
+    private final Path directory;
+    private final int ringCapacity;
+    private final int threshold;
+    private Set<PosixFilePermission> filePermissions =
+            Collections.unmodifiableSet(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+
+    /**
+     * Creates new shared memory options
+     * @param directory The directory to create ring files in, such as the one holding the server socket
+     * @param ringCapacity The payload bytes each ring can hold at once
+     * @param threshold The smallest payload the server writes to shared memory
+     */
+    public SharedMemoryOptions(final Path directory, final int ringCapacity, final int threshold) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Shared memory directory must not be null");
+        }
+        if (ringCapacity < 1) {
+            throw new IllegalArgumentException("Shared memory ring capacity must be positive");
+        }
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Shared memory threshold must be positive");
+        }
+        this.directory = directory;
+        this.ringCapacity = ringCapacity;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the directory ring files are created in
+     * @return the directory ring files are created in
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the payload bytes each ring can hold at once
+     * @return the payload bytes each ring can hold at once
+     */
+    public int getRingCapacity() {
+        return ringCapacity;
+    }
+
+    /**
+     * Returns the smallest payload the server writes to shared memory
+     * @return the smallest payload the server writes to shared memory
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the permissions ring files are created with
+     * @return the permissions ring files are created with
+     */
+    public Set<PosixFilePermission> getFilePermissions() {
+        return filePermissions;
+    }
+
+    /**
+     * Sets the permissions ring files are created with. Ignored on file systems without POSIX permissions
+     * @param filePermissions The permissions to create ring files with
+     */
+    public void setFilePermissions(final Set<PosixFilePermission> filePermissions) {
+        if (filePermissions == null) {
+            throw new IllegalArgumentException("File permissions must not be null");
+        }
+        final Set<PosixFilePermission> copy = EnumSet.noneOf(PosixFilePermission.class);
+        copy.addAll(filePermissions);
+        this.filePermissions = Collections.unmodifiableSet(copy);
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Counts the payload bytes a stream has sent but not yet flushed to the socket. The stream turns unwritable once
+ * they go above the high watermark, and writable again once they drop to the low watermark, so a publisher that
+ * heeds it holds no more than about the high watermark in native buffers for a slow client.
+ */
+final class WriteWatermarks {
+    private final Consumer<Boolean> listener;
+    private long lowWatermark;
+    private long highWatermark;
+    private long outstandingBytes = 0;
+    private boolean writable = true;
+    private boolean closed = false;
+    private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private final ArrayDeque<Boolean> changes = new ArrayDeque<>();
+    private boolean notifying = false;
+
+    /**
+     * @param lowWatermark Outstanding bytes at or below which an unwritable stream turns writable
+     * @param highWatermark Outstanding bytes above which a writable stream turns unwritable
+     * @param listener Told of each change of writability, in order, after this object's lock is released. A
+     *                 change made while the listener runs is passed to it by the same thread once it returns
+     */
+    WriteWatermarks(final long lowWatermark, final long highWatermark, final Consumer<Boolean> listener) {
+        this.listener = listener;
+        setWatermarks(lowWatermark, highWatermark);
+    }
+
+    void setWatermarks(final long lowWatermark, final long highWatermark) {
+        if (lowWatermark < 0) {
+            throw new IllegalArgumentException("Low watermark must not be negative");
+        }
+        if (highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("High watermark must not be below the low watermark");
+        }
+        final List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            this.lowWatermark = lowWatermark;
+            this.highWatermark = highWatermark;
+            ready = update();
+        }
+        notifyChanges();
+        complete(ready);
+    }
+
+    synchronized long getLowWatermark() {
+        return lowWatermark;
+    }
+
+    synchronized long getHighWatermark() {
+        return highWatermark;
+    }
+
+    synchronized long getOutstandingBytes() {
+        return outstandingBytes;
+    }
+
+    synchronized boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Counts the bytes of a message until its send completes. Costs two lock acquisitions and a completion stage
+     * on the send, so a message with no bytes, which would not move the count, is not tracked
+     * @param bytes The payload length of the message as written
+     * @param sent Completes once the message is flushed or failed
+     */
+    void track(final long bytes, final CompletableFuture<Void> sent) {
+        if (bytes == 0) {
+            return;
+        }
+        synchronized (this) {
+            outstandingBytes += bytes;
+            update();
+        }
+        notifyChanges();
+        sent.whenComplete((res, ex) -> {
+            final List<CompletableFuture<Void>> ready;
+            synchronized (this) {
+                outstandingBytes -= bytes;
+                ready = update();
+            }
+            notifyChanges();
+            complete(ready);
+        });
+    }
+
+    /**
+     * Returns a future completing once the stream is writable, at once if it is now
+     * @param closedException Creates what completes the future if the stream closes first
+     */
+    synchronized CompletableFuture<Void> awaitWritable(final Supplier<Exception> closedException) {
+        if (closed) {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(closedException.get());
+            return failed;
+        }
+        if (writable) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Fails the futures still waiting for the stream to be writable
+     * @param closedException Creates what to fail them with, only if there are any
+     */
+    void close(final Supplier<Exception> closedException) {
+        final List<CompletableFuture<Void>> failed;
+        synchronized (this) {
+            closed = true;
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        if (!failed.isEmpty()) {
+            final Exception e = closedException.get();
+            failed.forEach(waiter -> waiter.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Changes writability if the outstanding bytes crossed a watermark, queueing the change for the listener
+     * @return the waiters to complete, once the lock is released so they do not resume under it
+     */
+    private List<CompletableFuture<Void>> update() {
+        if (writable && outstandingBytes > highWatermark) {
+            writable = false;
+            changes.add(false);
+        } else if (!writable && outstandingBytes <= lowWatermark) {
+            writable = true;
+            changes.add(true);
+            final List<CompletableFuture<Void>> ready = new ArrayList<>(waiters);
+            waiters.clear();
+            return ready;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Tells the listener of the queued changes of writability, unless another thread is telling it. Called with
+     * the lock released, so the listener runs outside it, one change at a time and in order
+     */
+    private void notifyChanges() {
+        Boolean change;
+        synchronized (this) {
+            if (notifying || changes.isEmpty()) {
+                return;
+            }
+            notifying = true;
+            change = changes.poll();
+        }
+        while (change != null) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    notifying = false;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                change = changes.poll();
+                if (change == null) {
+                    notifying = false;
+                }
+            }
+        }
+    }
+
+    private static void complete(final List<CompletableFuture<Void>> ready) {
+        ready.forEach(waiter -> waiter.complete(null));
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+/* This file is part of greengrass-ipc project. */
+
+package software.amazon.awssdk.eventstreamrpc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awstest.EchoStreamMessagesResponseHandler;
+import software.amazon.awssdk.awstest.EchoTestRPCClient;
+import software.amazon.awssdk.awstest.EchoTestRPCService;
+import software.amazon.awssdk.awstest.EchoTestRPCServiceModel;
+import software.amazon.awssdk.awstest.model.EchoMessageRequest;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.MessageData;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageFlags;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.crt.eventstream.ServerConnectionContinuationHandler;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestServiceRunner;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Guards the bytes allocated per message on the client and server hot paths of the EchoTestRPC model, as
+ * counted by com.sun.management.ThreadMXBean#getThreadAllocatedBytes for the calling thread.
+ *
+ * The in-process transport delivers on the sending thread, so its round trips count the client's and the
+ * server's work together: by reference, and with the JSON round trip a socket connection does on each side.
+ * The server wire tests feed serialized messages into onContinuationMessage() as the native continuation
+ * would, with a stream that serializes what the handler sends back the way the socket stream does.
+ *
+ * Each budget is the mean over a measured run after warm-up, so that the JIT has settled. Budgets can be
+ * overridden with -Deventstreamrpc.allocationBudget.&lt;test&gt;=&lt;bytes&gt;, for instance to tighten one
+ * after an optimization lands. When lowering a path's allocation, lower its budget here with it.
+ */
+public class AllocationBudgetTests {
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 10000;
+    private static final String BUDGET_PROPERTY_PREFIX = "eventstreamrpc.allocationBudget.";
+
+    //about half again what each path allocated when the budgets were set (JDK 17): 1.4K, 19K, 330, 18K, 9.7K, 9.5K
+    private static final long IN_PROCESS_ECHO_MESSAGE_BUDGET = 2560;
+    private static final long IN_PROCESS_COPY_ECHO_MESSAGE_BUDGET = 28 * 1024;
+    private static final long IN_PROCESS_STREAM_EVENT_BUDGET = 512;
+    private static final long IN_PROCESS_COPY_STREAM_EVENT_BUDGET = 26 * 1024;
+    private static final long SERVER_WIRE_ECHO_MESSAGE_BUDGET = 14 * 1024;
+    private static final long SERVER_WIRE_STREAM_EVENT_BUDGET = 14 * 1024;
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    @BeforeAll
+    public static void checkAllocationCounting() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean,
+                "JVM does not provide com.sun.management.ThreadMXBean");
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported(),
+                "JVM does not support thread allocated memory counting");
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private static MessageData newMessageData() {
+        final MessageData data = new MessageData();
+        data.setStringMessage("Hello allocation budget");
+        data.setBlobMessage(new byte[256]);
+        return data;
+    }
+
+    private static long budget(final String test, final long defaultBudget) {
+        return Long.getLong(BUDGET_PROPERTY_PREFIX + test, defaultBudget);
+    }
+
+    /**
+     * Runs an iteration until the JIT has settled, then returns the mean bytes the calling thread allocates
+     * per iteration
+     */
+    private static long bytesPerIteration(final Runnable iteration) {
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            iteration.run();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+            iteration.run();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / MEASURED_ITERATIONS;
+    }
+
+    private static void assertWithinBudget(final String test, final long defaultBudget, final long measured) {
+        final long budget = budget(test, defaultBudget);
+        Assertions.assertTrue(measured <= budget, String.format(
+                "%s allocates %d bytes per message, over its budget of %d", test, measured, budget));
+    }
+
+    private static InProcessEventStreamRPCConnection connectInProcess(final InProcessRpcServer server,
+                                                                      final boolean defensiveCopy) throws Exception {
+        final InProcessEventStreamRPCConnection connection = new InProcessEventStreamRPCConnection(server,
+                () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
+        connection.setDefensiveCopy(defensiveCopy);
+        connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+            @Override
+            public void onConnect() { }
+
+            @Override
+            public void onDisconnect(int errorCode) { }
+
+            @Override
+            public boolean onError(Throwable t) {
+                return true;
+            }
+        }).get(5, TimeUnit.SECONDS);
+        return connection;
+    }
+
+    private static long inProcessEchoMessage(final boolean defensiveCopy) throws Exception {
+        try (final InProcessRpcServer server = new InProcessRpcServer(EchoTestServiceRunner.newEchoTestService());
+             final InProcessEventStreamRPCConnection connection = connectInProcess(server, defensiveCopy)) {
+            final EchoTestRPCClient client = new EchoTestRPCClient(connection);
+            final EchoMessageRequest request = new EchoMessageRequest();
+            request.setMessage(newMessageData());
+            return bytesPerIteration(() -> {
+                final CompletableFuture<?> response = client.echoMessage(request, Optional.empty()).getResponse();
+                //anything completed on another thread would go uncounted
+                Assertions.assertTrue(response.isDone(), "In-process response did not complete on the calling thread");
+                response.join();
+            });
+        }
+    }
+
+    private static long inProcessStreamEvent(final boolean defensiveCopy) throws Exception {
+        try (final InProcessRpcServer server = new InProcessRpcServer(EchoTestServiceRunner.newEchoTestService());
+             final InProcessEventStreamRPCConnection connection = connectInProcess(server, defensiveCopy)) {
+            final EchoTestRPCClient client = new EchoTestRPCClient(connection);
+            final AtomicInteger echoes = new AtomicInteger();
+            final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            echoes.incrementAndGet();
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            return false;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            stream.getResponse().get(5, TimeUnit.SECONDS);
+            final EchoStreamingMessage event = new EchoStreamingMessage();
+            event.setStreamMessage(newMessageData());
+            final long bytes = bytesPerIteration(() -> {
+                final int expected = echoes.get() + 1;
+                stream.sendStreamEvent(event).join();
+                Assertions.assertEquals(expected, echoes.get(), "In-process echo did not arrive on the calling thread");
+            });
+            stream.closeStream().get(5, TimeUnit.SECONDS);
+            return bytes;
+        }
+    }
+
+    @Test
+    public void testInProcessEchoMessageAllocation() throws Exception {
+        assertWithinBudget("inProcessEchoMessage", IN_PROCESS_ECHO_MESSAGE_BUDGET, inProcessEchoMessage(false));
+    }
+
+    @Test
+    public void testInProcessCopyEchoMessageAllocation() throws Exception {
+        assertWithinBudget("inProcessCopyEchoMessage", IN_PROCESS_COPY_ECHO_MESSAGE_BUDGET, inProcessEchoMessage(true));
+    }
+
+    @Test
+    public void testInProcessStreamEventAllocation() throws Exception {
+        assertWithinBudget("inProcessStreamEvent", IN_PROCESS_STREAM_EVENT_BUDGET, inProcessStreamEvent(false));
+    }
+
+    @Test
+    public void testInProcessCopyStreamEventAllocation() throws Exception {
+        assertWithinBudget("inProcessCopyStreamEvent", IN_PROCESS_COPY_STREAM_EVENT_BUDGET, inProcessStreamEvent(true));
+    }
+
+    /**
+     * Stands in for the native continuation of a socket connection: serializes and frames what the handler
+     * sends the way the socket stream does, then drops it
+     */
+    private static final class WireStream implements ServerOperationStream {
+        private final EventStreamRPCServiceModel serviceModel = EchoTestRPCServiceModel.getInstance();
+        private List<Header> lastHeaders;   //kept so the encoding cannot be optimized away
+        private byte[] lastPayload;
+        private boolean closed = false;
+        private int sent = 0;
+
+        @Override
+        public CompletableFuture<Void> sendMessage(final EventStreamJsonMessage message, final MessageType messageType,
+                                                   final int messageFlags) {
+            if (message != null) {
+                final List<Header> headers = new ArrayList<>(5);
+                final byte[] payload = serviceModel.toJson(message);
+                headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                        EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+                headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                        message.getApplicationModelType()));
+                lastHeaders = headers;
+                lastPayload = payload;
+            }
+            ++sent;
+            if ((messageFlags & MessageFlags.TerminateStream.getByteValue()) != 0) {
+                closed = true;
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendInternalError() {
+            throw new IllegalStateException("Operation failed on the server wire path");
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public long getId() {
+            return 0;
+        }
+    }
+
+    private static List<Header> wireHeaders(final EventStreamJsonMessage message) {
+        final List<Header> headers = new ArrayList<>(4);
+        headers.add(Header.createHeader(":message-type", MessageType.ApplicationMessage.getEnumValue()));
+        headers.add(Header.createHeader(":message-flags", 0));
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+        headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                message.getApplicationModelType()));
+        return headers;
+    }
+
+    /**
+     * Looks up and creates the operation's handler, as the connection does for each new continuation
+     */
+    private static OperationContinuationHandler<?, ?, ?, ?> newOperationHandler(final EchoTestRPCService service,
+            final String operationName, final WireStream stream) {
+        final Function<OperationContinuationHandlerContext, ? extends ServerConnectionContinuationHandler> handlerFn =
+                service.getOperationHandler(operationName);
+        return (OperationContinuationHandler<?, ?, ?, ?>) handlerFn.apply(
+                new OperationContinuationHandlerContext(stream, () -> "accepted.foo"));
+    }
+
+    @Test
+    public void testServerWireEchoMessageAllocation() {
+        final EchoMessageRequest request = new EchoMessageRequest();
+        request.setMessage(newMessageData());
+        final List<Header> headers = wireHeaders(request);
+        final byte[] payload = EchoTestRPCServiceModel.getInstance().toJson(request);
+        final EchoTestRPCService service = EchoTestServiceRunner.newEchoTestService();
+        final long measured = bytesPerIteration(() -> {
+            //a new continuation and handler per request
+            final WireStream stream = new WireStream();
+            final OperationContinuationHandler<?, ?, ?, ?> handler =
+                    newOperationHandler(service, "awstest#EchoMessage", stream);
+            handler.onContinuationMessage(headers, payload, MessageType.ApplicationMessage, 0);
+            Assertions.assertTrue(stream.sent == 1 && stream.closed, "Server did not send the terminal response");
+        });
+        assertWithinBudget("serverWireEchoMessage", SERVER_WIRE_ECHO_MESSAGE_BUDGET, measured);
+    }
+
+    @Test
+    public void testServerWireStreamEventAllocation() {
+        final WireStream stream = new WireStream();
+        final OperationContinuationHandler<?, ?, ?, ?> handler =
+                newOperationHandler(EchoTestServiceRunner.newEchoTestService(), "awstest#EchoStreamMessages", stream);
+        final EchoStreamingRequest request = new EchoStreamingRequest();
+        handler.onContinuationMessage(wireHeaders(request), EchoTestRPCServiceModel.getInstance().toJson(request),
+                MessageType.ApplicationMessage, 0);
+        Assertions.assertEquals(1, stream.sent);
+
+        final EchoStreamingMessage event = new EchoStreamingMessage();
+        event.setStreamMessage(newMessageData());
+        final List<Header> headers = wireHeaders(event);
+        final byte[] payload = EchoTestRPCServiceModel.getInstance().toJson(event);
+        final long measured = bytesPerIteration(() -> {
+            final int expected = stream.sent + 1;
+            handler.onContinuationMessage(headers, payload, MessageType.ApplicationMessage, 0);
+            Assertions.assertEquals(expected, stream.sent, "Server did not echo the stream event");
+        });
+        assertWithinBudget("serverWireStreamEvent", SERVER_WIRE_STREAM_EVENT_BUDGET, measured);
+    }
+}
@@ -20,6 +20,7 @@ import software.amazon.awssdk.awstest.model.EchoMessageRequest;
 import software.amazon.awssdk.awstest.model.EchoMessageResponse;
 import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
 import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.EchoStreamingResponse;
 import software.amazon.awssdk.awstest.model.FruitEnum;
 import software.amazon.awssdk.awstest.model.MessageData;
 import software.amazon.awssdk.awstest.model.Pair;
@@ -27,25 +28,45 @@ import software.amazon.awssdk.awstest.model.ServiceError;
 import software.amazon.awssdk.crt.CRT;
 import software.amazon.awssdk.crt.CrtResource;
 import software.amazon.awssdk.crt.Log;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageType;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoStreamMessagesHandler;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestLoadGenerator;
 import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestServiceRunner;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamOperationError;
+import software.amazon.awssdk.eventstreamrpc.model.QuotaExceededException;
 
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class EchoTestServiceTests {
@@ -101,6 +122,36 @@ public class EchoTestServiceTests {
         CrtResource.waitForNoResources();
     }
 
+    @Test
+    public void testClientMetricsListener() throws Exception {
+        final EventStreamRPCClientMetrics metrics = new EventStreamRPCClientMetrics();
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer((connection, client) -> {
+            connection.setClientListener(metrics);
+            final MessageData data = new MessageData();
+            data.setStringMessage("Hello EventStream RPC metrics");
+            for (int i = 0; i < 3; ++i) {
+                DO_ECHO_FN.accept(client, data);
+            }
+            connection.setClientListener(null);
+        });
+
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+
+        Assertions.assertEquals(3, metrics.getResponseLatency().getCount());
+        Assertions.assertEquals(3, metrics.getRequestFlushLatency().getCount());
+        Assertions.assertEquals(3L, metrics.getMessagesSent().get(EchoMessageRequest.APPLICATION_MODEL_TYPE));
+        Assertions.assertEquals(3L, metrics.getMessagesReceived().get(EchoMessageResponse.APPLICATION_MODEL_TYPE));
+        Assertions.assertTrue(metrics.getOperationErrors().isEmpty());
+        CrtResource.waitForNoResources();
+    }
+
     @Test //this test takes too long to complete so turn it off by default
     public void testLongRunningServerOperations() throws Exception {
         final int numIterations = Integer.parseInt(System.getProperty("numIterations", "10"));
@@ -534,4 +585,1436 @@ public class EchoTestServiceTests {
         }
         CrtResource.waitForNoResources();
     }
+
+    @Test
+    public void testInProcessTransport() throws Exception {
+        for (boolean defensiveCopy : new boolean[] { false, true }) {
+            final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runInProcessEchoTestServer(defensiveCopy, (connection, client) -> {
+                final MessageData data = new MessageData();
+                data.setStringMessage("Hello in-process world");
+                data.setBlobMessage(new byte[] {23, 42, -120, -3, 53});
+                final EchoMessageRequest request = new EchoMessageRequest();
+                request.setMessage(data);
+                final CompletableFuture<Void> streamClosedFuture = new CompletableFuture<>();
+                final CompletableFuture<EchoStreamingMessage> streamEventFuture = new CompletableFuture<>();
+                try {
+                    final EchoMessageResponse response = client.echoMessage(request, Optional.empty())
+                            .getResponse().get(10, TimeUnit.SECONDS);
+                    Assertions.assertEquals(data, response.getMessage());
+                    if (defensiveCopy) {
+                        Assertions.assertNotSame(data, response.getMessage());
+                    } else {
+                        Assertions.assertSame(data, response.getMessage());
+                    }
+
+                    futureCausesOperationError(client.causeServiceError(new CauseServiceErrorRequest(), Optional.empty()).getResponse(),
+                            ServiceError.class, "ServiceError");
+
+                    final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                            Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                                @Override
+                                public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                    streamEventFuture.complete(streamEvent);
+                                }
+
+                                @Override
+                                public boolean onStreamError(Throwable error) {
+                                    streamEventFuture.completeExceptionally(error);
+                                    return true;
+                                }
+
+                                @Override
+                                public void onStreamClosed() {
+                                    streamClosedFuture.complete(null);
+                                }
+                            }));
+                    final EchoStreamingMessage msg = new EchoStreamingMessage();
+                    msg.setStreamMessage(data);
+                    streamHandler.sendStreamEvent(msg).get(10, TimeUnit.SECONDS);
+                    Assertions.assertEquals(msg, streamEventFuture.get(10, TimeUnit.SECONDS));
+
+                    final EchoStreamingMessage closeMsg = new EchoStreamingMessage();
+                    final MessageData dataClose = new MessageData();
+                    dataClose.setStringMessage("close");    //implementation of the close operation in test-codegen-model
+                    closeMsg.setStreamMessage(dataClose);
+                    streamHandler.sendStreamEvent(closeMsg);
+                    streamClosedFuture.get(10, TimeUnit.SECONDS);
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    Assertions.fail(e);
+                }
+            });
+            try {
+                clientErrorAfter.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                //eat this because it means there was no exception which is good
+            } catch (ExecutionException e) {
+                //throw this because it means the client did have a problem
+                Assertions.fail(e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedMemoryLargePayloads() throws Exception {
+        final Path directory = Files.createTempDirectory("shm-echo-test");
+        final SharedMemoryOptions options = new SharedMemoryOptions(directory, 1024 * 1024, 4096);
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                        .withSharedMemoryOptions(options).build()),
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withSharedMemoryThreshold(options.getThreshold()).build()),
+                (connection, client) -> {
+            Assertions.assertTrue(connection.isSharedMemoryActive());
+            final Random random = new Random(42);
+            //large enough to wrap the rings several times, so reclamation has to keep up
+            for (int i = 0; i < 12; ++i) {
+                final byte[] blob = new byte[200 * 1024 + i];
+                random.nextBytes(blob);
+                final MessageData data = new MessageData();
+                data.setBlobMessage(blob);
+                DO_ECHO_FN.accept(client, data);
+            }
+            final MessageData small = new MessageData();
+            small.setStringMessage("inline");
+            DO_ECHO_FN.accept(client, small);
+
+            final byte[] blob = new byte[64 * 1024];
+            random.nextBytes(blob);
+            final MessageData data = new MessageData();
+            data.setBlobMessage(blob);
+            final CompletableFuture<EchoStreamingMessage> streamEventFuture = new CompletableFuture<>();
+            final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            streamEventFuture.complete(streamEvent);
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            streamEventFuture.completeExceptionally(error);
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            final EchoStreamingMessage msg = new EchoStreamingMessage();
+            msg.setStreamMessage(data);
+            try {
+                streamHandler.sendStreamEvent(msg).get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(msg, streamEventFuture.get(10, TimeUnit.SECONDS));
+                streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+        //the server deletes the rings once the connection closes
+        try (java.util.stream.Stream<Path> remaining = Files.list(directory)) {
+            Assertions.assertEquals(0, remaining.count());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testCompressedPayloads() throws Exception {
+        final CompressionOptions compression = new CompressionOptions(256);
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                        .withCompressionOptions(compression).build()),
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withCompressionOptions(compression).build()),
+                (connection, client) -> {
+            Assertions.assertTrue(connection.isCompressionActive());
+            final StringBuilder repetitive = new StringBuilder();
+            while (repetitive.length() < 100 * 1024) {
+                repetitive.append("{\"fruit\":\"pineapple\",\"count\":").append(repetitive.length() % 97).append('}');
+            }
+            final MessageData text = new MessageData();
+            text.setStringMessage(repetitive.toString());
+            DO_ECHO_FN.accept(client, text);
+
+            //does not compress, so goes as it is
+            final byte[] blob = new byte[8 * 1024];
+            new Random(42).nextBytes(blob);
+            final MessageData data = new MessageData();
+            data.setBlobMessage(blob);
+            DO_ECHO_FN.accept(client, data);
+
+            final MessageData small = new MessageData();
+            small.setStringMessage("below the threshold");
+            DO_ECHO_FN.accept(client, small);
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(java.util.zip.Deflater.BEST_SPEED, 4096);
+        final byte[] zeros = new byte[64 * 1024];
+        final byte[] encoded = codec.encode(zeros);
+        Assertions.assertTrue(encoded.length < 1024);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> codec.decode(encoded));
+        Assertions.assertArrayEquals(new byte[4096], codec.decode(codec.encode(new byte[4096])));
+        Assertions.assertNull(codec.encode(new byte[] { 1 }));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[] { 1, 2, 3 }));
+    }
+
+    @Test
+    public void testFragmentedPayloads() throws Exception {
+        final FragmentationOptions fragmentation =
+                new FragmentationOptions(FragmentationOptions.MIN_FRAGMENT_LENGTH, 1024 * 1024);
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                        .withFragmentationOptions(fragmentation).build()),
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withFragmentationOptions(fragmentation).build()),
+                (connection, client) -> {
+            Assertions.assertTrue(connection.isFragmentationActive());
+            final Random random = new Random(42);
+            final byte[] blob = new byte[100 * 1024];
+            random.nextBytes(blob);
+            final MessageData data = new MessageData();
+            data.setBlobMessage(blob);
+            DO_ECHO_FN.accept(client, data);
+
+            final MessageData small = new MessageData();
+            small.setStringMessage("one message");
+            DO_ECHO_FN.accept(client, small);
+
+            //an echoed stream event comes back in fragments to a handler that takes them as they arrive
+            final ByteArrayOutputStream received = new ByteArrayOutputStream();
+            final CompletableFuture<Integer> totalLengthFuture = new CompletableFuture<>();
+            final CompletableFuture<Void> lastFragmentFuture = new CompletableFuture<>();
+            final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new FragmentConsumingStreamHandler() {
+                        @Override
+                        public boolean onFragmentedPayload(List<Header> headers, int totalLength) {
+                            totalLengthFuture.complete(totalLength);
+                            return true;
+                        }
+
+                        @Override
+                        public void onPayloadFragment(byte[] fragment, boolean last) {
+                            received.write(fragment, 0, fragment.length);
+                            if (last) {
+                                lastFragmentFuture.complete(null);
+                            }
+                        }
+
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            lastFragmentFuture.completeExceptionally(new AssertionError("Event not taken in fragments"));
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            lastFragmentFuture.completeExceptionally(error);
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            final EchoStreamingMessage msg = new EchoStreamingMessage();
+            msg.setStreamMessage(data);
+            try {
+                streamHandler.sendStreamEvent(msg).get(10, TimeUnit.SECONDS);
+                lastFragmentFuture.get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(received.size(), totalLengthFuture.get().intValue());
+                Assertions.assertEquals(msg, EchoTestRPCServiceModel.getInstance().fromJson(EchoStreamingMessage.class,
+                        received.toByteArray()));
+                streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+
+            //longer than the server reassembles
+            final MessageData tooLong = new MessageData();
+            tooLong.setBlobMessage(new byte[1024 * 1024]);
+            final EchoMessageRequest request = new EchoMessageRequest();
+            request.setMessage(tooLong);
+            final ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> client.echoMessage(request, Optional.empty()).getResponse().get(10, TimeUnit.SECONDS));
+            Assertions.assertNotNull(e.getCause());
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testBatchedStreamEvents() throws Exception {
+        final BatchingOptions batching = new BatchingOptions(Duration.ofMillis(5), 4096, 16);
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                        .withBatchingOptions(batching).build()),
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withBatchingOptions(batching).build()),
+                (connection, client) -> {
+            Assertions.assertTrue(connection.isBatchingActive());
+            final int eventCount = 200;
+            final List<String> received = Collections.synchronizedList(new ArrayList<>());
+            final CompletableFuture<Void> allReceived = new CompletableFuture<>();
+            final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            received.add(streamEvent.getStreamMessage().getStringMessage());
+                            if (received.size() == eventCount) {
+                                allReceived.complete(null);
+                            }
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            allReceived.completeExceptionally(error);
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            try {
+                final List<CompletableFuture<Void>> sent = new ArrayList<>(eventCount);
+                for (int i = 0; i < eventCount; ++i) {
+                    final MessageData data = new MessageData();
+                    data.setStringMessage("event " + i);
+                    final EchoStreamingMessage msg = new EchoStreamingMessage();
+                    msg.setStreamMessage(data);
+                    sent.add(streamHandler.sendStreamEvent(msg));
+                }
+                CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+                allReceived.get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < eventCount; ++i) {
+                    Assertions.assertEquals("event " + i, received.get(i));
+                }
+
+                //a lone event goes unbatched once its window closes
+                final MessageData data = new MessageData();
+                data.setStringMessage("alone");
+                final EchoStreamingMessage msg = new EchoStreamingMessage();
+                msg.setStreamMessage(data);
+                streamHandler.sendStreamEvent(msg).get(10, TimeUnit.SECONDS);
+                streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+
+            final MessageData small = new MessageData();
+            small.setStringMessage("not a stream event");
+            DO_ECHO_FN.accept(client, small);
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+
+        Assertions.assertEquals(0, StreamEventBatcher.unpack(new byte[0]).size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> StreamEventBatcher.unpack(new byte[] { 0, 0 }));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> StreamEventBatcher.unpack(new byte[] { 0, 0, 0, 4, 1 }));
+    }
+
+    @Test
+    public void testStreamWithoutStreamingResponseBatched() throws Exception {
+        //streaming requests only, so the initial response goes out with no flags and is no stream event
+        final OperationModelContext<EchoStreamingRequest, EchoStreamingResponse, EchoStreamingMessage,
+                EchoStreamingMessage> model = EchoTestRPCServiceModel.getEchoStreamMessagesModelContext();
+        final OperationModelContext<EchoStreamingRequest, EchoStreamingResponse, EchoStreamingMessage,
+                EchoStreamingMessage> requestStreamOnly = new OperationModelContext<EchoStreamingRequest,
+                EchoStreamingResponse, EchoStreamingMessage, EchoStreamingMessage>() {
+            @Override
+            public EventStreamRPCServiceModel getServiceModel() {
+                return model.getServiceModel();
+            }
+
+            @Override
+            public String getOperationName() {
+                return model.getOperationName();
+            }
+
+            @Override
+            public Class<EchoStreamingRequest> getRequestTypeClass() {
+                return model.getRequestTypeClass();
+            }
+
+            @Override
+            public String getRequestApplicationModelType() {
+                return model.getRequestApplicationModelType();
+            }
+
+            @Override
+            public Class<EchoStreamingResponse> getResponseTypeClass() {
+                return model.getResponseTypeClass();
+            }
+
+            @Override
+            public String getResponseApplicationModelType() {
+                return model.getResponseApplicationModelType();
+            }
+
+            @Override
+            public Optional<Class<EchoStreamingMessage>> getStreamingRequestTypeClass() {
+                return model.getStreamingRequestTypeClass();
+            }
+
+            @Override
+            public Optional<String> getStreamingRequestApplicationModelType() {
+                return model.getStreamingRequestApplicationModelType();
+            }
+
+            @Override
+            public Optional<Class<EchoStreamingMessage>> getStreamingResponseTypeClass() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> getStreamingResponseApplicationModelType() {
+                return Optional.empty();
+            }
+        };
+        final CompletableFuture<String> serverReceived = new CompletableFuture<>();
+        final BatchingOptions batching = new BatchingOptions(Duration.ofMillis(5), 4096, 16);
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> {
+                    server.setConnectionOptions(ServerConnectionOptions.builder().withBatchingOptions(batching).build());
+                    service.setEchoStreamMessagesHandler(context -> new EchoStreamMessagesHandler(context) {
+                        @Override
+                        public OperationModelContext<EchoStreamingRequest, EchoStreamingResponse,
+                                EchoStreamingMessage, EchoStreamingMessage> getOperationModelContext() {
+                            return requestStreamOnly;
+                        }
+
+                        @Override
+                        public void handleStreamEvent(EchoStreamingMessage streamRequestEvent) {
+                            serverReceived.complete(streamRequestEvent.getStreamMessage().getStringMessage());
+                        }
+                    });
+                },
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withBatchingOptions(batching).build()),
+                (connection, client) -> {
+            Assertions.assertTrue(connection.isBatchingActive());
+            final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) { }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            try {
+                streamHandler.getResponse().get(10, TimeUnit.SECONDS);
+                final MessageData data = new MessageData();
+                data.setStringMessage("upstream");
+                final EchoStreamingMessage msg = new EchoStreamingMessage();
+                msg.setStreamMessage(data);
+                streamHandler.sendStreamEvent(msg).get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals("upstream", serverReceived.get(10, TimeUnit.SECONDS));
+                streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testPriorityLanes() throws Exception {
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer((connection, client) -> {
+            final PriorityLaneOptions options = new PriorityLaneOptions(10, 1, 8);
+            options.setOperationPriority(EchoTestRPCServiceModel.ECHO_STREAM_MESSAGES, OperationPriority.BULK);
+            options.setOperationPriority(EchoTestRPCServiceModel.ECHO_MESSAGE, OperationPriority.CONTROL);
+            connection.setConnectionOptions(connection.getConnectionOptions().toBuilder()
+                    .withPriorityLaneOptions(options).build());
+
+            final List<String> received = Collections.synchronizedList(new ArrayList<>());
+            final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            received.add(streamEvent.getStreamMessage().getStringMessage());
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            try {
+                //the activate takes the only token, so the lane fills and turns the rest away
+                final List<CompletableFuture<Void>> sent = new ArrayList<>();
+                for (int i = 0; i < 12; ++i) {
+                    final MessageData data = new MessageData();
+                    data.setStringMessage("event " + i);
+                    final EchoStreamingMessage msg = new EchoStreamingMessage();
+                    msg.setStreamMessage(data);
+                    sent.add(streamHandler.sendStreamEvent(msg));
+                }
+                Assertions.assertEquals(8, connection.getQueuedBulkMessages());
+                for (int i = 8; i < 12; ++i) {
+                    final ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                            sent.get(i)::get);
+                    Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+
+                //a control operation goes ahead of the queued bulk messages
+                final MessageData data = new MessageData();
+                data.setStringMessage("control");
+                DO_ECHO_FN.accept(client, data);
+                Assertions.assertTrue(connection.getQueuedBulkMessages() > 0);
+
+                CompletableFuture.allOf(sent.subList(0, 8).toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+                streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(0, connection.getQueuedBulkMessages());
+                for (int i = 0; i < received.size(); ++i) {
+                    Assertions.assertEquals("event " + i, received.get(i));
+                }
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testPriorityLanesAdmitWholeMessages() throws Exception {
+        final FragmentationOptions fragmentation =
+                new FragmentationOptions(FragmentationOptions.MIN_FRAGMENT_LENGTH, 1024 * 1024);
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                        .withFragmentationOptions(fragmentation).build()),
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withFragmentationOptions(fragmentation).build()),
+                (connection, client) -> {
+            Assertions.assertTrue(connection.isFragmentationActive());
+            final PriorityLaneOptions options = new PriorityLaneOptions(10, 1, 8);
+            options.setOperationPriority(EchoTestRPCServiceModel.ECHO_STREAM_MESSAGES, OperationPriority.BULK);
+            connection.setConnectionOptions(connection.getConnectionOptions().toBuilder()
+                    .withPriorityLaneOptions(options).build());
+
+            final List<MessageData> received = Collections.synchronizedList(new ArrayList<>());
+            final EchoStreamMessagesResponseHandler streamHandler = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            received.add(streamEvent.getStreamMessage());
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() { }
+                    }));
+            try {
+                //each event goes out in several fragments, but takes one token and one place in the queue
+                final Random random = new Random(42);
+                final List<byte[]> blobs = new ArrayList<>();
+                final List<CompletableFuture<Void>> sent = new ArrayList<>();
+                for (int i = 0; i < 12; ++i) {
+                    final byte[] blob = new byte[3 * FragmentationOptions.MIN_FRAGMENT_LENGTH];
+                    random.nextBytes(blob);
+                    blobs.add(blob);
+                    final MessageData data = new MessageData();
+                    data.setStringMessage("event " + i);
+                    data.setBlobMessage(blob);
+                    final EchoStreamingMessage msg = new EchoStreamingMessage();
+                    msg.setStreamMessage(data);
+                    sent.add(streamHandler.sendStreamEvent(msg));
+                }
+                Assertions.assertEquals(8, connection.getQueuedBulkMessages());
+                for (int i = 8; i < 12; ++i) {
+                    final ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                            sent.get(i)::get);
+                    Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+
+                CompletableFuture.allOf(sent.subList(0, 8).toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+                streamHandler.closeStream().get(10, TimeUnit.SECONDS);
+                //turned away whole, so the events let out arrive intact and without gaps
+                Assertions.assertEquals(8, received.size());
+                for (int i = 0; i < received.size(); ++i) {
+                    Assertions.assertEquals("event " + i, received.get(i).getStringMessage());
+                    Assertions.assertArrayEquals(blobs.get(i), received.get(i).getBlobMessage());
+                }
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testFairScheduler() throws Exception {
+        try (final FairScheduler scheduler = new FairScheduler(2, FairScheduler.DEFAULT_QUANTUM)) {
+            final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                    (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                            .withFairScheduler(scheduler).build()),
+                    null, (connection, client) -> {
+                DO_ECHO_FN.accept(client, new MessageData());
+                final MessageData data = new MessageData();
+                data.setStringMessage("scheduled");
+                DO_ECHO_FN.accept(client, data);
+                final List<FairScheduler.ConnectionQueue> queues = scheduler.getConnectionQueues();
+                Assertions.assertEquals(1, queues.size());
+                Assertions.assertEquals("accepted.foo", queues.get(0).getIdentityLabel());
+                Assertions.assertTrue(queues.get(0).getHandled() >= 2);
+            });
+            try {
+                clientErrorAfter.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                //eat this because it means there was no exception which is good
+            } catch (ExecutionException e) {
+                //throw this because it means the client did have a problem
+                Assertions.fail(e.getCause());
+            }
+        }
+
+        //deficit round robin: a connection of weight 3 handles three messages for each of weight 1
+        try (final FairScheduler scheduler = new FairScheduler(1, 100)) {
+            scheduler.setIdentityWeight("critical", 3);
+            final FairScheduler.ConnectionQueue blocker = scheduler.register(() -> "blocker");
+            final FairScheduler.ConnectionQueue noisy = scheduler.register(() -> "noisy");
+            final FairScheduler.ConnectionQueue critical = scheduler.register(() -> "critical");
+            final CompletableFuture<Void> release = new CompletableFuture<>();
+            blocker.submit(1, release::join, false);
+            final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+            final Semaphore done = new Semaphore(0);
+            for (int i = 0; i < 30; ++i) {
+                noisy.submit(100, () -> { handled.add("noisy"); done.release(); }, false);
+                critical.submit(100, () -> { handled.add("critical"); done.release(); }, false);
+            }
+            Assertions.assertEquals(30, noisy.getDepth());
+            release.complete(null);
+            Assertions.assertTrue(done.tryAcquire(60, 10, TimeUnit.SECONDS));
+            Assertions.assertEquals(15, handled.subList(0, 20).stream().filter("critical"::equals).count());
+            Assertions.assertEquals(30, noisy.getMaxDepth());
+            Assertions.assertEquals(0, critical.getDepth());
+        }
+
+        //a connection's queue holds up to the limit of payload bytes, but always takes a stream close
+        try (final FairScheduler scheduler = new FairScheduler(1, 100, 1000)) {
+            final FairScheduler.ConnectionQueue blocker = scheduler.register(() -> "blocker");
+            final FairScheduler.ConnectionQueue flooding = scheduler.register(() -> "flooding");
+            final CompletableFuture<Void> release = new CompletableFuture<>();
+            blocker.submit(1, release::join, false);
+            final Semaphore done = new Semaphore(0);
+            Assertions.assertTrue(flooding.submit(400, done::release, false));
+            Assertions.assertTrue(flooding.submit(400, done::release, false));
+            Assertions.assertFalse(flooding.submit(400, done::release, false));
+            Assertions.assertTrue(flooding.submit(0, done::release, true));
+            Assertions.assertEquals(801, flooding.getQueuedBytes());
+            Assertions.assertEquals(1, flooding.getRefused());
+            release.complete(null);
+            Assertions.assertTrue(done.tryAcquire(3, 10, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, flooding.getQueuedBytes());
+            Assertions.assertTrue(flooding.submit(400, done::release, false));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new FairScheduler(1, 100, 99));
+    }
+
+    @Test
+    public void testFairSchedulerQueueLimit() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < 1000) {
+            text.append("queued ");
+        }
+        try (final FairScheduler scheduler = new FairScheduler(1, FairScheduler.DEFAULT_QUANTUM,
+                FairScheduler.DEFAULT_QUANTUM)) {
+            final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                    (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                            .withFairScheduler(scheduler).build()),
+                    null, (connection, client) -> {
+                try {
+                    final CompletableFuture<Throwable> streamError = new CompletableFuture<>();
+                    final Semaphore echoed = new Semaphore(0);
+                    final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                            Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                                @Override
+                                public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                    echoed.release();
+                                }
+
+                                @Override
+                                public boolean onStreamError(Throwable error) {
+                                    streamError.complete(error);
+                                    return true;
+                                }
+
+                                @Override
+                                public void onStreamClosed() { }
+                            }));
+                    stream.getResponse().get(10, TimeUnit.SECONDS);
+
+                    //with the only worker held up, events past the queue limit are refused
+                    final CompletableFuture<Void> unblock = new CompletableFuture<>();
+                    scheduler.register(() -> "blocker").submit(1, unblock::join, false);
+                    final MessageData data = new MessageData();
+                    data.setStringMessage(text.toString());
+                    final EchoStreamingMessage event = new EchoStreamingMessage();
+                    event.setStreamMessage(data);
+                    for (int i = 0; i < 40; ++i) {
+                        stream.sendStreamEvent(event).get(10, TimeUnit.SECONDS);
+                    }
+                    final FairScheduler.ConnectionQueue queue = scheduler.getConnectionQueues().get(0);
+                    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                    while (queue.getRefused() == 0 && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    Assertions.assertEquals(1, queue.getRefused());
+                    Assertions.assertTrue(queue.getQueuedBytes() <= FairScheduler.DEFAULT_QUANTUM);
+
+                    //the events queued before are handled, then the stream is closed with an error
+                    unblock.complete(null);
+                    Assertions.assertTrue(streamError.get(10, TimeUnit.SECONDS) instanceof QuotaExceededException);
+                    Assertions.assertTrue(echoed.availablePermits() > 0 && echoed.availablePermits() < 40);
+
+                    //and the connection carries on
+                    DO_ECHO_FN.accept(client, new MessageData());
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    Assertions.fail(e);
+                }
+            });
+            try {
+                clientErrorAfter.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                //eat this because it means there was no exception which is good
+            } catch (ExecutionException e) {
+                //throw this because it means the client did have a problem
+                Assertions.fail(e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryQuotas() throws Exception {
+        final MemoryQuotaOptions quotas = new MemoryQuotaOptions(4000, 16000, 2000, 8000);
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < 1000) {
+            text.append("in flight ");
+        }
+        try (final FairScheduler scheduler = new FairScheduler(1, FairScheduler.DEFAULT_QUANTUM)) {
+            final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                    (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                            .withFairScheduler(scheduler).withMemoryQuotaOptions(quotas).build()),
+                    connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                            .withMemoryQuotaOptions(quotas).build()),
+                    (connection, client) -> {
+                try {
+                    //a request past the server's stream hard quota is refused, and the connection carries on
+                    final MessageData large = new MessageData();
+                    large.setStringMessage(String.join("", Collections.nCopies(12, text)));
+                    final EchoMessageRequest request = new EchoMessageRequest();
+                    request.setMessage(large);
+                    final ExecutionException refused = Assertions.assertThrows(ExecutionException.class,
+                            () -> client.echoMessage(request, Optional.empty()).getResponse().get(10, TimeUnit.SECONDS));
+                    Assertions.assertTrue(refused.getCause() instanceof QuotaExceededException);
+                    DO_ECHO_FN.accept(client, new MessageData());
+
+                    //stream events a handler keeps charged stay in flight, until the client's hard quota closes the stream
+                    final List<Runnable> retained = Collections.synchronizedList(new ArrayList<>());
+                    final CompletableFuture<Throwable> streamError = new CompletableFuture<>();
+                    final Semaphore echoed = new Semaphore(0);
+                    final EchoStreamMessagesResponseHandler retaining = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                            Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                                @Override
+                                public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                    retained.add(MemoryAccount.retainDispatched());
+                                    echoed.release();
+                                }
+
+                                @Override
+                                public boolean onStreamError(Throwable error) {
+                                    streamError.complete(error);
+                                    return true;
+                                }
+
+                                @Override
+                                public void onStreamClosed() { }
+                            }));
+                    retaining.getResponse().get(10, TimeUnit.SECONDS);
+                    final MessageData data = new MessageData();
+                    data.setStringMessage(text.toString());
+                    final EchoStreamingMessage event = new EchoStreamingMessage();
+                    event.setStreamMessage(data);
+                    for (int i = 0; i < 10 && !streamError.isDone(); ++i) {
+                        retaining.sendStreamEvent(event).get(10, TimeUnit.SECONDS);
+                        while (!echoed.tryAcquire(10, TimeUnit.MILLISECONDS) && !streamError.isDone()) { }
+                    }
+                    Assertions.assertTrue(streamError.get(10, TimeUnit.SECONDS) instanceof QuotaExceededException);
+                    Assertions.assertEquals(1, connection.getQuotaRefusedMessages());
+                    Assertions.assertTrue(retained.size() >= 6 && retained.size() <= 8);
+                    Assertions.assertTrue(connection.getInFlightBytes() > 6000);
+                    retained.forEach(Runnable::run);
+                    retained.forEach(Runnable::run);    //releases only once
+                    Assertions.assertEquals(0, connection.getInFlightBytes());
+
+                    //messages waiting on a busy server take it past its soft quota, which the client is told of
+                    final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                            Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                                @Override
+                                public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                    echoed.release();
+                                }
+
+                                @Override
+                                public boolean onStreamError(Throwable error) {
+                                    return true;
+                                }
+
+                                @Override
+                                public void onStreamClosed() { }
+                            }));
+                    stream.getResponse().get(10, TimeUnit.SECONDS);
+                    echoed.drainPermits();
+                    final CompletableFuture<Void> unblock = new CompletableFuture<>();
+                    scheduler.register(() -> "blocker").submit(1, unblock::join, false);
+                    for (int i = 0; i < 3; ++i) {
+                        stream.sendStreamEvent(event).get(10, TimeUnit.SECONDS);
+                    }
+                    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                    while (!stream.isBackpressured() && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    Assertions.assertTrue(stream.isBackpressured());
+                    unblock.complete(null);
+                    Assertions.assertTrue(echoed.tryAcquire(3, 10, TimeUnit.SECONDS));
+                    while (stream.isBackpressured() && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    Assertions.assertFalse(stream.isBackpressured());
+                    stream.closeStream().get(10, TimeUnit.SECONDS);
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    Assertions.fail(e);
+                }
+            });
+            try {
+                clientErrorAfter.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                //eat this because it means there was no exception which is good
+            } catch (ExecutionException e) {
+                //throw this because it means the client did have a problem
+                Assertions.fail(e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void testLeakDetector() throws Exception {
+        try (final ContinuationLeakDetector detector = new ContinuationLeakDetector(1.0, Duration.ofMillis(200))) {
+            final List<ContinuationLeakDetector.Leak> leaks = Collections.synchronizedList(new ArrayList<>());
+            detector.setReporter(leaks::add);
+            final StreamResponseHandler<EchoStreamingMessage> ignoring = new StreamResponseHandler<EchoStreamingMessage>() {
+                @Override
+                public void onStreamEvent(EchoStreamingMessage streamEvent) { }
+
+                @Override
+                public boolean onStreamError(Throwable error) {
+                    return true;
+                }
+
+                @Override
+                public void onStreamClosed() { }
+            };
+            final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(null,
+                    connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                            .withLeakDetector(detector).build()),
+                    (connection, client) -> {
+                try {
+                    //a response the server closes the stream of is not a leak
+                    DO_ECHO_FN.accept(client, new MessageData());
+                    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                    while (detector.getClosed() < 1 && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    Assertions.assertEquals(1, detector.getClosed());
+
+                    //a stream left open is reported once past the age threshold, with where it was opened
+                    final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                            Optional.of(ignoring));
+                    stream.getResponse().get(10, TimeUnit.SECONDS);
+                    while (detector.getOutlived() < 1 && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    Assertions.assertEquals(1, detector.getOutlived());
+                    Assertions.assertEquals(1, detector.getOpenContinuations().size());
+                    final ContinuationLeakDetector.Leak outlived = leaks.get(0);
+                    Assertions.assertEquals(EchoTestRPCServiceModel.ECHO_STREAM_MESSAGES, outlived.getDescription());
+                    Assertions.assertFalse(outlived.isOwnerCollected());
+                    Assertions.assertTrue(Arrays.stream(outlived.getOpenedAt().getStackTrace())
+                            .anyMatch(frame -> frame.getMethodName().contains("testLeakDetector")));
+                    stream.closeStream().get(10, TimeUnit.SECONDS);
+                    Assertions.assertEquals(0, detector.getOpen());
+
+                    //a response dropped with its stream open is reported once collected
+                    client.echoStreamMessages(EchoStreamingRequest.VOID, Optional.of(ignoring))
+                            .getResponse().get(10, TimeUnit.SECONDS);
+                    while (detector.getCollectedUnclosed() < 1 && System.nanoTime() < deadline) {
+                        System.gc();
+                        Thread.sleep(10);
+                    }
+                    Assertions.assertEquals(1, detector.getCollectedUnclosed());
+                    Assertions.assertTrue(leaks.get(leaks.size() - 1).isOwnerCollected());
+                    Assertions.assertEquals(3, detector.getSampled());
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    Assertions.fail(e);
+                }
+            });
+            try {
+                clientErrorAfter.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                //eat this because it means there was no exception which is good
+            } catch (ExecutionException e) {
+                //throw this because it means the client did have a problem
+                Assertions.fail(e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteWatermarks() throws Exception {
+        final List<Boolean> changes = new ArrayList<>();
+        final AtomicReference<WriteWatermarks> watermarksRef = new AtomicReference<>();
+        final WriteWatermarks watermarks = new WriteWatermarks(100, 300, change -> {
+            Assertions.assertFalse(Thread.holdsLock(watermarksRef.get()), "Listener told with the lock held");
+            changes.add(change);
+        });
+        watermarksRef.set(watermarks);
+        final List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            final CompletableFuture<Void> sent = new CompletableFuture<>();
+            sends.add(sent);
+            watermarks.track(100, sent);
+        }
+        Assertions.assertFalse(watermarks.isWritable());
+        Assertions.assertEquals(400, watermarks.getOutstandingBytes());
+        final CompletableFuture<Void> writable = watermarks.awaitWritable(() -> new EventStreamClosedException("closed"));
+        Assertions.assertFalse(writable.isDone());
+
+        //under the high watermark is not enough, it takes dropping to the low one
+        sends.get(0).complete(null);
+        sends.get(1).completeExceptionally(new RuntimeException("failed sends are flushed too"));
+        Assertions.assertFalse(watermarks.isWritable());
+        Assertions.assertFalse(writable.isDone());
+        sends.get(2).complete(null);
+        Assertions.assertTrue(watermarks.isWritable());
+        writable.get(1, TimeUnit.SECONDS);
+        Assertions.assertEquals(Arrays.asList(false, true), changes);
+        Assertions.assertTrue(watermarks.awaitWritable(() -> new EventStreamClosedException("closed")).isDone());
+
+        //closing fails the waiters
+        watermarks.setWatermarks(0, 50);
+        Assertions.assertFalse(watermarks.isWritable());
+        final CompletableFuture<Void> waiting = watermarks.awaitWritable(() -> new EventStreamClosedException("closed"));
+        watermarks.close(() -> new EventStreamClosedException("closed"));
+        final ExecutionException e = Assertions.assertThrows(ExecutionException.class, waiting::get);
+        Assertions.assertTrue(e.getCause() instanceof EventStreamClosedException);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> watermarks.setWatermarks(10, 5));
+
+        //a change made while the listener runs is told after it returns, by the same thread
+        final List<Boolean> nested = new ArrayList<>();
+        final CompletableFuture<Void> flushed = new CompletableFuture<>();
+        final WriteWatermarks nesting = new WriteWatermarks(0, 0, change -> {
+            nested.add(change);
+            if (!change) {
+                flushed.complete(null);
+                Assertions.assertEquals(Collections.singletonList(false), nested);
+            }
+        });
+        nesting.track(10, flushed);
+        Assertions.assertEquals(Arrays.asList(false, true), nested);
+        Assertions.assertTrue(nesting.isWritable());
+    }
+
+    @Test
+    public void testSendStreamEventCountsWrites() throws Exception {
+        //every send takes a stream with zero watermarks past its high one, until the send is flushed
+        final List<Boolean> changes = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<OperationContinuationHandler<?, ?, ?, ?>> serverHandler = new CompletableFuture<>();
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> service.setEchoStreamMessagesHandler(context -> new EchoStreamMessagesHandler(context) {
+                    {
+                        setWriteWatermarks(0, 0);
+                        serverHandler.complete(this);
+                    }
+
+                    @Override
+                    protected void onWritabilityChanged(boolean writable) {
+                        changes.add(writable);
+                    }
+                }), null, (connection, client) -> {
+            try {
+                final Semaphore echoed = new Semaphore(0);
+                final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                        Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                            @Override
+                            public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                echoed.release();
+                            }
+
+                            @Override
+                            public boolean onStreamError(Throwable error) {
+                                return true;
+                            }
+
+                            @Override
+                            public void onStreamClosed() { }
+                        }));
+                stream.getResponse().get(10, TimeUnit.SECONDS);
+                final EchoStreamingMessage event = new EchoStreamingMessage();
+                final MessageData data = new MessageData();
+                data.setStringMessage("counted");
+                event.setStreamMessage(data);
+                for (int i = 0; i < 5; ++i) {
+                    stream.sendStreamEvent(event).get(10, TimeUnit.SECONDS);
+                }
+                Assertions.assertTrue(echoed.tryAcquire(5, 10, TimeUnit.SECONDS));
+
+                //the bytes of each echo were counted, and released once flushed
+                final OperationContinuationHandler<?, ?, ?, ?> handler = serverHandler.get(10, TimeUnit.SECONDS);
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!handler.isWritable() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertTrue(handler.isWritable());
+                Assertions.assertEquals(0, handler.getOutstandingWriteBytes());
+                final List<Boolean> told = new ArrayList<>(changes);
+                Assertions.assertFalse(told.isEmpty());
+                Assertions.assertEquals(0, told.size() % 2);
+                for (int i = 0; i < told.size(); ++i) {
+                    Assertions.assertEquals(i % 2 == 1, told.get(i), "Changes out of order at " + i);
+                }
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testSendStreamEventCountsCompressedWrites() throws Exception {
+        //the echo is far past the high watermark as JSON, and far below it compressed
+        final CompressionOptions compression = new CompressionOptions(256);
+        final List<Boolean> changes = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> {
+                    server.setConnectionOptions(ServerConnectionOptions.builder()
+                            .withCompressionOptions(compression).build());
+                    service.setEchoStreamMessagesHandler(context -> new EchoStreamMessagesHandler(context) {
+                        {
+                            setWriteWatermarks(0, 4 * 1024);
+                        }
+
+                        @Override
+                        protected void onWritabilityChanged(boolean writable) {
+                            changes.add(writable);
+                        }
+                    });
+                },
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withCompressionOptions(compression).build()),
+                (connection, client) -> {
+            try {
+                Assertions.assertTrue(connection.isCompressionActive());
+                final CompletableFuture<EchoStreamingMessage> echoed = new CompletableFuture<>();
+                final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                        Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                            @Override
+                            public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                echoed.complete(streamEvent);
+                            }
+
+                            @Override
+                            public boolean onStreamError(Throwable error) {
+                                echoed.completeExceptionally(error);
+                                return true;
+                            }
+
+                            @Override
+                            public void onStreamClosed() { }
+                        }));
+                stream.getResponse().get(10, TimeUnit.SECONDS);
+                final StringBuilder repetitive = new StringBuilder();
+                while (repetitive.length() < 64 * 1024) {
+                    repetitive.append("compressible ");
+                }
+                final EchoStreamingMessage event = new EchoStreamingMessage();
+                final MessageData data = new MessageData();
+                data.setStringMessage(repetitive.toString());
+                event.setStreamMessage(data);
+                stream.sendStreamEvent(event).get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(event, echoed.get(10, TimeUnit.SECONDS));
+                Assertions.assertEquals(Collections.emptyList(), changes);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testConflatingPublisher() throws Exception {
+        //the handler publishes in one go on the event loop, so no send can be flushed before it returns
+        final CompletableFuture<List<Long>> whilePublishing = new CompletableFuture<>();
+        final CompletableFuture<Void> replacedFlushed = new CompletableFuture<>();
+        final Function<String, EchoStreamingMessage> event = text -> {
+            final MessageData data = new MessageData();
+            data.setStringMessage(text);
+            final EchoStreamingMessage message = new EchoStreamingMessage();
+            message.setStreamMessage(data);
+            return message;
+        };
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> service.setEchoStreamMessagesHandler(context -> new EchoStreamMessagesHandler(context) {
+                    @Override
+                    public void handleStreamEvent(EchoStreamingMessage streamRequestEvent) {
+                        setWriteWatermarks(0, 0);
+                        final ConflatingStreamEventPublisher<EchoStreamingMessage> publisher =
+                                new ConflatingStreamEventPublisher<>(this,
+                                        message -> message.getStreamMessage().getStringMessage().substring(0, 1));
+                        //sent while writable, then one waits per key, the newest
+                        publisher.sendStreamEvent(event.apply("a1"));
+                        final boolean writable = isWritable();
+                        publisher.sendStreamEvent(event.apply("b1"));
+                        publisher.sendStreamEvent(event.apply("c1"));
+                        publisher.sendStreamEvent(event.apply("a2")).whenComplete((res, ex) -> {
+                            if (ex != null) {
+                                replacedFlushed.completeExceptionally(ex);
+                            } else {
+                                replacedFlushed.complete(null);
+                            }
+                        });
+                        publisher.sendStreamEvent(event.apply("a3"));
+                        publisher.sendStreamEvent(event.apply("b2"));
+                        whilePublishing.complete(Arrays.asList(writable ? 1L : 0L, getOutstandingWriteBytes(),
+                                (long) publisher.getPending(), publisher.getConflated(), publisher.getSent()));
+                    }
+                }), null, (connection, client) -> {
+            try {
+                final List<String> received = Collections.synchronizedList(new ArrayList<>());
+                final Semaphore echoed = new Semaphore(0);
+                final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                        Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                            @Override
+                            public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                received.add(streamEvent.getStreamMessage().getStringMessage());
+                                echoed.release();
+                            }
+
+                            @Override
+                            public boolean onStreamError(Throwable error) {
+                                return true;
+                            }
+
+                            @Override
+                            public void onStreamClosed() { }
+                        }));
+                stream.getResponse().get(10, TimeUnit.SECONDS);
+                stream.sendStreamEvent(event.apply("publish")).get(10, TimeUnit.SECONDS);
+
+                //only the first was sent before the stream went past its high watermark
+                final List<Long> published = whilePublishing.get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(0, published.get(0));
+                Assertions.assertTrue(published.get(1) > 0);
+                Assertions.assertEquals(3, published.get(2));
+                Assertions.assertEquals(2, published.get(3));
+                Assertions.assertEquals(1, published.get(4));
+
+                //the waiting ones are sent as the stream drops to its low watermark, the replaced ones never
+                Assertions.assertTrue(echoed.tryAcquire(4, 10, TimeUnit.SECONDS));
+                Assertions.assertEquals("a1", received.get(0));
+                Assertions.assertEquals(new HashSet<>(Arrays.asList("a1", "a3", "b2", "c1")), new HashSet<>(received));
+                replacedFlushed.get(10, TimeUnit.SECONDS);
+                Assertions.assertFalse(echoed.tryAcquire(200, TimeUnit.MILLISECONDS));
+                Assertions.assertEquals(4, received.size());
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    @Test
+    public void testConflatedEventsCollectable() throws Exception {
+        //published in one go on the event loop, so the stream stays unwritable and the events keep replacing
+        final CompletableFuture<List<Long>> afterPublishing = new CompletableFuture<>();
+        final int replacements = 1000;
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> service.setEchoStreamMessagesHandler(context -> new EchoStreamMessagesHandler(context) {
+                    @Override
+                    public void handleStreamEvent(EchoStreamingMessage streamRequestEvent) {
+                        setWriteWatermarks(0, 0);
+                        final ConflatingStreamEventPublisher<EchoStreamingMessage> publisher =
+                                new ConflatingStreamEventPublisher<>(this, message -> "key");
+                        final List<WeakReference<EchoStreamingMessage>> replaced = new ArrayList<>();
+                        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+                        for (int i = 0; i <= replacements; ++i) {
+                            final MessageData data = new MessageData();
+                            data.setStringMessage("update " + i);
+                            final EchoStreamingMessage message = new EchoStreamingMessage();
+                            message.setStreamMessage(data);
+                            if (i > 0) {
+                                replaced.add(new WeakReference<>(message));
+                            }
+                            futures.add(publisher.sendStreamEvent(message));
+                        }
+                        //the first was sent, and all after it but the newest are dropped with nothing holding them
+                        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                        long held = replaced.size();
+                        while (held > 1 && System.nanoTime() < deadline) {
+                            System.gc();
+                            held = replaced.stream().filter(ref -> ref.get() != null).count();
+                        }
+                        afterPublishing.complete(Arrays.asList(held, publisher.getConflated(),
+                                (long) publisher.getPending(), futures.stream().skip(1).distinct().count()));
+                    }
+                }), null, (connection, client) -> {
+            try {
+                final List<String> received = Collections.synchronizedList(new ArrayList<>());
+                final Semaphore echoed = new Semaphore(0);
+                final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                        Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                            @Override
+                            public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                                received.add(streamEvent.getStreamMessage().getStringMessage());
+                                echoed.release();
+                            }
+
+                            @Override
+                            public boolean onStreamError(Throwable error) {
+                                return true;
+                            }
+
+                            @Override
+                            public void onStreamClosed() { }
+                        }));
+                stream.getResponse().get(10, TimeUnit.SECONDS);
+                final MessageData data = new MessageData();
+                data.setStringMessage("publish");
+                final EchoStreamingMessage publish = new EchoStreamingMessage();
+                publish.setStreamMessage(data);
+                stream.sendStreamEvent(publish).get(10, TimeUnit.SECONDS);
+
+                //only the newest, still waiting, is held, and all replaced events share its one future
+                final List<Long> published = afterPublishing.get(30, TimeUnit.SECONDS);
+                Assertions.assertEquals(1, published.get(0));
+                Assertions.assertEquals(replacements - 1, published.get(1));
+                Assertions.assertEquals(1, published.get(2));
+                Assertions.assertEquals(1, published.get(3));
+
+                Assertions.assertTrue(echoed.tryAcquire(2, 10, TimeUnit.SECONDS));
+                Assertions.assertEquals(Arrays.asList("update 0", "update " + replacements), received);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+    }
+
+    /**
+     * Records what a span is told, prefixed with the side it traces
+     */
+    private static final class RecordingSpan implements RpcSpan {
+        private final String side;
+        private final String traceContext;
+        private final List<String> events;
+        private final CompletableFuture<Void> ended = new CompletableFuture<>();
+
+        RecordingSpan(final String side, final String traceContext, final List<String> events) {
+            this.side = side;
+            this.traceContext = traceContext;
+            this.events = events;
+        }
+
+        @Override
+        public String getTraceContext() {
+            return traceContext;
+        }
+
+        @Override
+        public void phaseStarted(RpcTracer.Phase phase) {
+            events.add(side + " started " + phase);
+        }
+
+        @Override
+        public void phaseEnded(RpcTracer.Phase phase, Throwable error) {
+            events.add(side + " ended " + phase + (error != null ? " with error" : ""));
+        }
+
+        @Override
+        public void end(Throwable error) {
+            events.add(side + " end" + (error != null ? " with error" : ""));
+            ended.complete(null);
+        }
+    }
+
+    @Test
+    public void testTracing() throws Exception {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<RecordingSpan> spans = Collections.synchronizedList(new ArrayList<>());
+        final RpcTracer tracer = new RpcTracer() {
+            @Override
+            public RpcSpan startClientSpan(OperationModelContext<?, ?, ?, ?> operationModelContext) {
+                final RecordingSpan span = new RecordingSpan("client", "trace-" + spans.size(), events);
+                spans.add(span);
+                return span;
+            }
+
+            @Override
+            public RpcSpan startServerSpan(OperationModelContext<?, ?, ?, ?> operationModelContext,
+                                           String traceContext) {
+                events.add("server start " + operationModelContext.getOperationName() + " " + traceContext);
+                final RecordingSpan span = new RecordingSpan("server", null, events);
+                spans.add(span);
+                return span;
+            }
+        };
+        final CompletableFuture<Void> clientErrorAfter = EchoTestServiceRunner.runLocalEchoTestServer(
+                (server, service) -> server.setConnectionOptions(ServerConnectionOptions.builder()
+                        .withTracer(tracer).build()),
+                connection -> connection.setConnectionOptions(ClientConnectionOptions.builder()
+                        .withTracer(tracer).build()),
+                (connection, client) -> {
+            final MessageData data = new MessageData();
+            data.setStringMessage("traced");
+            DO_ECHO_FN.accept(client, data);
+            try {
+                for (RecordingSpan span : spans) {
+                    span.ended.get(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Assertions.fail(e);
+            }
+        });
+        try {
+            clientErrorAfter.get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            //eat this because it means there was no exception which is good
+        } catch (ExecutionException e) {
+            //throw this because it means the client did have a problem
+            Assertions.fail(e.getCause());
+        }
+
+        //the server span carries the client's trace context, and times each phase in turn
+        Assertions.assertEquals(2, spans.size());
+        Assertions.assertEquals(Arrays.asList("server start " + EchoTestRPCServiceModel.ECHO_MESSAGE + " trace-0",
+                "server started DESERIALIZE", "server ended DESERIALIZE", "server started HANDLE", "server ended HANDLE",
+                "server started SERIALIZE", "server ended SERIALIZE", "server started FLUSH", "server ended FLUSH",
+                "server end"), events.stream().filter(event -> event.startsWith("server")).collect(Collectors.toList()));
+        final List<String> clientEvents = events.stream().filter(event -> event.startsWith("client"))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("client started SERIALIZE", "client ended SERIALIZE",
+                "client started FLUSH"), clientEvents.subList(0, 3));
+        Assertions.assertTrue(clientEvents.contains("client ended FLUSH"));
+        Assertions.assertTrue(clientEvents.indexOf("client ended DESERIALIZE")
+                > clientEvents.indexOf("client started DESERIALIZE"));
+        Assertions.assertTrue(clientEvents.indexOf("client end") > clientEvents.indexOf("client ended DESERIALIZE"));
+    }
+
+    private interface FragmentConsumingStreamHandler
+            extends StreamResponseHandler<EchoStreamingMessage>, PayloadFragmentConsumer {
+    }
+
+    @Test
+    public void testLoadGeneratorShortRun() throws Exception {
+        final EchoTestLoadGenerator.Config config = new EchoTestLoadGenerator.Config();
+        config.setConnections(2);
+        config.setStreamsPerConnection(4);
+        config.setTargetRate(200);
+        config.setWarmupSeconds(0);
+        config.setDurationSeconds(1);
+        final Map<String, Object> report = EchoTestLoadGenerator.run(config);
+        @SuppressWarnings("unchecked")
+        final List<Map<String, Object>> runs = (List<Map<String, Object>>) report.get("runs");
+        Assertions.assertEquals(2, runs.size());
+        for (Map<String, Object> run : runs) {
+            Assertions.assertEquals(200L, run.get("scheduled"), run.get("transport").toString());
+            Assertions.assertEquals(200L, run.get("completed"), run.get("transport").toString());
+            Assertions.assertEquals(0L, run.get("errors"), run.get("transport").toString());
+        }
+        Assertions.assertTrue(EchoTestLoadGenerator.toJson(report).contains("\"p99.9\""));
+        CrtResource.waitForNoResources();
+    }
 }
@@ -9,24 +9,62 @@ package software.amazon.awssdk.eventstreamrpc;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awstest.EchoTestRPC;
+import software.amazon.awssdk.awstest.EchoTestRPCClient;
+import software.amazon.awssdk.awstest.EchoTestRPCService;
+import software.amazon.awssdk.awstest.EchoTestRPCServiceModel;
+import software.amazon.awssdk.awstest.GeneratedAbstractEchoMessageOperationHandler;
+import software.amazon.awssdk.awstest.GeneratedAbstractEchoStreamMessagesOperationHandler;
+import software.amazon.awssdk.awstest.model.EchoMessageRequest;
+import software.amazon.awssdk.awstest.model.EchoMessageResponse;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.EchoStreamingResponse;
+import software.amazon.awssdk.awstest.model.MessageData;
 import software.amazon.awssdk.crt.CrtResource;
 import software.amazon.awssdk.crt.Log;
+import software.amazon.awssdk.crt.eventstream.ClientConnection;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuation;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionContinuationHandler;
+import software.amazon.awssdk.crt.eventstream.ClientConnectionHandler;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.crt.eventstream.MessageType;
 import software.amazon.awssdk.crt.eventstream.ServerConnectionContinuationHandler;
+import software.amazon.awssdk.crt.io.ClientBootstrap;
 import software.amazon.awssdk.crt.io.EventLoopGroup;
+import software.amazon.awssdk.crt.io.HostResolver;
 import software.amazon.awssdk.crt.io.SocketOptions;
+import software.amazon.awssdk.eventstreamrpc.echotest.EchoTestServiceRunner;
 import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+import software.amazon.awssdk.eventstreamrpc.model.ServiceUnavailableException;
 import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
 
 /**
  * Note: use different ports for different tests
@@ -334,4 +372,485 @@ public class IpcServerTests {
         }
         CrtResource.waitForNoResources();
     }
+
+    private static SocketOptions newSocketOptions() {
+        final SocketOptions socketOptions = new SocketOptions();
+        socketOptions.connectTimeoutMs = 3000;
+        socketOptions.domain = SocketOptions.SocketDomain.IPv4;
+        socketOptions.type = SocketOptions.SocketType.STREAM;
+        return socketOptions;
+    }
+
+    private static EventStreamRPCConnection connectEchoClient(final EventLoopGroup elGroup,
+            final ClientBootstrap clientBootstrap, final SocketOptions socketOptions, final int port) throws Exception {
+        final EventStreamRPCConnectionConfig config = new EventStreamRPCConnectionConfig(clientBootstrap, elGroup,
+                socketOptions, null, "127.0.0.1", port, () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
+        return EchoTestServiceRunner.connectClient(config, null, new CompletableFuture<>(), 10);
+    }
+
+    /**
+     * Opens an echo stream, returning a future completed with the time its error arrives
+     */
+    private static CompletableFuture<Long> openErroredAtStream(final EchoTestRPC client,
+                                                               final List<Throwable> errors) throws Exception {
+        final CompletableFuture<Long> erroredAt = new CompletableFuture<>();
+        client.echoStreamMessages(EchoStreamingRequest.VOID, Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+            @Override
+            public void onStreamEvent(EchoStreamingMessage streamEvent) { }
+
+            @Override
+            public boolean onStreamError(Throwable error) {
+                errors.add(error);
+                erroredAt.complete(System.nanoTime());
+                return true;
+            }
+
+            @Override
+            public void onStreamClosed() { }
+        })).getResponse().get(10, TimeUnit.SECONDS);
+        return erroredAt;
+    }
+
+    @Test
+    public void testDrainServer() throws Exception {
+        final int port = randomPort();
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions();
+             final RpcServer server = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port,
+                     EchoTestServiceRunner.newEchoTestService())) {
+            server.setDrainBatchSize(1);
+            server.runServer();
+            try (final EventStreamRPCConnection connection = connectEchoClient(elGroup, clientBootstrap, socketOptions, port)) {
+                final EchoTestRPC client = new EchoTestRPCClient(connection);
+                final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+                final CompletableFuture<Long> firstErroredAt = openErroredAtStream(client, errors);
+                final CompletableFuture<Long> secondErroredAt = openErroredAtStream(client, errors);
+                Assertions.assertEquals(2, server.getOpenContinuationCount());
+
+                final long drainStartNanos = System.nanoTime();
+                final CompletableFuture<Void> drained = server.drain(Duration.ofSeconds(4));
+                Assertions.assertTrue(server.isDraining());
+                Assertions.assertSame(drained, server.drain(Duration.ofSeconds(4)));
+
+                //new streams on an open connection are answered with a retriable error
+                final ExecutionException rejected = Assertions.assertThrows(ExecutionException.class, () ->
+                        client.echoMessage(new EchoMessageRequest(), Optional.empty()).getResponse().get(10, TimeUnit.SECONDS));
+                Assertions.assertTrue(rejected.getCause() instanceof ServiceUnavailableException);
+
+                //new connections are refused at once rather than left to time out
+                final long connectStartNanos = System.nanoTime();
+                Assertions.assertThrows(Exception.class, () ->
+                        connectEchoClient(elGroup, clientBootstrap, socketOptions, port).close());
+                Assertions.assertTrue(System.nanoTime() - connectStartNanos < TimeUnit.SECONDS.toNanos(5));
+
+                //streams are closed a batch at a time, the batches spread across half the timeout
+                final long first = Math.min(firstErroredAt.get(10, TimeUnit.SECONDS), secondErroredAt.get(10, TimeUnit.SECONDS));
+                final long second = Math.max(firstErroredAt.get(), secondErroredAt.get());
+                Assertions.assertTrue(second - first >= TimeUnit.MILLISECONDS.toNanos(500));
+                Assertions.assertEquals(2, errors.size());
+                errors.forEach(error -> Assertions.assertTrue(error instanceof ServiceUnavailableException));
+
+                //with nothing left open the server stops ahead of the timeout, closing the connections
+                drained.get(10, TimeUnit.SECONDS);
+                Assertions.assertTrue(System.nanoTime() - drainStartNanos < TimeUnit.SECONDS.toNanos(4));
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (connection.isConnected() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertFalse(connection.isConnected());
+            }
+        }
+    }
+
+    @Test
+    public void testDrainServerTimeout() throws Exception {
+        final int port = randomPort();
+        final EchoTestRPCService service = EchoTestServiceRunner.newEchoTestService();
+        //a request never answered keeps its continuation open
+        service.setEchoMessageHandler(context -> new GeneratedAbstractEchoMessageOperationHandler(context) {
+            @Override
+            protected void onStreamClosed() { }
+
+            @Override
+            public CompletableFuture<EchoMessageResponse> handleRequestAsync(EchoMessageRequest request) {
+                return new CompletableFuture<>();
+            }
+
+            @Override
+            public EchoMessageResponse handleRequest(EchoMessageRequest request) {
+                throw new IllegalStateException("Handled asynchronously");
+            }
+
+            @Override
+            public void handleStreamEvent(EventStreamJsonMessage streamRequestEvent) { }
+        });
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions();
+             final RpcServer server = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port, service)) {
+            server.runServer();
+            try (final EventStreamRPCConnection connection = connectEchoClient(elGroup, clientBootstrap, socketOptions, port)) {
+                final EchoTestRPC client = new EchoTestRPCClient(connection);
+                final CompletableFuture<EchoMessageResponse> response =
+                        client.echoMessage(new EchoMessageRequest(), Optional.empty()).getResponse();
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (server.getOpenContinuationCount() < 1 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+
+                //in-flight work holds the drain until the timeout, then its connection is closed regardless
+                final long drainStartNanos = System.nanoTime();
+                server.drain(Duration.ofMillis(500)).get(10, TimeUnit.SECONDS);
+                Assertions.assertTrue(System.nanoTime() - drainStartNanos >= TimeUnit.MILLISECONDS.toNanos(500));
+                while (connection.isConnected() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertFalse(connection.isConnected());
+            }
+        }
+    }
+
+    private static void awaitCount(final IntSupplier count, final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.getAsInt() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(expected, count.getAsInt());
+    }
+
+    @Test
+    public void testShardedServer() throws Exception {
+        final int firstPort = randomPort();
+        int secondPort = randomPort();
+        while (secondPort == firstPort) {
+            secondPort = randomPort();
+        }
+        final int[] ports = { firstPort, secondPort };
+        final CompressionOptions compressionOptions = new CompressionOptions();
+        final RpcTracer tracer = new RpcTracer() {
+            @Override
+            public RpcSpan startClientSpan(OperationModelContext<?, ?, ?, ?> operationModelContext) {
+                return null;
+            }
+
+            @Override
+            public RpcSpan startServerSpan(OperationModelContext<?, ?, ?, ?> operationModelContext, String traceContext) {
+                return null;
+            }
+        };
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions()) {
+            //one shard on the caller's event loop group, one on a group of its own
+            final ShardedRpcServer server = new ShardedRpcServer(Arrays.asList(
+                    new RpcServerShardConfig(elGroup, socketOptions, null, "127.0.0.1", firstPort),
+                    new RpcServerShardConfig(1, socketOptions, null, "127.0.0.1", secondPort)),
+                    EchoTestServiceRunner.newEchoTestService());
+            final ServerConnectionOptions connectionOptions = ServerConnectionOptions.builder()
+                    .withCompressionOptions(compressionOptions).withTracer(tracer).build();
+            server.setConnectionOptions(connectionOptions);
+            server.runServer();
+            try {
+                //every shard binds its own port, and carries what was set on the sharded server
+                final List<RpcServer> shards = server.getShards();
+                Assertions.assertEquals(2, shards.size());
+                for (int i = 0; i < shards.size(); ++i) {
+                    Assertions.assertEquals(ports[i], shards.get(i).getBoundPort());
+                    Assertions.assertSame(server.getMetrics(), shards.get(i).getMetrics());
+                    Assertions.assertSame(connectionOptions, shards.get(i).getConnectionOptions());
+                }
+                Assertions.assertSame(server.getShardFor("component"), server.getShardFor("component"));
+
+                //a client on each shard is served by that shard, and counted once across them
+                try (final EventStreamRPCConnection first = connectEchoClient(elGroup, clientBootstrap, socketOptions, firstPort);
+                     final EventStreamRPCConnection second = connectEchoClient(elGroup, clientBootstrap, socketOptions, secondPort)) {
+                    for (EventStreamRPCConnection connection : Arrays.asList(first, second)) {
+                        final EchoMessageRequest request = new EchoMessageRequest();
+                        final MessageData data = new MessageData();
+                        data.setStringMessage("sharded");
+                        request.setMessage(data);
+                        Assertions.assertEquals(data, new EchoTestRPCClient(connection).echoMessage(request, Optional.empty())
+                                .getResponse().get(10, TimeUnit.SECONDS).getMessage());
+                    }
+                    for (RpcServer shard : shards) {
+                        awaitCount(shard::getConnectionCount, 1);
+                    }
+                    awaitCount(server::getConnectionCount, 2);
+                    Assertions.assertEquals(2, server.getMetrics().getConnectionsOpened());
+                }
+            } finally {
+                server.stopServer().get(10, TimeUnit.SECONDS);
+            }
+
+            //stopping stops every shard
+            Assertions.assertTrue(server.getShards().isEmpty());
+            for (int port : ports) {
+                Assertions.assertThrows(IOException.class, () -> {
+                    try (Socket socket = new Socket()) {
+                        socket.connect(new InetSocketAddress("127.0.0.1", port), 3000);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void awaitDisconnected(final EventStreamRPCConnection connection) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (connection.isConnected() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertFalse(connection.isConnected());
+    }
+
+    @Test
+    public void testLivenessReapsIdleStream() throws Exception {
+        final int port = randomPort();
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions();
+             final ServerLivenessManager livenessManager = new ServerLivenessManager(Duration.ZERO, 1);
+             final RpcServer server = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port,
+                     EchoTestServiceRunner.newEchoTestService())) {
+            livenessManager.setStreamIdleTimeout(Duration.ofMillis(400));
+            server.setLivenessManager(livenessManager);
+            server.runServer();
+            try (final EventStreamRPCConnection connection = connectEchoClient(elGroup, clientBootstrap, socketOptions, port)) {
+                final EchoTestRPC client = new EchoTestRPCClient(connection);
+                final CompletableFuture<Void> streamClosed = new CompletableFuture<>();
+                client.echoStreamMessages(EchoStreamingRequest.VOID, Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                    @Override
+                    public void onStreamEvent(EchoStreamingMessage streamEvent) { }
+
+                    @Override
+                    public boolean onStreamError(Throwable error) {
+                        return true;
+                    }
+
+                    @Override
+                    public void onStreamClosed() {
+                        streamClosed.complete(null);
+                    }
+                })).getResponse().get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(1, server.getOpenContinuationCount());
+
+                //the quiet stream is closed, the connection it was on is left alone
+                streamClosed.get(10, TimeUnit.SECONDS);
+                awaitCount(server::getOpenContinuationCount, 0);
+                Assertions.assertEquals(1, server.getMetrics().getReaped(ServerLivenessManager.ReapReason.STREAM_IDLE));
+                Assertions.assertTrue(connection.isConnected());
+                Assertions.assertNotNull(client.echoMessage(new EchoMessageRequest(), Optional.empty())
+                        .getResponse().get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testLivenessReapsIdleConnection() throws Exception {
+        final int port = randomPort();
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions();
+             final ServerLivenessManager livenessManager = new ServerLivenessManager(Duration.ofMillis(100), 3);
+             final RpcServer server = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port,
+                     EchoTestServiceRunner.newEchoTestService())) {
+            livenessManager.setConnectionIdleTimeout(Duration.ofMillis(500));
+            server.setLivenessManager(livenessManager);
+            server.runServer();
+            try (final EventStreamRPCConnection connection = connectEchoClient(elGroup, clientBootstrap, socketOptions, port)) {
+                //answering pings keeps the connection alive, but is not traffic that keeps it from idling
+                final long connectedNanos = System.nanoTime();
+                awaitDisconnected(connection);
+                Assertions.assertTrue(System.nanoTime() - connectedNanos >= TimeUnit.MILLISECONDS.toNanos(500));
+                Assertions.assertEquals(1, server.getMetrics().getReaped(ServerLivenessManager.ReapReason.CONNECTION_IDLE));
+                Assertions.assertEquals(0, server.getMetrics().getReaped(ServerLivenessManager.ReapReason.MISSED_PONGS));
+                awaitCount(server::getConnectionCount, 0);
+            }
+        }
+    }
+
+    /**
+     * A bare client that never answers pings, like a peer that died without its socket closing
+     */
+    private static final class SilentClientHandler extends ClientConnectionHandler {
+        private final CompletableFuture<ClientConnection> accepted = new CompletableFuture<>();
+        private final List<Header> connectHeaders;
+        private volatile ClientConnection connection;
+        private volatile List<Header> connectAckHeaders;
+
+        SilentClientHandler(final Header... connectHeaders) {
+            this.connectHeaders = Arrays.asList(connectHeaders);
+        }
+
+        @Override
+        protected void onConnectionSetup(ClientConnection connection, int errorCode) {
+            if (errorCode != 0) {
+                accepted.completeExceptionally(new IllegalStateException("Connect failed with " + errorCode));
+                return;
+            }
+            this.connection = connection;
+            final List<Header> headers = new ArrayList<>(2 + connectHeaders.size());
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.VERSION_HEADER,
+                    Version.getInstance().getVersionString()));
+            headers.add(Header.createHeader("client-name", "accepted.foo"));
+            headers.addAll(connectHeaders);
+            connection.sendProtocolMessage(headers, null, MessageType.Connect, 0);
+        }
+
+        @Override
+        protected void onProtocolMessage(List<Header> headers, byte[] payload, MessageType messageType, int messageFlags) {
+            if (messageType == MessageType.ConnectAck) {
+                connectAckHeaders = headers;
+                accepted.complete(connection);
+            }
+        }
+    }
+
+    @Test
+    public void testLivenessReapsMissedPongs() throws Exception {
+        final int port = randomPort();
+        final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+        final EchoTestRPCService service = EchoTestServiceRunner.newEchoTestService();
+        //keep publishing to the stream, which must not pass for the client being alive
+        service.setEchoStreamMessagesHandler(context -> new GeneratedAbstractEchoStreamMessagesOperationHandler(context) {
+            private volatile ScheduledFuture<?> publishing;
+
+            @Override
+            protected void onStreamClosed() {
+                if (publishing != null) {
+                    publishing.cancel(false);
+                }
+            }
+
+            @Override
+            public EchoStreamingResponse handleRequest(EchoStreamingRequest request) {
+                publishing = publisher.scheduleAtFixedRate(() ->
+                        sendStreamEvent(new EchoStreamingMessage().withStreamMessage(new MessageData())),
+                        0, 20, TimeUnit.MILLISECONDS);
+                return new EchoStreamingResponse();
+            }
+
+            @Override
+            public void handleStreamEvent(EchoStreamingMessage streamRequestEvent) { }
+        });
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions();
+             final ServerLivenessManager livenessManager = new ServerLivenessManager(Duration.ofMillis(100), 2);
+             final RpcServer server = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port, service);
+             final SilentClientHandler silent = new SilentClientHandler()) {
+            server.setLivenessManager(livenessManager);
+            server.runServer();
+            try (final EventStreamRPCConnection answering = connectEchoClient(elGroup, clientBootstrap, socketOptions, port)) {
+                ClientConnection.connect("127.0.0.1", port, socketOptions, null, clientBootstrap, silent)
+                        .get(10, TimeUnit.SECONDS);
+                final ClientConnection connection = silent.accepted.get(10, TimeUnit.SECONDS);
+                final OperationModelContext<?, ?, ?, ?> operation = EchoTestRPCServiceModel.getEchoStreamMessagesModelContext();
+                final List<Header> headers = new ArrayList<>(2);
+                headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                        EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+                headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                        operation.getRequestApplicationModelType()));
+                try (final ClientConnectionContinuationHandler streamHandler = new ClientConnectionContinuationHandler() {
+                        @Override
+                        protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType,
+                                                             int messageFlags) { }
+                    };
+                     final ClientConnectionContinuation stream = connection.newStream(streamHandler)) {
+                    stream.activate(operation.getOperationName(), headers, "{}".getBytes(StandardCharsets.UTF_8),
+                            MessageType.ApplicationMessage, 0).get(10, TimeUnit.SECONDS);
+
+                    //the silent client is reaped despite its stream being busy, the one answering pings is kept
+                    silent.getConnectionClosedFuture().get(10, TimeUnit.SECONDS);
+                    Assertions.assertEquals(1, server.getMetrics().getReaped(ServerLivenessManager.ReapReason.MISSED_PONGS));
+                    Thread.sleep(500);
+                    Assertions.assertTrue(answering.isConnected());
+                    Assertions.assertEquals(1, server.getMetrics().getReaped(ServerLivenessManager.ReapReason.MISSED_PONGS));
+                    awaitCount(server::getConnectionCount, 1);
+                }
+            }
+        } finally {
+            publisher.shutdownNow();
+        }
+    }
+
+    private static int countFiles(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return (int) files.count();
+        }
+    }
+
+    @Test
+    public void testSharedMemoryDeclined() throws Exception {
+        final int port = randomPort();
+        final Path directory = Files.createTempDirectory("shm-declined-test");
+        try (final EventLoopGroup elGroup = new EventLoopGroup(1);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = newSocketOptions();
+             final RpcServer server = new RpcServer(elGroup, socketOptions, null, "127.0.0.1", port,
+                     EchoTestServiceRunner.newEchoTestService());
+             final SilentClientHandler client = new SilentClientHandler(
+                     Header.createHeader(SharedMemoryChannel.OFFER_HEADER, true))) {
+            server.setConnectionOptions(ServerConnectionOptions.builder()
+                    .withSharedMemoryOptions(new SharedMemoryOptions(directory, 64 * 1024, 1024)).build());
+            server.runServer();
+            ClientConnection.connect("127.0.0.1", port, socketOptions, null, clientBootstrap, client)
+                    .get(10, TimeUnit.SECONDS);
+            final ClientConnection connection = client.accepted.get(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(client.connectAckHeaders.stream()
+                    .anyMatch(header -> header.getName().equals(SharedMemoryChannel.CLIENT_RING_HEADER)));
+            Assertions.assertEquals(2, countFiles(directory));
+
+            //a client that could not map the rings declines them, and the server drops them
+            connection.sendProtocolMessage(SharedMemoryChannel.createDeclineHeaders(), null, MessageType.Ping, 0)
+                    .get(10, TimeUnit.SECONDS);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (countFiles(directory) != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(0, countFiles(directory));
+
+            //a payload over the threshold then comes back inline
+            final byte[] blob = new byte[4096];
+            new Random(42).nextBytes(blob);
+            final MessageData data = new MessageData();
+            data.setBlobMessage(blob);
+            final EchoMessageRequest request = new EchoMessageRequest();
+            request.setMessage(data);
+            final OperationModelContext<?, ?, ?, ?> operation = EchoTestRPCServiceModel.getEchoMessageModelContext();
+            final List<Header> headers = new ArrayList<>(2);
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.CONTENT_TYPE_HEADER,
+                    EventStreamRPCServiceModel.CONTENT_TYPE_APPLICATION_JSON));
+            headers.add(Header.createHeader(EventStreamRPCServiceModel.SERVICE_MODEL_TYPE_HEADER,
+                    operation.getRequestApplicationModelType()));
+            final CompletableFuture<MessageAmendInfo> response = new CompletableFuture<>();
+            try (final ClientConnectionContinuationHandler streamHandler = new ClientConnectionContinuationHandler() {
+                    @Override
+                    protected void onContinuationMessage(List<Header> headers, byte[] payload, MessageType messageType,
+                                                         int messageFlags) {
+                        response.complete(new MessageAmendInfo(headers, payload));
+                    }
+                };
+                 final ClientConnectionContinuation stream = connection.newStream(streamHandler)) {
+                stream.activate(operation.getOperationName(), headers,
+                        EchoTestRPCServiceModel.getInstance().toJson(request), MessageType.ApplicationMessage, 0)
+                        .get(10, TimeUnit.SECONDS);
+                final MessageAmendInfo echoed = response.get(10, TimeUnit.SECONDS);
+                Assertions.assertFalse(echoed.getHeaders().stream()
+                        .anyMatch(header -> header.getName().equals(SharedMemoryChannel.OFFSET_HEADER)));
+                final EchoMessageResponse echoedResponse = EchoTestRPCServiceModel.getInstance()
+                        .fromJson(EchoMessageResponse.class, echoed.getPayload());
+                Assertions.assertEquals(data, echoedResponse.getMessage());
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
 }
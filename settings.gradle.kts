@@ -15,6 +15,11 @@ include(":event-stream-rpc-server")
 include(":event-stream-rpc-client")
 include(":event-stream-rpc-model")
 include(":test-model-codegen") //generates and builds from a "PetShop" model to test this set of libraries
+//JMH benchmarks, only included on demand as the JMH plugin must be resolvable:
+//./gradlew -Pbenchmarks :event-stream-rpc-benchmarks:jmh
+if (gradle.startParameter.projectProperties.containsKey("benchmarks")) {
+    include(":event-stream-rpc-benchmarks")
+}
 
 //convenience projects for greengrass project iteration
 include(":greengrass-client")
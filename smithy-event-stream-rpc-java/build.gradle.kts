@@ -34,4 +34,12 @@ dependencies {
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.1")
     testCompileOnly("org.junit.jupiter:junit-jupiter-params:5.8.1")
     testCompileOnly("org.hamcrest:hamcrest:2.1")
+    testImplementation(project(":event-stream-rpc-model"))
+    testImplementation("com.google.code.gson:gson:2.9.0")
+    testImplementation("software.amazon.awssdk.crt:aws-crt:0.29.16")
+}
+
+val test by tasks.getting(Test::class) {
+    // Use junit platform for unit tests
+    useJUnitPlatform()
 }
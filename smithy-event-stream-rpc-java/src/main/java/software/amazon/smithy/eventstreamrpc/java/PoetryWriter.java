@@ -6,7 +6,7 @@
 package software.amazon.smithy.eventstreamrpc.java;
 
 import com.squareup.javapoet.*;
-import software.amazon.smithy.eventstreamrpc.java.model.TypeNameShapeVisitor;
+import software.amazon.smithy.eventstreamrpc.java.model.MemberFieldStorage;
 import software.amazon.smithy.model.shapes.Shape;
 import software.amazon.smithy.model.traits.DeprecatedTrait;
 
@@ -82,8 +82,13 @@ public class PoetryWriter {
     public static final String FIELD_VOID = "VOID";
 
     public static FieldSpec.Builder buildStandardMemberField(final TypeName memberTypeName, final String memberName, final Shape memberTypeShape) {
+        return buildStandardMemberField(memberTypeName, memberName, memberTypeShape, MemberFieldStorage.OPTIONAL);
+    }
+
+    public static FieldSpec.Builder buildStandardMemberField(final TypeName memberTypeName, final String memberName,
+                                                             final Shape memberTypeShape, final MemberFieldStorage storage) {
         return FieldSpec.builder(
-                TypeNameShapeVisitor.optionalWrap(memberTypeName),
+                storage.fieldType(memberTypeName),
                 memberName, Modifier.PRIVATE)
                 .addAnnotation(AnnotationSpec.builder(ClassName
                         .get("com.google.gson.annotations", "Expose"))
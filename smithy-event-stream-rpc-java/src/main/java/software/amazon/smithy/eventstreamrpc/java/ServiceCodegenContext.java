@@ -10,6 +10,7 @@ import com.squareup.javapoet.TypeName;
 import software.amazon.smithy.build.PluginContext;
 import software.amazon.smithy.codegen.core.CodegenException;
 import software.amazon.smithy.eventstreamrpc.java.model.ClassNameShapeVisitor;
+import software.amazon.smithy.eventstreamrpc.java.model.MemberFieldStorage;
 import software.amazon.smithy.eventstreamrpc.java.model.MemberTypeNameShapeVisitor;
 import software.amazon.smithy.eventstreamrpc.java.model.TypeNameShapeVisitor;
 import software.amazon.smithy.model.Model;
@@ -179,6 +180,15 @@ public class ServiceCodegenContext {
         return pluginContext.getSettings().getStringMemberOrDefault("modelRelativePackage", "model");
     }
 
+    /**
+     * Plain nullable member fields in generated structures and unions instead of Optional wrapped ones, which
+     * saves an object per set member. Off by default, so existing projections regenerate unchanged
+     */
+    public MemberFieldStorage getMemberFieldStorage() {
+        return pluginContext.getSettings().getBooleanMemberOrDefault("compactMemberFields", Boolean.FALSE).booleanValue()
+                ? MemberFieldStorage.NULLABLE : MemberFieldStorage.OPTIONAL;
+    }
+
     public Optional<ServiceShape> getServiceShapeForError(final ShapeId shapeId) {
         if (errorToServiceMapping.containsKey(shapeId)) {
             return Optional.of(errorToServiceMapping.get(shapeId));
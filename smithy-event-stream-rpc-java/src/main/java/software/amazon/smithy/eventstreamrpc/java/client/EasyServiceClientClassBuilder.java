@@ -27,13 +27,15 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.lang.model.element.Modifier;
 
 public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
+    private static final ClassName SHARED_CLIENT_RESOURCES =
+            ClassName.get("software.amazon.awssdk.eventstreamrpc", "SharedClientResources");
+
     public EasyServiceClientClassBuilder(ServiceCodegenContext context) {
         super(context);
     }
@@ -62,6 +64,8 @@ public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
         implClassBuilder.addField(FieldSpec.builder(
                 ClassName.get("software.amazon.awssdk.eventstreamrpc", "EventStreamRPCConnection"),
                 "connection", Modifier.PROTECTED).build());
+        implClassBuilder.addField(FieldSpec.builder(SHARED_CLIENT_RESOURCES,
+                "sharedResources", Modifier.PROTECTED).build());
         implClassBuilder.addMethod(MethodSpec.methodBuilder("close")
                 .addModifiers(Modifier.PUBLIC)
                 .addException(Exception.class)
@@ -70,6 +74,8 @@ public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
                 .addStatement("(($T) client).close()", AutoCloseable.class).endControlFlow()
                 .beginControlFlow("if (connection != null)")
                 .addStatement("connection.close()").endControlFlow()
+                .beginControlFlow("if (sharedResources != null)")
+                .addStatement("sharedResources.close()").endControlFlow()
                 .build());
 
         implClassBuilder.addMethod(MethodSpec.methodBuilder("getClient").addModifiers(Modifier.PUBLIC)
@@ -80,9 +86,19 @@ public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
                 .addParameter(ClassName.get("software.amazon.awssdk.eventstreamrpc", "EventStreamRPCConnection"),
                         "connection")
                 .addParameter(ClassName.get(Executor.class), "executor")
+                .addStatement("this(client, connection, executor, null)")
+                .build());
+
+        implClassBuilder.addMethod(MethodSpec.constructorBuilder()
+                .addParameter(clientInterfaceClassName, "client")
+                .addParameter(ClassName.get("software.amazon.awssdk.eventstreamrpc", "EventStreamRPCConnection"),
+                        "connection")
+                .addParameter(ClassName.get(Executor.class), "executor")
+                .addParameter(SHARED_CLIENT_RESOURCES, "sharedResources")
                 .addStatement("this.client = client")
                 .addStatement("this.connection = connection")
                 .addStatement("this.executor = executor")
+                .addStatement("this.sharedResources = sharedResources")
                 .build());
 
         ClassName streamerResponseTypeName = implClassName.nestedClass("StreamingResponse");
@@ -121,20 +137,27 @@ public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
                         Modifier.PROTECTED).initializer("SocketDomain.LOCAL").build())
                 .addMethod(MethodSpec.methodBuilder("build")
                         .addModifiers(Modifier.PUBLIC)
+                        //event loop, bootstrap and callback executor are shared with the process's other clients,
+                        //each built client holding its own lease released when it closes
+                        .addStatement("$T sharedResources = null", SHARED_CLIENT_RESOURCES)
+                        .addStatement("$T executor = this.executor", Executor.class)
+                        .beginControlFlow("if (client == null || (this.useExecutor && executor == null))")
+                        .addStatement("sharedResources = $T.acquire()", SHARED_CLIENT_RESOURCES)
+                        .endControlFlow()
+                        .addStatement("EventStreamRPCConnection connection = this.connection")
+                        .addStatement("boolean built = false")
+                        .beginControlFlow("try")
                         .beginControlFlow("if (client == null)")
                         .addStatement("String ipcServerSocketPath = this.socketPath")
                         .addStatement("String authToken = this.authToken")
-                        .beginControlFlow("try ($T elGroup = new EventLoopGroup(1);\n"
-                                        + "     $T clientBootstrap = new ClientBootstrap(elGroup, null);\n"
-                                        + "     $T socketOptions = new SocketOptions())",
-                                ClassName.get("software.amazon.awssdk.crt.io", "EventLoopGroup"),
-                                ClassName.get("software.amazon.awssdk.crt.io", "ClientBootstrap"),
+                        .beginControlFlow("try ($T socketOptions = new SocketOptions())",
                                 ClassName.get("software.amazon.awssdk.crt.io", "SocketOptions"))
                         .addStatement("socketOptions.connectTimeoutMs = 3000")
                         .addStatement("socketOptions.domain = this.socketDomain")
                         .addStatement("socketOptions.type = SocketOptions.SocketType.STREAM")
                         .addCode("\n")
-                        .addStatement("final $T config = new EventStreamRPCConnectionConfig(clientBootstrap, elGroup,"
+                        .addStatement("final $T config = new EventStreamRPCConnectionConfig("
+                                        + "sharedResources.getClientBootstrap(), sharedResources.getEventLoopGroup(),"
                                         + " socketOptions, null, ipcServerSocketPath, this.port, "
                                         + "$T.connectMessageSupplier(authToken))",
                                     ClassName.get("software.amazon.awssdk.eventstreamrpc",
@@ -159,16 +182,30 @@ public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
                         .addStatement("connected.get()")
                         .endControlFlow()
                         .beginControlFlow("catch ($T | $T e)", ExecutionException.class, InterruptedException.class)
-                        .addStatement("connection.close()")
                         .addStatement("throw new $T(e)", IOException.class)
                         .endControlFlow()
                         .addStatement("this.client = new $T(connection)", getClientImplClassName(shape))
+                        .addStatement("this.connection = connection")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .beginControlFlow("if (this.useExecutor && executor == null)")
+                        .addStatement("executor = sharedResources.getCallbackExecutor()")
+                        .endControlFlow()
+                        .addStatement("final $T result = new $T(this.client, connection, executor, sharedResources)",
+                                implClassName, implClassName)
+                        .addStatement("built = true")
+                        .addStatement("return result")
+                        .endControlFlow()
+                        .beginControlFlow("finally")
+                        .beginControlFlow("if (!built)")
+                        .beginControlFlow("if (connection != null && connection != this.connection)")
+                        .addStatement("connection.close()")
+                        .endControlFlow()
+                        .beginControlFlow("if (sharedResources != null)")
+                        .addStatement("sharedResources.close()")
                         .endControlFlow()
                         .endControlFlow()
-                        .beginControlFlow("if (this.useExecutor && this.executor == null)")
-                        .addStatement("this.executor = $T.newCachedThreadPool()", ClassName.get(Executors.class))
                         .endControlFlow()
-                        .addStatement("return new $T(this.client, this.connection, this.executor)", implClassName)
                         .addException(IOException.class)
                         .returns(implClassName).build())
                 .addMethod(MethodSpec.methodBuilder("withClient")
@@ -406,7 +443,17 @@ public class EasyServiceClientClassBuilder extends ServiceClientClassBuilder {
                                         TypeVariableName.get("T")))
                                 .beginControlFlow("@Override public void onStreamEvent($T event)",
                                         TypeVariableName.get("T"))
-                                .addStatement("executor.execute(() -> h.onStreamEvent(event))")
+                                .add("// keeps the event's bytes charged to the connection's memory quota while it waits\n")
+                                .addStatement("final $T release = $T.retainDispatched()", Runnable.class,
+                                        ClassName.get("software.amazon.awssdk.eventstreamrpc", "MemoryAccount"))
+                                .beginControlFlow("executor.execute(() ->")
+                                .beginControlFlow("try")
+                                .addStatement("h.onStreamEvent(event)")
+                                .nextControlFlow("finally")
+                                .addStatement("release.run()")
+                                .endControlFlow()
+                                .unindent()
+                                .add("});\n")
                                 .endControlFlow()
                                 .beginControlFlow("@Override public boolean onStreamError($T error)",
                                         ClassName.get(Throwable.class))
@@ -180,6 +180,13 @@ public class ServiceClientClassBuilder implements Function<ServiceShape, Collect
                 .returns(TypeName.BOOLEAN)
                 .build());
 
+        classBuilder.addMethod(MethodSpec.methodBuilder("isBackpressured")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("return $L.isBackpressured()", FIELD_OPERATION_RESPONSE)
+                .returns(TypeName.BOOLEAN)
+                .build());
+
         return JavaFile.builder(operationResponseHandlerClassName.packageName(), classBuilder.build()).build();
     }
 }
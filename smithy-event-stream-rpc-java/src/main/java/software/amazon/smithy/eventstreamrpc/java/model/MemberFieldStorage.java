@@ -0,0 +1,162 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+package software.amazon.smithy.eventstreamrpc.java.model;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.TypeName;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * How the generated structure and union classes hold their members. The public getters, setters and JSON form
+ * are the same either way: an unset member is omitted from the JSON, or written as null where the enclosing map
+ * forces nulls, and a null read back leaves it unset.
+ *
+ * OPTIONAL wraps each member in an Optional, allocating one per set member. NULLABLE holds the boxed value
+ * directly with null for unset, which saves that object per member on every instance. Selected by the
+ * "compactMemberFields" plugin setting.
+ */
+public enum MemberFieldStorage {
+    OPTIONAL {
+        @Override
+        public TypeName fieldType(final TypeName memberTypeName) {
+            return TypeNameShapeVisitor.optionalWrap(memberTypeName);
+        }
+
+        @Override
+        public CodeBlock isSet(final String field) {
+            return CodeBlock.of("$L.isPresent()", field);
+        }
+
+        @Override
+        public CodeBlock value(final String field) {
+            return CodeBlock.of("$L.get()", field);
+        }
+
+        @Override
+        public CodeBlock store(final CodeBlock value) {
+            return CodeBlock.of("$T.ofNullable($L)", ClassName.get(Optional.class), value);
+        }
+
+        @Override
+        public CodeBlock storeNonNull(final CodeBlock value) {
+            return CodeBlock.of("$T.of($L)", ClassName.get(Optional.class), value);
+        }
+
+        @Override
+        public CodeBlock unset() {
+            return CodeBlock.of("$T.empty()", ClassName.get(Optional.class));
+        }
+
+        @Override
+        public CodeBlock fieldEquals(final String lhs, final String rhs) {
+            return CodeBlock.of("$L.equals($L)", lhs, rhs);
+        }
+
+        @Override
+        public boolean needsInitialization() {
+            return true;
+        }
+    },
+    NULLABLE {
+        @Override
+        public TypeName fieldType(final TypeName memberTypeName) {
+            return memberTypeName;
+        }
+
+        @Override
+        public CodeBlock isSet(final String field) {
+            return CodeBlock.of("$L != null", field);
+        }
+
+        @Override
+        public CodeBlock value(final String field) {
+            return CodeBlock.of("$L", field);
+        }
+
+        @Override
+        public CodeBlock store(final CodeBlock value) {
+            return value;
+        }
+
+        @Override
+        public CodeBlock storeNonNull(final CodeBlock value) {
+            return CodeBlock.of("$T.requireNonNull($L)", ClassName.get(Objects.class), value);
+        }
+
+        @Override
+        public CodeBlock unset() {
+            return CodeBlock.of("null");
+        }
+
+        @Override
+        public CodeBlock fieldEquals(final String lhs, final String rhs) {
+            return CodeBlock.of("$T.equals($L, $L)", ClassName.get(Objects.class), lhs, rhs);
+        }
+
+        @Override
+        public boolean needsInitialization() {
+            return false;
+        }
+    };
+
+    /**
+     * Returns the type of the field holding a member
+     * @param memberTypeName The member's type
+     * @return the type of the field holding a member
+     */
+    public abstract TypeName fieldType(TypeName memberTypeName);
+
+    /**
+     * Returns an expression testing whether the member held in a field is set
+     * @param field The field expression
+     * @return an expression testing whether the member held in a field is set
+     */
+    public abstract CodeBlock isSet(String field);
+
+    /**
+     * Returns an expression reading the member held in a field, which must be set
+     * @param field The field expression
+     * @return an expression reading the member held in a field
+     */
+    public abstract CodeBlock value(String field);
+
+    /**
+     * Returns an expression for the field value holding a member value that may be null
+     * @param value The member value expression
+     * @return an expression for the field value
+     */
+    public abstract CodeBlock store(CodeBlock value);
+
+    /**
+     * Returns an expression for the field value holding a member value, throwing NullPointerException if it is null
+     * @param value The member value expression
+     * @return an expression for the field value
+     */
+    public abstract CodeBlock storeNonNull(CodeBlock value);
+
+    /**
+     * Returns an expression for the field value of an unset member
+     * @return an expression for the field value of an unset member
+     */
+    public abstract CodeBlock unset();
+
+    /**
+     * Returns an expression comparing the members held in two fields
+     * @param lhs The first field expression
+     * @param rhs The second field expression
+     * @return an expression comparing the members held in two fields
+     */
+    public abstract CodeBlock fieldEquals(String lhs, String rhs);
+
+    /**
+     * Returns true if constructors must set unset fields explicitly, rather than leave them at the Java default
+     * @return true if constructors must set unset fields explicitly
+     */
+    public abstract boolean needsInitialization();
+}
@@ -20,8 +20,7 @@ public class ServiceModelClassBuilder implements Supplier<JavaFile> {
     private static final String FIELD_SERVICE_NAMESPACE = "SERVICE_NAMESPACE";
     private static final String FIELD_SERVICE_NAME = "SERVICE_NAME";
     private static final String FIELD_SERVICE_OPERATION_SET = "SERVICE_OPERATION_SET";
-    private static final String FIELD_SERVICE_OPERATION_MODEL_MAP = "SERVICE_OPERATION_MODEL_MAP";
-    private static final String FIELD_SERVICE_OBJECT_MODEL_MAP = "SERVICE_OBJECT_MODEL_MAP";
+    private static final String FIELD_HOLDER_INSTANCE = "INSTANCE";
 
     private final ServiceCodegenContext context;
 
@@ -79,27 +78,12 @@ public class ServiceModelClassBuilder implements Supplier<JavaFile> {
                             ParameterizedTypeName.get(ClassName.get(HashSet.class), ClassName.get(String.class)))
                 .build());
 
-        classBuilder.addField(FieldSpec.builder(
-                ParameterizedTypeName.get(ClassName.get(java.util.Map.class),
-                        ClassName.get(String.class), PoetryWriter.CN_OPERATION_MODEL_CONTEXT),
-                FIELD_SERVICE_OPERATION_MODEL_MAP, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
-                .initializer("new $T()",
-                        ParameterizedTypeName.get(ClassName.get(HashMap.class),
-                                ClassName.get(String.class), PoetryWriter.CN_OPERATION_MODEL_CONTEXT))
-                .build());
-
-        classBuilder.addField(FieldSpec.builder(
-                ParameterizedTypeName.get(ClassName.get(java.util.Map.class),
-                        ClassName.get(String.class), ParameterizedTypeName.get(ClassName.get(Class.class),
-                                WildcardTypeName.subtypeOf(PoetryWriter.CN_EVENT_STREAMABLE_JSON_MESSAGE))),
-                FIELD_SERVICE_OBJECT_MODEL_MAP, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
-                .initializer("new $T()",
-                        ParameterizedTypeName.get(ClassName.get(java.util.HashMap.class),
-                                ClassName.get(String.class), ParameterizedTypeName.get(ClassName.get(Class.class),
-                                        WildcardTypeName.subtypeOf(PoetryWriter.CN_EVENT_STREAMABLE_JSON_MESSAGE))))
-                .build());
-
         final CodeBlock.Builder staticOperationSetBlockBuilder = CodeBlock.builder();
+        final CodeBlock.Builder operationModelContextSwitchBuilder = CodeBlock.builder()
+                .beginControlFlow("if (operationName == null)")
+                    .addStatement("return null")
+                .endControlFlow()
+                .beginControlFlow("switch (operationName)");
 
         //loop through all operations and populate internals accordingly
         context.getAllOperations().stream().forEach(operationShape -> {
@@ -110,20 +94,23 @@ public class ServiceModelClassBuilder implements Supplier<JavaFile> {
                     .initializer("$L + $S + $S", FIELD_SERVICE_NAMESPACE, "#",
                             operationShape.getId().getName()).build());
 
+            //each operation model context is created on first use, not with the service model
             final ClassName operationModelClassName = context.getOperationModelContextClassName(operationShape);
-            final String operationModelFieldName = "_" + NameUtils.camelToConstantCase(operationModelClassName.simpleName());
-            classBuilder.addField(FieldSpec.builder(operationModelClassName, operationModelFieldName)
-                    .addModifiers(Modifier.STATIC, Modifier.FINAL, Modifier.PRIVATE)
-                    .initializer("new $T()", operationModelClassName)
+            final String holderClassName = operationModelClassName.simpleName() + "Holder";
+            classBuilder.addType(TypeSpec.classBuilder(holderClassName)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .addField(FieldSpec.builder(operationModelClassName, FIELD_HOLDER_INSTANCE)
+                            .addModifiers(Modifier.STATIC, Modifier.FINAL)
+                            .initializer("new $T()", operationModelClassName)
+                            .build())
                     .build());
 
-            //add operation model context to map
-            staticOperationSetBlockBuilder.addStatement("$L.put($L, $L)",
-                    FIELD_SERVICE_OPERATION_MODEL_MAP, operationConstantName, operationModelFieldName);
+            operationModelContextSwitchBuilder.addStatement("case $L: return $L.$L",
+                    operationConstantName, holderClassName, FIELD_HOLDER_INSTANCE);
 
             classBuilder.addMethod(MethodSpec.methodBuilder(getOperationModelGetterName(operationShape))
                     .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                    .addStatement("return $L", operationModelFieldName)
+                    .addStatement("return $L.$L", holderClassName, FIELD_HOLDER_INSTANCE)
                     .returns(operationModelClassName)
                     .build());
 
@@ -131,13 +118,23 @@ public class ServiceModelClassBuilder implements Supplier<JavaFile> {
                     FIELD_SERVICE_OPERATION_SET, operationConstantName);
         });
 
+        //a string switch compiles to a lookup on the hash code, and a class literal does not load the class
+        final CodeBlock.Builder serviceClassTypeSwitchBuilder = CodeBlock.builder()
+                .beginControlFlow("if (applicationModelType == null)")
+                    .addStatement("return $T.empty()", ClassName.get(Optional.class))
+                .endControlFlow()
+                .beginControlFlow("switch (applicationModelType)");
         final Iterator<DataModelObject> dataModelObjectIterator = context.getAllShapesIterator();
         while (dataModelObjectIterator.hasNext()) {
             final DataModelObject dataModelObject = dataModelObjectIterator.next();
-            staticOperationSetBlockBuilder.addStatement("$L.put($T.$L, $T.class)",
-                    FIELD_SERVICE_OBJECT_MODEL_MAP, dataModelObject.getClassName(),
-                    PoetryWriter.FIELD_APPLICATION_MODEL_TYPE, dataModelObject.getClassName());
+            serviceClassTypeSwitchBuilder.addStatement("case $S: return $T.of($T.class)",
+                    dataModelObject.getApplicationModelType(), ClassName.get(Optional.class),
+                    dataModelObject.getClassName());
         }
+        serviceClassTypeSwitchBuilder.addStatement("default: return $T.empty()", ClassName.get(Optional.class))
+                .endControlFlow();
+        operationModelContextSwitchBuilder.addStatement("default: return null")
+                .endControlFlow();
 
         classBuilder.addMethod(MethodSpec.methodBuilder("getAllOperations")
                 .addAnnotation(Override.class)
@@ -155,13 +152,7 @@ public class ServiceModelClassBuilder implements Supplier<JavaFile> {
                 .addAnnotation(Override.class)
                 .addModifiers(Modifier.PROTECTED)
                 .addParameter(ParameterSpec.builder(ClassName.get(String.class), "applicationModelType").build())
-                .addCode(CodeBlock.builder()
-                        .beginControlFlow("if ($L.containsKey(applicationModelType))", FIELD_SERVICE_OBJECT_MODEL_MAP)
-                            .addStatement("return $T.of($L.get(applicationModelType))",
-                                    ClassName.get(Optional.class), FIELD_SERVICE_OBJECT_MODEL_MAP)
-                        .endControlFlow()
-                        .addStatement("return $T.empty()", ClassName.get(Optional.class))
-                        .build())
+                .addCode(serviceClassTypeSwitchBuilder.build())
                 .returns(ParameterizedTypeName.get(ClassName.get(Optional.class),
                         ParameterizedTypeName.get(ClassName.get(Class.class),
                                 WildcardTypeName.subtypeOf(PoetryWriter.CN_EVENT_STREAMABLE_JSON_MESSAGE))))
@@ -173,7 +164,7 @@ public class ServiceModelClassBuilder implements Supplier<JavaFile> {
                 .addAnnotation(Override.class)
                 .addModifiers(Modifier.PUBLIC)
                 .addParameter(ParameterSpec.builder(ClassName.get(String.class), "operationName").build())
-                .addStatement("return $L.get(operationName)", FIELD_SERVICE_OPERATION_MODEL_MAP)
+                .addCode(operationModelContextSwitchBuilder.build())
                 .returns(PoetryWriter.CN_OPERATION_MODEL_CONTEXT)
                 .build());
 
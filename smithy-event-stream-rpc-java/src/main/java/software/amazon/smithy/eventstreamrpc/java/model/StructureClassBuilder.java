@@ -54,6 +54,7 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                 .addSuperinterface(PoetryWriter.CN_EVENT_STREAMABLE_JSON_MESSAGE);
         final MethodSpec.Builder constructorBuilder = MethodSpec.constructorBuilder()
                 .addModifiers(Modifier.PUBLIC);
+        final MemberFieldStorage storage = context.getMemberFieldStorage();
 
         final Optional<ServiceShape> errorForService = context.getServiceShapeForError(shape.getId());
         if (errorForService.isPresent()) {
@@ -80,16 +81,18 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
             //Smithy model may have message explicitly set on an error object
             //if this is true, we will fold the constructor passed in message to the member field
             if (shape.getMember("message").isPresent()) {
-                msgConstructor.addStatement("this.$L = $T.ofNullable($L)",
-                        "message", TypeName.get(Optional.class), "errorMessage");
+                msgConstructor.addStatement("this.$L = $L",
+                        "message", storage.store(CodeBlock.of("$L", "errorMessage")));
             }
             //non default constructor initialization of members
-            shape.getAllMembers().entrySet()
-                    .stream().filter(memberEntry -> !memberEntry.getKey().equals("message"))
-                    .forEach(memberEntry -> {
-                final String memberName = memberEntry.getKey();
-                msgConstructor.addStatement("this.$L = Optional.empty()", memberName);
-            });
+            if (storage.needsInitialization()) {
+                shape.getAllMembers().entrySet()
+                        .stream().filter(memberEntry -> !memberEntry.getKey().equals("message"))
+                        .forEach(memberEntry -> {
+                    final String memberName = memberEntry.getKey();
+                    msgConstructor.addStatement("this.$L = $L", memberName, storage.unset());
+                });
+            }
             classBuilder.addMethod(msgConstructor.build());
         }   //end of error structure condition
 
@@ -107,7 +110,7 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
 
             if (!memberTypeShape.hasTrait(StreamingTrait.class)) {
                 FieldSpec.Builder fieldSpecBuilder = PoetryWriter
-                        .buildStandardMemberField(memberFieldTypeName, memberName, memberTypeShape);
+                        .buildStandardMemberField(memberFieldTypeName, memberName, memberTypeShape, storage);
                 final Optional<DeprecatedTrait> deprecatedTrait = memberShape.getTrait(DeprecatedTrait.class);
                 classBuilder.addField(PoetryWriter.buildClassField(fieldSpecBuilder, deprecatedTrait).build());
 
@@ -117,8 +120,8 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                     getterBuilder = MethodSpec.methodBuilder(
                             context.getGetterPrefix(memberTypeShape) + NameUtils.capitalize(memberName) + "AsString")
                             .addModifiers(Modifier.PUBLIC)
-                            .beginControlFlow("if ($L.isPresent())", memberName)
-                            .addStatement("return $L.get()", memberName)
+                            .beginControlFlow("if ($L)", storage.isSet(memberName))
+                            .addStatement("return $L", storage.value(memberName))
                             .endControlFlow()
                             .addStatement("return null")
                             .returns(memberFieldTypeName);
@@ -126,8 +129,8 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                     classBuilder.addMethod(MethodSpec.methodBuilder(
                             context.getGetterPrefix(memberTypeShape) + NameUtils.capitalize(memberName))
                             .addModifiers(Modifier.PUBLIC)
-                            .beginControlFlow("if ($L.isPresent())", memberName)
-                            .addStatement("return $T.get($L.get())", memberTypeName, memberName)
+                            .beginControlFlow("if ($L)", storage.isSet(memberName))
+                            .addStatement("return $T.get($L)", memberTypeName, storage.value(memberName))
                             .endControlFlow()
                             .addStatement("return null")
                             .returns(memberTypeName).build());
@@ -135,8 +138,8 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                     getterBuilder = MethodSpec.methodBuilder(
                             context.getGetterPrefix(memberTypeShape) + NameUtils.capitalize(memberName))
                             .addModifiers(Modifier.PUBLIC)
-                            .beginControlFlow("if ($L.isPresent())", memberName)
-                            .addStatement("return $L.get()", memberName)
+                            .beginControlFlow("if ($L)", storage.isSet(memberName))
+                            .addStatement("return $L", storage.value(memberName))
                             .endControlFlow()
                             .addStatement("return null")
                             .returns(memberTypeName);
@@ -155,8 +158,7 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                         context.getSetterPrefix() + NameUtils.capitalize(memberName))
                         .addModifiers(Modifier.PUBLIC)
                         .addParameter(ParameterSpec.builder(memberFieldTypeName, memberName, Modifier.FINAL).build())
-                        .addStatement("this.$L = $T.ofNullable($L)", memberName, TypeName.get(Optional.class),
-                                memberName);
+                        .addStatement("this.$L = $L", memberName, storage.store(CodeBlock.of("$L", memberName)));
                 if (docTrait.isPresent()) {
                     setterBuilder.addJavadoc(docTrait.get().getValue());
                 }
@@ -186,8 +188,8 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                                     .addModifiers(Modifier.PUBLIC)
                                     .addParameter(
                                             ParameterSpec.builder(memberTypeName, memberName, Modifier.FINAL).build())
-                                    .addStatement("this.$L = $T.ofNullable($L.getValue())", memberName,
-                                            TypeName.get(Optional.class), memberName);
+                                    .addStatement("this.$L = $L", memberName,
+                                            storage.store(CodeBlock.of("$L.getValue()", memberName)));
                     if (docTrait.isPresent()) {
                         setterBuilder.addJavadoc(docTrait.get().getValue());
                     }
@@ -213,7 +215,9 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                     classBuilder.addMethod(witherBuilder.build());
                 }
 
-                constructorBuilder.addStatement("this.$L = Optional.empty()", memberName);
+                if (storage.needsInitialization()) {
+                    constructorBuilder.addStatement("this.$L = $L", memberName, storage.unset());
+                }
 
             } //else { //would like to add comment that streaming response outputs exist here
         });
@@ -305,8 +309,9 @@ public class StructureClassBuilder implements BiFunction<ClassName, StructureSha
                             returnFlag, returnFlag, PoetryWriter.CN_EVENT_STREAM_RPC_SERVICE_MODEL,
                             memberShape.getMemberName(), otherObj, memberShape.getMemberName());
                 } else {
-                    equalsBuilder.addStatement("$L = $L && this.$L.equals($L.$L)",
-                            returnFlag, returnFlag, memberShape.getMemberName(), otherObj, memberShape.getMemberName());
+                    equalsBuilder.addStatement("$L = $L && $L", returnFlag, returnFlag,
+                            context.getMemberFieldStorage().fieldEquals("this." + memberShape.getMemberName(),
+                                    otherObj + "." + memberShape.getMemberName()));
                 }
             }
         });
@@ -85,6 +85,7 @@ public class UnionClassBuilder implements Function<UnionShape, JavaFile> {
 
         final MethodSpec.Builder constructorBuilder = MethodSpec.constructorBuilder()
                     .addModifiers(Modifier.PUBLIC);
+        final MemberFieldStorage storage = context.getMemberFieldStorage();
 
         classBuilder.addField(FieldSpec.builder(ClassName.get("", UNION_MEMBER_TYPE_NAME),
                 UNION_SET_MEMBER_FIELD_NAME, Modifier.PRIVATE, Modifier.TRANSIENT)
@@ -98,19 +99,21 @@ public class UnionClassBuilder implements Function<UnionShape, JavaFile> {
             final String enumConstantName = NameUtils.camelToConstantCase(memberName).toUpperCase();
 
             FieldSpec.Builder fieldSpecBuilder = PoetryWriter
-                    .buildStandardMemberField(memberTypeName, memberName, memberTypeShape);
+                    .buildStandardMemberField(memberTypeName, memberName, memberTypeShape, storage);
             final Optional<DeprecatedTrait> deprecatedTrait = memberEntry.getValue().getTrait(DeprecatedTrait.class);
             classBuilder.addField(PoetryWriter.buildClassField(fieldSpecBuilder, deprecatedTrait).build());
 
-            constructorBuilder.addStatement("this.$L = Optional.empty()", memberName);
+            if (storage.needsInitialization()) {
+                constructorBuilder.addStatement("this.$L = $L", memberName, storage.unset());
+            }
 
             final MethodSpec.Builder getterBuilder = MethodSpec.methodBuilder(
                     context.getGetterPrefix(memberTypeShape) + NameUtils.capitalize(memberName))
                     .addModifiers(Modifier.PUBLIC)
-                    .beginControlFlow("if ($L.isPresent() && ($L == $L.$L))",
-                            memberName, UNION_SET_MEMBER_FIELD_NAME,
+                    .beginControlFlow("if ($L && ($L == $L.$L))",
+                            storage.isSet(memberName), UNION_SET_MEMBER_FIELD_NAME,
                             UNION_MEMBER_TYPE_NAME, enumConstantName)
-                    .addStatement("return $L.get()", memberName)
+                    .addStatement("return $L", storage.value(memberName))
                     .endControlFlow()
                     .addStatement("return null")
                     .returns(memberTypeName);
@@ -135,8 +138,8 @@ public class UnionClassBuilder implements Function<UnionShape, JavaFile> {
                     .endControlFlow()
                     .build());
             //union member set cannot be null based on this logic
-            setterBuilder.addStatement("this.$L = $T.of($L)", memberName,
-                        TypeName.get(Optional.class), memberName);
+            setterBuilder.addStatement("this.$L = $L", memberName,
+                        storage.storeNonNull(CodeBlock.of("$L", memberName)));
             //set the unionSetMember field
             setterBuilder.addStatement("this.$L = $L.$L", UNION_SET_MEMBER_FIELD_NAME,
                     UNION_MEMBER_TYPE_NAME, enumConstantName);
@@ -160,11 +163,15 @@ public class UnionClassBuilder implements Function<UnionShape, JavaFile> {
             }
             classBuilder.addMethod(witherBuilder.build());
 
+            final String objMember = "obj." + memberName;
+            final CodeBlock isPresent = storage.needsInitialization()
+                    ? CodeBlock.of("$L != null && $L", objMember, storage.isSet(objMember))
+                    : storage.isSet(objMember);
             enumMemberBuilder.addEnumConstant(enumConstantName,
                     TypeSpec.anonymousClassBuilder(
-                        "$S, ($L obj) -> obj.$L = Optional.empty(), ($L obj) -> obj.$L != null && obj.$L.isPresent()",
-                            enumConstantName, className, memberName,
-                            className, memberName, memberName).build());
+                        "$S, ($L obj) -> obj.$L = $L, ($L obj) -> $L",
+                            enumConstantName, className, memberName, storage.unset(),
+                            className, isPresent).build());
         });
         classBuilder.addMethod(constructorBuilder.build());
         classBuilder.addType(enumMemberBuilder.build());
@@ -282,8 +289,9 @@ public class UnionClassBuilder implements Function<UnionShape, JavaFile> {
                             returnFlag, returnFlag, PoetryWriter.CN_EVENT_STREAM_RPC_SERVICE_MODEL,
                             memberShape.getMemberName(), otherObj, memberShape.getMemberName());
                 } else {
-                    equalsBuilder.addStatement("$L = $L && this.$L.equals($L.$L)",
-                            returnFlag, returnFlag, memberShape.getMemberName(), otherObj, memberShape.getMemberName());
+                    equalsBuilder.addStatement("$L = $L && $L", returnFlag, returnFlag,
+                            context.getMemberFieldStorage().fieldEquals("this." + memberShape.getMemberName(),
+                                    otherObj + "." + memberShape.getMemberName()));
                 }
             });
         equalsBuilder.addStatement("$L = $L && this.$L.equals($L.$L)",
@@ -0,0 +1,282 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+package software.amazon.smithy.eventstreamrpc.java.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.crt.eventstream.Header;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCServiceModel;
+import software.amazon.awssdk.eventstreamrpc.model.EventStreamJsonMessage;
+import software.amazon.smithy.build.FileManifest;
+import software.amazon.smithy.build.PluginContext;
+import software.amazon.smithy.eventstreamrpc.java.JavaCodegenPlugin;
+import software.amazon.smithy.model.Model;
+import software.amazon.smithy.model.node.Node;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates the same shapes with Optional and with compact (nullable) member fields, and checks both read,
+ * write and compare the same JSON the same way.
+ */
+public class MemberFieldStorageTests {
+    private static final String MODEL_PACKAGE = "software.amazon.awssdk.storagetest.model";
+
+    private static final String FULL_RECORD = "{\"record\":{"
+            + "\"text\":\"hello\","
+            + "\"count\":3,"
+            + "\"total\":9007199254740993,"
+            + "\"ratio\":0.5,"
+            + "\"flag\":false,"
+            + "\"when\":1700000000.25,"
+            + "\"color\":\"BLUE\","
+            + "\"tags\":[\"a\",\"b\"],"
+            + "\"attributes\":{\"k\":\"v\"},"
+            + "\"nested\":{\"label\":\"outer\",\"children\":[{\"label\":\"inner\"}]},"
+            + "\"choice\":{\"nested\":{\"label\":\"chosen\"}}"
+            + "}}";
+
+    private static final String SPARSE_RECORD = "{\"record\":{\"text\":\"hello\",\"choice\":{\"number\":7}}}";
+
+    private static Path workDirectory;
+    private static URLClassLoader optionalLoader;
+    private static URLClassLoader compactLoader;
+
+    @BeforeAll
+    static void generate() throws IOException {
+        workDirectory = Files.createTempDirectory("member-storage-test");
+        optionalLoader = generate(workDirectory.resolve("optional"), false);
+        compactLoader = generate(workDirectory.resolve("compact"), true);
+    }
+
+    @AfterAll
+    static void cleanUp() throws IOException {
+        optionalLoader.close();
+        compactLoader.close();
+        try (final Stream<Path> paths = Files.walk(workDirectory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Generates the test model's classes with the given member field storage, compiles them and loads them
+     * by their own class loader, so both generations can live side by side
+     */
+    private static URLClassLoader generate(final Path directory, final boolean compactMemberFields) throws IOException {
+        final Model model = Model.assembler()
+                .addImport(MemberFieldStorageTests.class.getResource("member-storage.smithy"))
+                .assemble().unwrap();
+        final Path sources = directory.resolve("src");
+        new JavaCodegenPlugin().execute(PluginContext.builder()
+                .model(model)
+                .fileManifest(FileManifest.create(sources))
+                .settings(Node.objectNodeBuilder()
+                        .withMember("serviceShapeId", "storagetest#StorageTest")
+                        .withMember("javaBasePackage", "software.amazon.awssdk")
+                        .withMember("modelRelativePackage", "model")
+                        .withMember("generateClientStubs", false)
+                        .withMember("generateServerStubs", false)
+                        .withMember("compactMemberFields", compactMemberFields)
+                        .build())
+                .build());
+
+        final List<File> files;
+        try (final Stream<Path> paths = Files.walk(sources.resolve("model"))) {
+            files = paths.filter(path -> path.toString().endsWith(".java"))
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+        Assertions.assertFalse(files.isEmpty());
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assertions.assertNotNull(compiler, "Generated code can only be compiled when running on a JDK");
+        final Path classes = Files.createDirectories(directory.resolve("classes"));
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (final StandardJavaFileManager fileManager =
+                     compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            final boolean compiled = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-d", classes.toString(), "-classpath", getRuntimeClassPath(),
+                            "-nowarn"),
+                    null, fileManager.getJavaFileObjectsFromFiles(files)).call();
+            Assertions.assertTrue(compiled, () -> diagnostics.getDiagnostics().toString());
+        }
+        return new URLClassLoader(new URL[] { classes.toUri().toURL() }, MemberFieldStorageTests.class.getClassLoader());
+    }
+
+    /**
+     * Returns the class path the generated model compiles against, found from the classes it refers to since
+     * test launchers may not list them in java.class.path
+     */
+    private static String getRuntimeClassPath() {
+        return Stream.of(EventStreamRPCServiceModel.class, Gson.class, Header.class)
+                .map(clazz -> {
+                    try {
+                        return Paths.get(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+                    } catch (URISyntaxException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .distinct()
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    private static EventStreamRPCServiceModel getServiceModel(final ClassLoader loader) throws Exception {
+        return (EventStreamRPCServiceModel) loader.loadClass("software.amazon.awssdk.storagetest.StorageTestServiceModel")
+                .getMethod("getInstance").invoke(null);
+    }
+
+    private static EventStreamJsonMessage read(final ClassLoader loader, final String json) throws Exception {
+        final Class<? extends EventStreamJsonMessage> clazz =
+                loader.loadClass(MODEL_PACKAGE + ".EchoRequest").asSubclass(EventStreamJsonMessage.class);
+        return getServiceModel(loader).fromJson(clazz, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonElement write(final ClassLoader loader, final EventStreamJsonMessage message) throws Exception {
+        return JsonParser.parseString(new String(getServiceModel(loader).toJson(message), StandardCharsets.UTF_8));
+    }
+
+    private static Object get(final Object target, final String getter) throws Exception {
+        return target.getClass().getMethod(getter).invoke(target);
+    }
+
+    private static void assertRoundTrip(final ClassLoader loader, final String json) throws Exception {
+        final EventStreamJsonMessage first = read(loader, json);
+        final EventStreamJsonMessage second = read(loader, json);
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+
+        final EventStreamJsonMessage reread = read(loader, write(loader, first).toString());
+        Assertions.assertEquals(first, reread);
+        Assertions.assertEquals(first.hashCode(), reread.hashCode());
+    }
+
+    /**
+     * Returns the JSON with explicit nulls removed. Unset map members are written as null in Optional mode and
+     * left out in compact mode, which reads the same either way
+     */
+    private static JsonElement withoutNulls(final JsonElement json) {
+        if (json.isJsonObject()) {
+            final JsonObject object = new JsonObject();
+            for (Map.Entry<String, JsonElement> member : json.getAsJsonObject().entrySet()) {
+                if (!member.getValue().isJsonNull()) {
+                    object.add(member.getKey(), withoutNulls(member.getValue()));
+                }
+            }
+            return object;
+        }
+        if (json.isJsonArray()) {
+            final JsonArray array = new JsonArray();
+            json.getAsJsonArray().forEach(element -> array.add(withoutNulls(element)));
+            return array;
+        }
+        return json;
+    }
+
+    /**
+     * Returns the hash code of the message with its record's union cleared, since a union hashes its member
+     * enum, whose hash code is different for each class loader
+     */
+    private static int hashCodeWithoutUnion(final ClassLoader loader, final String json) throws Exception {
+        final EventStreamJsonMessage message = read(loader, json);
+        final Object record = get(message, "getRecord");
+        if (record != null) {
+            record.getClass().getMethod("setChoice", loader.loadClass(MODEL_PACKAGE + ".Choice"))
+                    .invoke(record, (Object) null);
+        }
+        return message.hashCode();
+    }
+
+    private static void assertSameInBothModes(final String json) throws Exception {
+        assertRoundTrip(optionalLoader, json);
+        assertRoundTrip(compactLoader, json);
+
+        final EventStreamJsonMessage optional = read(optionalLoader, json);
+        final EventStreamJsonMessage compact = read(compactLoader, json);
+        final JsonElement optionalJson = write(optionalLoader, optional);
+        final JsonElement compactJson = write(compactLoader, compact);
+        Assertions.assertEquals(JsonParser.parseString(json), withoutNulls(optionalJson));
+        Assertions.assertEquals(withoutNulls(optionalJson), withoutNulls(compactJson));
+
+        //each mode reads what the other writes
+        Assertions.assertEquals(compact, read(compactLoader, optionalJson.toString()));
+        Assertions.assertEquals(optional, read(optionalLoader, compactJson.toString()));
+
+        Assertions.assertEquals(hashCodeWithoutUnion(optionalLoader, json), hashCodeWithoutUnion(compactLoader, json));
+    }
+
+    @Test
+    void testFullRecordRoundTrips() throws Exception {
+        assertSameInBothModes(FULL_RECORD);
+    }
+
+    @Test
+    void testSparseRecordRoundTrips() throws Exception {
+        assertSameInBothModes(SPARSE_RECORD);
+        assertSameInBothModes("{\"record\":{}}");
+        assertSameInBothModes("{}");
+    }
+
+    @Test
+    void testUnsetMembers() throws Exception {
+        for (ClassLoader loader : Arrays.asList(optionalLoader, compactLoader)) {
+            final Object record = get(read(loader, SPARSE_RECORD), "getRecord");
+            Assertions.assertEquals("hello", get(record, "getText"));
+            Assertions.assertNull(get(record, "getCount"));
+            Assertions.assertNull(get(record, "isFlag"));
+            Assertions.assertNull(get(record, "getWhen"));
+            Assertions.assertNull(get(record, "getColor"));
+            Assertions.assertNull(get(record, "getTags"));
+            Assertions.assertNull(get(record, "getNested"));
+
+            final Object choice = get(record, "getChoice");
+            Assertions.assertEquals(7, get(choice, "getNumber"));
+            Assertions.assertNull(get(choice, "getText"));
+            Assertions.assertNull(get(choice, "getNested"));
+
+            //an explicit null reads the same as a member left out
+            Assertions.assertEquals(read(loader, SPARSE_RECORD),
+                    read(loader, "{\"record\":{\"text\":\"hello\",\"count\":null,\"choice\":{\"number\":7}}}"));
+        }
+    }
+
+    @Test
+    void testDifferentValuesNotEqual() throws Exception {
+        for (ClassLoader loader : Arrays.asList(optionalLoader, compactLoader)) {
+            Assertions.assertNotEquals(read(loader, FULL_RECORD), read(loader, SPARSE_RECORD));
+            Assertions.assertNotEquals(read(loader, "{\"record\":{\"count\":1}}"),
+                    read(loader, "{\"record\":{\"count\":2}}"));
+            Assertions.assertNotEquals(read(loader, "{\"record\":{\"count\":1}}"), read(loader, "{\"record\":{}}"));
+        }
+    }
+}
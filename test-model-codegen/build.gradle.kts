@@ -54,3 +54,13 @@ java {
     sourceCompatibility = JavaVersion.VERSION_1_8
     targetCompatibility = JavaVersion.VERSION_1_8
 }
+
+/*
+ * Loopback load test of the echo service, e.g.
+ * ./gradlew :test-model-codegen:echoLoadTest --args="--transport uds,tcp --rate 2000 --output report.json"
+ * See EchoTestLoadGenerator for the options
+ */
+tasks.register<JavaExec>("echoLoadTest") {
+    classpath = sourceSets["main"].runtimeClasspath
+    main = "software.amazon.awssdk.eventstreamrpc.echotest.EchoTestLoadGenerator"
+}
@@ -0,0 +1,778 @@
+/**
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0.
+ */
+
+package software.amazon.awssdk.eventstreamrpc.echotest;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import software.amazon.awssdk.awstest.EchoStreamMessagesResponseHandler;
+import software.amazon.awssdk.awstest.EchoTestRPC;
+import software.amazon.awssdk.awstest.EchoTestRPCClient;
+import software.amazon.awssdk.awstest.model.EchoMessageRequest;
+import software.amazon.awssdk.awstest.model.EchoStreamingMessage;
+import software.amazon.awssdk.awstest.model.EchoStreamingRequest;
+import software.amazon.awssdk.awstest.model.GetAllProductsRequest;
+import software.amazon.awssdk.awstest.model.MessageData;
+import software.amazon.awssdk.crt.io.ClientBootstrap;
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+import software.amazon.awssdk.crt.io.HostResolver;
+import software.amazon.awssdk.crt.io.SocketOptions;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnectionConfig;
+import software.amazon.awssdk.eventstreamrpc.LatencyHistogram;
+import software.amazon.awssdk.eventstreamrpc.StreamResponseHandler;
+import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loopback load generator for the echo service. Runs the service and a number of client connections to it in
+ * this process, over a Unix domain socket, TCP loopback or both one after the other, and drives them with a mix
+ * of EchoMessage, EchoStreamMessages and GetAllProducts calls at a target rate. Reports the throughput and
+ * latency of each run as JSON so runs can be compared.
+ *
+ * Load is open loop: calls are scheduled at fixed intervals from the start of the run whether or not earlier
+ * calls have completed, and each call's latency is measured from when it was scheduled to be sent rather than
+ * when it was. A call held back because its connection already has the maximum number of streams open, or
+ * because the generator fell behind, is charged for the wait, so that a stalled server shows up in the
+ * percentiles instead of silently lowering the offered load (coordinated omission). The service time, measured
+ * from the actual send, is reported alongside.
+ *
+ * Percentiles are the upper bounds of LatencyHistogram buckets, within 12.5% of the recorded latencies.
+ *
+ * An EchoStreamMessages call opens a stream, sends one message and completes when the echo arrives; the
+ * service closes the stream after echoing it.
+ */
+public class EchoTestLoadGenerator {
+    private static final double[] PERCENTILES = { 50., 90., 99., 99.9, 99.99 };
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+
+    /**
+     * Operations the load is made up of
+     */
+    public enum Operation {
+        ECHO_MESSAGE("EchoMessage"),
+        ECHO_STREAM_MESSAGES("EchoStreamMessages"),
+        GET_ALL_PRODUCTS("GetAllProducts");
+
+        private final String operationName;
+
+        Operation(final String operationName) {
+            this.operationName = operationName;
+        }
+
+        /**
+         * Returns the service operation name
+         * @return the service operation name
+         */
+        public String getOperationName() {
+            return operationName;
+        }
+
+        static Operation fromOperationName(final String operationName) {
+            for (Operation operation : values()) {
+                if (operation.operationName.equals(operationName)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation: " + operationName);
+        }
+    }
+
+    /**
+     * Transports a run can be made over
+     */
+    public enum Transport {
+        UDS, TCP
+    }
+
+    /**
+     * What to run. The defaults make a short, moderate run over both transports
+     */
+    public static class Config {
+        private List<Transport> transports = Arrays.asList(Transport.UDS, Transport.TCP);
+        private int connections = 4;
+        private int streamsPerConnection = 16;
+        private double targetRate = 1000.;
+        private int warmupSeconds = 5;
+        private int durationSeconds = 30;
+        private int eventLoopThreads = 1;
+        private Map<Operation, Integer> operationMix = defaultOperationMix();
+        private Map<Integer, Integer> payloadSizes = defaultPayloadSizes();
+        private long seed = 42;
+
+        private static Map<Operation, Integer> defaultOperationMix() {
+            final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+            mix.put(Operation.ECHO_MESSAGE, 70);
+            mix.put(Operation.ECHO_STREAM_MESSAGES, 20);
+            mix.put(Operation.GET_ALL_PRODUCTS, 10);
+            return mix;
+        }
+
+        private static Map<Integer, Integer> defaultPayloadSizes() {
+            final Map<Integer, Integer> sizes = new LinkedHashMap<>();
+            sizes.put(64, 50);
+            sizes.put(1024, 40);
+            sizes.put(64 * 1024, 10);
+            return sizes;
+        }
+
+        /**
+         * Returns the transports to make a run over, in order
+         * @return the transports to make a run over, in order
+         */
+        public List<Transport> getTransports() {
+            return transports;
+        }
+
+        /**
+         * Sets the transports to make a run over, in order
+         * @param transports The transports to make a run over
+         */
+        public void setTransports(final List<Transport> transports) {
+            this.transports = transports;
+        }
+
+        /**
+         * Returns the number of client connections calls are spread across
+         * @return the number of client connections
+         */
+        public int getConnections() {
+            return connections;
+        }
+
+        /**
+         * Sets the number of client connections calls are spread across
+         * @param connections The number of client connections
+         */
+        public void setConnections(final int connections) {
+            this.connections = connections;
+        }
+
+        /**
+         * Returns the most calls in flight on each connection at once
+         * @return the most calls in flight on each connection at once
+         */
+        public int getStreamsPerConnection() {
+            return streamsPerConnection;
+        }
+
+        /**
+         * Sets the most calls in flight on each connection at once
+         * @param streamsPerConnection The most calls in flight on each connection at once
+         */
+        public void setStreamsPerConnection(final int streamsPerConnection) {
+            this.streamsPerConnection = streamsPerConnection;
+        }
+
+        /**
+         * Returns the calls per second to schedule across all connections
+         * @return the calls per second to schedule
+         */
+        public double getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * Sets the calls per second to schedule across all connections
+         * @param targetRate The calls per second to schedule
+         */
+        public void setTargetRate(final double targetRate) {
+            this.targetRate = targetRate;
+        }
+
+        /**
+         * Returns how long to run before measuring
+         * @return how long to run before measuring, in seconds
+         */
+        public int getWarmupSeconds() {
+            return warmupSeconds;
+        }
+
+        /**
+         * Sets how long to run before measuring
+         * @param warmupSeconds How long to run before measuring, in seconds
+         */
+        public void setWarmupSeconds(final int warmupSeconds) {
+            this.warmupSeconds = warmupSeconds;
+        }
+
+        /**
+         * Returns how long to measure for
+         * @return how long to measure for, in seconds
+         */
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        /**
+         * Sets how long to measure for
+         * @param durationSeconds How long to measure for, in seconds
+         */
+        public void setDurationSeconds(final int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+        }
+
+        /**
+         * Returns the number of event loop threads shared by the service and its clients
+         * @return the number of event loop threads
+         */
+        public int getEventLoopThreads() {
+            return eventLoopThreads;
+        }
+
+        /**
+         * Sets the number of event loop threads shared by the service and its clients
+         * @param eventLoopThreads The number of event loop threads
+         */
+        public void setEventLoopThreads(final int eventLoopThreads) {
+            this.eventLoopThreads = eventLoopThreads;
+        }
+
+        /**
+         * Returns the relative weight of each operation in the load
+         * @return the relative weight of each operation in the load
+         */
+        public Map<Operation, Integer> getOperationMix() {
+            return operationMix;
+        }
+
+        /**
+         * Sets the relative weight of each operation in the load
+         * @param operationMix The relative weight of each operation in the load
+         */
+        public void setOperationMix(final Map<Operation, Integer> operationMix) {
+            this.operationMix = operationMix;
+        }
+
+        /**
+         * Returns the relative weight of each payload size, in bytes of message blob
+         * @return the relative weight of each payload size
+         */
+        public Map<Integer, Integer> getPayloadSizes() {
+            return payloadSizes;
+        }
+
+        /**
+         * Sets the relative weight of each payload size, in bytes of message blob. GetAllProducts calls carry no
+         * payload
+         * @param payloadSizes The relative weight of each payload size
+         */
+        public void setPayloadSizes(final Map<Integer, Integer> payloadSizes) {
+            this.payloadSizes = payloadSizes;
+        }
+
+        /**
+         * Returns the seed operations and payload sizes are drawn with
+         * @return the seed operations and payload sizes are drawn with
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Sets the seed operations and payload sizes are drawn with
+         * @param seed The seed operations and payload sizes are drawn with
+         */
+        public void setSeed(final long seed) {
+            this.seed = seed;
+        }
+
+        void validate() {
+            if (transports.isEmpty()) {
+                throw new IllegalArgumentException("At least one transport is required");
+            }
+            if (connections < 1 || streamsPerConnection < 1 || eventLoopThreads < 1) {
+                throw new IllegalArgumentException("Connections, streams and threads must be at least 1");
+            }
+            if (!(targetRate > 0.) || warmupSeconds < 0 || durationSeconds < 1) {
+                throw new IllegalArgumentException("Rate must be positive and duration at least 1 second");
+            }
+            if (totalWeight(operationMix) <= 0 || totalWeight(payloadSizes) <= 0) {
+                throw new IllegalArgumentException("Operation mix and payload sizes need a positive weight");
+            }
+            if (payloadSizes.keySet().stream().anyMatch(size -> size < 0)) {
+                throw new IllegalArgumentException("Payload sizes must not be negative");
+            }
+        }
+
+        private Map<String, Object> toReport() {
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("connections", connections);
+            report.put("streamsPerConnection", streamsPerConnection);
+            report.put("targetRate", targetRate);
+            report.put("warmupSeconds", warmupSeconds);
+            report.put("durationSeconds", durationSeconds);
+            report.put("eventLoopThreads", eventLoopThreads);
+            final Map<String, Integer> mix = new LinkedHashMap<>();
+            operationMix.forEach((operation, weight) -> mix.put(operation.getOperationName(), weight));
+            report.put("operationMix", mix);
+            final Map<String, Integer> sizes = new LinkedHashMap<>();
+            payloadSizes.forEach((size, weight) -> sizes.put(Integer.toString(size), weight));
+            report.put("payloadSizes", sizes);
+            report.put("seed", seed);
+            return report;
+        }
+    }
+
+    /**
+     * Parses a configuration from the command line. Options not given keep their defaults
+     *
+     *   --transport uds,tcp            transports to run over, one run each
+     *   --connections 4                client connections
+     *   --streams 16                   most calls in flight per connection
+     *   --rate 1000                    calls per second across all connections
+     *   --warmup 5 --duration 30       seconds
+     *   --threads 1                    event loop threads
+     *   --mix EchoMessage:70,EchoStreamMessages:20,GetAllProducts:10
+     *   --payload 64:50,1024:40,65536:10   bytes:weight
+     *   --seed 42
+     *   --output report.json           write the report here rather than to stdout
+     *
+     * @param args The command line
+     * @param config The configuration to update
+     * @return the output file, or null for stdout
+     */
+    static Path parseArgs(final String[] args, final Config config) {
+        Path output = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--transport":
+                    final List<Transport> transports = new ArrayList<>();
+                    for (String transport : value.split(",")) {
+                        transports.add(Transport.valueOf(transport.trim().toUpperCase()));
+                    }
+                    config.setTransports(transports);
+                    break;
+                case "--connections":
+                    config.setConnections(Integer.parseInt(value));
+                    break;
+                case "--streams":
+                    config.setStreamsPerConnection(Integer.parseInt(value));
+                    break;
+                case "--rate":
+                    config.setTargetRate(Double.parseDouble(value));
+                    break;
+                case "--warmup":
+                    config.setWarmupSeconds(Integer.parseInt(value));
+                    break;
+                case "--duration":
+                    config.setDurationSeconds(Integer.parseInt(value));
+                    break;
+                case "--threads":
+                    config.setEventLoopThreads(Integer.parseInt(value));
+                    break;
+                case "--mix":
+                    final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+                    parseWeights(value).forEach((name, weight) -> mix.put(Operation.fromOperationName(name), weight));
+                    config.setOperationMix(mix);
+                    break;
+                case "--payload":
+                    final Map<Integer, Integer> sizes = new LinkedHashMap<>();
+                    parseWeights(value).forEach((size, weight) -> sizes.put(Integer.parseInt(size), weight));
+                    config.setPayloadSizes(sizes);
+                    break;
+                case "--seed":
+                    config.setSeed(Long.parseLong(value));
+                    break;
+                case "--output":
+                    output = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        config.validate();
+        return output;
+    }
+
+    /**
+     * Parses "key:weight,key:weight". A key without a weight has weight 1
+     */
+    private static Map<String, Integer> parseWeights(final String value) {
+        final Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            final String[] parts = entry.trim().split(":");
+            weights.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        return weights;
+    }
+
+    private static int totalWeight(final Map<?, Integer> weights) {
+        int total = 0;
+        for (int weight : weights.values()) {
+            total += weight;
+        }
+        return total;
+    }
+
+    /**
+     * Runs the load over each configured transport in turn
+     * @param config What to run
+     * @return the report of all runs, ready to serialize as JSON
+     * @throws Exception if the service cannot be started or a client cannot connect
+     */
+    public static Map<String, Object> run(final Config config) throws Exception {
+        config.validate();
+        final List<Map<String, Object>> runs = new ArrayList<>();
+        for (Transport transport : config.getTransports()) {
+            runs.add(runTransport(config, transport));
+        }
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config.toReport());
+        report.put("runs", runs);
+        return report;
+    }
+
+    /**
+     * Returns a report as JSON
+     * @param report A report returned by run()
+     * @return the report as JSON
+     */
+    public static String toJson(final Map<String, Object> report) {
+        return GSON.toJson(report);
+    }
+
+    private static Map<String, Object> runTransport(final Config config, final Transport transport) throws Exception {
+        final SocketOptions.SocketDomain domain;
+        final String hostname;
+        final int port = EchoTestServiceRunner.randomPort();
+        Path socketDirectory = null;
+        if (transport == Transport.UDS) {
+            domain = SocketOptions.SocketDomain.LOCAL;
+            socketDirectory = Files.createTempDirectory("echo-load");
+            hostname = socketDirectory.resolve("echo.sock").toString();
+        } else {
+            domain = SocketOptions.SocketDomain.IPv4;
+            hostname = "127.0.0.1";
+        }
+        final List<EventStreamRPCConnection> connections = new ArrayList<>(config.getConnections());
+        try (final EventLoopGroup elGroup = new EventLoopGroup(config.getEventLoopThreads());
+             final EchoTestServiceRunner runner = new EchoTestServiceRunner(elGroup, domain, hostname, port);
+             final HostResolver resolver = new HostResolver(elGroup, 64);
+             final ClientBootstrap clientBootstrap = new ClientBootstrap(elGroup, resolver);
+             final SocketOptions socketOptions = new SocketOptions()) {
+            socketOptions.connectTimeoutMs = 3000;
+            socketOptions.domain = domain;
+            socketOptions.type = SocketOptions.SocketType.STREAM;
+
+            runner.runService();
+            final CompletableFuture<Void> clientErrorFuture = new CompletableFuture<>(); //only completes exceptionally if there's an error
+            final List<Client> clients = new ArrayList<>(config.getConnections());
+            try {
+                for (int i = 0; i < config.getConnections(); ++i) {
+                    final EventStreamRPCConnectionConfig connectionConfig = new EventStreamRPCConnectionConfig(
+                            clientBootstrap, elGroup, socketOptions, null, hostname, port,
+                            () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
+                    final EventStreamRPCConnection connection =
+                            EchoTestServiceRunner.connectClient(connectionConfig, null, clientErrorFuture, 30);
+                    connections.add(connection);
+                    clients.add(new Client(new EchoTestRPCClient(connection), config.getStreamsPerConnection()));
+                }
+                final Map<String, Object> report = new Run(config, clients).execute();
+                report.put("transport", transport.name().toLowerCase());
+                if (clientErrorFuture.isCompletedExceptionally()) {
+                    report.put("connectionError", clientErrorFuture.handle((r, e) -> String.valueOf(e)).get());
+                }
+                return report;
+            } finally {
+                for (EventStreamRPCConnection connection : connections) {
+                    connection.close();
+                }
+            }
+        } finally {
+            if (socketDirectory != null) {
+                Files.deleteIfExists(Paths.get(hostname));
+                Files.deleteIfExists(socketDirectory);
+            }
+        }
+    }
+
+    /**
+     * A client connection and its open stream allowance
+     */
+    private static final class Client {
+        private final EchoTestRPC client;
+        private final Semaphore streams;
+
+        Client(final EchoTestRPC client, final int streamsPerConnection) {
+            this.client = client;
+            this.streams = new Semaphore(streamsPerConnection);
+        }
+    }
+
+    /**
+     * Latency and outcome counts for the measured calls of one operation
+     */
+    private static final class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        Map<String, Object> toReport() {
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("completed", latency.getCount());
+            report.put("errors", errors.sum());
+            report.put("latencyNanos", histogramReport(latency));
+            report.put("serviceTimeNanos", histogramReport(serviceTime));
+            return report;
+        }
+    }
+
+    private static Map<String, Object> histogramReport(final LatencyHistogram histogram) {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("count", histogram.getCount());
+        report.put("mean", Math.round(histogram.getMean()));
+        for (double percentile : PERCENTILES) {
+            report.put("p" + (percentile == Math.rint(percentile) ? Long.toString((long) percentile)
+                    : Double.toString(percentile)), histogram.getValueAtPercentile(percentile));
+        }
+        report.put("max", histogram.getMax());
+        return report;
+    }
+
+    /**
+     * One open-loop run over a set of connected clients
+     */
+    private static final class Run {
+        private final Config config;
+        private final List<Client> clients;
+        private final Random random;
+        private final Operation[] operations;
+        private final int[] operationWeights;
+        private final MessageData[] payloads;
+        private final int[] payloadWeights;
+        private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        private final OperationStats total = new OperationStats();
+        private final AtomicLong lastCompletion = new AtomicLong();
+        private final LongAdder outstanding = new LongAdder();
+
+        Run(final Config config, final List<Client> clients) {
+            this.config = config;
+            this.clients = clients;
+            this.random = new Random(config.getSeed());
+            this.operations = config.getOperationMix().keySet().toArray(new Operation[0]);
+            this.operationWeights = new int[operations.length];
+            for (int i = 0; i < operations.length; ++i) {
+                operationWeights[i] = config.getOperationMix().get(operations[i]);
+                stats.put(operations[i], new OperationStats());
+            }
+            final Integer[] sizes = config.getPayloadSizes().keySet().toArray(new Integer[0]);
+            this.payloads = new MessageData[sizes.length];
+            this.payloadWeights = new int[sizes.length];
+            for (int i = 0; i < sizes.length; ++i) {
+                final byte[] blob = new byte[sizes[i]];
+                random.nextBytes(blob);
+                payloads[i] = new MessageData();
+                payloads[i].setStringMessage("close");  //the service closes echo streams after a "close" message
+                payloads[i].setBlobMessage(blob);
+                payloadWeights[i] = config.getPayloadSizes().get(sizes[i]);
+            }
+        }
+
+        Map<String, Object> execute() throws InterruptedException {
+            final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getTargetRate();
+            final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+            final long measureStart = start + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+            final long end = measureStart + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+            long scheduled = 0;
+            long maxScheduleLag = 0;
+            for (long i = 0; ; ++i) {
+                //from the start each time rather than adding the interval up, so rounding never drifts the rate
+                final long intended = start + (long) (i * intervalNanos);
+                if (intended - end >= 0) {
+                    break;
+                }
+                long now;
+                while ((now = System.nanoTime()) - intended < 0) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                final Client client = clients.get((int) (i % clients.size()));
+                client.streams.acquire();   //a full connection holds the schedule up, which the latency accounts for
+                final Operation operation = operations[pick(operationWeights)];
+                final MessageData payload = payloads[pick(payloadWeights)];
+                final boolean measured = intended - measureStart >= 0;
+                if (measured) {
+                    ++scheduled;
+                }
+                final long sent = System.nanoTime();
+                maxScheduleLag = Math.max(maxScheduleLag, sent - intended);
+                outstanding.increment();
+                CompletableFuture<?> call;
+                try {
+                    call = issue(client.client, operation, payload);
+                } catch (RuntimeException e) {
+                    call = new CompletableFuture<>();
+                    ((CompletableFuture<?>) call).completeExceptionally(e);
+                }
+                call.whenComplete((result, error) -> {
+                    final long completed = System.nanoTime();
+                    client.streams.release();
+                    if (measured) {
+                        record(operation, intended, sent, completed, error);
+                    }
+                    outstanding.decrement();
+                });
+            }
+            final long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+            while (outstanding.sum() > 0 && System.nanoTime() - drainDeadline < 0) {
+                Thread.sleep(10);
+            }
+            return report(scheduled, maxScheduleLag, measureStart);
+        }
+
+        private int pick(final int[] weights) {
+            int value = random.nextInt(totalWeight(weights));
+            for (int i = 0; i < weights.length; ++i) {
+                value -= weights[i];
+                if (value < 0) {
+                    return i;
+                }
+            }
+            return weights.length - 1;
+        }
+
+        private static int totalWeight(final int[] weights) {
+            int total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+            return total;
+        }
+
+        private void record(final Operation operation, final long intended, final long sent, final long completed,
+                            final Throwable error) {
+            final OperationStats operationStats = stats.get(operation);
+            if (error != null) {
+                operationStats.errors.increment();
+                total.errors.increment();
+                return;
+            }
+            operationStats.latency.record(completed - intended);
+            operationStats.serviceTime.record(completed - sent);
+            total.latency.record(completed - intended);
+            total.serviceTime.record(completed - sent);
+            long last = lastCompletion.get();
+            while (completed - last > 0 && !lastCompletion.compareAndSet(last, completed)) {
+                last = lastCompletion.get();
+            }
+        }
+
+        private Map<String, Object> report(final long scheduled, final long maxScheduleLag, final long measureStart) {
+            final long completed = total.latency.getCount();
+            final long errors = total.errors.sum();
+            final long last = lastCompletion.get();
+            //a run that fell behind finishes late, and its throughput must be over the time it actually took
+            final long elapsed = Math.max(TimeUnit.SECONDS.toNanos(config.getDurationSeconds()),
+                    last == 0 ? 0 : last - measureStart);
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("scheduled", scheduled);
+            report.put("completed", completed);
+            report.put("errors", errors);
+            report.put("timedOut", Math.max(0, scheduled - completed - errors));
+            report.put("throughput", completed * 1e9 / elapsed);
+            report.put("maxScheduleLagNanos", maxScheduleLag);
+            report.put("latencyNanos", histogramReport(total.latency));
+            report.put("serviceTimeNanos", histogramReport(total.serviceTime));
+            final Map<String, Object> operationReports = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) ->
+                    operationReports.put(operation.getOperationName(), operationStats.toReport()));
+            report.put("operations", operationReports);
+            return report;
+        }
+
+        private CompletableFuture<?> issue(final EchoTestRPC client, final Operation operation,
+                                           final MessageData payload) {
+            switch (operation) {
+                case ECHO_MESSAGE:
+                    final EchoMessageRequest request = new EchoMessageRequest();
+                    request.setMessage(payload);
+                    return client.echoMessage(request, Optional.empty()).getResponse();
+                case ECHO_STREAM_MESSAGES:
+                    return echoStreamMessage(client, payload);
+                case GET_ALL_PRODUCTS:
+                    return client.getAllProducts(new GetAllProductsRequest(), Optional.empty()).getResponse();
+                default:
+                    throw new IllegalStateException("Unhandled operation: " + operation);
+            }
+        }
+
+        private CompletableFuture<Void> echoStreamMessage(final EchoTestRPC client, final MessageData payload) {
+            final CompletableFuture<Void> echoed = new CompletableFuture<>();
+            final EchoStreamMessagesResponseHandler stream = client.echoStreamMessages(EchoStreamingRequest.VOID,
+                    Optional.of(new StreamResponseHandler<EchoStreamingMessage>() {
+                        @Override
+                        public void onStreamEvent(EchoStreamingMessage streamEvent) {
+                            echoed.complete(null);
+                        }
+
+                        @Override
+                        public boolean onStreamError(Throwable error) {
+                            echoed.completeExceptionally(error);
+                            return true;
+                        }
+
+                        @Override
+                        public void onStreamClosed() {
+                            echoed.completeExceptionally(new IllegalStateException("Stream closed before the echo"));
+                        }
+                    }));
+            final EchoStreamingMessage message = new EchoStreamingMessage();
+            message.setStreamMessage(payload);
+            stream.getResponse()
+                    .thenCompose(response -> stream.sendStreamEvent(message))
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            echoed.completeExceptionally(error);
+                        }
+                    });
+            return echoed;
+        }
+    }
+
+    /**
+     * Runs the load generator from the command line. See parseArgs() for the options
+     * @param args The command line
+     * @throws Exception if a run fails to start
+     */
+    public static void main(String[] args) throws Exception {
+        final Config config = new Config();
+        final Path output = parseArgs(args, config);
+        final String json = toJson(run(config));
+        if (output == null) {
+            System.out.println(json);
+        } else {
+            try {
+                Files.write(output, json.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("Could not write " + output + ": " + e.getMessage());
+                System.out.println(json);
+            }
+        }
+    }
+}
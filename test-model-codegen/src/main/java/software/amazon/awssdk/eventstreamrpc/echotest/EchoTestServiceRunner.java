@@ -16,6 +16,8 @@ import software.amazon.awssdk.crt.io.HostResolver;
 import software.amazon.awssdk.crt.io.SocketOptions;
 import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnection;
 import software.amazon.awssdk.eventstreamrpc.EventStreamRPCConnectionConfig;
+import software.amazon.awssdk.eventstreamrpc.InProcessEventStreamRPCConnection;
+import software.amazon.awssdk.eventstreamrpc.InProcessRpcServer;
 import software.amazon.awssdk.eventstreamrpc.RpcServer;
 import software.amazon.awssdk.eventstreamrpc.test.TestAuthNZHandlers;
 
@@ -27,6 +29,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Helper to runs the echo server for unit tests, or any other sandbox testing
@@ -57,27 +60,48 @@ public class EchoTestServiceRunner implements AutoCloseable {
 
 
     public void runService() {
+        runService(null);
+    }
+
+    /**
+     * Serves the echo service, configured first
+     * @param serverConfig Configures the server and changes the service before it is served, such as to set
+     *                     connection options or replace an operation handler, or null to serve both as created
+     */
+    public void runService(final BiConsumer<RpcServer, EchoTestRPCService> serverConfig) {
         try (SocketOptions socketOptions = new SocketOptions()) {
             socketOptions.connectTimeoutMs = 3000;
             socketOptions.domain = domain;
             socketOptions.type = SocketOptions.SocketType.STREAM;
 
-            final EchoTestRPCService service = new EchoTestRPCService();
-            //wiring of operation handlers
-            service.setEchoMessageHandler(EchoMessageHandler::new);
-            service.setEchoStreamMessagesHandler(EchoStreamMessagesHandler::new);
-            service.setCauseServiceErrorHandler(CauseServiceErrorHandler::new);
-            service.setCauseStreamServiceToErrorHandler(CauseStreamServiceToError::new);
-            service.setGetAllCustomersHandler(GetAllCustomersHandler::new);
-            service.setGetAllProductsHandler(GetAllProductsHandler::new);
-
-            service.setAuthenticationHandler(TestAuthNZHandlers.getAuthNHandler());
-            service.setAuthorizationHandler(TestAuthNZHandlers.getAuthZHandler());
+            final EchoTestRPCService service = newEchoTestService();
             rpcServer = new RpcServer(elGroup, socketOptions, null, hostname, port, service);
+            if (serverConfig != null) {
+                serverConfig.accept(rpcServer, service);
+            }
             rpcServer.runServer();
         }
     }
 
+    /**
+     * Creates the echo service with all operation handlers and the test auth handlers wired
+     * @return the echo service
+     */
+    public static EchoTestRPCService newEchoTestService() {
+        final EchoTestRPCService service = new EchoTestRPCService();
+        //wiring of operation handlers
+        service.setEchoMessageHandler(EchoMessageHandler::new);
+        service.setEchoStreamMessagesHandler(EchoStreamMessagesHandler::new);
+        service.setCauseServiceErrorHandler(CauseServiceErrorHandler::new);
+        service.setCauseStreamServiceToErrorHandler(CauseStreamServiceToError::new);
+        service.setGetAllCustomersHandler(GetAllCustomersHandler::new);
+        service.setGetAllProductsHandler(GetAllProductsHandler::new);
+
+        service.setAuthenticationHandler(TestAuthNZHandlers.getAuthNHandler());
+        service.setAuthorizationHandler(TestAuthNZHandlers.getAuthZHandler());
+        return service;
+    }
+
     @Override
     public void close() throws Exception {
         if (rpcServer != null) {
@@ -100,6 +124,24 @@ public class EchoTestServiceRunner implements AutoCloseable {
      *                   encountering an error before test client logic completes
      */
     public static CompletableFuture<Void> runLocalEchoTestServer(final BiConsumer<EventStreamRPCConnection, EchoTestRPC> testClientLogic) throws Exception {
+        return runLocalEchoTestServer(null, null, testClientLogic);
+    }
+
+    /**
+     * Executes testClientLogic as runLocalEchoTestServer(testClientLogic) does, against a server and client
+     * configured first, such as to set their connection options or replace an operation handler
+     *
+     * @param serverConfig Configures the server and changes the service before it is served, or null
+     * @param clientConfig Configures the client connection before it connects, or null
+     * @param testClientLogic The client logic to run
+     * @return A CompletableFuture of any connection level error that may have occurred after the testClientLogic completes
+     * @throws Exception throws an exception either from the test client logic having thrown, or the connection itself
+     *                   encountering an error before test client logic completes
+     */
+    public static CompletableFuture<Void> runLocalEchoTestServer(
+            final BiConsumer<RpcServer, EchoTestRPCService> serverConfig,
+            final Consumer<EventStreamRPCConnection> clientConfig,
+            final BiConsumer<EventStreamRPCConnection, EchoTestRPC> testClientLogic) throws Exception {
         final int port = randomPort();
         final String hostname = "127.0.0.1";
         try (final EventLoopGroup elGroup = new EventLoopGroup(1);
@@ -111,38 +153,11 @@ public class EchoTestServiceRunner implements AutoCloseable {
             socketOptions.domain = SocketOptions.SocketDomain.IPv4;
             socketOptions.type = SocketOptions.SocketType.STREAM;
 
-            runner.runService();
+            runner.runService(serverConfig);
             final EventStreamRPCConnectionConfig config = new EventStreamRPCConnectionConfig(clientBootstrap, elGroup,
                     socketOptions, null, hostname, port, () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
-            try (EventStreamRPCConnection connection = new EventStreamRPCConnection(config)) {
-                final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
-                final CompletableFuture<Void> clientErrorFuture = new CompletableFuture<>(); //only completes exceptionally if there's an error
-                connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
-                    @Override
-                    public void onConnect() {
-                        connectFuture.complete(null);
-                    }
-
-                    @Override
-                    public void onDisconnect(int errorCode) {
-                        if (!connectFuture.isDone()) {
-                            connectFuture.completeExceptionally(new RuntimeException("Client initial connection failed due to: " + CRT.awsErrorName(errorCode)));
-                        } else if (errorCode != CRT.AWS_CRT_SUCCESS) {
-                            clientErrorFuture.completeExceptionally(new RuntimeException("Client disconnected due to: " + CRT.awsErrorName(errorCode)));
-                        } else { } //don't care if it normal closure/disconnect
-                    }
-
-                    @Override
-                    public boolean onError(Throwable t) {
-                        if (!connectFuture.isDone()) {
-                            connectFuture.completeExceptionally(t);
-                        } else {
-                            clientErrorFuture.completeExceptionally(t);
-                        }
-                        return false;
-                    }
-                });
-                connectFuture.get(480, TimeUnit.SECONDS);    //wait for connection to move forward
+            final CompletableFuture<Void> clientErrorFuture = new CompletableFuture<>(); //only completes exceptionally if there's an error
+            try (EventStreamRPCConnection connection = connectClient(config, clientConfig, clientErrorFuture, 480)) {
                 final EchoTestRPC client = new EchoTestRPCClient(connection);
                 final CompletableFuture<Object> runClientOrError =
                         CompletableFuture.anyOf(clientErrorFuture,
@@ -154,6 +169,46 @@ public class EchoTestServiceRunner implements AutoCloseable {
         }
     }
 
+    /**
+     * Executes testClientLogic against the echo service reached through an in-process connection rather than a
+     * socket
+     *
+     * @param defensiveCopy Whether the connection copies messages rather than passing them by reference
+     * @param testClientLogic The client logic to run
+     * @return A CompletableFuture of any connection level error that may have occurred after the testClientLogic completes
+     * @throws Exception throws an exception either from the test client logic having thrown, or the connection itself
+     *                   encountering an error before test client logic completes
+     */
+    public static CompletableFuture<Void> runInProcessEchoTestServer(final boolean defensiveCopy,
+            final BiConsumer<EventStreamRPCConnection, EchoTestRPC> testClientLogic) throws Exception {
+        try (final InProcessRpcServer server = new InProcessRpcServer(newEchoTestService());
+             final InProcessEventStreamRPCConnection connection = new InProcessEventStreamRPCConnection(server,
+                     () -> TestAuthNZHandlers.getClientAuth("accepted.foo"))) {
+            connection.setDefensiveCopy(defensiveCopy);
+            final CompletableFuture<Void> clientErrorFuture = new CompletableFuture<>(); //only completes exceptionally if there's an error
+            connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+                @Override
+                public void onConnect() { }
+
+                @Override
+                public void onDisconnect(int errorCode) { }
+
+                @Override
+                public boolean onError(Throwable t) {
+                    clientErrorFuture.completeExceptionally(t);
+                    return false;
+                }
+            }).get(30, TimeUnit.SECONDS);
+            final EchoTestRPC client = new EchoTestRPCClient(connection);
+            final CompletableFuture<Object> runClientOrError =
+                    CompletableFuture.anyOf(clientErrorFuture,
+                            CompletableFuture.runAsync(() -> testClientLogic.accept(connection, client),
+                                    Executors.newSingleThreadExecutor()));
+            runClientOrError.get(240, TimeUnit.SECONDS);
+            return clientErrorFuture;
+        }
+    }
+
     /**
      * Enables a bit of a performance/load test by reconnecting the client to the same running server multiple times
      * and each time the client connects, it runs the test logic for the number of times.
@@ -177,36 +232,8 @@ public class EchoTestServiceRunner implements AutoCloseable {
             for (int i = 0; i < nCount; ++i) {
                 final EventStreamRPCConnectionConfig config = new EventStreamRPCConnectionConfig(clientBootstrap, elGroup,
                         socketOptions, null, domainSocket, port, () -> TestAuthNZHandlers.getClientAuth("accepted.foo"));
-                try (EventStreamRPCConnection connection = new EventStreamRPCConnection(config)) {
-                    final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
-                    final CompletableFuture<Void> clientErrorFuture = new CompletableFuture<>(); //only completes exceptionally if there's an error
-                    connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
-                        @Override
-                        public void onConnect() {
-                            connectFuture.complete(null);
-                        }
-
-                        @Override
-                        public void onDisconnect(int errorCode) {
-                            if (!connectFuture.isDone()) {
-                                connectFuture.completeExceptionally(new RuntimeException("Client initial connection failed due to: " + CRT.awsErrorName(errorCode)));
-                            } else if (errorCode != CRT.AWS_CRT_SUCCESS) {
-                                clientErrorFuture.completeExceptionally(new RuntimeException("Client disconnected due to: " + CRT.awsErrorName(errorCode)));
-                            } else {
-                            } //don't care if it normal closure/disconnect
-                        }
-
-                        @Override
-                        public boolean onError(Throwable t) {
-                            if (!connectFuture.isDone()) {
-                                connectFuture.completeExceptionally(t);
-                            } else {
-                                clientErrorFuture.completeExceptionally(t);
-                            }
-                            return false;
-                        }
-                    });
-                    connectFuture.get(30, TimeUnit.SECONDS);    //wait for connection to move forward
+                final CompletableFuture<Void> clientErrorFuture = new CompletableFuture<>(); //only completes exceptionally if there's an error
+                try (EventStreamRPCConnection connection = connectClient(config, null, clientErrorFuture, 30)) {
                     final EchoTestRPC client = new EchoTestRPCClient(connection);
                     final CompletableFuture<Object> runClientOrError =
                             CompletableFuture.anyOf(clientErrorFuture, CompletableFuture.runAsync(
@@ -220,6 +247,58 @@ public class EchoTestServiceRunner implements AutoCloseable {
         CrtResource.waitForNoResources();
     }
 
+    /**
+     * Creates a socket connection to a running echo service and waits for it to connect
+     *
+     * @param config The connection configuration
+     * @param clientConfig Configures the connection before it connects, such as to set its connection options, or null
+     * @param clientErrorFuture Completed exceptionally if the connection fails or errors after connecting
+     * @param connectTimeoutSeconds How long to wait for the connection to be accepted
+     * @return the connected connection, to be closed by the caller
+     * @throws Exception if the connection cannot be made or is not accepted in time
+     */
+    public static EventStreamRPCConnection connectClient(final EventStreamRPCConnectionConfig config,
+            final Consumer<EventStreamRPCConnection> clientConfig, final CompletableFuture<Void> clientErrorFuture,
+            final long connectTimeoutSeconds) throws Exception {
+        final EventStreamRPCConnection connection = new EventStreamRPCConnection(config);
+        try {
+            if (clientConfig != null) {
+                clientConfig.accept(connection);
+            }
+            final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
+            connection.connect(new EventStreamRPCConnection.LifecycleHandler() {
+                @Override
+                public void onConnect() {
+                    connectFuture.complete(null);
+                }
+
+                @Override
+                public void onDisconnect(int errorCode) {
+                    if (!connectFuture.isDone()) {
+                        connectFuture.completeExceptionally(new RuntimeException("Client initial connection failed due to: " + CRT.awsErrorName(errorCode)));
+                    } else if (errorCode != CRT.AWS_CRT_SUCCESS) {
+                        clientErrorFuture.completeExceptionally(new RuntimeException("Client disconnected due to: " + CRT.awsErrorName(errorCode)));
+                    } else { } //don't care if it normal closure/disconnect
+                }
+
+                @Override
+                public boolean onError(Throwable t) {
+                    if (!connectFuture.isDone()) {
+                        connectFuture.completeExceptionally(t);
+                    } else {
+                        clientErrorFuture.completeExceptionally(t);
+                    }
+                    return false;
+                }
+            });
+            connectFuture.get(connectTimeoutSeconds, TimeUnit.SECONDS);    //wait for connection to move forward
+            return connection;
+        } catch (Exception e) {
+            connection.close();
+            throw e;
+        }
+    }
+
     /**
      * Runs this dumb service via CLI
      * @param args